@@ -19,15 +19,56 @@ package de.qaware.mysqlbenchmark;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Strings;
+import de.qaware.mysqlbenchmark.cache.CachePolicy;
+import de.qaware.mysqlbenchmark.cache.CacheSweep;
+import de.qaware.mysqlbenchmark.capacity.CapacitySearch;
+import de.qaware.mysqlbenchmark.capacity.ConcurrencySweep;
+import de.qaware.mysqlbenchmark.capacity.SloRule;
+import de.qaware.mysqlbenchmark.compare.Compare;
 import de.qaware.mysqlbenchmark.console.Parameters;
+import de.qaware.mysqlbenchmark.metrics.ExecutionPlan;
+import de.qaware.mysqlbenchmark.metrics.HistogramLog;
+import de.qaware.mysqlbenchmark.metrics.IntervalReporter;
+import de.qaware.mysqlbenchmark.metrics.OpenMetricsServer;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import de.qaware.mysqlbenchmark.logfile.Checkpoint;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.EventStore;
+import de.qaware.mysqlbenchmark.logfile.LogMerger;
+import de.qaware.mysqlbenchmark.logfile.LogSource;
 import de.qaware.mysqlbenchmark.logfile.QueryParser;
+import de.qaware.mysqlbenchmark.logfile.StatementArena;
+import de.qaware.mysqlbenchmark.report.PlanLog;
+import de.qaware.mysqlbenchmark.scenario.Scenario;
 import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
+import de.qaware.mysqlbenchmark.stub.LatencyRule;
+import de.qaware.mysqlbenchmark.stub.StubServer;
+import de.qaware.mysqlbenchmark.trace.ChromeTrace;
+import de.qaware.mysqlbenchmark.trace.TraceRecorder;
+import de.qaware.mysqlbenchmark.workload.LiteralRule;
+import de.qaware.mysqlbenchmark.workload.WorkloadGenerator;
+import de.qaware.mysqlbenchmark.workload.WorkloadModel;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Entry point for starting the benchmark tool
@@ -36,8 +77,9 @@ import java.sql.SQLException;
  * @author Felix Kelm felix.kelm@qaware.de
  */
 final class Main {
-    private static QueryParser parser;
+    private static LogSource parser;
     private static final org.slf4j.Logger LOG = org.slf4j.LoggerFactory.getLogger(Main.class);
+    private static final String SEPARATOR = System.getProperty("line.separator");
 
     private Main() {
         // Prevent instantiation
@@ -50,6 +92,20 @@ final class Main {
      */
     public static void main(String[] args) {
 
+        /**
+         * compare results of earlier runs instead of running the benchmark
+         */
+        if (args.length > 0 && "compare".equals(args[0])) {
+            System.exit(Compare.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
+        /**
+         * convert a trace of an earlier run instead of running the benchmark
+         */
+        if (args.length > 0 && "trace".equals(args[0])) {
+            System.exit(ChromeTrace.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         /**
          * Read command line parameters using jcommander
          */
@@ -67,10 +123,152 @@ final class Main {
             return;
         }
 
-        SQLStatementExecutor benchmark = new SQLStatementExecutor(params);
-        FileWriter writer = null;
+        /**
+         * check the literal rules before anything runs, every executor parses them again
+         */
+        try {
+            for (String rule : params.getLiteralRules()) {
+                LiteralRule.parse(rule);
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.error(e.getMessage());
+            return;
+        }
+
+        /**
+         * start the stub server and run against it if requested
+         */
+        StubServer stub = null;
+        if (params.getStubPort() != null) {
+            try {
+                stub = startStub(params);
+            } catch (IllegalArgumentException e) {
+                LOG.error(e.getMessage());
+                return;
+            } catch (IOException e) {
+                LOG.error("Could not start stub server.", e);
+                return;
+            }
+            params.setServer(stub.getConnectionString());
+        }
+
+        /**
+         * search the highest throughput under the SLO instead of a single replay if requested
+         */
+        if (params.isSearch()) {
+            search(params);
+            return;
+        }
+
+        /**
+         * replay at several concurrency levels instead of a single replay if requested
+         */
+        if (!Strings.isStringEmpty(params.getSweep())) {
+            sweep(params);
+            return;
+        }
+
+        /**
+         * replay through a simulated application cache of several sizes instead of a single replay if requested
+         */
+        if (!Strings.isStringEmpty(params.getCacheSizes())) {
+            simulateCache(params);
+            return;
+        }
+
+        /**
+         * replay the log in phases if requested, from memory as it may be replayed several times
+         */
+        Scenario scenario = null;
+        EventStore events = null;
+        if (!Strings.isStringEmpty(params.getScenarioFile())) {
+            if (params.isSynthetic() || params.isResume() || !Strings.isStringEmpty(params.getCheckpointFile())) {
+                LOG.error("-scenario can not be combined with -synthetic or checkpoints.");
+                return;
+            }
+            try {
+                scenario = Scenario.load(params.getScenarioFile());
+                events = loadEvents(params);
+            } catch (IllegalArgumentException e) {
+                LOG.error(e.getMessage());
+                return;
+            } catch (IOException e) {
+                LOG.error("IO Exception.", e);
+                return;
+            }
+        }
+
+        SQLStatementExecutor benchmark = events != null
+                ? new SQLStatementExecutor(params, events.getDigests()) : new SQLStatementExecutor(params);
+
+        /**
+         * expose the measurements while the replay runs if requested
+         */
+        OpenMetricsServer metrics = null;
+        if (params.getMetricsPort() != null) {
+            try {
+                metrics = new OpenMetricsServer(params.getMetricsPort(), benchmark.getRecorders(),
+                        benchmark.getDigests(), benchmark, params.getTopDigests());
+                metrics.start();
+            } catch (IOException e) {
+                LOG.error("Could not start metrics endpoint.", e);
+                return;
+            }
+        }
+
+        OutputStream out = null;
+        Writer writer = null;
+        FileWriter intervalWriter = null;
+        IntervalReporter reporter = null;
+        TraceRecorder trace = null;
+        WorkloadGenerator generator = null;
+        long offset = 0;
+        if (params.isSynthetic()) {
+            try {
+                generator = createGenerator(params, benchmark);
+            } catch (IllegalArgumentException e) {
+                LOG.error(e.getMessage());
+                return;
+            } catch (IOException e) {
+                LOG.error("IO Exception.", e);
+                return;
+            }
+        } else if (!LogMerger.isSingleFile(params.getInputFiles())
+                && (params.isResume() || !Strings.isStringEmpty(params.getCheckpointFile()))) {
+            LOG.error("Checkpoints are only supported for a single log file.");
+            return;
+        } else if (params.getAmplification() > 1
+                && (params.isResume() || !Strings.isStringEmpty(params.getCheckpointFile()))) {
+            LOG.error("Checkpoints are not supported with -amplify.");
+            return;
+        } else if (params.isResume()) {
+            if (Strings.isStringEmpty(params.getCheckpointFile())) {
+                LOG.error("-resume needs the checkpoint file given with -checkpoint.");
+                return;
+            }
+            try {
+                Checkpoint checkpoint = readCheckpoint(params.getCheckpointFile());
+                if (!params.getInputFile().equals(checkpoint.getLogFile())) {
+                    LOG.warn("The checkpoint was taken reading '" + checkpoint.getLogFile() + "', not '"
+                            + params.getInputFile() + "'.");
+                }
+                benchmark.resume(checkpoint);
+                offset = checkpoint.getOffset();
+                LOG.info("Resuming at offset " + offset + " of '" + params.getInputFile() + "' after "
+                        + checkpoint.getCompleted() + " completed statements.");
+            } catch (IOException e) {
+                LOG.error("Could not read checkpoint.", e);
+                return;
+            }
+        }
         try {
-            parser = new QueryParser(benchmark, params.getInputFile(), params.getConnectionID(), params.getIgnorePrefixes());
+            if (generator == null && scenario == null) {
+                parser = offset > 0
+                        ? new QueryParser(benchmark, params.getInputFile(), params.getConnectionID(),
+                        params.getIgnorePrefixes(), offset)
+                        : LogMerger.open(benchmark, params.getInputFiles(), params.getConnectionID(),
+                        params.getIgnorePrefixes());
+            }
         } catch (IOException e) {
             LOG.error("IO Exception.", e);
             return;
@@ -81,21 +279,82 @@ final class Main {
          */
         try {
 
-            writer = new FileWriter(params.getResultfilename());
+            QueryBenchmark.Format format = QueryBenchmark.Format.get(params.getFormat());
+            out = new BufferedOutputStream(new FileOutputStream(params.getResultfilename()));
+            writer = new OutputStreamWriter(out);
 
-            while (parser.parseLogFile(params.getBatch())) {
+            // report intervals while the benchmark runs if needed
+            if (params.getInterval() > 0) {
+                LOG.info("Writing interval report to " + params.getIntervalFile());
+                intervalWriter = new FileWriter(params.getIntervalFile());
+                reporter = new IntervalReporter(benchmark.getRecorders(), benchmark.getDigests(), intervalWriter,
+                        params.getInterval() * 1000L, params.getIntervalTop(), benchmark.getClientMonitor());
+                reporter.setMetrics(metrics);
+                reporter.start();
+            }
 
-                LOG.info("Read " + parser.size() + " queries from file '" + params.getInputFile() + "'.");
+            // record every statement if needed
+            if (!Strings.isStringEmpty(params.getTraceFile())) {
+                LOG.info("Writing statement trace to " + params.getTraceFile());
+                trace = new TraceRecorder(params.getTraceFile(), params.getTraceLimit());
+                benchmark.setTrace(trace);
+            }
 
-                // process queries
-                try {
-                    benchmark.join();
-                    LOG.info("Benchmark completed");
-                } catch (Exception e) {
-                    LOG.error("Error processing queries.", e);
-                }
+            benchmark.startServerCost();
+
+            if (generator != null) {
+                generator.run(params.getDuration() * 1000L, params.getBatch());
+            } else if (scenario != null) {
+                scenario.run(benchmark, events, params.getParallel(), params.getBatch());
+            } else {
+                // the replay runs while the log is parsed, the batch size only bounds the statements waiting for execution
+                boolean moreQueries;
+                long lines = 0;
+                long nextCheckpoint = System.currentTimeMillis() + params.getCheckpointInterval() * 1000L;
+                do {
+                    moreQueries = parser.parseLogFile(params.getBatch());
+                    lines += parser.size();
+                    benchmark.awaitCapacity(params.getBatch());
+                    if (moreQueries && !Strings.isStringEmpty(params.getCheckpointFile())
+                            && parser.getOffset() >= 0 && System.currentTimeMillis() >= nextCheckpoint) {
+                        writeCheckpoint(benchmark.checkpoint(params.getInputFile(), parser.getOffset()),
+                                params.getCheckpointFile());
+                        nextCheckpoint = System.currentTimeMillis() + params.getCheckpointInterval() * 1000L;
+                    }
+                } while (moreQueries);
+                LOG.info("Read " + lines + (parser instanceof LogMerger ? " events" : " lines") + " from file '"
+                        + params.getInputFile() + "'.");
+            }
+
+            // process the remaining queries
+            if (benchmark.drain(params.getDrainTimeout() * 1000L)) {
+                LOG.info("Benchmark completed");
+            }
+            RunSummary summary = benchmark.getRunSummary();
+            if (trace != null) {
+                trace.close(benchmark.getDigests());
+                LOG.info("Recorded " + trace.getRecorded() + " statements to " + params.getTraceFile());
+                trace = null;
+            }
+            LOG.info(String.format(Locale.ENGLISH,
+                    "Issued %d statements, completed %d (%d failed), %d in flight, %d not started. Makespan %.3f ms, %.3f statements/s.",
+                    summary.getIssued(), summary.getCompleted(), summary.getFailed(), summary.getInFlight(),
+                    summary.getNotStarted(), summary.getMakespanMillis(), summary.getThroughput()));
+            if (scenario != null) {
+                StringWriter phases = new StringWriter();
+                scenario.render(phases);
+                LOG.info("Phases:" + SEPARATOR + phases);
+            }
+            // explain the slowest digests while no statements run
+            benchmark.capturePlans();
+
+            // streaming formats are written point by point, not rendered in memory
+            if (format.isStreaming()) {
+                LOG.info("Writing result to " + params.getResultfilename());
+                benchmark.writeResult(format, out, params.getTop());
+            } else {
                 // get time measurements
-                String result = benchmark.getResult(QueryBenchmark.Format.get(params.getFormat()));
+                String result = benchmark.getResult(format);
 
                 if (params.isVerbose()) {
                     LOG.info(result);
@@ -105,6 +364,46 @@ final class Main {
                 if (!Strings.isStringEmpty(params.getResultfilename())) {
                     LOG.info("Writing result to " + params.getResultfilename());
                     writer.write(result);
+                    if (scenario != null && format == QueryBenchmark.Format.JETM) {
+                        scenario.render(writer);
+                    }
+                    writer.flush();
+                }
+            }
+
+            List<String> bottlenecks = benchmark.getClientMonitor().sinceStart()
+                    .getBottlenecks(Runtime.getRuntime().availableProcessors());
+            if (!bottlenecks.isEmpty()) {
+                LOG.warn("The client was the bottleneck of the run, latencies include client side delays: " + bottlenecks);
+            }
+
+            // export histograms if needed
+            if (!Strings.isStringEmpty(params.getHistogramFile())) {
+                LOG.info("Writing histograms to " + params.getHistogramFile());
+                FileWriter histogramWriter = new FileWriter(params.getHistogramFile());
+                Map<String, String> properties = new HashMap<String, String>();
+                // the makespan excludes parsing ahead of the first statement and the report itself
+                long elapsed = summary.getCompleted() > 0 ? Math.round(summary.getMakespanMillis())
+                        : benchmark.getElapsedMillis();
+                properties.put(HistogramLog.ELAPSED_MILLIS, String.valueOf(elapsed));
+                for (Map.Entry<String, ExecutionPlan> entry : benchmark.getPlans().entrySet()) {
+                    properties.put(HistogramLog.PLAN_HASH_PREFIX + entry.getKey(), entry.getValue().getHash());
+                }
+                try {
+                    HistogramLog.write(benchmark.getHistograms(), properties, histogramWriter);
+                } finally {
+                    histogramWriter.close();
+                }
+            }
+
+            // export execution plans if needed
+            if (!Strings.isStringEmpty(params.getPlanFile())) {
+                LOG.info("Writing execution plans to " + params.getPlanFile());
+                FileWriter planWriter = new FileWriter(params.getPlanFile());
+                try {
+                    PlanLog.write(benchmark.getPlans(), planWriter);
+                } finally {
+                    planWriter.close();
                 }
             }
 
@@ -113,13 +412,228 @@ final class Main {
         } catch (IOException e) {
             LOG.error("IO Exception.", e);
         } finally {
-            parser.close();
+            if (reporter != null) {
+                reporter.quit();
+            }
+            if (metrics != null) {
+                metrics.stop();
+            }
             try {
+                if (parser != null) {
+                    parser.close();
+                }
                 writer.close();
+                if (intervalWriter != null) {
+                    intervalWriter.close();
+                }
+                if (trace != null) {
+                    trace.close(benchmark.getDigests());
+                }
             } catch (Exception e) {
                 /* Intentionally Swallow  Exception */
-                LOG.error("Could not close sql connection.");
+                LOG.error("Could not close files.");
+            }
+        }
+    }
+
+    /**
+     * Run the trials of a capacity search and write the latency curve to the result file
+     *
+     * @param params parameters with the SLO
+     */
+    private static void search(Parameters params) {
+        List<SloRule> slo = new ArrayList<SloRule>();
+        try {
+            for (String rule : params.getSlo()) {
+                slo.add(SloRule.parse(rule));
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.error(e.getMessage());
+            return;
+        }
+        try {
+            CapacitySearch search = new CapacitySearch(params, loadEvents(params), slo, params.getSearchMax());
+            search.run();
+            StringWriter result = new StringWriter();
+            search.render(result);
+            writeTrialResult(params, result.toString());
+        } catch (IOException e) {
+            LOG.error("IO Exception.", e);
+        }
+    }
+
+    /**
+     * Replay at the concurrency levels of the sweep and write the scalability table to the result file
+     *
+     * @param params parameters with the concurrency levels
+     */
+    private static void sweep(Parameters params) {
+        List<Integer> levels = new ArrayList<Integer>();
+        try {
+            for (String level : params.getSweep().split(",")) {
+                levels.add(Integer.parseInt(level.trim()));
+                if (levels.get(levels.size() - 1) < 1) {
+                    throw new NumberFormatException(level);
+                }
             }
+        } catch (NumberFormatException e) {
+            LOG.error("Invalid concurrency level in -sweep " + params.getSweep());
+            return;
+        }
+        try {
+            ConcurrencySweep sweep = new ConcurrencySweep(params, loadEvents(params), levels);
+            sweep.run();
+            StringWriter result = new StringWriter();
+            sweep.render(result);
+            writeTrialResult(params, result.toString());
+        } catch (IOException e) {
+            LOG.error("IO Exception.", e);
+        }
+    }
+
+    /**
+     * Replay through the simulated caches and write the table of their hit ratio, load and latency to the result file
+     *
+     * @param params parameters with the cache sizes and policies
+     */
+    private static void simulateCache(Parameters params) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        List<CachePolicy> policies = new ArrayList<CachePolicy>();
+        try {
+            for (String size : params.getCacheSizes().split(",")) {
+                sizes.add(Integer.parseInt(size.trim()));
+                if (sizes.get(sizes.size() - 1) < 1) {
+                    throw new NumberFormatException(size);
+                }
+            }
+        } catch (NumberFormatException e) {
+            LOG.error("Invalid cache size in -cache " + params.getCacheSizes());
+            return;
+        }
+        try {
+            for (String policy : params.getCachePolicies().split(",")) {
+                policies.add(CachePolicy.parse(policy));
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.error(e.getMessage());
+            return;
+        }
+        try {
+            CacheSweep sweep = new CacheSweep(params, loadEvents(params), sizes, policies);
+            sweep.run();
+            StringWriter result = new StringWriter();
+            sweep.render(result);
+            writeTrialResult(params, result.toString());
+        } catch (IOException e) {
+            LOG.error("IO Exception.", e);
+        }
+    }
+
+    /**
+     * Learn the workload model from the log for a synthetic run
+     */
+    private static WorkloadGenerator createGenerator(Parameters params, SQLStatementExecutor benchmark)
+            throws IOException {
+        if (params.getSessions() < 1 || params.getRate() < 0 || params.getDuration() < 0) {
+            throw new IllegalArgumentException("-synthetic needs at least one session, a rate >= 0 and a duration >= 0.");
+        }
+        long start = System.currentTimeMillis();
+        WorkloadModel model = WorkloadModel.learn(params.getInputFiles(), params.getConnectionID(),
+                params.getIgnorePrefixes());
+        LOG.info("Learned " + model.getDigestCount() + " digests from " + model.getStatements() + " statements in "
+                + model.getSessions() + " sessions of file '" + params.getInputFile() + "' in "
+                + (System.currentTimeMillis() - start) + " ms.");
+        if (model.getStatements() == 0) {
+            throw new IllegalArgumentException("The log holds no statements to learn a workload from.");
+        }
+        LOG.info("Generating " + params.getSessions() + " sessions"
+                + (params.getRate() > 0 ? " at " + params.getRate() + " statements/s" : "")
+                + " for " + params.getDuration() + " s.");
+        return new WorkloadGenerator(model, benchmark, params.getSessions(), params.getRate(), params.getSeed());
+    }
+
+    /**
+     * Parse the whole log once for replaying it in several trials
+     */
+    private static EventStore loadEvents(Parameters params) throws IOException {
+        long start = System.currentTimeMillis();
+        DigestRegistry digests = new DigestRegistry(!params.isExactStatements(), params.getTopDigests());
+        EventStore events = EventStore.load(params.getInputFiles(), params.getConnectionID(),
+                params.getIgnorePrefixes(), digests);
+        StatementArena arena = events.getArena();
+        LOG.info(String.format(Locale.ENGLISH,
+                "Read %d events from file '%s' in %d ms, %d statements, %d distinct in %.1f MB outside the heap.",
+                events.size(), params.getInputFile(), System.currentTimeMillis() - start, arena.getAdded(),
+                arena.getDistinct(), arena.getBytes() / 1048576.0));
+        return events;
+    }
+
+    private static void writeTrialResult(Parameters params, String result) throws IOException {
+        LOG.info(SEPARATOR + result);
+        if (!Strings.isStringEmpty(params.getResultfilename())) {
+            LOG.info("Writing result to " + params.getResultfilename());
+            FileWriter resultWriter = new FileWriter(params.getResultfilename());
+            try {
+                resultWriter.write(result);
+            } finally {
+                resultWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Write a checkpoint to a temporary file first and replace the previous checkpoint with it, so an
+     * interruption while writing does not destroy the previous one. The rename replaces the previous checkpoint
+     * atomically on POSIX file systems; only where it can not replace a file, e.g. on Windows, the previous one
+     * is deleted first.
+     *
+     * @param checkpoint checkpoint to write
+     * @param filename   checkpoint file
+     * @throws IOException if writing fails
+     */
+    private static void writeCheckpoint(Checkpoint checkpoint, String filename) throws IOException {
+        File file = new File(filename);
+        File temp = new File(filename + ".tmp");
+        Writer checkpointWriter = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+        try {
+            checkpoint.write(checkpointWriter);
+        } finally {
+            checkpointWriter.close();
+        }
+        if (!temp.renameTo(file) && (file.exists() && !file.delete() || !temp.renameTo(file))) {
+            throw new IOException("Could not replace checkpoint " + filename + " by " + temp);
+        }
+        LOG.info("Checkpoint at offset " + checkpoint.getOffset() + " after " + checkpoint.getCompleted()
+                + " completed statements written to " + filename);
+    }
+
+    private static Checkpoint readCheckpoint(String filename) throws IOException {
+        Reader checkpointReader = new InputStreamReader(new FileInputStream(filename), "UTF-8");
+        try {
+            return Checkpoint.read(checkpointReader);
+        } finally {
+            checkpointReader.close();
+        }
+    }
+
+    /**
+     * Start the in-process stub server
+     *
+     * @param params parameters with stub port, result size and latency rules
+     * @return the started server
+     * @throws IOException if the port can not be bound
+     */
+    private static StubServer startStub(Parameters params) throws IOException {
+        StubServer stub = new StubServer(params.getStubPort());
+        stub.setRows(params.getStubRows());
+        stub.setColumns(params.getStubColumns());
+        // counting by digest costs a normalization per statement, only done if the summary is read
+        String serverCost = params.getServerCost() == null ? "" : params.getServerCost().toLowerCase(Locale.ENGLISH);
+        stub.setDigestSummary(serverCost.equals("digest") || serverCost.equals("both"));
+        for (String rule : params.getStubLatency()) {
+            stub.addLatencyRule(LatencyRule.parse(rule));
         }
+        stub.start();
+        return stub;
     }
 }
@@ -16,7 +16,29 @@
 
 package de.qaware.mysqlbenchmark;
 
+import de.qaware.mysqlbenchmark.jetm.ClientLoadTextRenderer;
 import de.qaware.mysqlbenchmark.jetm.CsvRenderer;
+import de.qaware.mysqlbenchmark.jetm.DigestEstimateTextRenderer;
+import de.qaware.mysqlbenchmark.jetm.HistogramAggregate;
+import de.qaware.mysqlbenchmark.jetm.PercentileTextRenderer;
+import de.qaware.mysqlbenchmark.jetm.PhaseTextRenderer;
+import de.qaware.mysqlbenchmark.jetm.PlanTextRenderer;
+import de.qaware.mysqlbenchmark.jetm.RunSummaryTextRenderer;
+import de.qaware.mysqlbenchmark.jetm.ServerCostTextRenderer;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.metrics.ClientLoad;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.ExecutionPlan;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.metrics.PhaseTimes;
+import de.qaware.mysqlbenchmark.metrics.RecorderPool;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import de.qaware.mysqlbenchmark.metrics.ServerCost;
+import de.qaware.mysqlbenchmark.report.BinaryStatsRenderer;
+import de.qaware.mysqlbenchmark.report.CsvStatsRenderer;
+import de.qaware.mysqlbenchmark.report.JsonLinesRenderer;
+import de.qaware.mysqlbenchmark.report.StatsRenderer;
+import de.qaware.mysqlbenchmark.report.TopStatsRenderer;
 import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
 import etm.core.configuration.BasicEtmConfigurator;
 import etm.core.configuration.EtmManager;
@@ -26,9 +48,17 @@ import etm.core.renderer.MeasurementRenderer;
 import etm.core.renderer.SimpleTextRenderer;
 
 import de.qaware.mysqlbenchmark.logfile.Query;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Executes a list of SQL statements. Results can be retrieved in the formats: JETM-formatting and CSV.
@@ -37,6 +67,9 @@ import java.util.List;
  */
 public class QueryBenchmark {
     protected EtmMonitor etmMonitor;
+    protected final DigestRegistry digests;
+    protected final RecorderPool recorders;
+    private final long startNanos = System.nanoTime();
     private SQLStatementExecutor executor;
     private EtmPoint mpoint;
 
@@ -45,6 +78,28 @@ public class QueryBenchmark {
      *
      */
     public QueryBenchmark() {
+        this(true);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param normalizeDigests if true statements which only differ in their literals share one measurement point
+     */
+    public QueryBenchmark(boolean normalizeDigests) {
+        this(new DigestRegistry(normalizeDigests));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param digests registry of the digest ids of the statements, e.g. of an
+     *                {@link de.qaware.mysqlbenchmark.logfile.EventStore}
+     */
+    public QueryBenchmark(DigestRegistry digests) {
+        this.digests = digests;
+        recorders = new RecorderPool(digests.getTimeCounters());
+        digests.setTimeSource(recorders);
         // start jetm for time measurements
         BasicEtmConfigurator.configure();
         etmMonitor = EtmManager.getEtmMonitor();
@@ -54,32 +109,242 @@ public class QueryBenchmark {
     }
 
     /**
-     * Export format for measurements. Currently supported formats are CSV and JETM-Style.
+     * Export format for measurements. Currently supported formats are CSV and JETM-Style, which are rendered
+     * in memory, and the streaming formats CSV without padding, JSON Lines and binary.
      */
     public enum Format {
-        JETM("jetm"),
-        CSV("csv");
+        JETM("jetm", false),
+        CSV("csv", false),
+        CSV_STREAM("csvstream", true),
+        JSONL("jsonl", true),
+        BINARY("binary", true);
+
+        private final String name;
+        private final boolean streaming;
 
-        private Format(String format) {
+        private Format(String format, boolean streaming) {
+            this.name = format;
+            this.streaming = streaming;
         }
 
         /**
-         * Get the format from string. If the string is "csv" (ignoring case), the Format.CSV is returned, else JETM.
+         * Check if the format is written point by point with {@link QueryBenchmark#writeResult}
+         *
+         * @return true for streaming formats
+         */
+        public boolean isStreaming() {
+            return streaming;
+        }
+
+        /**
+         * Get the format from string, ignoring case, e.g. "csv" for Format.CSV. Unknown formats are JETM.
          *
          * @param format string describing the format
          * @return a format for exporting the measurements
          */
         public static Format get(String format) {
-            if (format != null && "csv".equals(format.toLowerCase())) {
-                return CSV;
-            } else {
-                return JETM;
+            if (format != null) {
+                for (Format f : values()) {
+                    if (f.name.equals(format.toLowerCase())) {
+                        return f;
+                    }
+                }
+            }
+            return JETM;
+        }
+    }
+
+    /**
+     * The digest ids of the executed statements
+     *
+     * @return digest registry
+     */
+    public DigestRegistry getDigests() {
+        return digests;
+    }
+
+    /**
+     * Time since the benchmark was created
+     *
+     * @return elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * The recorders of the connection threads, e.g. for reporting while the benchmark runs
+     *
+     * @return recorder pool
+     */
+    public RecorderPool getRecorders() {
+        return recorders;
+    }
+
+    /**
+     * Latency histograms of all measurement points, merged from the recorders of all connection threads
+     *
+     * @return histograms by measurement point name
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return histograms(recorders.merge());
+    }
+
+    private Map<String, LatencyHistogram> histograms(List<DigestStats> merged) {
+        Map<String, LatencyHistogram> histograms = new HashMap<String, LatencyHistogram>();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) != null) {
+                histograms.put("Query: " + digests.getText(id), merged.get(id).getLatency());
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Latency phases of all measurement points, merged from the recorders of all connection threads
+     *
+     * @return phase times by measurement point name, empty if not collected
+     */
+    public Map<String, PhaseTimes> getPhaseTimes() {
+        return phaseTimes(recorders.merge());
+    }
+
+    private Map<String, PhaseTimes> phaseTimes(List<DigestStats> merged) {
+        Map<String, PhaseTimes> phases = new HashMap<String, PhaseTimes>();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) != null && merged.get(id).getPhases() != null) {
+                phases.put("Query: " + digests.getText(id), merged.get(id).getPhases());
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * Server side cost by digest id read from the server itself, e.g. from performance_schema
+     *
+     * @return cost by digest id, empty if not collected
+     */
+    protected Map<Integer, ServerCost> collectServerCosts() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Server side cost of all measurement points: read from the server by digest if collected, complemented
+     * by the counters collected per statement by the connection threads
+     *
+     * @return cost by measurement point name, empty if not collected
+     */
+    public Map<String, ServerCost> getServerCosts() {
+        return serverCosts(recorders.merge());
+    }
+
+    private Map<String, ServerCost> serverCosts(List<DigestStats> merged) {
+        Map<String, ServerCost> costs = new HashMap<String, ServerCost>();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) != null && merged.get(id).getServerCost() != null) {
+                costs.put("Query: " + digests.getText(id), merged.get(id).getServerCost());
+            }
+        }
+        for (Map.Entry<Integer, ServerCost> entry : collectServerCosts().entrySet()) {
+            String point = "Query: " + digests.getText(entry.getKey());
+            entry.getValue().complement(costs.get(point));
+            costs.put(point, entry.getValue());
+        }
+        return costs;
+    }
+
+    /**
+     * Execution plans captured from the server
+     *
+     * @return plans by digest id, empty if not captured
+     */
+    protected Map<Integer, ExecutionPlan> collectPlans() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Execution plans of the measurement points captured so far
+     *
+     * @return plans by measurement point name, empty if not captured
+     */
+    public Map<String, ExecutionPlan> getPlans() {
+        Map<String, ExecutionPlan> plans = new HashMap<String, ExecutionPlan>();
+        for (Map.Entry<Integer, ExecutionPlan> entry : collectPlans().entrySet()) {
+            plans.put("Query: " + digests.getText(entry.getKey()), entry.getValue());
+        }
+        return plans;
+    }
+
+    /**
+     * Load of the benchmark client since the start
+     *
+     * @return load or null if the client is not instrumented
+     */
+    protected ClientLoad collectClientLoad() {
+        return null;
+    }
+
+    /**
+     * End to end accounting of the replay
+     *
+     * @param merged stats by digest id, merged from the recorders
+     * @return summary or null if not tracked
+     */
+    protected RunSummary collectRunSummary(List<DigestStats> merged) {
+        return null;
+    }
+
+    /**
+     * Write results in a streaming format. The digests are merged and written one at a time, so memory does
+     * not grow with the number of measurement points.
+     *
+     * @param format streaming format
+     * @param out    stream to write to, flushed but not closed
+     * @param top    if greater than 0 only this many points with the largest total time are written
+     * @throws IOException if writing fails
+     */
+    public void writeResult(Format format, OutputStream out, int top) throws IOException {
+        Writer writer = new OutputStreamWriter(out, "UTF-8");
+        StatsRenderer renderer;
+        switch (format) {
+            case CSV_STREAM:
+                renderer = new CsvStatsRenderer(writer);
+                break;
+            case JSONL:
+                renderer = new JsonLinesRenderer(writer);
+                break;
+            case BINARY:
+                renderer = new BinaryStatsRenderer(out);
+                break;
+            default:
+                throw new IllegalArgumentException(format + " is no streaming format");
+        }
+        if (top > 0) {
+            renderer = new TopStatsRenderer(renderer, top);
+        }
+
+        Map<Integer, ServerCost> serverCosts = collectServerCosts();
+        Map<Integer, ExecutionPlan> plans = collectPlans();
+        renderer.begin();
+        int size = digests.size();
+        for (int id = 0; id < size; id++) {
+            DigestStats stats = recorders.merge(id);
+            if (stats != null) {
+                if (serverCosts.containsKey(id)) {
+                    serverCosts.get(id).complement(stats.getServerCost());
+                    stats.setServerCost(serverCosts.get(id));
+                }
+                if (plans.containsKey(id)) {
+                    stats.setPlanHash(plans.get(id).getHash());
+                }
+                renderer.render("Query: " + digests.getText(id), stats);
             }
         }
+        renderer.end();
     }
 
     /**
-     * Get results for printing to console or writing to files
+     * Get results for printing to console or writing to files. Both formats include the latency percentiles.
      *
      * @return result
      */
@@ -88,20 +353,51 @@ public class QueryBenchmark {
 
         mpoint.collect();
         etmMonitor.stop();
+        // merged once, so all tables show the same statements and the recorders are locked only once
+        List<DigestStats> merged = recorders.merge();
+        Map<String, LatencyHistogram> histograms = histograms(merged);
         MeasurementRenderer renderer = null;
         switch (format) {
             case JETM:
                 renderer = new SimpleTextRenderer(sw);
                 break;
             case CSV:
-                renderer = new CsvRenderer(sw);
+                renderer = new CsvRenderer(sw, histograms);
                 break;
         }
         if (etmMonitor == null) {
             return "No monitor initialized.";
         }
 
-        etmMonitor.render(renderer);
+        // the statements are recorded outside of the monitor, only the overall measurement is in there
+        final Map<String, Object> points = new TreeMap<String, Object>();
+        etmMonitor.render(new MeasurementRenderer() {
+            public void render(Map monitorPoints) {
+                points.putAll(monitorPoints);
+            }
+        });
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            points.put(entry.getKey(), new HistogramAggregate(entry.getKey(), entry.getValue()));
+        }
+
+        renderer.render(points);
+        if (format == Format.JETM) {
+            new PercentileTextRenderer(sw, histograms).render(points);
+            new PhaseTextRenderer(sw, phaseTimes(merged)).render(points);
+            new ServerCostTextRenderer(sw, serverCosts(merged)).render(points);
+            new PlanTextRenderer(sw, getPlans()).render(points);
+            RunSummary summary = collectRunSummary(merged);
+            if (summary != null) {
+                new RunSummaryTextRenderer(sw, summary).render(points);
+            }
+            ClientLoad clientLoad = collectClientLoad();
+            if (clientLoad != null) {
+                new ClientLoadTextRenderer(sw, clientLoad).render(points);
+            }
+            if (digests.isLimited()) {
+                new DigestEstimateTextRenderer(sw, digests, recorders.mergeTimes(), digests.getLimit()).render(points);
+            }
+        }
         return sw.getBuffer().toString();
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+import java.util.Locale;
+
+/**
+ * Eviction policies of the simulated cache
+ */
+public enum CachePolicy {
+    /**
+     * Evict the least recently used entry
+     */
+    LRU,
+    /**
+     * Admit a new entry only if it was accessed more often than the entry it would evict, see {@link TinyLfuCache}
+     */
+    TINYLFU;
+
+    /**
+     * Create an empty cache of this policy
+     *
+     * @param capacity maximum number of entries
+     * @return cache
+     */
+    public ResultCache create(int capacity) {
+        return this == LRU ? new LruCache(capacity) : new TinyLfuCache(capacity);
+    }
+
+    /**
+     * Parse a policy name, case insensitive
+     *
+     * @param name lru or tinylfu
+     * @return policy
+     * @throws IllegalArgumentException if the policy is unknown
+     */
+    public static CachePolicy parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown cache policy '" + name + "', expected lru or tinylfu.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
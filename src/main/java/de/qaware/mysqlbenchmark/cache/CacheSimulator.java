@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+import de.qaware.mysqlbenchmark.func.SQLType;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.logfile.SessionEventHandler;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simulates an application cache in front of the database: sits between the log and the
+ * {@link de.qaware.mysqlbenchmark.sql.SQLStatementExecutor} and only hands the reads on which miss the cache.
+ * Reads are cached by database and statement text with whitespace collapsed, i.e. the same statement with
+ * other literals is another entry. A write invalidates all cached reads of the tables it references, see
+ * {@link TableReferences}, or the whole cache if no table is found. Transactions are not taken into account,
+ * a write invalidates when it is issued. All other session events are handed on unchanged.
+ * <p/>
+ * Without a cache every statement is handed on, which counts the reads of a baseline replay.
+ * Not thread safe, the events are handed to the simulator by a single thread.
+ */
+public class CacheSimulator implements SessionEventHandler {
+
+    private final SessionEventHandler executor;
+    private final ResultCache cache;
+    private final DigestRegistry digests;
+    /**
+     * Database selected by each session
+     */
+    private final Map<String, String> databases = new HashMap<String, String>();
+    /**
+     * Tables of the cached reads by key, and the other way round
+     */
+    private final Map<String, String[]> tablesByKey = new HashMap<String, String[]>();
+    private final Map<String, Set<String>> keysByTable = new HashMap<String, Set<String>>();
+    /**
+     * Tables by digest id, null if not parsed yet
+     */
+    private final List<TableReferences> referencesByDigest = new ArrayList<TableReferences>();
+
+    private long reads;
+    private long cacheable;
+    private long hits;
+    /**
+     * Hits by digest id
+     */
+    private long[] hitsByDigest = new long[16];
+    private long writes;
+    private long invalidated;
+
+    /**
+     * Constructor
+     *
+     * @param executor handler executing the statements which miss
+     * @param cache    empty cache, null to hand on every statement
+     */
+    public CacheSimulator(SessionEventHandler executor, ResultCache cache) {
+        this.executor = executor;
+        this.cache = cache;
+        this.digests = executor.getDigests();
+    }
+
+    public void connect(String connectionID, String user) {
+        executor.connect(connectionID, user);
+    }
+
+    public void initDb(String connectionID, String database) {
+        databases.put(connectionID, database);
+        executor.initDb(connectionID, database);
+    }
+
+    public void transaction(String connectionID, boolean open) {
+        executor.transaction(connectionID, open);
+    }
+
+    public void query(String connectionID, Query query) {
+        if (query.getType() == SQLType.read) {
+            reads++;
+            if (!read(connectionID, query)) {
+                executor.query(connectionID, query);
+            }
+        } else {
+            writes++;
+            executor.query(connectionID, query);
+            if (cache != null) {
+                write(connectionID, query);
+            }
+        }
+    }
+
+    public void quit(String connectionID) {
+        databases.remove(connectionID);
+        executor.quit(connectionID);
+    }
+
+    public DigestRegistry getDigests() {
+        return digests;
+    }
+
+    /**
+     * Look up a read and cache it on a miss
+     *
+     * @return true on a hit
+     */
+    private boolean read(String connectionID, Query query) {
+        TableReferences references = references(query);
+        if (!references.isCacheable()) {
+            return false;
+        }
+        cacheable++;
+        if (cache == null) {
+            return false;
+        }
+        String database = databases.get(connectionID);
+        String key = key(database, query.getSql());
+        if (cache.get(key)) {
+            hits++;
+            int digestId = query.getDigestId();
+            if (digestId >= hitsByDigest.length) {
+                hitsByDigest = Arrays.copyOf(hitsByDigest, Math.max(digestId + 1, hitsByDigest.length * 2));
+            }
+            hitsByDigest[digestId]++;
+            return true;
+        }
+        String evicted = cache.put(key);
+        if (key.equals(evicted)) {
+            return false;
+        }
+        String[] tables = references.qualify(database);
+        tablesByKey.put(key, tables);
+        for (String table : tables) {
+            Set<String> keys = keysByTable.get(table);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                keysByTable.put(table, keys);
+            }
+            keys.add(key);
+        }
+        if (evicted != null) {
+            unindex(evicted);
+        }
+        return false;
+    }
+
+    /**
+     * Invalidate the cached reads of the tables a write references
+     */
+    private void write(String connectionID, Query query) {
+        String[] tables = references(query).qualify(databases.get(connectionID));
+        if (tables.length == 0) {
+            invalidated += cache.size();
+            cache.clear();
+            tablesByKey.clear();
+            keysByTable.clear();
+            return;
+        }
+        for (String table : tables) {
+            Set<String> keys = keysByTable.get(table);
+            if (keys == null) {
+                continue;
+            }
+            for (String key : new ArrayList<String>(keys)) {
+                if (cache.remove(key)) {
+                    invalidated++;
+                }
+                unindex(key);
+            }
+        }
+    }
+
+    private void unindex(String key) {
+        String[] tables = tablesByKey.remove(key);
+        if (tables == null) {
+            return;
+        }
+        for (String table : tables) {
+            Set<String> keys = keysByTable.get(table);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByTable.remove(table);
+            }
+        }
+    }
+
+    private TableReferences references(Query query) {
+        int digestId = query.getDigestId();
+        if (digests.isOther(digestId)) {
+            return TableReferences.parse(StatementDigest.normalize(query.getSql()));
+        }
+        while (referencesByDigest.size() <= digestId) {
+            referencesByDigest.add(null);
+        }
+        TableReferences references = referencesByDigest.get(digestId);
+        if (references == null) {
+            String text = digests.getText(digestId);
+            references = TableReferences.parse(digests.isNormalized() ? text : StatementDigest.normalize(text));
+            referencesByDigest.set(digestId, references);
+        }
+        return references;
+    }
+
+    /**
+     * Cache key of a read: the database and the statement with whitespace outside of quotes collapsed
+     */
+    static String key(String database, String sql) {
+        StringBuilder sb = new StringBuilder(sql.length() + 16);
+        if (database != null) {
+            sb.append(database);
+        }
+        sb.append('\u0000');
+        char quote = 0;
+        boolean blank = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                blank = true;
+                continue;
+            }
+            if (blank && sb.charAt(sb.length() - 1) != '\u0000') {
+                sb.append(' ');
+            }
+            blank = false;
+            if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else if (c == '\\' && quote != 0 && i + 1 < sql.length()) {
+                sb.append(c);
+                c = sql.charAt(++i);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads in the log
+     *
+     * @return read count
+     */
+    public long getReads() {
+        return reads;
+    }
+
+    /**
+     * Reads which may be cached, see {@link TableReferences}
+     *
+     * @return read count
+     */
+    public long getCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Reads answered by the cache
+     *
+     * @return hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Reads of a digest answered by the cache
+     *
+     * @param digestId digest id
+     * @return hit count
+     */
+    public long getHits(int digestId) {
+        return digestId < hitsByDigest.length ? hitsByDigest[digestId] : 0;
+    }
+
+    /**
+     * Number of digest ids {@link #getHits(int)} may count hits for
+     *
+     * @return upper bound of the digest ids with hits
+     */
+    public int getDigestCount() {
+        return hitsByDigest.length;
+    }
+
+    /**
+     * Writes in the log, all handed on
+     *
+     * @return write count
+     */
+    public long getWrites() {
+        return writes;
+    }
+
+    /**
+     * Cached reads removed by writes
+     *
+     * @return entry count
+     */
+    public long getInvalidated() {
+        return invalidated;
+    }
+
+    /**
+     * Ratio of the reads answered by the cache
+     *
+     * @return hit ratio between 0 and 1
+     */
+    public double getHitRatio() {
+        return reads == 0 ? 0 : hits / (double) reads;
+    }
+}
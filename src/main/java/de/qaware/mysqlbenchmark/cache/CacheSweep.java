@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+import de.qaware.mysqlbenchmark.console.Parameters;
+import de.qaware.mysqlbenchmark.jetm.TextTable;
+import de.qaware.mysqlbenchmark.logfile.EventStore;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays the same workload through a {@link CacheSimulator} for each configured cache size and policy, and
+ * once without a cache as the baseline, to estimate how much load an application cache would take off the
+ * database. The latency of a trial is the one the application would see: the statements executed by the
+ * database plus the cache hits, counted as 0 ms. The database time saved by a cache is estimated from the
+ * baseline: every hit saves the mean latency its digest had without cache. Comparing the measured database time
+ * of single trials would mostly show the noise between trials, as a hit is about as often a fast read as a slow
+ * one.
+ */
+public class CacheSweep {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheSweep.class);
+
+    private final Parameters params;
+    private final EventStore events;
+    private final List<Integer> sizes;
+    private final List<CachePolicy> policies;
+    private final List<Result> results = new ArrayList<Result>();
+
+    /**
+     * Constructor
+     *
+     * @param params   parameters of the replay
+     * @param events   events of the log to replay in every trial
+     * @param sizes    cache sizes in entries
+     * @param policies eviction policies, each one is tried with every size
+     */
+    public CacheSweep(Parameters params, EventStore events, List<Integer> sizes, List<CachePolicy> policies) {
+        this.params = params;
+        this.events = events;
+        this.sizes = new ArrayList<Integer>(sizes);
+        Collections.sort(this.sizes);
+        this.policies = policies;
+    }
+
+    /**
+     * Replay without a cache and with every size and policy. The replay without cache runs twice, the first one
+     * warms up the client and the caches of the server and is not reported, as the later trials profit from it.
+     */
+    public void run() {
+        LOG.info("Warm-up replay without cache");
+        replay(0, null);
+        LOG.info("Trial without cache");
+        results.add(replay(0, null));
+        for (int size : sizes) {
+            for (CachePolicy policy : policies) {
+                LOG.info("Trial with {} cache of {} entries", policy, size);
+                Result result = replay(size, policy);
+                results.add(result);
+                LOG.info(String.format(Locale.ENGLISH, "%s cache of %d entries: hit ratio %.1f%%, %d of %d statements"
+                        + " executed", policy, size, result.simulator.getHitRatio() * 100,
+                        result.summary.getIssued(), results.get(0).summary.getIssued()));
+            }
+        }
+    }
+
+    private Result replay(int size, CachePolicy policy) {
+        SQLStatementExecutor executor = new SQLStatementExecutor(params, events.getDigests());
+        CacheSimulator simulator = new CacheSimulator(executor, policy == null ? null : policy.create(size));
+        int next = 0;
+        do {
+            next = events.replay(simulator, next, params.getBatch());
+            executor.awaitCapacity(params.getBatch());
+        } while (next < events.size());
+        executor.drain(params.getDrainTimeout() * 1000L);
+        executor.close();
+        return new Result(size, policy, simulator, executor.getRunSummary(), executor.getRecorders().merge());
+    }
+
+    /**
+     * Write the hit ratio, database load and latency of every trial
+     *
+     * @param writer writer to write to
+     * @throws IOException if writing fails
+     */
+    public void render(Writer writer) throws IOException {
+        String[] header = {"Cache", "Policy", "Hit ratio", "Cacheable", "Invalidated", "DB statements",
+                "Load reduction", "DB time reduction", "Statements/s", "Mean (ms)", "p50 (ms)", "p99 (ms)",
+                "Max (ms)", "DB p99 (ms)", "Drained"};
+        Result baseline = results.get(0);
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Result result : results) {
+            CacheSimulator simulator = result.simulator;
+            LatencyHistogram db = result.database.getLatency();
+            LatencyHistogram application = db.copy();
+            for (long i = 0; i < simulator.getHits(); i++) {
+                application.record(0);
+            }
+            rows.add(new String[]{result.policy == null ? "none" : String.valueOf(result.size),
+                    result.policy == null ? "-" : result.policy.toString(),
+                    percent(simulator.getHitRatio()),
+                    percent(simulator.getReads() == 0 ? 0 : simulator.getCacheable() / (double) simulator.getReads()),
+                    String.valueOf(simulator.getInvalidated()),
+                    String.valueOf(result.summary.getIssued()),
+                    percent(reduction(result.summary.getIssued(), baseline.summary.getIssued())),
+                    percent(savedTime(result, baseline) / Math.max(1, baseline.database.getLatency().getSum())),
+                    format(result.summary.throughput(result.summary.getCompleted() + simulator.getHits())),
+                    format(application.getMean() / 1000.0),
+                    format(application.getValueAtPercentile(50) / 1000.0),
+                    format(application.getValueAtPercentile(99) / 1000.0),
+                    format(application.getMax() / 1000.0),
+                    format(db.getValueAtPercentile(99) / 1000.0),
+                    result.summary.isDrained() ? "yes" : "no"});
+        }
+        TextTable.write(writer, header, rows);
+        writer.flush();
+    }
+
+    /**
+     * Database time saved by the hits of a trial, each hit at the mean latency of its digest in the baseline
+     *
+     * @return microseconds
+     */
+    private static double savedTime(Result result, Result baseline) {
+        double fallback = baseline.database.getLatency().getMean();
+        double saved = 0;
+        for (int id = 0; id < result.simulator.getDigestCount(); id++) {
+            long hits = result.simulator.getHits(id);
+            if (hits == 0) {
+                continue;
+            }
+            DigestStats stats = id < baseline.byDigest.size() ? baseline.byDigest.get(id) : null;
+            boolean measured = stats != null && stats.getLatency().getTotalCount() > 0;
+            saved += hits * (measured ? stats.getLatency().getMean() : fallback);
+        }
+        return saved;
+    }
+
+    private static double reduction(long value, long baseline) {
+        return baseline == 0 ? 0 : 1 - value / (double) baseline;
+    }
+
+    private static String percent(double ratio) {
+        return String.format(Locale.ENGLISH, "%.1f%%", ratio * 100);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+
+    /**
+     * Outcome of one trial
+     */
+    private static final class Result {
+        private final int size;
+        private final CachePolicy policy;
+        private final CacheSimulator simulator;
+        private final RunSummary summary;
+        private final DigestStats database = new DigestStats();
+        /**
+         * Stats of the executed statements by digest id
+         */
+        private final List<DigestStats> byDigest;
+
+        private Result(int size, CachePolicy policy, CacheSimulator simulator, RunSummary summary,
+                       List<DigestStats> byDigest) {
+            this.size = size;
+            this.policy = policy;
+            this.simulator = simulator;
+            this.summary = summary;
+            this.byDigest = byDigest;
+            for (DigestStats stats : summary.getByType().values()) {
+                database.add(stats);
+            }
+        }
+    }
+}
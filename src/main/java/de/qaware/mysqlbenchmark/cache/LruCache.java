@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache which evicts the least recently used entry
+ */
+public class LruCache implements ResultCache {
+
+    private final int capacity;
+    private final LinkedHashMap<String, Boolean> entries;
+
+    /**
+     * Constructor
+     *
+     * @param capacity maximum number of entries, at least 1
+     */
+    public LruCache(int capacity) {
+        this.capacity = capacity;
+        // access order, the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, Boolean>(16, 0.75f, true);
+    }
+
+    public boolean get(String key) {
+        return entries.get(key) != null;
+    }
+
+    public String put(String key) {
+        String evicted = null;
+        if (entries.size() >= capacity) {
+            evicted = removeEldest();
+        }
+        entries.put(key, Boolean.TRUE);
+        return evicted;
+    }
+
+    public boolean remove(String key) {
+        return entries.remove(key) != null;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The entry {@link #put(String)} would evict next, without accessing it
+     *
+     * @return key or null if empty
+     */
+    String eldest() {
+        return entries.isEmpty() ? null : entries.keySet().iterator().next();
+    }
+
+    /**
+     * Evict the least recently used entry
+     *
+     * @return its key or null if empty
+     */
+    String removeEldest() {
+        Iterator<String> it = entries.keySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        String eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+}
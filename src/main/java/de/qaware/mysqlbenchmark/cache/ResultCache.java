@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+/**
+ * Cache of read results as an application would keep them. Only the keys are held, the simulation needs
+ * to know which reads would hit, not their results. A cache holds at most its capacity of entries and
+ * decides itself which entry to evict for a new one.
+ * Not thread safe, see {@link CacheSimulator}.
+ */
+public interface ResultCache {
+
+    /**
+     * Look up a key, which counts as an access of the entry
+     *
+     * @param key cache key
+     * @return true on a hit
+     */
+    boolean get(String key);
+
+    /**
+     * Add the key of a read which missed
+     *
+     * @param key cache key, not in the cache
+     * @return the key evicted for it, the key itself if it was not admitted, or null
+     */
+    String put(String key);
+
+    /**
+     * Remove an entry, e.g. because a write invalidated it
+     *
+     * @param key cache key
+     * @return true if the key was cached
+     */
+    boolean remove(String key);
+
+    /**
+     * Remove all entries
+     */
+    void clear();
+
+    /**
+     * Number of cached entries
+     *
+     * @return entry count
+     */
+    int size();
+}
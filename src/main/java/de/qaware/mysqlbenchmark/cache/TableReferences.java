@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The tables a statement reads or writes, found by simple rules on its digest text: the table lists after
+ * FROM, JOIN, UPDATE and INTO. Subqueries are covered as their FROM is found as well, views and tables
+ * only touched by triggers or foreign keys are not. A read is only cacheable if it references a table and
+ * calls no function whose result changes without a write, like NOW() or RAND(), and takes no locks.
+ */
+final class TableReferences {
+
+    private static final Pattern TABLE_LIST = Pattern.compile("(?i)\\b(?:from|join|update|into)\\s+");
+    private static final Pattern NAME = Pattern.compile("(?:`[^`]+`|[\\w$]+)(?:\\s*\\.\\s*(?:`[^`]+`|[\\w$]+))?");
+    private static final Pattern ALIAS = Pattern.compile("(?i)\\s+(?:as\\s+)?([\\w$]+|`[^`]+`)");
+    private static final Pattern NEXT = Pattern.compile("\\s*,\\s*");
+    private static final Pattern VOLATILE = Pattern.compile("(?i)\\b(?:(?:now|rand|uuid|uuid_short|sysdate|curdate"
+            + "|curtime|unix_timestamp|connection_id|current_user|last_insert_id|found_rows|row_count|sleep)\\s*\\("
+            + "|(?:current_date|current_time|current_timestamp|localtime|localtimestamp|utc_date|utc_time"
+            + "|utc_timestamp|for\\s+update|for\\s+share|lock\\s+in\\s+share\\s+mode)\\b)|@");
+    /**
+     * Words which follow a table name, not aliases
+     */
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("where", "join", "inner", "left",
+            "right", "outer", "cross", "natural", "straight_join", "on", "using", "set", "values", "value", "select",
+            "group", "order", "limit", "having", "union", "for", "lock", "partition", "use", "force", "ignore",
+            "window", "procedure", "into", "as"));
+
+    private final String[] tables;
+    private final boolean cacheable;
+
+    private TableReferences(String[] tables, boolean cacheable) {
+        this.tables = tables;
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Find the tables of a statement
+     *
+     * @param digest digest text of the statement, literals replaced so they are not taken for tables
+     * @return references
+     */
+    static TableReferences parse(String digest) {
+        List<String> tables = new ArrayList<String>();
+        Matcher list = TABLE_LIST.matcher(digest);
+        Matcher name = NAME.matcher(digest);
+        Matcher alias = ALIAS.matcher(digest);
+        Matcher next = NEXT.matcher(digest);
+        int from = 0;
+        while (list.find(from)) {
+            int i = list.end();
+            while (name.region(i, digest.length()).lookingAt()) {
+                String table = name.group().replace("`", "").replaceAll("\\s", "").toLowerCase(Locale.ENGLISH);
+                if (!"dual".equals(table) && !tables.contains(table)) {
+                    tables.add(table);
+                }
+                i = name.end();
+                if (alias.region(i, digest.length()).lookingAt()
+                        && !KEYWORDS.contains(alias.group(1).toLowerCase(Locale.ENGLISH))) {
+                    i = alias.end();
+                }
+                if (!next.region(i, digest.length()).lookingAt()) {
+                    break;
+                }
+                i = next.end();
+            }
+            from = Math.max(i, list.end());
+        }
+        return new TableReferences(tables.toArray(new String[tables.size()]),
+                !tables.isEmpty() && !VOLATILE.matcher(digest).find());
+    }
+
+    /**
+     * Check if the result of the read may be cached
+     *
+     * @return true if cacheable
+     */
+    boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * The referenced tables, qualified by the database of the session if the statement does not name one
+     *
+     * @param database database of the session, null if none was selected
+     * @return table names in lower case
+     */
+    String[] qualify(String database) {
+        String[] qualified = new String[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            qualified[i] = tables[i].indexOf('.') >= 0 || database == null
+                    ? tables[i] : database.toLowerCase(Locale.ENGLISH) + "." + tables[i];
+        }
+        return qualified;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+/**
+ * Cache with the W-TinyLFU policy: new entries go to a small LRU window. The entry the window evicts is
+ * only admitted to the main LRU cache if the keys were accessed more often than the entry the main cache
+ * would evict for it, estimated by a {@link FrequencySketch} which also remembers keys no longer cached.
+ * So a scan over many keys read once does not flush the frequently read ones, unlike with plain LRU.
+ * <p/>
+ * The main cache is a single LRU segment, not the segmented one of the original policy.
+ */
+public class TinyLfuCache implements ResultCache {
+
+    /**
+     * Share of the capacity for the window
+     */
+    private static final double WINDOW = 0.01;
+
+    private final LruCache window;
+    private final LruCache main;
+    private final FrequencySketch sketch;
+
+    /**
+     * Constructor
+     *
+     * @param capacity maximum number of entries, at least 1
+     */
+    public TinyLfuCache(int capacity) {
+        int windowCapacity = Math.max(1, (int) (capacity * WINDOW));
+        window = new LruCache(windowCapacity);
+        main = new LruCache(capacity - windowCapacity);
+        sketch = new FrequencySketch(capacity);
+    }
+
+    public boolean get(String key) {
+        sketch.increment(key);
+        return window.get(key) || main.get(key);
+    }
+
+    public String put(String key) {
+        String candidate = window.put(key);
+        if (candidate == null) {
+            return null;
+        }
+        if (main.size() < main.getCapacity()) {
+            main.put(candidate);
+            return null;
+        }
+        String victim = main.eldest();
+        if (victim == null || sketch.frequency(candidate) <= sketch.frequency(victim)) {
+            return candidate;
+        }
+        main.removeEldest();
+        main.put(candidate);
+        return victim;
+    }
+
+    public boolean remove(String key) {
+        return window.remove(key) || main.remove(key);
+    }
+
+    public void clear() {
+        window.clear();
+        main.clear();
+    }
+
+    public int size() {
+        return window.size() + main.size();
+    }
+}
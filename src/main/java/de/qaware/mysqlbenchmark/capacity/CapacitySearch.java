@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import com.google.common.base.Joiner;
+import de.qaware.mysqlbenchmark.console.Parameters;
+import de.qaware.mysqlbenchmark.jetm.TextTable;
+import de.qaware.mysqlbenchmark.logfile.EventStore;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Searches the highest throughput the server sustains under a latency SLO by replaying the log at increasing
+ * concurrency. The concurrency doubles from 1 until a trial violates the SLO, the throughput no longer grows
+ * by at least {@link #MIN_GAIN} or the maximum concurrency is reached. Between the last passing and the first
+ * violating concurrency a binary search narrows down the limit to an eighth of the concurrency.
+ * The saturation point is the passing trial with the lowest concurrency which reaches the highest passing
+ * throughput within {@link #MIN_GAIN}, more sessions only add latency there.
+ * <p/>
+ * The concurrency only caps the sessions. If doubling it does not raise the concurrency achieved by at least
+ * {@link #MIN_GAIN}, see {@link Trial#getMeanConcurrency()}, the log offers no more concurrent sessions and the
+ * search stops without a saturation point of the server.
+ */
+public class CapacitySearch {
+
+    /**
+     * Minimum relative throughput gain of doubling the concurrency, below the server is saturated
+     */
+    static final double MIN_GAIN = 0.05;
+
+    private static final Logger LOG = LoggerFactory.getLogger(CapacitySearch.class);
+    private static final String SEPARATOR = System.getProperty("line.separator");
+
+    private final Parameters params;
+    private final EventStore events;
+    private final List<SloRule> slo;
+    private final int maxConcurrency;
+    private final Map<Integer, Trial> trials = new TreeMap<Integer, Trial>();
+    private boolean limitedByLog;
+
+    /**
+     * Constructor
+     *
+     * @param params         parameters of the replay
+     * @param events         events of the log to replay in every trial
+     * @param slo            rules a trial has to meet
+     * @param maxConcurrency highest concurrency to try
+     */
+    public CapacitySearch(Parameters params, EventStore events, List<SloRule> slo, int maxConcurrency) {
+        this.params = params;
+        this.events = events;
+        this.slo = slo;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Run the trials
+     *
+     * @return the saturation point, null if no concurrency met the SLO
+     */
+    public Trial run() {
+        Trial lastPassed = null;
+        int failed = 0;
+        int concurrency = 1;
+        while (true) {
+            Trial trial = trial(concurrency);
+            if (!trial.isPassed()) {
+                failed = concurrency;
+                break;
+            }
+            if (lastPassed != null && trial.getMeanConcurrency() < lastPassed.getMeanConcurrency() * (1 + MIN_GAIN)) {
+                LOG.warn(String.format(Locale.ENGLISH, "Only %.1f sessions were active on average with %d sessions,"
+                        + " the log offers no more concurrency.", trial.getMeanConcurrency(), concurrency));
+                limitedByLog = true;
+                break;
+            }
+            if (lastPassed != null && trial.getThroughput() < lastPassed.getThroughput() * (1 + MIN_GAIN)) {
+                LOG.info("Throughput does not grow beyond {} sessions.", lastPassed.getConcurrency());
+                lastPassed = trial;
+                break;
+            }
+            lastPassed = trial;
+            if (concurrency >= maxConcurrency) {
+                break;
+            }
+            concurrency = Math.min(concurrency * 2, maxConcurrency);
+        }
+
+        if (lastPassed != null && failed > 0) {
+            int low = lastPassed.getConcurrency();
+            int high = failed;
+            while (high - low > Math.max(1, low / 8)) {
+                int middle = (low + high) >>> 1;
+                if (trial(middle).isPassed()) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+        }
+        return getSaturation();
+    }
+
+    private Trial trial(int concurrency) {
+        LOG.info("Trial with {} sessions", concurrency);
+        Trial trial = new Trial(concurrency, Replay.run(params, events, concurrency), slo);
+        trials.put(concurrency, trial);
+        LOG.info(String.format(Locale.ENGLISH, "%d sessions: %.1f statements/s, p99 %.3f ms, %s", concurrency,
+                trial.getThroughput(), trial.getStats(null).getLatency().getValueAtPercentile(99) / 1000.0,
+                trial.isPassed() ? "SLO met" : "SLO violated: " + trial.getViolations()));
+        return trial;
+    }
+
+    /**
+     * The passing trial with the lowest concurrency which reaches the highest passing throughput within
+     * {@link #MIN_GAIN}
+     *
+     * @return saturation point, null if no trial met the SLO
+     */
+    public Trial getSaturation() {
+        double best = 0;
+        for (Trial trial : trials.values()) {
+            if (trial.isPassed()) {
+                best = Math.max(best, trial.getThroughput());
+            }
+        }
+        for (Trial trial : trials.values()) {
+            if (trial.isPassed() && trial.getThroughput() >= best * (1 - MIN_GAIN)) {
+                return trial;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the search stopped because the log offers no more concurrent sessions, so the saturation point
+     * is not one of the server
+     *
+     * @return true if limited by the log
+     */
+    public boolean isLimitedByLog() {
+        return limitedByLog;
+    }
+
+    /**
+     * All trials run so far
+     *
+     * @return trials sorted by concurrency
+     */
+    public List<Trial> getTrials() {
+        return new ArrayList<Trial>(trials.values());
+    }
+
+    /**
+     * Write the SLO, the latency curve over the concurrency and the saturation point
+     *
+     * @param writer writer to write to
+     * @throws IOException if writing fails
+     */
+    public void render(Writer writer) throws IOException {
+        writer.write("SLO: " + (slo.isEmpty() ? "none" : slo.toString()) + SEPARATOR);
+        List<String> types = new ArrayList<String>();
+        for (Trial trial : trials.values()) {
+            for (String type : trial.getSummary().getByType().keySet()) {
+                if (!types.contains(type)) {
+                    types.add(type);
+                }
+            }
+        }
+        Collections.sort(types);
+
+        List<String> header = new ArrayList<String>();
+        header.add("Sessions");
+        header.add("Active");
+        header.add("Throughput/s");
+        header.add("p50 (ms)");
+        header.add("p99 (ms)");
+        for (String type : types) {
+            header.add(type + " p99 (ms)");
+        }
+        header.add("Error rate");
+        header.add("SLO");
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Trial trial : trials.values()) {
+            List<String> row = new ArrayList<String>();
+            LatencyHistogram all = trial.getStats(null).getLatency();
+            row.add(String.valueOf(trial.getConcurrency()));
+            row.add(format(trial.getMeanConcurrency()));
+            row.add(format(trial.getThroughput()));
+            row.add(format(all.getValueAtPercentile(50) / 1000.0));
+            row.add(format(all.getValueAtPercentile(99) / 1000.0));
+            for (String type : types) {
+                DigestStats stats = trial.getStats(type);
+                row.add(stats == null ? "-" : format(stats.getLatency().getValueAtPercentile(99) / 1000.0));
+            }
+            long count = all.getTotalCount();
+            row.add(count == 0 ? "-" : format(trial.getStats(null).getErrors() * 100.0 / count) + "%");
+            row.add(trial.isPassed() ? "met" : "violated: " + Joiner.on(", ").join(trial.getViolations()));
+            rows.add(row.toArray(new String[row.size()]));
+        }
+        TextTable.write(writer, header.toArray(new String[header.size()]), rows);
+
+        Trial saturation = getSaturation();
+        if (saturation == null) {
+            writer.write("No concurrency met the SLO." + SEPARATOR);
+        } else if (limitedByLog) {
+            writer.write(String.format(Locale.ENGLISH, "Not saturated: the log offers no more than %.1f active"
+                    + " sessions, best %.1f statements/s with %d sessions%s", saturation.getMeanConcurrency(),
+                    saturation.getThroughput(), saturation.getConcurrency(), SEPARATOR));
+        } else {
+            writer.write(String.format(Locale.ENGLISH, "Saturation point: %d sessions (%.1f active), %.1f statements/s%s",
+                    saturation.getConcurrency(), saturation.getMeanConcurrency(), saturation.getThroughput(), SEPARATOR));
+        }
+        writer.flush();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import de.qaware.mysqlbenchmark.console.Parameters;
+import de.qaware.mysqlbenchmark.jetm.TextTable;
+import de.qaware.mysqlbenchmark.logfile.EventStore;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays the same workload at a list of concurrency levels and fits the throughput to the
+ * {@link UslModel Universal Scalability Law}, to estimate the contention and coherency of the server and the
+ * concurrency at which its throughput peaks. A level only caps the concurrent sessions, so the model is fitted
+ * to the concurrency achieved in each trial, see {@link Trial#getMeanConcurrency()}.
+ */
+public class ConcurrencySweep {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencySweep.class);
+    private static final String SEPARATOR = System.getProperty("line.separator");
+    /**
+     * Share of the sessions of a level active on average, below a warning is logged
+     */
+    private static final double LOW_CONCURRENCY = 0.8;
+
+    private final Parameters params;
+    private final EventStore events;
+    private final List<Integer> levels;
+    private final List<Trial> trials = new ArrayList<Trial>();
+    private UslModel model;
+
+    /**
+     * Constructor
+     *
+     * @param params parameters of the replay
+     * @param events events of the log to replay at every level
+     * @param levels concurrency levels
+     */
+    public ConcurrencySweep(Parameters params, EventStore events, List<Integer> levels) {
+        this.params = params;
+        this.events = events;
+        this.levels = new ArrayList<Integer>(levels);
+        Collections.sort(this.levels);
+    }
+
+    /**
+     * Replay at all levels and fit the model
+     *
+     * @return fitted model, null with less than two levels
+     */
+    public UslModel run() {
+        List<Double> concurrency = new ArrayList<Double>();
+        List<Double> throughput = new ArrayList<Double>();
+        for (int level : levels) {
+            LOG.info("Trial with {} sessions", level);
+            Trial trial = new Trial(level, Replay.run(params, events, level), Collections.<SloRule>emptyList());
+            trials.add(trial);
+            LOG.info(String.format(Locale.ENGLISH, "%d sessions: %.1f statements/s, p99 %.3f ms, %.1f active", level,
+                    trial.getThroughput(), trial.getStats(null).getLatency().getValueAtPercentile(99) / 1000.0,
+                    trial.getMeanConcurrency()));
+            if (trial.getMeanConcurrency() < level * LOW_CONCURRENCY) {
+                LOG.warn(String.format(Locale.ENGLISH, "Only %.1f of %d sessions were active on average, the log"
+                        + " offers no more concurrency; the fit uses the achieved concurrency.",
+                        trial.getMeanConcurrency(), level));
+            }
+            concurrency.add(trial.getMeanConcurrency());
+            throughput.add(trial.getThroughput());
+        }
+        model = UslModel.fit(concurrency, throughput);
+        return model;
+    }
+
+    /**
+     * Write the throughput and latency table with the throughput predicted by the model, and the model
+     *
+     * @param writer writer to write to
+     * @throws IOException if writing fails
+     */
+    public void render(Writer writer) throws IOException {
+        String[] header = {"Sessions", "Active", "Throughput/s", "USL/s", "Mean (ms)", "p50 (ms)", "p99 (ms)", "Max (ms)",
+                "Error rate", "Drained"};
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Trial trial : trials) {
+            LatencyHistogram h = trial.getStats(null).getLatency();
+            long count = h.getTotalCount();
+            rows.add(new String[]{String.valueOf(trial.getConcurrency()),
+                    format(trial.getMeanConcurrency()),
+                    format(trial.getThroughput()),
+                    model == null ? "-" : format(model.predict(trial.getMeanConcurrency())),
+                    format(h.getMean() / 1000.0),
+                    format(h.getValueAtPercentile(50) / 1000.0),
+                    format(h.getValueAtPercentile(99) / 1000.0),
+                    format(h.getMax() / 1000.0),
+                    count == 0 ? "-" : format(trial.getStats(null).getErrors() * 100.0 / count) + "%",
+                    trial.getSummary().isDrained() ? "yes" : "no"});
+        }
+        TextTable.write(writer, header, rows);
+
+        if (model == null) {
+            writer.write("At least two concurrency levels are needed to fit the Universal Scalability Law." + SEPARATOR);
+        } else {
+            writer.write(String.format(Locale.ENGLISH,
+                    "Universal Scalability Law: lambda %.3f/s, contention sigma %.5f, coherency kappa %.6f, R^2 %.4f%s",
+                    model.getLambda(), model.getSigma(), model.getKappa(), model.getRSquared(), SEPARATOR));
+            if (model.getKappa() == 0 && model.getSigma() == 0) {
+                writer.write("No peak: no contention or coherency cost detected in the measured range" + SEPARATOR);
+            } else if (model.getKappa() == 0) {
+                writer.write(String.format(Locale.ENGLISH, "No peak: no coherency cost detected in the measured range,"
+                        + " the contention limits the throughput to %.1f statements/s%s", model.getPeakThroughput(),
+                        SEPARATOR));
+            } else {
+                writer.write(String.format(Locale.ENGLISH, "Predicted peak: %.1f active sessions, %.1f statements/s%s",
+                        model.getPeakConcurrency(), model.getPeakThroughput(), SEPARATOR));
+            }
+        }
+        writer.flush();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import de.qaware.mysqlbenchmark.console.Parameters;
+import de.qaware.mysqlbenchmark.logfile.EventStore;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
+
+/**
+ * Replays the events of a log once at a given concurrency like a normal run, but only returns the accounting
+ * of the replay instead of writing reports
+ */
+final class Replay {
+
+    private Replay() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Replay the events
+     *
+     * @param params      parameters of the run, the concurrency is replaced
+     * @param events      events of the log
+     * @param concurrency maximum number of concurrently replayed sessions
+     * @return accounting of the replay
+     */
+    static RunSummary run(Parameters params, EventStore events, int concurrency) {
+        params.setParallel(concurrency);
+        SQLStatementExecutor executor = new SQLStatementExecutor(params, events.getDigests());
+        long deadline = System.currentTimeMillis() + params.getTrialDuration() * 1000L;
+        int next = 0;
+        do {
+            next = events.replay(executor, next, params.getBatch());
+            executor.awaitCapacity(params.getBatch());
+        } while (next < events.size() && (params.getTrialDuration() <= 0 || System.currentTimeMillis() < deadline));
+        executor.drain(params.getDrainTimeout() * 1000L);
+        executor.close();
+        return executor.getRunSummary();
+    }
+}
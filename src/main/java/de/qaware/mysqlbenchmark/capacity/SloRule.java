@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import de.qaware.mysqlbenchmark.compare.PointSummary;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One condition of a latency SLO, e.g. {@code select:p99<20} for a p99 latency of reads below 20 ms or
+ * {@code errors<0.1%} for an error rate below 0.1% over all statements. Latency metrics are "mean", "max" or
+ * percentiles like "p99.9" in milliseconds, "errors" is the share of failed statements in percent. The
+ * statement type is the first word of the statement, see
+ * {@link de.qaware.mysqlbenchmark.logfile.StatementDigest#type(String)}, without a type the rule applies to
+ * all statements.
+ */
+public class SloRule {
+
+    /**
+     * Metric of the error rate
+     */
+    public static final String ERRORS = "errors";
+
+    private static final Pattern RULE = Pattern.compile("(?:(\\w+):)?([\\w.]+)\\s*<\\s*([\\d.]+)\\s*(%|ms)?");
+
+    private final String type;
+    private final String metric;
+    private final double limit;
+
+    /**
+     * Constructor
+     *
+     * @param type   statement type, null for all statements
+     * @param metric latency metric or {@link #ERRORS}
+     * @param limit  limit in milliseconds or, for errors, percent
+     */
+    public SloRule(String type, String metric, double limit) {
+        this.type = type;
+        this.metric = metric;
+        this.limit = limit;
+    }
+
+    /**
+     * Parse a rule of the form {@code [<type>:]<metric><<limit>}
+     *
+     * @param rule rule description
+     * @return the rule
+     * @throws IllegalArgumentException if the rule can not be parsed
+     */
+    public static SloRule parse(String rule) {
+        Matcher matcher = RULE.matcher(rule.trim().toLowerCase(Locale.ENGLISH));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("SLO rule '" + rule + "' must look like [<type>:]<metric><<limit>,"
+                    + " e.g. select:p99<20 or errors<0.1%");
+        }
+        String metric = matcher.group(2);
+        if (!ERRORS.equals(metric) && !PointSummary.MEAN.equals(metric) && !PointSummary.MAX.equals(metric)
+                && PointSummary.percentile(metric) == null) {
+            throw new IllegalArgumentException("Unknown metric '" + metric + "' in SLO rule '" + rule + "'");
+        }
+        try {
+            return new SloRule(matcher.group(1), metric, Double.parseDouble(matcher.group(3)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit in SLO rule '" + rule + "'", e);
+        }
+    }
+
+    /**
+     * Value of the metric in a trial
+     *
+     * @param trial trial to evaluate
+     * @return milliseconds or percent, NaN if the trial has no statements of the type
+     */
+    public double valueOf(Trial trial) {
+        DigestStats stats = trial.getStats(type);
+        if (stats == null || stats.getLatency().getTotalCount() == 0) {
+            return Double.NaN;
+        }
+        if (ERRORS.equals(metric)) {
+            return stats.getErrors() * 100.0 / stats.getLatency().getTotalCount();
+        }
+        return new PointSummary(stats.getLatency()).get(metric) / 1000;
+    }
+
+    /**
+     * Check the rule against a trial. Rules for a statement type the trial did not execute are met.
+     *
+     * @param trial trial to evaluate
+     * @return true if met
+     */
+    public boolean isMet(Trial trial) {
+        double value = valueOf(trial);
+        return Double.isNaN(value) || value < limit;
+    }
+
+    @Override
+    public String toString() {
+        return (type == null ? "" : type + ":") + metric + "<" + new BigDecimal(String.valueOf(limit))
+                .stripTrailingZeros().toPlainString() + (ERRORS.equals(metric) ? "%" : "ms");
+    }
+}
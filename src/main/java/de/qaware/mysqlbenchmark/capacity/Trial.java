@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One replay of the workload at a fixed concurrency, evaluated against an SLO
+ */
+public class Trial {
+
+    private final int concurrency;
+    private final RunSummary summary;
+    private final DigestStats all = new DigestStats();
+    private final List<String> violations = new ArrayList<String>();
+
+    /**
+     * Constructor
+     *
+     * @param concurrency maximum number of concurrently replayed sessions
+     * @param summary     accounting of the replay
+     * @param slo         rules the trial has to meet
+     */
+    public Trial(int concurrency, RunSummary summary, List<SloRule> slo) {
+        this.concurrency = concurrency;
+        this.summary = summary;
+        for (DigestStats stats : summary.getByType().values()) {
+            all.add(stats);
+        }
+        if (!summary.isDrained()) {
+            violations.add("not drained");
+        }
+        for (SloRule rule : slo) {
+            if (!rule.isMet(this)) {
+                violations.add(rule.toString());
+            }
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public RunSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Completed statements per second over the makespan
+     *
+     * @return throughput
+     */
+    public double getThroughput() {
+        return summary.getThroughput();
+    }
+
+    /**
+     * Number of statements executing at the same time on average over the makespan, by Little's law the summed
+     * latency divided by the makespan. The concurrency of a trial only caps the sessions, the log may offer
+     * fewer concurrent sessions or serialize them by the order of its connects and quits.
+     *
+     * @return mean concurrency achieved
+     */
+    public double getMeanConcurrency() {
+        double makespanMicros = summary.getMakespanMillis() * 1000;
+        return makespanMicros > 0 ? all.getLatency().getSum() / makespanMicros : 0;
+    }
+
+    /**
+     * Measurements of the statements of one type
+     *
+     * @param type statement type, null for all statements
+     * @return stats or null if no statement of the type completed
+     */
+    public DigestStats getStats(String type) {
+        if (type == null) {
+            return all;
+        }
+        Map<String, DigestStats> byType = summary.getByType();
+        return byType.get(type);
+    }
+
+    /**
+     * Check if the trial met all rules of the SLO and the replay finished within the drain timeout
+     *
+     * @return true if sustainable
+     */
+    public boolean isPassed() {
+        return violations.isEmpty();
+    }
+
+    /**
+     * The rules the trial violated
+     *
+     * @return rule descriptions, empty if passed
+     */
+    public List<String> getViolations() {
+        return violations;
+    }
+}
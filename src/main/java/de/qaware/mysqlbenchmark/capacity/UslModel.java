@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import java.util.List;
+
+/**
+ * Universal Scalability Law: the throughput at concurrency N is
+ * {@code X(N) = lambda * N / (1 + sigma * (N - 1) + kappa * N * (N - 1))} with the throughput of a single
+ * session lambda, the contention coefficient sigma (serialized work, e.g. locks) and the coherency
+ * coefficient kappa (crosstalk between sessions, e.g. cache line or buffer pool invalidation). With kappa
+ * above 0 the throughput peaks at {@code sqrt((1 - sigma) / kappa)} sessions and falls beyond.
+ * <p/>
+ * The three coefficients are fitted together by nonlinear least squares on the throughput of all levels, with
+ * sigma and kappa constrained to be at least 0 as negative coefficients are not physical. For given sigma and
+ * kappa the best lambda has a closed form, so only sigma and kappa are searched: on a logarithmic grid first,
+ * then refined by a pattern search. A coefficient of 0 means the measurements show no such cost.
+ */
+public class UslModel {
+
+    /**
+     * Grid of the coarse search: 0 and logarithmic steps from the smallest coefficient to the largest
+     */
+    private static final int GRID_STEPS = 40;
+    private static final double MIN_SIGMA = 1e-6;
+    private static final double MIN_KAPPA = 1e-9;
+    private static final double MAX_COEFFICIENT = 10;
+    /**
+     * The pattern search stops when its steps are below this share of the coefficients
+     */
+    private static final double PRECISION = 1e-9;
+    private static final int MAX_ITERATIONS = 10000;
+
+    private final double lambda;
+    private final double sigma;
+    private final double kappa;
+    private final double rSquared;
+
+    /**
+     * Constructor
+     *
+     * @param lambda   throughput of a single session
+     * @param sigma    contention coefficient
+     * @param kappa    coherency coefficient
+     * @param rSquared coefficient of determination of the fit
+     */
+    public UslModel(double lambda, double sigma, double kappa, double rSquared) {
+        this.lambda = lambda;
+        this.sigma = sigma;
+        this.kappa = kappa;
+        this.rSquared = rSquared;
+    }
+
+    /**
+     * Fit the model to measurements
+     *
+     * @param concurrency concurrency achieved at each level
+     * @param throughput  measured throughput at each level
+     * @return fitted model or null with less than two levels with throughput
+     */
+    public static UslModel fit(List<Double> concurrency, List<Double> throughput) {
+        int levels = 0;
+        for (int i = 0; i < concurrency.size(); i++) {
+            if (concurrency.get(i) > 0 && throughput.get(i) > 0) {
+                levels++;
+            }
+        }
+        if (levels < 2) {
+            return null;
+        }
+        double[] n = new double[levels];
+        double[] x = new double[levels];
+        for (int i = 0, j = 0; i < concurrency.size(); i++) {
+            if (concurrency.get(i) > 0 && throughput.get(i) > 0) {
+                n[j] = concurrency.get(i);
+                x[j++] = throughput.get(i);
+            }
+        }
+
+        // coarse search on a logarithmic grid, 0 included, for the start of the refinement
+        double sigma = 0;
+        double kappa = 0;
+        double best = residual(n, x, sigma, kappa);
+        for (int s = 0; s <= GRID_STEPS; s++) {
+            for (int k = 0; k <= GRID_STEPS; k++) {
+                double sg = grid(MIN_SIGMA, s);
+                double kp = grid(MIN_KAPPA, k);
+                double r = residual(n, x, sg, kp);
+                if (r < best) {
+                    best = r;
+                    sigma = sg;
+                    kappa = kp;
+                }
+            }
+        }
+
+        // pattern search: move along a coefficient while it improves, halve the steps otherwise
+        double sigmaStep = Math.max(sigma, MIN_SIGMA);
+        double kappaStep = Math.max(kappa, MIN_KAPPA);
+        for (int i = 0; i < MAX_ITERATIONS && (sigmaStep > PRECISION * Math.max(sigma, MIN_SIGMA)
+                || kappaStep > PRECISION * Math.max(kappa, MIN_KAPPA)); i++) {
+            boolean moved = false;
+            for (double[] move : new double[][]{{sigmaStep, 0}, {-sigmaStep, 0}, {0, kappaStep}, {0, -kappaStep}}) {
+                double sg = Math.max(0, sigma + move[0]);
+                double kp = Math.max(0, kappa + move[1]);
+                double r = residual(n, x, sg, kp);
+                if (r < best) {
+                    best = r;
+                    sigma = sg;
+                    kappa = kp;
+                    moved = true;
+                }
+            }
+            if (!moved) {
+                sigmaStep /= 2;
+                kappaStep /= 2;
+            }
+        }
+
+        double mean = 0;
+        for (double value : x) {
+            mean += value;
+        }
+        mean /= levels;
+        double total = 0;
+        for (double value : x) {
+            total += (value - mean) * (value - mean);
+        }
+        return new UslModel(lambda(n, x, sigma, kappa), sigma, kappa, total > 0 ? 1 - best / total : 1);
+    }
+
+    /**
+     * Value of the coarse grid: 0 for step 0, then powers of ten from min to {@link #MAX_COEFFICIENT}
+     */
+    private static double grid(double min, int step) {
+        return step == 0 ? 0 : min * Math.pow(MAX_COEFFICIENT / min, (step - 1.0) / (GRID_STEPS - 1));
+    }
+
+    /**
+     * The throughput is proportional to lambda for given sigma and kappa, so the best lambda has a closed form
+     */
+    private static double lambda(double[] n, double[] x, double sigma, double kappa) {
+        double xf = 0;
+        double ff = 0;
+        for (int i = 0; i < n.length; i++) {
+            double f = n[i] / (1 + sigma * (n[i] - 1) + kappa * n[i] * (n[i] - 1));
+            xf += x[i] * f;
+            ff += f * f;
+        }
+        return xf / ff;
+    }
+
+    /**
+     * Sum of the squared differences of the measured throughput and the model with the best lambda
+     */
+    private static double residual(double[] n, double[] x, double sigma, double kappa) {
+        double lambda = lambda(n, x, sigma, kappa);
+        double sum = 0;
+        for (int i = 0; i < n.length; i++) {
+            double d = x[i] - lambda * n[i] / (1 + sigma * (n[i] - 1) + kappa * n[i] * (n[i] - 1));
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /**
+     * Throughput predicted by the model
+     *
+     * @param concurrency number of sessions
+     * @return throughput
+     */
+    public double predict(double concurrency) {
+        return lambda * concurrency / (1 + sigma * (concurrency - 1) + kappa * concurrency * (concurrency - 1));
+    }
+
+    /**
+     * Concurrency with the highest predicted throughput
+     *
+     * @return concurrency, infinite if the throughput grows without bound towards {@code lambda / sigma}
+     */
+    public double getPeakConcurrency() {
+        return kappa > 0 ? Math.sqrt(Math.max(0, 1 - sigma) / kappa) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Highest predicted throughput
+     *
+     * @return throughput at the peak concurrency, or its limit if there is no peak
+     */
+    public double getPeakThroughput() {
+        if (kappa > 0) {
+            return predict(getPeakConcurrency());
+        }
+        return sigma > 0 ? lambda / sigma : Double.POSITIVE_INFINITY;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getSigma() {
+        return sigma;
+    }
+
+    public double getKappa() {
+        return kappa;
+    }
+
+    /**
+     * Coefficient of determination of the fit, 1 for a perfect fit
+     *
+     * @return r squared
+     */
+    public double getRSquared() {
+        return rSquared;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.compare;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import de.qaware.mysqlbenchmark.console.CompareParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * The compare command: compares result files with the first one as baseline and signals regressions by
+ * its exit code, so it can be used as performance gate.
+ */
+public final class Compare {
+
+    /**
+     * Exit code if no run regressed
+     */
+    public static final int OK = 0;
+
+    /**
+     * Exit code if a run regressed
+     */
+    public static final int REGRESSION = 1;
+
+    /**
+     * Exit code for invalid parameters or unreadable files
+     */
+    public static final int ERROR = 2;
+
+    private static final Logger LOG = LoggerFactory.getLogger(Compare.class);
+
+    private Compare() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Run the compare command
+     *
+     * @param args arguments after "compare", see {@link CompareParameters}
+     * @return exit code
+     */
+    public static int run(String[] args) {
+        CompareParameters params = new CompareParameters();
+        JCommander commander = new JCommander(params);
+        commander.setProgramName("MySQL Benchmark Tool compare");
+        try {
+            commander.parse(args);
+        } catch (ParameterException e) {
+            LOG.error(e.getMessage());
+            commander.usage();
+            return ERROR;
+        }
+        if (params.isHelp() || params.getFiles().size() < 2) {
+            commander.usage();
+            return params.isHelp() ? OK : ERROR;
+        }
+        if (!PointSummary.MEAN.equals(params.getMetric()) && !PointSummary.MAX.equals(params.getMetric())
+                && PointSummary.percentile(params.getMetric()) == null) {
+            LOG.error("Unknown metric " + params.getMetric());
+            return ERROR;
+        }
+
+        try {
+            RunResult baseline = load(params.getFiles().get(0), params.isDigest());
+            Writer writer = new OutputStreamWriter(System.out);
+            boolean regression = false;
+            for (String file : params.getFiles().subList(1, params.getFiles().size())) {
+                RunComparison comparison = new RunComparison(baseline, load(file, params.isDigest()),
+                        params.getMetric(), params.getThreshold(), params.getThroughputThreshold(), params.getAlpha(),
+                        params.getMinCount(), params.isFailOnPlanChange());
+                comparison.render(writer, params.isAll());
+                regression |= comparison.isRegression();
+            }
+            return regression ? REGRESSION : OK;
+        } catch (IOException e) {
+            LOG.error("Could not read results.", e);
+            return ERROR;
+        }
+    }
+
+    private static RunResult load(String file, boolean digest) throws IOException {
+        RunResult run = ResultLoader.load(file);
+        return digest ? run.byDigest() : run;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.compare;
+
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Measurements of one point in a result file. Results with histograms provide every metric, results in
+ * CSV only the count, the mean, the maximum and the reported percentiles. All times are in microseconds.
+ */
+public class PointSummary {
+
+    /**
+     * Name of the mean metric, the others are "max" and the percentile labels like "p99"
+     */
+    public static final String MEAN = "mean";
+
+    /**
+     * Name of the max metric
+     */
+    public static final String MAX = "max";
+
+    private final long count;
+    private final LatencyHistogram histogram;
+    private final Map<String, Double> metrics;
+
+    /**
+     * Constructor for a point with a histogram
+     *
+     * @param histogram latencies of the point
+     */
+    public PointSummary(LatencyHistogram histogram) {
+        this.count = histogram.getTotalCount();
+        this.histogram = histogram;
+        this.metrics = null;
+    }
+
+    /**
+     * Constructor for a point known by its summary only
+     *
+     * @param count   number of executions
+     * @param metrics metric values by name
+     */
+    public PointSummary(long count, Map<String, Double> metrics) {
+        this.count = count;
+        this.histogram = null;
+        this.metrics = new HashMap<String, Double>(metrics);
+    }
+
+    /**
+     * Number of executions
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Histogram of the point
+     *
+     * @return histogram or null if only the summary is known
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Value of a metric
+     *
+     * @param metric {@link #MEAN}, {@link #MAX} or a percentile label like "p99"
+     * @return value in microseconds, NaN if unknown
+     */
+    public double get(String metric) {
+        if (histogram == null) {
+            Double value = metrics.get(metric);
+            return value == null ? Double.NaN : value;
+        }
+        if (MEAN.equals(metric)) {
+            return histogram.getMean();
+        }
+        if (MAX.equals(metric)) {
+            return histogram.getMax();
+        }
+        Double percentile = percentile(metric);
+        return percentile == null ? Double.NaN : histogram.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Combine two points, e.g. statements which share a digest
+     *
+     * @param other other point
+     * @return combined point, only count and mean are known if one of the points has no histogram
+     */
+    public PointSummary combine(PointSummary other) {
+        if (histogram != null && other.histogram != null) {
+            LatencyHistogram combined = histogram.copy();
+            combined.add(other.histogram);
+            return new PointSummary(combined);
+        }
+        Map<String, Double> combined = new HashMap<String, Double>();
+        long total = count + other.count;
+        combined.put(MEAN, total == 0 ? 0 : (get(MEAN) * count + other.get(MEAN) * other.count) / total);
+        combined.put(MAX, Math.max(get(MAX), other.get(MAX)));
+        return new PointSummary(total, combined);
+    }
+
+    /**
+     * Parse a percentile label
+     *
+     * @param metric label like "p99.9"
+     * @return percentile or null if the metric is no percentile
+     */
+    public static Double percentile(String metric) {
+        if (metric == null || !metric.startsWith("p")) {
+            return null;
+        }
+        try {
+            double percentile = Double.parseDouble(metric.substring(1));
+            return percentile >= 0 && percentile <= 100 ? percentile : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
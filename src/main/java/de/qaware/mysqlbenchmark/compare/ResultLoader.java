@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.compare;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.HistogramLog;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.report.BinaryStatsRenderer;
+import de.qaware.mysqlbenchmark.report.StatsRenderer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Loads result files of all formats the benchmark writes, except the JETM text tables: histogram logs
+ * (-histograms), the binary and JSON Lines formats, which all contain histograms, and the CSV formats
+ * (csv, csvstream), which contain summaries only. The format is detected from the content. Execution plan
+ * hashes are read from histogram logs, JSON Lines and csvstream results.
+ * <p/>
+ * Files with several reports, as earlier versions wrote one per batch, contain cumulative measurements,
+ * so later reports of a point replace earlier ones.
+ */
+public final class ResultLoader {
+
+    /**
+     * Name of the JETM point which measures the whole run
+     */
+    private static final String RUN_POINT = "Measurement";
+    private static final String HISTOGRAM_LOG_HEADER = "#mysql-benchmark histogram log";
+    private static final byte[] BINARY_MAGIC = {'M', 'B', 'S', 'T'};
+
+    private ResultLoader() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Load a result file
+     *
+     * @param file file name
+     * @return measurement points of the file
+     * @throws IOException if the file can not be read or has an unknown format
+     */
+    public static RunResult load(String file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            in.mark(BINARY_MAGIC.length);
+            byte[] magic = new byte[BINARY_MAGIC.length];
+            int read = in.read(magic);
+            in.reset();
+            RunResult run = new RunResult(file);
+            if (read == magic.length && Arrays.equals(magic, BINARY_MAGIC)) {
+                loadBinary(in, run);
+            } else {
+                loadText(new InputStreamReader(in, "UTF-8"), run);
+            }
+            return run;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void loadBinary(InputStream in, final RunResult run) throws IOException {
+        BinaryStatsRenderer.read(in, new StatsRenderer() {
+            public void begin() {
+                // nothing to prepare
+            }
+
+            public void render(String point, DigestStats stats) {
+                run.put(point, new PointSummary(stats.getLatency()));
+            }
+
+            public void end() {
+                // nothing to finish
+            }
+        });
+    }
+
+    private static void loadText(Reader reader, RunResult run) throws IOException {
+        BufferedReader br = new BufferedReader(reader);
+        br.mark(1 << 20);
+        String first = br.readLine();
+        br.reset();
+        if (first == null) {
+            throw new IOException("Empty result file");
+        }
+        if (first.startsWith(HISTOGRAM_LOG_HEADER)) {
+            Map<String, String> properties = new HashMap<String, String>();
+            for (Map.Entry<String, LatencyHistogram> entry : HistogramLog.read(br, properties).entrySet()) {
+                run.put(entry.getKey(), new PointSummary(entry.getValue()));
+            }
+            if (properties.containsKey(HistogramLog.ELAPSED_MILLIS)) {
+                run.setElapsedMillis(Long.parseLong(properties.get(HistogramLog.ELAPSED_MILLIS)));
+            }
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                if (property.getKey().startsWith(HistogramLog.PLAN_HASH_PREFIX)) {
+                    run.getPlanHashes().put(property.getKey().substring(HistogramLog.PLAN_HASH_PREFIX.length()),
+                            property.getValue());
+                }
+            }
+        } else if (first.startsWith("{")) {
+            loadJsonLines(br, run);
+        } else if (first.contains(";")) {
+            loadCsv(br, run);
+        } else {
+            throw new IOException("Unknown result format, JETM text tables can not be compared, use -f csv or -histograms");
+        }
+    }
+
+    private static void loadJsonLines(BufferedReader br, RunResult run) throws IOException {
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String point = jsonString(line, "point");
+            String histogram = jsonString(line, "histogram");
+            if (point == null || histogram == null) {
+                throw new IOException("Invalid JSON Lines result: " + line);
+            }
+            String planHash = jsonString(line, "plan_hash");
+            if (planHash != null) {
+                run.getPlanHashes().put(point, planHash);
+            }
+            try {
+                run.put(point, new PointSummary(LatencyHistogram.decode(histogram)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Both CSV formats: the padded one of the CsvRenderer with numbers in the default locale, and the
+     * streamed one with an Errors column, quoted names and '.' as decimal separator
+     */
+    private static void loadCsv(BufferedReader br, RunResult run) throws IOException {
+        List<String> header = null;
+        NumberFormat format = NumberFormat.getNumberInstance(Locale.getDefault());
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(";", -1);
+            if (fields[0].trim().equals("Measurement Point")) {
+                header = Arrays.asList(trim(fields));
+                format = header.contains("Errors") ? NumberFormat.getNumberInstance(Locale.ENGLISH) : format;
+                continue;
+            }
+            if (header == null || fields.length < header.size()) {
+                throw new IOException("Invalid CSV result line: " + line);
+            }
+            // the name may contain the separator, the numbers may not
+            int nameFields = fields.length - header.size() + 1;
+            StringBuilder name = new StringBuilder(fields[0]);
+            for (int i = 1; i < nameFields; i++) {
+                name.append(';').append(fields[i]);
+            }
+            String point = unquote(name.toString().trim());
+
+            Map<String, Double> metrics = new HashMap<String, Double>();
+            long count = 0;
+            for (int i = 1; i < header.size(); i++) {
+                String column = header.get(i);
+                String value = fields[nameFields + i - 1].trim();
+                if (value.isEmpty()) {
+                    continue;
+                }
+                if ("plan_hash".equals(column)) {
+                    run.getPlanHashes().put(point, value);
+                    continue;
+                }
+                double number = parse(format, value);
+                if ("#".equals(column)) {
+                    count = (long) number;
+                } else if ("Average".equals(column)) {
+                    metrics.put(PointSummary.MEAN, number * 1000);
+                } else if ("Max".equals(column)) {
+                    metrics.put(PointSummary.MAX, number * 1000);
+                } else if ("Total".equals(column) && RUN_POINT.equals(point)) {
+                    run.setElapsedMillis((long) number);
+                } else if (PointSummary.percentile(column) != null) {
+                    metrics.put(column, number * 1000);
+                }
+            }
+            if (!RUN_POINT.equals(point)) {
+                run.put(point, new PointSummary(count, metrics));
+            }
+        }
+    }
+
+    private static double parse(NumberFormat format, String value) throws IOException {
+        try {
+            return format.parse(value).doubleValue();
+        } catch (ParseException e) {
+            throw new IOException("Invalid number '" + value + "'");
+        }
+    }
+
+    private static String[] trim(String[] fields) {
+        String[] trimmed = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            trimmed[i] = fields[i].trim();
+        }
+        return trimmed;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Value of a string member of a flat JSON object as written by the JsonLinesRenderer
+     */
+    static String jsonString(String json, String member) {
+        String key = "\"" + member + "\":\"";
+        int start = json.indexOf(key);
+        if (start < 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = start + key.length(); i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\' && i + 1 < json.length()) {
+                char next = json.charAt(++i);
+                switch (next) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        sb.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    default:
+                        sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.compare;
+
+import de.qaware.mysqlbenchmark.jetm.TextTable;
+import de.qaware.mysqlbenchmark.metrics.HistogramStatistics;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Comparison of a run with a baseline run. For every measurement point in both runs the change of one
+ * latency metric is computed with a confidence interval, if both runs have histograms and the metric is the
+ * mean or a percentile; the p-value of a Mann-Whitney test of the whole distributions is shown next to it.
+ * A point regressed if the metric grew by more than the threshold and the change is significant, i.e. its
+ * confidence interval excludes zero. The max has no interval, and the Mann-Whitney test says nothing about
+ * it, so like points known by their summary only it is not tested and regresses on the threshold alone.
+ * The overall throughput regressed if it dropped by more than its own threshold, if one is given; there is
+ * no significance test for it, as every run has only one throughput.
+ * <p/>
+ * If both runs captured the execution plan of a point, a differing plan hash is reported as plan change,
+ * which is a regression on its own if requested.
+ */
+public class RunComparison {
+
+    private static final String SEPARATOR = System.getProperty("line.separator");
+
+    private final RunResult baseline;
+    private final RunResult run;
+    private final String metric;
+    private final double threshold;
+    private final double throughputThreshold;
+    private final double alpha;
+    private final long minCount;
+    private final boolean failOnPlanChange;
+    private final List<Row> rows = new ArrayList<Row>();
+    private final List<String> missing = new ArrayList<String>();
+    private double baselineThroughput = Double.NaN;
+    private double throughput = Double.NaN;
+    private boolean throughputRegressed;
+
+    /**
+     * Constructor, compares the runs
+     *
+     * @param baseline  baseline run
+     * @param run       run to compare with the baseline
+     * @param metric    latency metric, see {@link PointSummary#get(String)}
+     * @param threshold           latency regression threshold in percent
+     * @param throughputThreshold throughput regression threshold in percent, 0 to not check the throughput
+     * @param alpha               significance level
+     * @param minCount            minimum number of executions of a point in both runs
+     * @param failOnPlanChange    true if a changed execution plan is a regression
+     */
+    public RunComparison(RunResult baseline, RunResult run, String metric, double threshold, double throughputThreshold,
+                         double alpha, long minCount, boolean failOnPlanChange) {
+        this.baseline = baseline;
+        this.run = run;
+        this.metric = metric;
+        this.threshold = threshold;
+        this.throughputThreshold = throughputThreshold;
+        this.alpha = alpha;
+        this.minCount = minCount;
+        this.failOnPlanChange = failOnPlanChange;
+        compare();
+    }
+
+    private void compare() {
+        for (Map.Entry<String, PointSummary> entry : baseline.getPoints().entrySet()) {
+            PointSummary other = run.getPoints().get(entry.getKey());
+            if (other == null) {
+                missing.add("only in " + baseline.getName() + ": " + entry.getKey());
+            } else if (entry.getValue().getCount() >= minCount && other.getCount() >= minCount) {
+                rows.add(new Row(entry.getKey(), entry.getValue(), other));
+            }
+        }
+        for (String point : run.getPoints().keySet()) {
+            if (!baseline.getPoints().containsKey(point)) {
+                missing.add("only in " + run.getName() + ": " + point);
+            }
+        }
+        Collections.sort(rows, new Comparator<Row>() {
+            public int compare(Row a, Row b) {
+                if (a.regressed != b.regressed) {
+                    return a.regressed ? -1 : 1;
+                }
+                return Double.compare(Math.abs(b.change), Math.abs(a.change));
+            }
+        });
+
+        if (baseline.getElapsedMillis() > 0 && run.getElapsedMillis() > 0) {
+            baselineThroughput = baseline.getTotalCount() * 1000.0 / baseline.getElapsedMillis();
+            throughput = run.getTotalCount() * 1000.0 / run.getElapsedMillis();
+            throughputRegressed = throughputThreshold > 0
+                    && (baselineThroughput - throughput) / baselineThroughput * 100 > throughputThreshold;
+        }
+    }
+
+    /**
+     * Check if a measurement point or the throughput regressed
+     *
+     * @return true if the run is a regression
+     */
+    public boolean isRegression() {
+        if (throughputRegressed) {
+            return true;
+        }
+        for (Row row : rows) {
+            if (row.regressed || (failOnPlanChange && row.planChanged)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of compared points whose execution plan changed
+     *
+     * @return plan changes
+     */
+    public int getPlanChanges() {
+        int changes = 0;
+        for (Row row : rows) {
+            if (row.planChanged) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Write the comparison as text table
+     *
+     * @param writer writer to write to
+     * @param all    if false only points which changed significantly are listed
+     * @throws IOException if writing fails
+     */
+    public void render(Writer writer, boolean all) throws IOException {
+        writer.write(baseline.getName() + " -> " + run.getName() + ": " + (isRegression() ? "REGRESSION" : "OK")
+                + SEPARATOR);
+        if (!Double.isNaN(throughput)) {
+            writer.write(String.format(Locale.ENGLISH, "Throughput: %.1f/s -> %.1f/s (%+.1f%%)%s%s",
+                    baselineThroughput, throughput, (throughput - baselineThroughput) / baselineThroughput * 100,
+                    throughputRegressed ? " REGRESSION" : "", SEPARATOR));
+        } else {
+            writer.write("Throughput: unknown, the run duration is only in histogram logs and csv results" + SEPARATOR);
+        }
+
+        if (!baseline.getPlanHashes().isEmpty() && !run.getPlanHashes().isEmpty()) {
+            writer.write("Plan changes: " + getPlanChanges() + SEPARATOR);
+        }
+
+        String[] header = {"Measurement Point", "# Base", "# New", metric + " Base", metric + " New", "Change",
+                (int) Math.round((1 - alpha) * 100) + "% CI of Change", "p", "Plan", "Verdict"};
+        List<String[]> lines = new ArrayList<String[]>();
+        for (Row row : rows) {
+            if (all || row.planChanged || !"unchanged".equals(row.verdict)) {
+                lines.add(row.toColumns());
+            }
+        }
+        if (!lines.isEmpty()) {
+            TextTable.write(writer, header, lines);
+        }
+        for (String line : missing) {
+            writer.write(line + SEPARATOR);
+        }
+        writer.flush();
+    }
+
+    private static String millis(double micros) {
+        return Double.isNaN(micros) ? "n/a" : String.format(Locale.ENGLISH, "%.3f", micros / 1000);
+    }
+
+    /**
+     * Comparison of one measurement point
+     */
+    private final class Row {
+        private final String point;
+        private final PointSummary base;
+        private final PointSummary other;
+        private final double baseValue;
+        private final double value;
+        private final double change;
+        private double lower = Double.NaN;
+        private double upper = Double.NaN;
+        private double p = Double.NaN;
+        private final boolean regressed;
+        private final String verdict;
+        private final String basePlan;
+        private final String plan;
+        private final boolean planChanged;
+
+        private Row(String point, PointSummary base, PointSummary other) {
+            this.point = point;
+            this.base = base;
+            this.other = other;
+            basePlan = baseline.getPlanHashes().get(point);
+            plan = run.getPlanHashes().get(point);
+            planChanged = basePlan != null && plan != null && !basePlan.equals(plan);
+            baseValue = base.get(metric);
+            value = other.get(metric);
+            if (baseValue == 0) {
+                change = value == 0 ? 0 : Double.POSITIVE_INFINITY;
+            } else {
+                change = (value - baseValue) / baseValue * 100;
+            }
+            LatencyHistogram a = base.getHistogram();
+            LatencyHistogram b = other.getHistogram();
+            if (a != null && b != null) {
+                interval(a, b);
+                if (!Double.isNaN(lower)) {
+                    p = HistogramStatistics.mannWhitneyP(a, b);
+                }
+            }
+
+            // without interval, e.g. for the max, only the threshold decides
+            boolean significant = Double.isNaN(lower) ? Math.abs(change) > threshold : lower > 0 || upper < 0;
+            if (Double.isNaN(change)) {
+                regressed = false;
+                verdict = "n/a";
+            } else {
+                regressed = significant && change > threshold;
+                if (regressed) {
+                    verdict = "REGRESSION";
+                } else if (significant && change > 0) {
+                    verdict = "slower";
+                } else if (significant && change < 0) {
+                    verdict = "faster";
+                } else {
+                    verdict = "unchanged";
+                }
+            }
+        }
+
+        private void interval(LatencyHistogram a, LatencyHistogram b) {
+            Double percentile = PointSummary.percentile(metric);
+            if (PointSummary.MEAN.equals(metric)) {
+                double sa = HistogramStatistics.stdDeviation(a);
+                double sb = HistogramStatistics.stdDeviation(b);
+                double z = HistogramStatistics.normalQuantile(1 - alpha / 2);
+                double spread = z * Math.sqrt(sa * sa / a.getTotalCount() + sb * sb / b.getTotalCount());
+                lower = value - baseValue - spread;
+                upper = value - baseValue + spread;
+            } else if (percentile != null) {
+                // Bonferroni: both intervals at 1 - alpha/2, so the difference is covered with 1 - alpha
+                long[] ia = HistogramStatistics.percentileInterval(a, percentile, 1 - alpha / 2);
+                long[] ib = HistogramStatistics.percentileInterval(b, percentile, 1 - alpha / 2);
+                lower = ib[0] - ia[1];
+                upper = ib[1] - ia[0];
+            }
+        }
+
+        private String[] toColumns() {
+            return new String[]{point, String.valueOf(base.getCount()), String.valueOf(other.getCount()),
+                    millis(baseValue), millis(value),
+                    Double.isNaN(change) ? "n/a" : String.format(Locale.ENGLISH, "%+.1f%%", change),
+                    Double.isNaN(lower) ? "n/a" : "[" + millis(lower) + ", " + millis(upper) + "]",
+                    Double.isNaN(p) ? "n/a" : String.format(Locale.ENGLISH, "%.4f", p),
+                    planChanged ? "CHANGED " + basePlan + " -> " + plan : (basePlan != null && plan != null ? "same" : "n/a"),
+                    verdict};
+        }
+    }
+}
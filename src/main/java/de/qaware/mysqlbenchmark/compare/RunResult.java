@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.compare;
+
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The measurement points of one result file
+ */
+public class RunResult {
+
+    private static final String QUERY_PREFIX = "Query: ";
+
+    private final String name;
+    private final Map<String, PointSummary> points = new TreeMap<String, PointSummary>();
+    private final Map<String, String> planHashes = new TreeMap<String, String>();
+    private long elapsedMillis = -1;
+
+    /**
+     * Constructor
+     *
+     * @param name name of the run, e.g. the file name
+     */
+    public RunResult(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add a measurement point, combining it with a point of the same name
+     *
+     * @param point   name
+     * @param summary measurements
+     */
+    public void add(String point, PointSummary summary) {
+        PointSummary existing = points.get(point);
+        points.put(point, existing == null ? summary : existing.combine(summary));
+    }
+
+    /**
+     * Replace a measurement point, e.g. by a later report of the same run
+     *
+     * @param point   name
+     * @param summary measurements
+     */
+    public void put(String point, PointSummary summary) {
+        points.put(point, summary);
+    }
+
+    /**
+     * The same run with the statements of all points normalized to digests, so runs recorded with
+     * and without -exact can be compared
+     *
+     * @return run with digest points
+     */
+    public RunResult byDigest() {
+        RunResult digested = new RunResult(name);
+        digested.elapsedMillis = elapsedMillis;
+        for (Map.Entry<String, PointSummary> entry : points.entrySet()) {
+            String point = entry.getKey();
+            if (point.startsWith(QUERY_PREFIX)) {
+                point = QUERY_PREFIX + StatementDigest.normalize(point.substring(QUERY_PREFIX.length()));
+            }
+            digested.add(point, entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : planHashes.entrySet()) {
+            String point = entry.getKey();
+            if (point.startsWith(QUERY_PREFIX)) {
+                point = QUERY_PREFIX + StatementDigest.normalize(point.substring(QUERY_PREFIX.length()));
+            }
+            if (!digested.planHashes.containsKey(point)) {
+                digested.planHashes.put(point, entry.getValue());
+            }
+        }
+        return digested;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, PointSummary> getPoints() {
+        return points;
+    }
+
+    /**
+     * Execution plan hashes of the points whose plans were captured
+     *
+     * @return plan hash by measurement point
+     */
+    public Map<String, String> getPlanHashes() {
+        return planHashes;
+    }
+
+    /**
+     * Duration of the run
+     *
+     * @return milliseconds, -1 if unknown
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * Number of executions of all points
+     *
+     * @return count
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (PointSummary summary : points.values()) {
+            total += summary.getCount();
+        }
+        return total;
+    }
+}
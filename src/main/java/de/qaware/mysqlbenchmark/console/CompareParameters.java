@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.console;
+
+import com.beust.jcommander.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line parameters of the compare command
+ */
+public class CompareParameters {
+
+    /**
+     * Result files, the first is the baseline
+     */
+    @Parameter(description = "<baseline result> <result>... Histogram logs, jsonl, binary or csv results.")
+    private List<String> files = new ArrayList<String>();
+
+    /**
+     * Latency metric to compare
+     */
+    @Parameter(names = {"-metric"},
+            description = "Latency metric to compare: mean, max or a percentile like p50, p90, p99, p99.9.",
+            required = false)
+    private String metric = "p99";
+
+    /**
+     * Regression threshold in percent
+     */
+    @Parameter(names = {"-threshold"},
+            description = "Fail if the metric of a measurement point grows significantly by more than this many percent.",
+            required = false)
+    private double threshold = 10;
+
+    /**
+     * Throughput regression threshold in percent
+     */
+    @Parameter(names = {"-throughputthreshold"},
+            description = "Fail if the overall throughput drops by more than this many percent. 0 only reports the throughput,"
+                    + " as a single run gives no confidence interval for it.",
+            required = false)
+    private double throughputThreshold = 0;
+
+    /**
+     * Significance level
+     */
+    @Parameter(names = {"-alpha"},
+            description = "1 - confidence of the intervals of the change and significance level of the Mann-Whitney test shown next to them. A latency regression must be significant to fail, except for the max, which has no interval.",
+            required = false)
+    private double alpha = 0.05;
+
+    /**
+     * Minimum executions of a point in both runs
+     */
+    @Parameter(names = {"-mincount"},
+            description = "Ignore measurement points with fewer executions in one of the runs.",
+            required = false)
+    private long minCount = 10;
+
+    /**
+     * Match points by digest
+     */
+    @Parameter(names = {"-digest"},
+            description = "Match measurement points by statement digest, e.g. to compare runs with and without -exact.",
+            required = false)
+    private boolean digest = false;
+
+    /**
+     * Changed execution plans are regressions
+     */
+    @Parameter(names = {"-failonplanchange"},
+            description = "Fail if the execution plan of a measurement point changed. Plans are compared if both runs were made with -explain.",
+            required = false)
+    private boolean failOnPlanChange = false;
+
+    /**
+     * Show all points, not only regressions
+     */
+    @Parameter(names = {"-all"},
+            description = "Show all measurement points, not only the ones which changed significantly.",
+            required = false)
+    private boolean all = false;
+
+    /**
+     * Help
+     */
+    @Parameter(names = {"-help", "-h"}, description = "Compare results of benchmark runs",
+            required = false)
+    private boolean help = false;
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double getThroughputThreshold() {
+        return throughputThreshold;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public long getMinCount() {
+        return minCount;
+    }
+
+    public boolean isDigest() {
+        return digest;
+    }
+
+    public boolean isFailOnPlanChange() {
+        return failOnPlanChange;
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+}
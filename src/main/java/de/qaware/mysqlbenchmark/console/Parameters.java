@@ -17,8 +17,10 @@
 package de.qaware.mysqlbenchmark.console;
 
 import com.beust.jcommander.Parameter;
+import com.google.common.base.Joiner;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -65,9 +67,11 @@ public class Parameters {
      * Location of the logfile which contains the mysql queries to execute
      */
     @Parameter(names = {"-log"},
-            description = "Location of the logfile which contains the mysql queries to execute",
+            description = "Location of the logfile which contains the mysql queries to execute. Several logs, comma"
+                    + " separated or given multiple times, are merged by their timestamps; rotated files of one log"
+                    + " are joined by '+' in the order to read them, e.g. general.log.1+general.log",
             required = false)
-    private String inputFile = "benchmarking-queries.sql";
+    private List<String> inputFiles = new ArrayList<String>(Arrays.asList("benchmarking-queries.sql"));
 
     /**
      * Location of the output file to write the results to
@@ -78,13 +82,201 @@ public class Parameters {
     private String resultfilename = "results.txt";
 
     /**
-     *  The batch of single operation
+     * Maximum number of statements read ahead of the replay
      */
     @Parameter(names = {"-b"},
-            description = "The batch of single operation",
+            description = "The number of log lines parsed at a time and the maximum number of statements waiting for"
+                    + " execution. Bounds memory, the replay does not pause between batches.",
             required = false)
     private int batch = 20000;
 
+    /**
+     * Maximum time to wait for the sessions to finish at the end of the log
+     */
+    @Parameter(names = {"-draintimeout"},
+            description = "Seconds to wait for the started sessions to finish their statements at the end of the log."
+                    + " Statements still running afterwards are reported as in flight.",
+            required = false)
+    private int drainTimeout = 600;
+
+    /**
+     * Checkpoint file of the replay
+     */
+    @Parameter(names = {"-checkpoint"},
+            description = "Write a checkpoint of the replay to this file periodically, so it can be continued with"
+                    + " -resume after an interruption.",
+            required = false)
+    private String checkpointFile;
+
+    /**
+     * Seconds between checkpoints
+     */
+    @Parameter(names = {"-checkpointinterval"},
+            description = "Seconds between two checkpoints. Each checkpoint waits until the running sessions have"
+                    + " executed the statements read so far.",
+            required = false)
+    private int checkpointInterval = 300;
+
+    /**
+     * Continue from the checkpoint
+     */
+    @Parameter(names = {"-resume"},
+            description = "Continue the replay from the file given with -checkpoint instead of starting at the"
+                    + " beginning of the log.",
+            required = false)
+    private boolean resume = false;
+
+    /**
+     * Search the highest throughput under the SLO
+     */
+    @Parameter(names = {"-search"},
+            description = "Instead of one replay, search the highest throughput which meets the -slo rules by replaying"
+                    + " the log at increasing concurrency, up to -searchmax sessions.",
+            required = false)
+    private boolean search = false;
+
+    /**
+     * Rules of the latency SLO
+     */
+    @Parameter(names = {"-slo"},
+            description = "Rule of the SLO for -search: [<type>:]<metric><<limit>, with the metrics mean, max or a"
+                    + " percentile like p99 in ms and errors in percent, e.g. select:p99<20 or errors<0.1%. May be given"
+                    + " multiple times.",
+            splitter = NoSplitter.class,
+            required = false)
+    private List<String> slo = new ArrayList<String>();
+
+    /**
+     * Highest concurrency of the search
+     */
+    @Parameter(names = {"-searchmax"},
+            description = "Highest number of concurrent sessions -search tries.",
+            required = false)
+    private int searchMax = 256;
+
+    /**
+     * Concurrency levels of the sweep
+     */
+    @Parameter(names = {"-sweep"},
+            description = "Instead of one replay, replay the log at each of these comma separated concurrency levels,"
+                    + " e.g. 1,2,4,8,16,32,64,128,256, and fit the throughput to the Universal Scalability Law.",
+            required = false)
+    private String sweep;
+
+    /**
+     * Cache sizes of the cache simulation
+     */
+    @Parameter(names = {"-cache"},
+            description = "Instead of one replay, replay the log through a simulated application cache of each of these"
+                    + " comma separated sizes in entries, e.g. 1000,10000,100000, executing only the reads which miss,"
+                    + " and once without cache to compare the database load and latency.",
+            required = false)
+    private String cacheSizes;
+
+    /**
+     * Eviction policies of the cache simulation
+     */
+    @Parameter(names = {"-cachepolicy"},
+            description = "Comma separated eviction policies -cache tries with each size: lru, tinylfu.",
+            required = false)
+    private String cachePolicies = "lru,tinylfu";
+
+    /**
+     * Length of one trial
+     */
+    @Parameter(names = {"-trialduration"},
+            description = "Stop reading the log after this many seconds in each trial of -search and -sweep, 0 replays"
+                    + " the whole log.",
+            required = false)
+    private int trialDuration = 0;
+
+    /**
+     * Generate a synthetic workload instead of replaying the log
+     */
+    @Parameter(names = {"-synthetic"},
+            description = "Instead of replaying the log, learn a workload model from it (digest mix, statement sequences,"
+                    + " think times, session lengths and literal values) and run a synthetic workload generated from"
+                    + " the model with -sessions sessions at -rate statements/s for -duration seconds.",
+            required = false)
+    private boolean synthetic = false;
+
+    /**
+     * Scenario of load phases
+     */
+    @Parameter(names = {"-scenario"},
+            description = "Replay the log in the phases of this file, one per line:"
+                    + " <name> duration=<s> [rate=<n>[-<m>]] [concurrency=<n>] [filter=<regex>] [speed=<x>]."
+                    + " The log is replayed again from its start if the phases last longer. Results are also"
+                    + " reported per phase.",
+            required = false)
+    private String scenarioFile;
+
+    /**
+     * Concurrently open sessions of the synthetic workload
+     */
+    @Parameter(names = {"-sessions"},
+            description = "Number of concurrently open sessions of the -synthetic workload. A session which ends is"
+                    + " replaced by a new one.",
+            required = false)
+    private int sessions = 16;
+
+    /**
+     * Rate of the synthetic workload
+     */
+    @Parameter(names = {"-rate"},
+            description = "Statements per second of the -synthetic workload over all sessions, 0 to only pace the"
+                    + " sessions by the think times of the model.",
+            required = false)
+    private int rate = 0;
+
+    /**
+     * Length of the synthetic workload
+     */
+    @Parameter(names = {"-duration"},
+            description = "Seconds the -synthetic workload generates statements.",
+            required = false)
+    private int duration = 60;
+
+    /**
+     * Seed of the synthetic workload and the literal rewrites
+     */
+    @Parameter(names = {"-seed"},
+            description = "Seed of the random numbers of the -synthetic workload and of the -literal rewrites, so a"
+                    + " workload can be repeated.",
+            required = false)
+    private long seed = 1;
+
+    /**
+     * Rules to rewrite the literals of statements
+     */
+    @Parameter(names = {"-literal"},
+            description = "Replace the literals of the statements whose digest matches a regex by values of a"
+                    + " distribution: <regex>=<distribution>[#<literal>] with uniform:<min>:<max>,"
+                    + " zipf:<min>:<max>[:<exponent>] or log[:<min>:<max>] (values of the log). #<literal> only"
+                    + " rewrites the literal at this position, starting at 1. May be given multiple times, the first"
+                    + " matching rule applies.",
+            splitter = NoSplitter.class,
+            required = false)
+    private List<String> literalRules = new ArrayList<String>();
+
+    /**
+     * Number of copies of every session
+     */
+    @Parameter(names = {"-amplify"},
+            description = "Replay every session of the log this many times, each copy on its own copy of the schema:"
+                    + " copy k of a session which selects the database wiki uses wiki_k.",
+            required = false)
+    private int amplification = 1;
+
+    /**
+     * Start offset between the copies of a session
+     */
+    @Parameter(names = {"-amplifyoffset"},
+            description = "Start copy k of a session (k-1) times this many milliseconds after the first copy,"
+                    + " see -amplify.",
+            required = false)
+    private long amplificationOffset = 0;
+
     /**
      * Parallel Parameter. Not use yet.
      */
@@ -126,10 +318,128 @@ public class Parameters {
      * The result can be in default JETM style or CSV. JETM is default.
      */
     @Parameter(names = {"-f"},
-            description = "The result can be in default JETM style or CSV. JETM is default.",
+            description = "The result can be in default JETM style or CSV, or streamed point by point as csvstream (CSV without padding), jsonl (JSON Lines) or binary. JETM is default.",
             required = false)
     private String format = "JETM";
 
+    /**
+     * Summary mode of the streaming formats
+     */
+    @Parameter(names = {"-top"},
+            description = "Only write this many measurement points with the largest total time. Applies to the streaming formats csvstream, jsonl and binary.",
+            required = false)
+    private int top = 0;
+
+    /**
+     * Measure every distinct statement text separately
+     */
+    @Parameter(names = {"-exact"},
+            description = "Measure every distinct statement text separately instead of grouping statements which only differ in their literals.",
+            required = false)
+    private boolean exactStatements = false;
+
+    /**
+     * Number of digests measured separately
+     */
+    @Parameter(names = {"-topdigests"},
+            description = "Only measure the heaviest digests by count and by total time separately, with memory bounded by this number, and all other statements in one bucket. The heaviest digests by count and by total time are estimated with their maximum error and reported. 0 measures every digest.",
+            required = false)
+    private int topDigests = 0;
+
+    /**
+     * Lossless export of the latency histograms
+     */
+    @Parameter(names = {"-histograms"},
+            description = "Write the latency histograms of all measurement points to this file, so runs can be merged and compared later.",
+            required = false)
+    private String histogramFile;
+
+    /**
+     * Length of the reporting interval in seconds
+     */
+    @Parameter(names = {"-interval"},
+            description = "Write throughput, errors and latency percentiles every this many seconds while the benchmark runs. 0 disables the interval report.",
+            required = false)
+    private int interval = 0;
+
+    /**
+     * File for the interval report
+     */
+    @Parameter(names = {"-intervallog"},
+            description = "File to write the interval report to.",
+            required = false)
+    private String intervalFile = "intervals.log";
+
+    /**
+     * Number of digests reported separately per interval
+     */
+    @Parameter(names = {"-intervaltop"},
+            description = "Number of statement digests with the most executions reported separately in every interval.",
+            required = false)
+    private int intervalTop = 5;
+
+    /**
+     * Port of the metrics endpoint. The endpoint is only started if this parameter is given.
+     */
+    @Parameter(names = {"-metrics"},
+            description = "Expose the measurements of the running replay in Prometheus/OpenMetrics format on http://<host>:<port>/metrics (0 for any free port).",
+            required = false)
+    private Integer metricsPort;
+
+    /**
+     * Source of the server side cost by digest
+     */
+    @Parameter(names = {"-servercost"},
+            description = "Collect server side cost by digest: 'digest' from performance_schema snapshots, 'session' from"
+                    + " SHOW SESSION STATUS around every statement (two extra round trips per statement) or 'both'.",
+            required = false)
+    private String serverCost;
+
+    /**
+     * Split latencies into phases
+     */
+    @Parameter(names = {"-phases"},
+            description = "Split the latency of every statement into prepare, send, wait for the first byte of the response"
+                    + " and receive, timed at the socket of the JDBC connection.",
+            required = false)
+    private boolean phases = false;
+
+    /**
+     * Number of slowest digests to explain
+     */
+    @Parameter(names = {"-explain"},
+            description = "Capture the execution plans of this many digests with the highest total time and as many with"
+                    + " the highest p99 latency by EXPLAIN FORMAT=JSON once after the replay, through a connection of"
+                    + " its own. The plan hashes are written to the results so compare can detect plan changes."
+                    + " 0 captures no plans.",
+            required = false)
+    private int explain = 0;
+
+    /**
+     * File for the captured execution plans
+     */
+    @Parameter(names = {"-planlog"},
+            description = "File to write the captured execution plans to, one JSON object per line.",
+            required = false)
+    private String planFile;
+
+    /**
+     * File for the trace of the executed statements
+     */
+    @Parameter(names = {"-trace"},
+            description = "Record start, end, session, digest, thread and result of every executed statement to this"
+                    + " binary file. Convert it with the trace command to view the timeline of the replay.",
+            required = false)
+    private String traceFile;
+
+    /**
+     * Capacity of the trace ring
+     */
+    @Parameter(names = {"-tracelimit"},
+            description = "Keep only the latest this many statements in the -trace file, 0 keeps all.",
+            required = false)
+    private long traceLimit = 0;
+
     /**
      * JDBC driver
      */
@@ -138,6 +448,41 @@ public class Parameters {
             required = false)
     private String driver = "com.mysql.jdbc.Driver";
 
+    /**
+     * Port of the in-process stub server. The stub is only started if this parameter is given.
+     */
+    @Parameter(names = {"-stub"},
+            description = "Start an in-process MySQL stub server on this port (0 for any free port) and run the benchmark against it."
+                    + " The -s parameter is ignored then.",
+            required = false)
+    private Integer stubPort;
+
+    /**
+     * Number of rows the stub server returns for reading statements
+     */
+    @Parameter(names = {"-stubrows"},
+            description = "Number of rows the stub server returns for reading statements.",
+            required = false)
+    private int stubRows = 1;
+
+    /**
+     * Number of columns the stub server returns for reading statements
+     */
+    @Parameter(names = {"-stubcols"},
+            description = "Number of columns the stub server returns for reading statements.",
+            required = false)
+    private int stubColumns = 1;
+
+    /**
+     * Latency rules of the stub server
+     */
+    @Parameter(names = {"-stublatency"},
+            description = "Latency of the stub server for statements matching a regex: <regex>=<delayMs>[:<jitterMs>[:<stallProbability>:<stallMs>]]."
+                    + " May be given multiple times, the first matching rule applies.",
+            splitter = NoSplitter.class,
+            required = false)
+    private List<String> stubLatency = new ArrayList<String>();
+
     /**
      * mysql username
      *
@@ -177,10 +522,19 @@ public class Parameters {
     /**
      * Location of the logfile which contains the mysql queries to execute
      *
-     * @return log file
+     * @return log file, several merged logs comma separated
      */
     public String getInputFile() {
-        return inputFile;
+        return Joiner.on(',').join(inputFiles);
+    }
+
+    /**
+     * Logs to merge
+     *
+     * @return logs, each a file or rotated files joined by {@link de.qaware.mysqlbenchmark.logfile.LogMerger#ROTATION_SEPARATOR}
+     */
+    public List<String> getInputFiles() {
+        return inputFiles;
     }
 
     /**
@@ -237,10 +591,211 @@ public class Parameters {
         return format;
     }
 
+    /**
+     * Number of measurement points written by the streaming formats
+     *
+     * @return number of points with the largest total time, 0 for all points
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * File for the lossless export of the latency histograms
+     *
+     * @return filename or null if the histograms are not exported
+     */
+    public String getHistogramFile() {
+        return histogramFile;
+    }
+
+    /**
+     * Measure every distinct statement text separately instead of statement digests
+     *
+     * @return true if literals are not normalized
+     */
+    public boolean isExactStatements() {
+        return exactStatements;
+    }
+
+    /**
+     * Number of digests measured separately, see {@link de.qaware.mysqlbenchmark.logfile.DigestRegistry}
+     *
+     * @return digest count, 0 for all digests
+     */
+    public int getTopDigests() {
+        return topDigests;
+    }
+
+    /**
+     * Length of the reporting interval
+     *
+     * @return seconds, 0 if no interval report should be written
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * File for the interval report
+     *
+     * @return filename
+     */
+    public String getIntervalFile() {
+        return intervalFile;
+    }
+
+    /**
+     * Number of digests reported separately per interval
+     *
+     * @return digest count
+     */
+    public int getIntervalTop() {
+        return intervalTop;
+    }
+
+    /**
+     * Port of the metrics endpoint
+     *
+     * @return port or null if no metrics endpoint should be started
+     */
+    public Integer getMetricsPort() {
+        return metricsPort;
+    }
+
+    /**
+     * Source of the server side cost by digest
+     *
+     * @return digest, session, both or null if not collected
+     */
+    public String getServerCost() {
+        return serverCost;
+    }
+
+    public boolean isPhases() {
+        return phases;
+    }
+
+    public int getExplain() {
+        return explain;
+    }
+
+    public String getPlanFile() {
+        return planFile;
+    }
+
+    public String getTraceFile() {
+        return traceFile;
+    }
+
+    public long getTraceLimit() {
+        return traceLimit;
+    }
+
     public int getBatch() {
         return batch;
     }
 
+    public int getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public boolean isSearch() {
+        return search;
+    }
+
+    public List<String> getSlo() {
+        return slo;
+    }
+
+    public int getSearchMax() {
+        return searchMax;
+    }
+
+    /**
+     * Concurrency levels of the sweep
+     *
+     * @return comma separated levels, null if no sweep is requested
+     */
+    public String getSweep() {
+        return sweep;
+    }
+
+    public String getCacheSizes() {
+        return cacheSizes;
+    }
+
+    public String getCachePolicies() {
+        return cachePolicies;
+    }
+
+    public int getTrialDuration() {
+        return trialDuration;
+    }
+
+    public boolean isSynthetic() {
+        return synthetic;
+    }
+
+    public String getScenarioFile() {
+        return scenarioFile;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Rules to rewrite the literals of statements
+     *
+     * @return rules in the format of {@link de.qaware.mysqlbenchmark.workload.LiteralRule#parse(String)}
+     */
+    public List<String> getLiteralRules() {
+        return literalRules;
+    }
+
+    /**
+     * Number of copies of every session replayed
+     *
+     * @return copies, 1 to replay the log as it is
+     */
+    public int getAmplification() {
+        return amplification;
+    }
+
+    /**
+     * Start offset between the copies of a session
+     *
+     * @return offset in milliseconds
+     */
+    public long getAmplificationOffset() {
+        return amplificationOffset;
+    }
+
     public int getParallel() {
         return parallel;
     }
@@ -248,4 +803,58 @@ public class Parameters {
     public String getDriver() {
         return driver;
     }
+
+    /**
+     * Port of the in-process stub server
+     *
+     * @return port or null if no stub server should be started
+     */
+    public Integer getStubPort() {
+        return stubPort;
+    }
+
+    /**
+     * Number of rows the stub server returns for reading statements
+     *
+     * @return row count
+     */
+    public int getStubRows() {
+        return stubRows;
+    }
+
+    /**
+     * Number of columns the stub server returns for reading statements
+     *
+     * @return column count
+     */
+    public int getStubColumns() {
+        return stubColumns;
+    }
+
+    /**
+     * Latency rules of the stub server
+     *
+     * @return rules in the format of {@link de.qaware.mysqlbenchmark.stub.LatencyRule#parse(String)}
+     */
+    public List<String> getStubLatency() {
+        return stubLatency;
+    }
+
+    /**
+     * Replace the connection string, e.g. by the one of the stub server
+     *
+     * @param server connection string without database name
+     */
+    public void setServer(String server) {
+        this.server = server;
+    }
+
+    /**
+     * Replace the maximum number of concurrent sessions, e.g. for the trials of a search
+     *
+     * @param parallel number of sessions
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
 }
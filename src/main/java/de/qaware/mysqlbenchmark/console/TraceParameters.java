@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.console;
+
+import com.beust.jcommander.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line parameters of the trace command
+ */
+public class TraceParameters {
+
+    /**
+     * Trace and output file
+     */
+    @Parameter(description = "<trace> <json> Trace written with -trace and the Chrome trace / Perfetto JSON file to write.")
+    private List<String> files = new ArrayList<String>();
+
+    /**
+     * Start of the converted time window
+     */
+    @Parameter(names = {"-from"},
+            description = "Only convert the statements which end after this many seconds from the start of the trace.",
+            required = false)
+    private double from = 0;
+
+    /**
+     * End of the converted time window
+     */
+    @Parameter(names = {"-to"},
+            description = "Only convert the statements which start before this many seconds from the start of the trace."
+                    + " 0 converts up to the end.",
+            required = false)
+    private double to = 0;
+
+    /**
+     * Help
+     */
+    @Parameter(names = {"-help", "-h"}, description = "Convert a statement trace to the Chrome trace format",
+            required = false)
+    private boolean help = false;
+
+    public List<String> getFiles() {
+        return files;
+    }
+
+    public double getFrom() {
+        return from;
+    }
+
+    public double getTo() {
+        return to;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import com.google.common.base.Joiner;
+import de.qaware.mysqlbenchmark.metrics.ClientLoad;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the load of the benchmark client over the whole run as text table in the style of the JETM
+ * {@link etm.core.renderer.SimpleTextRenderer}, with the reasons if the client was the bottleneck.
+ * CPU times are shown as share of one processor.
+ */
+public class ClientLoadTextRenderer implements MeasurementRenderer {
+
+    private final Writer writer;
+    private final ClientLoad load;
+    private final NumberFormat formatter;
+
+    /**
+     * Constructs a ClientLoadTextRenderer using the default locale.
+     *
+     * @param aWriter The writer.
+     * @param load    load of the client
+     */
+    public ClientLoadTextRenderer(Writer aWriter, ClientLoad load) {
+        this.writer = aWriter;
+        this.load = load;
+        formatter = NumberFormat.getNumberInstance(Locale.getDefault());
+        formatter.setMaximumFractionDigits(3);
+        formatter.setMinimumFractionDigits(3);
+        formatter.setGroupingUsed(true);
+    }
+
+    /**
+     * Renders one table row for the whole run, the points are not used.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        String[] header = {"Client (times in ms)", "Duration", "GC", "Connection CPU", "Parser CPU",
+                "Dispatch lag p50", "Dispatch lag p99", "Dispatch lag max", "Backlog wait", "Start delay p99", "Bottleneck"};
+        double seconds = load.getNanos() / 1e9;
+        LatencyHistogram lag = load.getDispatchLag();
+        List<String> bottlenecks = load.getBottlenecks(Runtime.getRuntime().availableProcessors());
+        String[] row = {"Whole run",
+                formatter.format(load.getNanos() / 1e6),
+                formatter.format(load.getGcMillis()),
+                share(load.getConnectionCpuNanos() / 1e9, seconds),
+                share(load.getParserCpuNanos() / 1e9, seconds),
+                formatter.format(lag.getValueAtPercentile(50) / 1000.0),
+                formatter.format(lag.getValueAtPercentile(99) / 1000.0),
+                formatter.format(lag.getMax() / 1000.0),
+                formatter.format(load.getBacklogWait().getSum() / 1000.0),
+                formatter.format(load.getStartDelay().getValueAtPercentile(99) / 1000.0),
+                bottlenecks.isEmpty() ? "-" : Joiner.on(", ").join(bottlenecks)};
+
+        try {
+            TextTable.write(writer, header, Collections.singletonList(row));
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+
+    private String share(double cpuSeconds, double seconds) {
+        return seconds > 0 ? formatter.format(cpuSeconds / seconds * 100) + "%" : "-";
+    }
+}
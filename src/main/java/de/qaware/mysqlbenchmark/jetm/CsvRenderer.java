@@ -16,6 +16,7 @@
 
 package de.qaware.mysqlbenchmark.jetm;
 
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
 import etm.core.aggregation.Aggregate;
 import etm.core.monitor.EtmException;
 
@@ -36,6 +37,7 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
     private final NumberFormat timeFormatter;
     private final Writer writer;
     private final String separator = System.getProperty("line.separator");
+    private Map<String, LatencyHistogram> histograms = Collections.emptyMap();
 
     /**
      * Constructs a CsvRenderer using the default locale
@@ -104,6 +106,19 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
         timeFormatter = aTimeFormatter;
     }
 
+    /**
+     * Constructs a CsvRenderer using the default locale
+     * and the provided writer. Percentile columns are
+     * added for all points with a histogram.
+     *
+     * @param aWriter     The writer.
+     * @param aHistograms Histograms by measurement point.
+     */
+    public CsvRenderer(Writer aWriter, Map<String, LatencyHistogram> aHistograms) {
+        this(aWriter, Locale.getDefault());
+        histograms = aHistograms;
+    }
+
     /**
      * Renders the map to the OutputStreamWriter.
      *
@@ -132,6 +147,7 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
         private Column minColumn = new Column("Min");
         private Column maxColumn = new Column("Max");
         private Column totalColumn = new Column("Total");
+        private Column[] percentileColumns = new Column[LatencyHistogram.REPORTED_PERCENTILES.length];
 
         /**
          * results
@@ -139,6 +155,9 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
          * @param points points
          */
         public Results(Map points) {
+            for (int i = 0; i < percentileColumns.length; i++) {
+                percentileColumns[i] = new Column(LatencyHistogram.label(LatencyHistogram.REPORTED_PERCENTILES[i]));
+            }
             Map map = new TreeMap(points);
             for (Iterator iterator = map.values().iterator(); iterator.hasNext(); ) {
                 Aggregate point = (Aggregate) iterator.next();
@@ -188,6 +207,12 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
             minColumn.addEntry(new RightAlignedEntry(timeFormatter.format(aAggregate.getMin())));
             maxColumn.addEntry(new RightAlignedEntry(timeFormatter.format(aAggregate.getMax())));
             totalColumn.addEntry(new RightAlignedEntry(timeFormatter.format(aAggregate.getTotal())));
+            LatencyHistogram histogram = histograms.get(aAggregate.getName());
+            for (int i = 0; i < percentileColumns.length; i++) {
+                String value = histogram == null ? ""
+                        : timeFormatter.format(histogram.getValueAtPercentile(LatencyHistogram.REPORTED_PERCENTILES[i]) / 1000.0);
+                percentileColumns[i].addEntry(new RightAlignedEntry(value));
+            }
         }
 
         /**
@@ -203,6 +228,10 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
             Iterator<ColumnEntry> minIt = minColumn.iterator();
             Iterator<ColumnEntry> maxIt = maxColumn.iterator();
             Iterator<ColumnEntry> totalIt = totalColumn.iterator();
+            List<Iterator<ColumnEntry>> percentileIts = new ArrayList<Iterator<ColumnEntry>>();
+            for (Column column : percentileColumns) {
+                percentileIts.add(column.iterator());
+            }
 
             while (nameIt.hasNext()) {
                 (nameIt.next()).write(writer, nameColumn.currentMaxSize);
@@ -216,6 +245,10 @@ public class CsvRenderer implements etm.core.renderer.MeasurementRenderer {
                 (maxIt.next()).write(writer, maxColumn.currentMaxSize);
                 writer.write(VALUE_SEPARATOR);
                 (totalIt.next()).write(writer, totalColumn.currentMaxSize);
+                for (int i = 0; i < percentileColumns.length; i++) {
+                    writer.write(VALUE_SEPARATOR);
+                    (percentileIts.get(i).next()).write(writer, percentileColumns[i].currentMaxSize);
+                }
                 writer.write(separator);
             }
         }
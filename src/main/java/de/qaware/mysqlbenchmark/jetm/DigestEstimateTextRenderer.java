@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.metrics.SpaceSaving;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the heaviest digests by count and by total time as text tables in the style of the JETM
+ * {@link etm.core.renderer.SimpleTextRenderer}, if only the heaviest digests are measured separately.
+ * Counts and total times are estimates of {@link SpaceSaving} summaries over all statements, measured
+ * separately or not: the true value is at most the error below the estimate.
+ */
+public class DigestEstimateTextRenderer implements MeasurementRenderer {
+
+    private final Writer writer;
+    private final DigestRegistry digests;
+    private final SpaceSaving times;
+    private final int top;
+    private final NumberFormat formatter;
+
+    /**
+     * Constructs a DigestEstimateTextRenderer using the default locale.
+     *
+     * @param aWriter The writer.
+     * @param digests registry with the estimates by count
+     * @param times   merged summary of the execution time in microseconds, see
+     *                {@link de.qaware.mysqlbenchmark.metrics.RecorderPool#mergeTimes()}
+     * @param top     number of digests per table
+     */
+    public DigestEstimateTextRenderer(Writer aWriter, DigestRegistry digests, SpaceSaving times, int top) {
+        this.writer = aWriter;
+        this.digests = digests;
+        this.times = times;
+        this.top = top;
+        formatter = NumberFormat.getNumberInstance(Locale.getDefault());
+        formatter.setMaximumFractionDigits(3);
+        formatter.setMinimumFractionDigits(3);
+        formatter.setGroupingUsed(true);
+    }
+
+    /**
+     * Renders the estimates, the points are not used.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        String[] countHeader = {"Digest by count", "Count", "Error", "Share", "Measured"};
+        List<String[]> counts = new ArrayList<String[]>();
+        long totalCount = digests.getTotalCount();
+        for (SpaceSaving.Estimate estimate : digests.getTopByCount(top)) {
+            counts.add(new String[]{estimate.getKey(),
+                    String.valueOf(estimate.getWeight()),
+                    String.valueOf(estimate.getError()),
+                    share(estimate.getWeight(), totalCount),
+                    digests.isMeasured(estimate.getKey()) ? "yes" : "no"});
+        }
+
+        String[] timeHeader = {"Digest by total time", "Total (ms)", "Error (ms)", "Share", "Measured"};
+        List<String[]> byTime = new ArrayList<String[]>();
+        if (times != null) {
+            for (SpaceSaving.Estimate estimate : times.top(top)) {
+                byTime.add(new String[]{estimate.getKey(),
+                        formatter.format(estimate.getWeight() / 1000.0),
+                        formatter.format(estimate.getError() / 1000.0),
+                        share(estimate.getWeight(), times.getTotal()),
+                        digests.isMeasured(estimate.getKey()) ? "yes" : "no"});
+            }
+        }
+
+        try {
+            if (!counts.isEmpty()) {
+                TextTable.write(writer, countHeader, counts);
+            }
+            if (!byTime.isEmpty()) {
+                TextTable.write(writer, timeHeader, byTime);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+
+    private String share(long value, long total) {
+        return total > 0 ? formatter.format(value * 100.0 / total) + "%" : "-";
+    }
+}
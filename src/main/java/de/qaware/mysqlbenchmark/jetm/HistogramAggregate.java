@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import etm.core.aggregation.Aggregate;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * JETM aggregate backed by a {@link LatencyHistogram}, so measurements recorded outside of the
+ * EtmMonitor can be rendered by the JETM renderers. Times are in milliseconds like JETM times.
+ */
+public class HistogramAggregate implements Aggregate {
+
+    private final String name;
+    private final LatencyHistogram histogram;
+
+    /**
+     * Constructor
+     *
+     * @param name      measurement point name
+     * @param histogram measurements of the point
+     */
+    public HistogramAggregate(String name, LatencyHistogram histogram) {
+        this.name = name;
+        this.histogram = histogram;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getAverage() {
+        return histogram.getMean() / 1000.0;
+    }
+
+    public double getMin() {
+        return histogram.getMin() / 1000.0;
+    }
+
+    public double getMax() {
+        return histogram.getMax() / 1000.0;
+    }
+
+    public long getMeasurements() {
+        return histogram.getTotalCount();
+    }
+
+    public double getTotal() {
+        return histogram.getSum() / 1000.0;
+    }
+
+    public boolean hasChilds() {
+        return false;
+    }
+
+    public Map getChilds() {
+        return Collections.emptyMap();
+    }
+}
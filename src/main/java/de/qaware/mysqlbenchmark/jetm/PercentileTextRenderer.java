@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Renders the latency percentiles of all measurement points as text table in the style of the JETM
+ * {@link etm.core.renderer.SimpleTextRenderer}. Times are in milliseconds like the JETM tables.
+ *
+ * @see de.qaware.mysqlbenchmark.metrics.LatencyHistogram#REPORTED_PERCENTILES
+ */
+public class PercentileTextRenderer implements MeasurementRenderer {
+
+    private final Writer writer;
+    private final Map<String, LatencyHistogram> histograms;
+    private final NumberFormat timeFormatter;
+
+    /**
+     * Constructs a PercentileTextRenderer using the default locale.
+     *
+     * @param aWriter    The writer.
+     * @param histograms histograms by measurement point
+     */
+    public PercentileTextRenderer(Writer aWriter, Map<String, LatencyHistogram> histograms) {
+        this.writer = aWriter;
+        this.histograms = histograms;
+        timeFormatter = NumberFormat.getNumberInstance(Locale.getDefault());
+        timeFormatter.setMaximumFractionDigits(3);
+        timeFormatter.setMinimumFractionDigits(3);
+        timeFormatter.setGroupingUsed(true);
+    }
+
+    /**
+     * Renders a table row for every measurement point with a histogram.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        List<String[]> rows = new ArrayList<String[]>();
+        String[] header = new String[LatencyHistogram.REPORTED_PERCENTILES.length + 3];
+        header[0] = "Measurement Point";
+        header[1] = "#";
+        for (int i = 0; i < LatencyHistogram.REPORTED_PERCENTILES.length; i++) {
+            header[i + 2] = LatencyHistogram.label(LatencyHistogram.REPORTED_PERCENTILES[i]);
+        }
+        header[header.length - 1] = "Max";
+
+        for (Object key : new TreeMap(points).keySet()) {
+            LatencyHistogram h = histograms.get(String.valueOf(key));
+            if (h == null) {
+                continue;
+            }
+            String[] row = new String[header.length];
+            row[0] = String.valueOf(key);
+            row[1] = String.valueOf(h.getTotalCount());
+            for (int i = 0; i < LatencyHistogram.REPORTED_PERCENTILES.length; i++) {
+                row[i + 2] = formatMillis(h.getValueAtPercentile(LatencyHistogram.REPORTED_PERCENTILES[i]));
+            }
+            row[row.length - 1] = formatMillis(h.getMax());
+            rows.add(row);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            TextTable.write(writer, header, rows);
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+
+    private String formatMillis(long micros) {
+        return timeFormatter.format(micros / 1000.0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.metrics.PhaseTimes;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Renders the latency phases of all measurement points as text table in the style of the JETM
+ * {@link etm.core.renderer.SimpleTextRenderer}: mean time per execution of each phase and the share of
+ * the wait for the response, which is network round trip plus server execution.
+ */
+public class PhaseTextRenderer implements MeasurementRenderer {
+
+    private static final String[] HEADERS = {"Prepare", "Send", "Wait", "Receive"};
+
+    private final Writer writer;
+    private final Map<String, PhaseTimes> phases;
+    private final NumberFormat formatter;
+
+    /**
+     * Constructs a PhaseTextRenderer using the default locale.
+     *
+     * @param aWriter The writer.
+     * @param phases  phase times by measurement point
+     */
+    public PhaseTextRenderer(Writer aWriter, Map<String, PhaseTimes> phases) {
+        this.writer = aWriter;
+        this.phases = phases;
+        formatter = NumberFormat.getNumberInstance(Locale.getDefault());
+        formatter.setMaximumFractionDigits(3);
+        formatter.setMinimumFractionDigits(3);
+        formatter.setGroupingUsed(true);
+    }
+
+    /**
+     * Renders a table row for every measurement point with phase times.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        String[] header = new String[HEADERS.length + 3];
+        header[0] = "Measurement Point (phases per execution in ms)";
+        header[1] = "#";
+        System.arraycopy(HEADERS, 0, header, 2, HEADERS.length);
+        header[header.length - 1] = "Wait share";
+
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Object key : new TreeMap(points).keySet()) {
+            PhaseTimes times = phases.get(String.valueOf(key));
+            if (times == null || times.getExecutions() == 0) {
+                continue;
+            }
+            String[] row = new String[header.length];
+            row[0] = String.valueOf(key);
+            row[1] = String.valueOf(times.getExecutions());
+            for (int i = 0; i < HEADERS.length; i++) {
+                row[i + 2] = formatter.format(times.mean(i) / 1000);
+            }
+            row[row.length - 1] = formatter.format(times.share(PhaseTimes.WAIT) * 100) + "%";
+            rows.add(row);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            TextTable.write(writer, header, rows);
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.metrics.ExecutionPlan;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Renders the captured execution plans of the measurement points as text table in the style of the
+ * JETM {@link etm.core.renderer.SimpleTextRenderer}: plan hash and the tables with access type and key.
+ */
+public class PlanTextRenderer implements MeasurementRenderer {
+
+    private final Writer writer;
+    private final Map<String, ExecutionPlan> plans;
+
+    /**
+     * Constructor
+     *
+     * @param aWriter The writer.
+     * @param plans   execution plans by measurement point
+     */
+    public PlanTextRenderer(Writer aWriter, Map<String, ExecutionPlan> plans) {
+        this.writer = aWriter;
+        this.plans = plans;
+    }
+
+    /**
+     * Renders a table row for every measurement point with an execution plan.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        String[] header = {"Measurement Point", "Plan hash", "Plan"};
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Object key : new TreeMap(points).keySet()) {
+            ExecutionPlan plan = plans.get(String.valueOf(key));
+            if (plan != null) {
+                rows.add(new String[]{String.valueOf(key), plan.getHash(), plan.getSummary()});
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            TextTable.write(writer, header, rows);
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+}
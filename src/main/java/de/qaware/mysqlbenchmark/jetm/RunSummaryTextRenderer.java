@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the end to end accounting of the replay as text tables in the style of the JETM
+ * {@link etm.core.renderer.SimpleTextRenderer}: one row with issued, completed, failed and in-flight
+ * statements, makespan and sustained throughput, followed by one row per statement type.
+ */
+public class RunSummaryTextRenderer implements MeasurementRenderer {
+
+    private final Writer writer;
+    private final RunSummary summary;
+    private final NumberFormat formatter;
+
+    /**
+     * Constructs a RunSummaryTextRenderer using the default locale.
+     *
+     * @param aWriter The writer.
+     * @param summary accounting of the replay
+     */
+    public RunSummaryTextRenderer(Writer aWriter, RunSummary summary) {
+        this.writer = aWriter;
+        this.summary = summary;
+        formatter = NumberFormat.getNumberInstance(Locale.getDefault());
+        formatter.setMaximumFractionDigits(3);
+        formatter.setMinimumFractionDigits(3);
+        formatter.setGroupingUsed(true);
+    }
+
+    /**
+     * Renders the run and the statement types, the points are not used.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        String[] runHeader = {"Run", "Issued", "Completed", "Failed", "In flight", "Not started",
+                "Makespan (ms)", "Throughput/s", "Drained"};
+        String[] run = {"Whole run",
+                String.valueOf(summary.getIssued()),
+                String.valueOf(summary.getCompleted()),
+                String.valueOf(summary.getFailed()),
+                String.valueOf(summary.getInFlight()),
+                String.valueOf(summary.getNotStarted()),
+                formatter.format(summary.getMakespanMillis()),
+                formatter.format(summary.getThroughput()),
+                summary.isDrained() ? "yes" : "no"};
+
+        String[] typeHeader = {"Statement type", "Completed", "Failed", "Throughput/s", "Share", "Average (ms)"};
+        List<String[]> types = new ArrayList<String[]>();
+        for (Map.Entry<String, DigestStats> entry : summary.getByType().entrySet()) {
+            LatencyHistogram h = entry.getValue().getLatency();
+            long count = h.getTotalCount();
+            types.add(new String[]{entry.getKey(),
+                    String.valueOf(count),
+                    String.valueOf(entry.getValue().getErrors()),
+                    formatter.format(summary.throughput(count)),
+                    summary.getCompleted() > 0 ? formatter.format(count * 100.0 / summary.getCompleted()) + "%" : "-",
+                    formatter.format(count > 0 ? h.getSum() / 1000.0 / count : 0)});
+        }
+
+        try {
+            TextTable.write(writer, runHeader, Collections.singletonList(run));
+            if (!types.isEmpty()) {
+                TextTable.write(writer, typeHeader, types);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+}
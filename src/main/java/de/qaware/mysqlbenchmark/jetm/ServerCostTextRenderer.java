@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import de.qaware.mysqlbenchmark.metrics.ServerCost;
+import etm.core.monitor.EtmException;
+import etm.core.renderer.MeasurementRenderer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Renders the server side cost of all measurement points per execution as text table in the style of the
+ * JETM {@link etm.core.renderer.SimpleTextRenderer}. Counters the source does not provide are shown as "-".
+ */
+public class ServerCostTextRenderer implements MeasurementRenderer {
+
+    private static final String[] HEADERS = {"Rows examined", "Rows sent", "Rows read", "Tmp tables",
+            "Tmp disk tables", "Sort merge passes", "Lock time", "Server time"};
+
+    private final Writer writer;
+    private final Map<String, ServerCost> costs;
+    private final NumberFormat formatter;
+
+    /**
+     * Constructs a ServerCostTextRenderer using the default locale.
+     *
+     * @param aWriter The writer.
+     * @param costs   server side cost by measurement point
+     */
+    public ServerCostTextRenderer(Writer aWriter, Map<String, ServerCost> costs) {
+        this.writer = aWriter;
+        this.costs = costs;
+        formatter = NumberFormat.getNumberInstance(Locale.getDefault());
+        formatter.setMaximumFractionDigits(3);
+        formatter.setMinimumFractionDigits(3);
+        formatter.setGroupingUsed(true);
+    }
+
+    /**
+     * Renders a table row for every measurement point with server side cost.
+     *
+     * @param points The points.
+     * @throws etm.core.monitor.EtmException Thrown to indicate that writing to the writer failed.
+     */
+    public void render(Map points) {
+        String[] header = new String[HEADERS.length + 2];
+        header[0] = "Measurement Point (server cost per execution, times in ms)";
+        header[1] = "#";
+        System.arraycopy(HEADERS, 0, header, 2, HEADERS.length);
+
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Object key : new TreeMap(points).keySet()) {
+            ServerCost cost = costs.get(String.valueOf(key));
+            if (cost == null) {
+                continue;
+            }
+            String[] row = new String[header.length];
+            row[0] = String.valueOf(key);
+            row[1] = String.valueOf(cost.getExecutions());
+            for (int i = 0; i < HEADERS.length; i++) {
+                double average = cost.average(i);
+                if (i == ServerCost.LOCK_TIME || i == ServerCost.SERVER_TIME) {
+                    average /= 1000;
+                }
+                row[i + 2] = Double.isNaN(average) ? "-" : formatter.format(average);
+            }
+            rows.add(row);
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        try {
+            TextTable.write(writer, header, rows);
+            writer.flush();
+        } catch (IOException e) {
+            throw new EtmException("Unable to write to writer: " + e);
+        }
+    }
+}
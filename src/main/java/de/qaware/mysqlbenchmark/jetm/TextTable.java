@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.jetm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Text table in the style of the JETM {@link etm.core.renderer.SimpleTextRenderer}: centered header,
+ * names left aligned, numbers right aligned.
+ */
+public final class TextTable {
+
+    private static final String SEPARATOR = System.getProperty("line.separator");
+
+    private TextTable() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Write a table
+     *
+     * @param writer writer to write to
+     * @param header column headers
+     * @param rows   rows with as many values as headers
+     * @throws IOException if writing fails
+     */
+    public static void write(Writer writer, String[] header, List<String[]> rows) throws IOException {
+        int[] widths = new int[header.length];
+        for (int i = 0; i < header.length; i++) {
+            widths[i] = header[i].length();
+            for (String[] row : rows) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+
+        writeSeparator(writer, widths);
+        writeRow(writer, header, widths, true);
+        writeSeparator(writer, widths);
+        for (String[] row : rows) {
+            writeRow(writer, row, widths, false);
+        }
+        writeSeparator(writer, widths);
+    }
+
+    private static void writeSeparator(Writer writer, int[] widths) throws IOException {
+        writer.write('|');
+        for (int width : widths) {
+            for (int i = 0; i < width + 2; i++) {
+                writer.write('-');
+            }
+            writer.write('|');
+        }
+        writer.write(SEPARATOR);
+    }
+
+    private static void writeRow(Writer writer, String[] values, int[] widths, boolean centered) throws IOException {
+        writer.write('|');
+        for (int i = 0; i < values.length; i++) {
+            int padding = widths[i] - values[i].length();
+            int before;
+            if (centered) {
+                before = (padding + 1) / 2;
+            } else if (i == 0) {
+                before = 0;
+            } else {
+                before = padding;
+            }
+            writer.write(' ');
+            writeSpaces(writer, before);
+            writer.write(values[i]);
+            writeSpaces(writer, padding - before);
+            writer.write(' ');
+            writer.write('|');
+        }
+        writer.write(SEPARATOR);
+    }
+
+    private static void writeSpaces(Writer writer, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            writer.write(' ');
+        }
+    }
+}
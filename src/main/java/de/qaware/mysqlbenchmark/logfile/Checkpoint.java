@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import de.qaware.mysqlbenchmark.func.SQLFunc;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.HistogramLog;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * State of a replay at a point in the log, so an interrupted replay can be resumed there: the byte offset of
+ * the next line to parse, the open sessions with their database, transaction state and statements not
+ * executed yet, the statement counters and the measurements of all statements before the offset.
+ * <p/>
+ * A checkpoint is written as {@link HistogramLog} with the state as properties, so it can also be compared
+ * like the histogram log of a finished run. Only latencies and errors are kept, server side cost and latency
+ * phases of the statements before the checkpoint are lost on resume.
+ */
+public class Checkpoint {
+
+    private static final String PREFIX = "checkpoint:";
+    private static final String LOG = PREFIX + "log";
+    private static final String OFFSET = PREFIX + "offset";
+    private static final String ISSUED = PREFIX + "issued";
+    private static final String COMPLETED = PREFIX + "completed";
+    private static final String FAILED = PREFIX + "failed";
+    private static final String MAKESPAN = PREFIX + "makespan_ns";
+    private static final String ERRORS_PREFIX = "errors:";
+    private static final String SAMPLE_PREFIX = "sample:";
+    private static final String SESSION_PREFIX = "session:";
+
+    private final String logFile;
+    private final long offset;
+    private final long issued;
+    private final long completed;
+    private final long failed;
+    private final long makespanNanos;
+    private final List<Session> sessions;
+    private final Map<String, DigestStats> stats;
+    private final Map<String, String> samples;
+
+    /**
+     * Constructor
+     *
+     * @param logFile       log file the replay reads
+     * @param offset        byte offset of the next line to parse
+     * @param issued        statements handed to a connection so far
+     * @param completed     statements executed so far, failed ones included
+     * @param failed        statements failed so far
+     * @param makespanNanos time from the first issued to the last completed statement so far
+     * @param sessions      sessions open or with statements not executed yet
+     * @param stats         measurements by digest text
+     * @param samples       first statement by digest text, see {@link DigestRegistry#getSample(int)}
+     */
+    public Checkpoint(String logFile, long offset, long issued, long completed, long failed, long makespanNanos,
+                      List<Session> sessions, Map<String, DigestStats> stats, Map<String, String> samples) {
+        this.logFile = logFile;
+        this.offset = offset;
+        this.issued = issued;
+        this.completed = completed;
+        this.failed = failed;
+        this.makespanNanos = makespanNanos;
+        this.sessions = sessions;
+        this.stats = stats;
+        this.samples = samples;
+    }
+
+    public String getLogFile() {
+        return logFile;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getIssued() {
+        return issued;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getMakespanNanos() {
+        return makespanNanos;
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Measurements of the statements before the checkpoint
+     *
+     * @return stats by digest text
+     */
+    public Map<String, DigestStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * First statement of a digest
+     *
+     * @param text digest text
+     * @return statement or the digest text if unknown
+     */
+    public String getSample(String text) {
+        return samples.containsKey(text) ? samples.get(text) : text;
+    }
+
+    /**
+     * Write the checkpoint
+     *
+     * @param writer writer to write to
+     * @throws IOException if writing fails
+     */
+    public void write(Writer writer) throws IOException {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put(LOG, logFile);
+        properties.put(OFFSET, String.valueOf(offset));
+        properties.put(ISSUED, String.valueOf(issued));
+        properties.put(COMPLETED, String.valueOf(completed));
+        properties.put(FAILED, String.valueOf(failed));
+        properties.put(MAKESPAN, String.valueOf(makespanNanos));
+        properties.put(HistogramLog.ELAPSED_MILLIS, String.valueOf(makespanNanos / 1000000));
+        Map<String, LatencyHistogram> histograms = new HashMap<String, LatencyHistogram>();
+        for (Map.Entry<String, DigestStats> entry : stats.entrySet()) {
+            String point = "Query: " + entry.getKey();
+            histograms.put(point, entry.getValue().getLatency());
+            properties.put(ERRORS_PREFIX + point, String.valueOf(entry.getValue().getErrors()));
+            if (samples.containsKey(entry.getKey())) {
+                properties.put(SAMPLE_PREFIX + point, samples.get(entry.getKey()));
+            }
+        }
+        for (Session session : sessions) {
+            String key = SESSION_PREFIX + session.id + ":";
+            properties.put(key + "user", session.user == null ? "" : session.user);
+            if (session.database != null) {
+                properties.put(key + "database", session.database);
+            }
+            properties.put(key + "transaction", String.valueOf(session.inTransaction));
+            properties.put(key + "quit", String.valueOf(session.quit));
+            for (int i = 0; i < session.pending.size(); i++) {
+                Query query = session.pending.get(i);
+                properties.put(key + "pending:" + i, query.getFunc().name() + "\t" + query.getSql());
+            }
+        }
+        HistogramLog.write(histograms, properties, writer);
+    }
+
+    /**
+     * Read a checkpoint written by {@link #write(java.io.Writer)}
+     *
+     * @param reader reader to read from
+     * @return checkpoint
+     * @throws IOException if reading fails or the content is no checkpoint
+     */
+    public static Checkpoint read(Reader reader) throws IOException {
+        Map<String, String> properties = new TreeMap<String, String>();
+        Map<String, LatencyHistogram> histograms = HistogramLog.read(reader, properties);
+        if (!properties.containsKey(OFFSET)) {
+            throw new IOException("Not a checkpoint, the offset is missing");
+        }
+
+        Map<String, DigestStats> stats = new HashMap<String, DigestStats>();
+        Map<String, String> samples = new HashMap<String, String>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String point = entry.getKey();
+            String text = point.startsWith("Query: ") ? point.substring("Query: ".length()) : point;
+            String errors = properties.get(ERRORS_PREFIX + point);
+            stats.put(text, new DigestStats(entry.getValue(), errors == null ? 0 : Long.parseLong(errors)));
+            if (properties.containsKey(SAMPLE_PREFIX + point)) {
+                samples.put(text, properties.get(SAMPLE_PREFIX + point));
+            }
+        }
+
+        Map<String, Session> sessions = new HashMap<String, Session>();
+        Map<String, Map<Integer, Query>> pending = new HashMap<String, Map<Integer, Query>>();
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            if (!property.getKey().startsWith(SESSION_PREFIX)) {
+                continue;
+            }
+            String[] key = property.getKey().substring(SESSION_PREFIX.length()).split(":", 3);
+            if (key.length < 2) {
+                continue;
+            }
+            Session session = sessions.get(key[0]);
+            if (session == null) {
+                session = new Session(key[0]);
+                sessions.put(key[0], session);
+                pending.put(key[0], new TreeMap<Integer, Query>());
+            }
+            String value = property.getValue();
+            if (key[1].equals("user")) {
+                session.user = value;
+            } else if (key[1].equals("database")) {
+                session.database = value;
+            } else if (key[1].equals("transaction")) {
+                session.inTransaction = Boolean.parseBoolean(value);
+            } else if (key[1].equals("quit")) {
+                session.quit = Boolean.parseBoolean(value);
+            } else if (key[1].equals("pending") && key.length == 3) {
+                int tab = value.indexOf('\t');
+                try {
+                    pending.get(key[0]).put(Integer.parseInt(key[2]),
+                            new Query(SQLFunc.valueOf(value.substring(0, tab)), value.substring(tab + 1)));
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid pending statement of session " + key[0] + ": " + value);
+                }
+            }
+        }
+        List<Session> sorted = new ArrayList<Session>(sessions.values());
+        for (Session session : sorted) {
+            session.pending.addAll(pending.get(session.id).values());
+        }
+        // the connection ids of the log increase, so this restores the order in which the sessions connected
+        Collections.sort(sorted, new Comparator<Session>() {
+            public int compare(Session a, Session b) {
+                return a.id.length() != b.id.length() ? a.id.length() - b.id.length() : a.id.compareTo(b.id);
+            }
+        });
+
+        return new Checkpoint(properties.get(LOG), Long.parseLong(properties.get(OFFSET)),
+                parse(properties, ISSUED), parse(properties, COMPLETED), parse(properties, FAILED),
+                parse(properties, MAKESPAN), sorted, stats, samples);
+    }
+
+    private static long parse(Map<String, String> properties, String key) throws IOException {
+        try {
+            return properties.containsKey(key) ? Long.parseLong(properties.get(key)) : 0;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint property " + key + ": " + properties.get(key));
+        }
+    }
+
+    /**
+     * A logical session of the log: a connection id with its state at the checkpoint
+     */
+    public static class Session {
+        private final String id;
+        private String user;
+        private String database;
+        private boolean inTransaction;
+        private boolean quit;
+        private final List<Query> pending = new ArrayList<Query>();
+
+        /**
+         * Constructor
+         *
+         * @param id connection id in the log
+         */
+        Session(String id) {
+            this.id = id;
+        }
+
+        /**
+         * Constructor
+         *
+         * @param id            connection id in the log
+         * @param user          user of the connect line in the log
+         * @param database      database selected by the session, null if none yet
+         * @param inTransaction true if the session was inside a transaction in the log
+         * @param quit          true if the session quit in the log and only has statements left to execute
+         * @param pending       statements issued to the session and not executed yet
+         */
+        public Session(String id, String user, String database, boolean inTransaction, boolean quit,
+                       List<Query> pending) {
+            this.id = id;
+            this.user = user;
+            this.database = database;
+            this.inTransaction = inTransaction;
+            this.quit = quit;
+            this.pending.addAll(pending);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        public boolean isInTransaction() {
+            return inTransaction;
+        }
+
+        public boolean isQuit() {
+            return quit;
+        }
+
+        public List<Query> getPending() {
+            return pending;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import de.qaware.mysqlbenchmark.metrics.RecorderPool;
+import de.qaware.mysqlbenchmark.metrics.SpaceSaving;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assigns dense ids to statement digests, so measurements can be recorded in arrays indexed by digest id.
+ * Ids start at 0 and are never reused. The first statement of every digest is kept as sample, e.g. for
+ * EXPLAIN. Thread safe.
+ * <p/>
+ * With a limit on the digests, only the heaviest digests by count and by total time are measured separately,
+ * all other statements get the id of the {@link #OTHER} bucket. The registry estimates the count of every
+ * digest with a {@link SpaceSaving} summary. A digest replaces the weakest measured digest by count once its
+ * guaranteed count exceeds the estimated count of the weakest one, so digests of similar weight do not take
+ * turns. The execution time is summarized per connection thread, see {@link RecorderPool#mergeTimes()}; every
+ * {@link #RANKING_INTERVAL} statements the registry merges these summaries and also measures the heaviest
+ * digests by time, so a rare but expensive digest is not lost in the other bucket. A replaced digest keeps
+ * the measurements it collected so far, later executions count towards the other bucket until it is heavy
+ * enough again.
+ */
+public class DigestRegistry {
+
+    /**
+     * Text of the bucket of the statements which are not measured separately
+     */
+    public static final String OTHER = "(other digests)";
+
+    /**
+     * Counters of the summaries per measured digest
+     */
+    private static final int COUNTERS_PER_DIGEST = 4;
+    /**
+     * Ids assigned at most per measured digest, including digests replaced by heavier ones
+     */
+    private static final int IDS_PER_DIGEST = 4;
+    /**
+     * Statements registered between two rankings by time
+     */
+    public static final int RANKING_INTERVAL = 1000;
+
+    private final boolean normalize;
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<String> texts = new ArrayList<String>();
+    private final List<String> samples = new ArrayList<String>();
+
+    private final int limit;
+    private final SpaceSaving counts;
+    private final BitSet measured = new BitSet();
+    private int measuredCount;
+    /**
+     * Estimated count of the weakest measured digest when it was last looked up. Counts only grow, so it
+     * never exceeds the current one.
+     */
+    private long weakestCount;
+    /**
+     * Source of the summary of the execution time by digest, null if only ranked by count
+     */
+    private RecorderPool times;
+    /**
+     * Texts of the heaviest digests by time at the last ranking
+     */
+    private Set<String> heavyByTime = Collections.emptySet();
+    private int sinceRanking;
+
+    /**
+     * Constructor
+     *
+     * @param normalize if true statements are normalized with {@link StatementDigest}, else every distinct
+     *                  statement text gets an id of its own
+     */
+    public DigestRegistry(boolean normalize) {
+        this(normalize, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param normalize if true statements are normalized with {@link StatementDigest}, else every distinct
+     *                  statement text gets an id of its own
+     * @param limit     number of digests measured separately, 0 to measure all
+     */
+    public DigestRegistry(boolean normalize, int limit) {
+        this.normalize = normalize;
+        this.limit = limit;
+        if (limit > 0) {
+            counts = new SpaceSaving(limit * COUNTERS_PER_DIGEST);
+            texts.add(OTHER);
+            samples.add(null);
+        } else {
+            counts = null;
+        }
+    }
+
+    /**
+     * Get the digest id of a statement, assigning a new id on first sight
+     *
+     * @param sql the statement
+     * @return digest id, the id of the other bucket if the digests are limited and this one is not measured
+     */
+    public int register(String sql) {
+        String text = textOf(sql);
+        synchronized (this) {
+            Integer id = ids.get(text);
+            if (counts == null) {
+                return id != null ? id : add(text, sql);
+            }
+            counts.offer(text, 1);
+            if (times != null && ++sinceRanking >= RANKING_INTERVAL) {
+                rankByTime();
+            }
+            if (id != null && measured.get(id)) {
+                return id;
+            }
+            if (heavyByTime.contains(text) && (id != null || texts.size() < 1 + 2 * limit * IDS_PER_DIGEST)) {
+                return id != null ? id : add(text, sql);
+            }
+            if (measuredCount < limit || promote(text, id != null)) {
+                id = id != null ? id : add(text, sql);
+                measured.set(id);
+                measuredCount++;
+                return id;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Stop measuring the weakest digest if the given one is heavier
+     *
+     * @param text  digest text
+     * @param known true if the digest was measured before and has an id
+     * @return true if the digest is to be measured instead
+     */
+    private boolean promote(String text, boolean known) {
+        long guaranteed = counts.getGuaranteedWeight(text);
+        if (guaranteed <= weakestCount || (!known && texts.size() >= 1 + 2 * limit * IDS_PER_DIGEST)) {
+            return false;
+        }
+        int weakest = -1;
+        weakestCount = Long.MAX_VALUE;
+        for (int id = measured.nextSetBit(0); id >= 0; id = measured.nextSetBit(id + 1)) {
+            long count = counts.getWeight(texts.get(id));
+            if (count < weakestCount) {
+                weakest = id;
+                weakestCount = count;
+            }
+        }
+        if (guaranteed <= weakestCount) {
+            return false;
+        }
+        measured.clear(weakest);
+        measuredCount--;
+        // the weakest one is not known yet, it is looked up again on the next candidate
+        weakestCount = 0;
+        return true;
+    }
+
+    /**
+     * Measure the heaviest digests by total time as well, from the merged summaries of the connection threads
+     */
+    private void rankByTime() {
+        sinceRanking = 0;
+        Set<String> heavy = new HashSet<String>();
+        for (SpaceSaving.Estimate estimate : times.mergeTimes().top(limit)) {
+            heavy.add(estimate.getKey());
+        }
+        heavyByTime = heavy;
+    }
+
+    /**
+     * Summarize the execution time by digest with the recorders of the connection threads and measure the
+     * heaviest digests by time as well, if the digests are limited
+     *
+     * @param recorders recorders created with {@link #getTimeCounters()} counters
+     */
+    public synchronized void setTimeSource(RecorderPool recorders) {
+        this.times = counts != null ? recorders : null;
+    }
+
+    /**
+     * Counters of the summaries of the execution time by digest
+     *
+     * @return counters, 0 if the digests are not limited and the times are measured exactly
+     */
+    public int getTimeCounters() {
+        return limit > 0 ? limit * COUNTERS_PER_DIGEST : 0;
+    }
+
+    /**
+     * Digest text of a statement, without registering it. Does not lock, e.g. for the connection threads.
+     *
+     * @param sql the statement
+     * @return normalized statement, or the statement itself if not normalized
+     */
+    public String textOf(String sql) {
+        return normalize ? StatementDigest.normalize(sql) : sql;
+    }
+
+    private int add(String text, String sample) {
+        int id = texts.size();
+        ids.put(text, id);
+        texts.add(text);
+        samples.add(sample);
+        return id;
+    }
+
+    /**
+     * Get the digest id of a digest text from an earlier run, e.g. a {@link Checkpoint}, assigning a new id
+     * on first sight. The text is not normalized again.
+     *
+     * @param text   digest text
+     * @param sample first statement of the digest
+     * @return digest id, the id of the other bucket if the digests are limited and this one is not measured
+     */
+    public synchronized int restore(String text, String sample) {
+        Integer id = ids.get(text);
+        if (counts == null) {
+            return id != null ? id : add(text, sample);
+        }
+        if (OTHER.equals(text)) {
+            return 0;
+        }
+        if (id != null && measured.get(id)) {
+            return id;
+        }
+        if (measuredCount < limit) {
+            id = id != null ? id : add(text, sample);
+            measured.set(id);
+            measuredCount++;
+            return id;
+        }
+        return 0;
+    }
+
+    /**
+     * Check if statements are normalized, i.e. statements which differ in their literals only share a digest
+     *
+     * @return true if normalized
+     */
+    public boolean isNormalized() {
+        return normalize;
+    }
+
+    /**
+     * Check if the digests are limited, see {@link #DigestRegistry(boolean, int)}
+     *
+     * @return true if only the heaviest digests are measured separately
+     */
+    public boolean isLimited() {
+        return counts != null;
+    }
+
+    /**
+     * Number of digests measured separately
+     *
+     * @return digest count, 0 if not limited
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Check if a digest id is the bucket of the statements which are not measured separately
+     *
+     * @param id digest id
+     * @return true for the other bucket
+     */
+    public boolean isOther(int id) {
+        return counts != null && id == 0;
+    }
+
+    /**
+     * Check if a digest is measured separately at the moment
+     *
+     * @param text digest text
+     * @return true if measured, always true for known digests if the digests are not limited
+     */
+    public synchronized boolean isMeasured(String text) {
+        Integer id = ids.get(text);
+        return id != null && (counts == null || measured.get(id) || heavyByTime.contains(text));
+    }
+
+    /**
+     * The heaviest digests by count, if the digests are limited
+     *
+     * @param n number of digests
+     * @return estimated counts, empty if not limited
+     */
+    public synchronized List<SpaceSaving.Estimate> getTopByCount(int n) {
+        return counts == null ? new ArrayList<SpaceSaving.Estimate>() : counts.top(n);
+    }
+
+    /**
+     * Number of statements registered, if the digests are limited
+     *
+     * @return count
+     */
+    public synchronized long getTotalCount() {
+        return counts == null ? 0 : counts.getTotal();
+    }
+
+    /**
+     * Text of a digest
+     *
+     * @param id digest id
+     * @return normalized statement
+     */
+    public synchronized String getText(int id) {
+        return texts.get(id);
+    }
+
+    /**
+     * First statement registered for a digest
+     *
+     * @param id digest id
+     * @return statement with literals, null for the other bucket
+     */
+    public synchronized String getSample(int id) {
+        return samples.get(id);
+    }
+
+    /**
+     * Number of registered digests. All ids are below this number.
+     *
+     * @return digest count
+     */
+    public synchronized int size() {
+        return texts.size();
+    }
+}
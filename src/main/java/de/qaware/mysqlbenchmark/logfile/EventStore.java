@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import de.qaware.mysqlbenchmark.func.SQLFunc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The session events of a whole log in memory, so the same workload can be replayed several times, e.g. at
+ * different concurrency levels, without parsing the log again. The statements keep the digest ids of the
+ * registry of the store, executors replaying the store have to share it.
+ * <p/>
+ * The text of the statements is kept in a {@link StatementArena} outside the heap, the store itself only holds
+ * a handle, digest id and function per statement, the log time per event and one instance of every
+ * connection id. Replayed statements are decoded when they are executed.
+ */
+public class EventStore implements SessionEventHandler {
+
+    private static final byte CONNECT = 0;
+    private static final byte INIT_DB = 1;
+    private static final byte BEGIN = 2;
+    private static final byte END = 3;
+    private static final byte QUERY = 4;
+    private static final byte QUIT = 5;
+
+    private static final SQLFunc[] FUNCS = SQLFunc.values();
+
+    private final DigestRegistry digests;
+    private final StatementArena arena = new StatementArena();
+    private byte[] types = new byte[1024];
+    private final List<String> connectionIDs = new ArrayList<String>();
+    private final Map<String, String> distinctIDs = new HashMap<String, String>();
+    /**
+     * User or database of the event, null for other events
+     */
+    private final List<String> values = new ArrayList<String>();
+    /**
+     * Handle, digest id and function of the statement of a query event
+     */
+    private long[] handles = new long[1024];
+    private int[] digestIds = new int[1024];
+    private byte[] funcs = new byte[1024];
+    /**
+     * Time of the event in the log, in milliseconds since the first timestamp of the log
+     */
+    private int[] times = new int[1024];
+    private LogSource source;
+    private long firstLogTime = -1;
+    private IOException failure;
+
+    /**
+     * Constructor for an empty store
+     *
+     * @param digests registry to assign the digest ids of the statements
+     */
+    public EventStore(DigestRegistry digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Parse a whole log into a store
+     *
+     * @param logs             log files, merged if several, see {@link LogMerger#open}
+     * @param restrictedID     only keep the events of this connection id, all if null or empty
+     * @param ignorePrefixes   ignore statements which start with these prefixes
+     * @param digests          registry to assign the digest ids of the statements
+     * @return store with all events of the log
+     * @throws IOException if the log can not be read
+     */
+    public static EventStore load(List<String> logs, String restrictedID, List<String> ignorePrefixes,
+                                  DigestRegistry digests) throws IOException {
+        EventStore store = new EventStore(digests);
+        LogSource parser = LogMerger.open(store, logs, restrictedID, ignorePrefixes);
+        store.source = parser;
+        try {
+            while (parser.parseLogFile(Integer.MAX_VALUE)) {
+                // parse until the end of the log
+            }
+        } finally {
+            store.source = null;
+            parser.close();
+        }
+        if (store.failure != null) {
+            throw store.failure;
+        }
+        return store;
+    }
+
+    private int add(byte type, String connectionID, String value) {
+        int index = connectionIDs.size();
+        if (index == types.length) {
+            int length = types.length * 2;
+            byte[] grownTypes = new byte[length];
+            long[] grownHandles = new long[length];
+            int[] grownDigestIds = new int[length];
+            byte[] grownFuncs = new byte[length];
+            int[] grownTimes = new int[length];
+            System.arraycopy(types, 0, grownTypes, 0, index);
+            System.arraycopy(handles, 0, grownHandles, 0, index);
+            System.arraycopy(digestIds, 0, grownDigestIds, 0, index);
+            System.arraycopy(funcs, 0, grownFuncs, 0, index);
+            System.arraycopy(times, 0, grownTimes, 0, index);
+            types = grownTypes;
+            handles = grownHandles;
+            digestIds = grownDigestIds;
+            funcs = grownFuncs;
+            times = grownTimes;
+        }
+        types[index] = type;
+        times[index] = logMillis();
+        // the parser creates a new string for every line
+        String distinctID = distinctIDs.get(connectionID);
+        if (distinctID == null) {
+            distinctID = connectionID;
+            distinctIDs.put(distinctID, distinctID);
+        }
+        connectionIDs.add(distinctID);
+        values.add(value);
+        return index;
+    }
+
+    /**
+     * Time of the current event of the parser, relative to the first timestamp of the log. Events before the
+     * first timestamp have time 0.
+     */
+    private int logMillis() {
+        long time = source == null ? -1 : source.getLogTime();
+        if (time < 0) {
+            return 0;
+        }
+        if (firstLogTime < 0) {
+            firstLogTime = time;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, time - firstLogTime));
+    }
+
+    public void connect(String connectionID, String user) {
+        add(CONNECT, connectionID, user);
+    }
+
+    public void initDb(String connectionID, String database) {
+        add(INIT_DB, connectionID, database);
+    }
+
+    public void transaction(String connectionID, boolean open) {
+        add(open ? BEGIN : END, connectionID, null);
+    }
+
+    public void query(String connectionID, Query query) {
+        if (failure != null) {
+            return;
+        }
+        long handle;
+        try {
+            handle = arena.add(query.getSql());
+        } catch (IOException e) {
+            failure = e;
+            return;
+        }
+        int index = add(QUERY, connectionID, null);
+        handles[index] = handle;
+        digestIds[index] = query.getDigestId();
+        funcs[index] = (byte) query.getFunc().ordinal();
+    }
+
+    public void quit(String connectionID) {
+        add(QUIT, connectionID, null);
+    }
+
+    public DigestRegistry getDigests() {
+        return digests;
+    }
+
+    /**
+     * Arena holding the statements of the store
+     *
+     * @return arena
+     */
+    public StatementArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Time of an event in the log. The general log writes timestamps to the second, or to the microsecond
+     * since MySQL 5.7.
+     *
+     * @param index event index
+     * @return milliseconds since the first timestamp of the log, up to about 24 days
+     */
+    public int getLogMillis(int index) {
+        return times[index];
+    }
+
+    /**
+     * Check if an event is a statement
+     *
+     * @param index event index
+     * @return true for a statement
+     */
+    public boolean isQuery(int index) {
+        return types[index] == QUERY;
+    }
+
+    /**
+     * Digest of a statement
+     *
+     * @param index event index of a statement, see {@link #isQuery(int)}
+     * @return digest id
+     */
+    public int getDigestId(int index) {
+        return digestIds[index];
+    }
+
+    /**
+     * Number of events in the store
+     *
+     * @return event count
+     */
+    public int size() {
+        return connectionIDs.size();
+    }
+
+    /**
+     * Hand events to a handler in the order of the log
+     *
+     * @param handler handler sharing the digest registry of this store
+     * @param from    index of the first event
+     * @param count   maximum number of events
+     * @return index of the next event, {@link #size()} at the end
+     */
+    public int replay(SessionEventHandler handler, int from, int count) {
+        int to = (int) Math.min(size(), (long) from + count);
+        for (int i = from; i < to; i++) {
+            String connectionID = connectionIDs.get(i);
+            switch (types[i]) {
+                case CONNECT:
+                    handler.connect(connectionID, values.get(i));
+                    break;
+                case INIT_DB:
+                    handler.initDb(connectionID, values.get(i));
+                    break;
+                case BEGIN:
+                    handler.transaction(connectionID, true);
+                    break;
+                case END:
+                    handler.transaction(connectionID, false);
+                    break;
+                case QUERY:
+                    handler.query(connectionID, new Query(FUNCS[funcs[i]], arena, handles[i], digestIds[i]));
+                    break;
+                default:
+                    handler.quit(connectionID);
+            }
+        }
+        return to;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the logs of several sources, e.g. several servers behind a proxy, into one stream of session events
+ * ordered by the timestamps of the logs. Every source is read by its own {@link QueryParser} which only parses
+ * ahead by one event, the source with the earliest next event is taken from a heap (k-way merge), so no log is
+ * held in memory.
+ * <p/>
+ * A source may be a sequence of rotated files, e.g. {@code general.log.2+general.log.1+general.log}, which are
+ * read one after the other. The connection ids of the sources are prefixed by the number of the source,
+ * {@code 2/101} is connection 101 of the second source, so sessions of different servers do not collide.
+ * Lines without a timestamp have the time of the previous line of their source, as the general log only
+ * writes a timestamp when the second changes. Events of the same time keep the order of the sources.
+ */
+public class LogMerger implements LogSource {
+
+    /**
+     * Separator of the rotated files of a source
+     */
+    public static final String ROTATION_SEPARATOR = "+";
+
+    private static final byte CONNECT = 0;
+    private static final byte INIT_DB = 1;
+    private static final byte BEGIN = 2;
+    private static final byte END = 3;
+    private static final byte QUERY = 4;
+    private static final byte QUIT = 5;
+
+    private final SessionEventHandler handler;
+    private final String restrictedID;
+    private final List<String> ignorePrefixes;
+    private final List<Source> sources = new ArrayList<Source>();
+    private final PriorityQueue<Source> heap = new PriorityQueue<Source>();
+    private int count;
+    private long logTime = -1;
+
+    /**
+     * Constructor, opens the first file of every source
+     *
+     * @param handler        handler of the merged events
+     * @param logs           sources, each a file name or rotated file names joined by {@link #ROTATION_SEPARATOR}
+     * @param restrictedID   only merge the events of this connection id of each source, all if null or empty
+     * @param ignorePrefixes ignore statements which start with these prefixes
+     * @throws IOException if a log can not be read
+     */
+    public LogMerger(SessionEventHandler handler, List<String> logs, String restrictedID, List<String> ignorePrefixes)
+            throws IOException {
+        this.handler = handler;
+        this.restrictedID = restrictedID;
+        this.ignorePrefixes = ignorePrefixes;
+        try {
+            for (String log : logs) {
+                Source source = new Source(sources.size() + 1, files(log));
+                sources.add(source);
+                if (source.fill()) {
+                    heap.add(source);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open the logs: a single file is read by a {@link QueryParser} directly, so its connection ids are kept
+     * and it can be checkpointed
+     *
+     * @param handler        handler of the events
+     * @param logs           sources, each a file name or rotated file names joined by {@link #ROTATION_SEPARATOR}
+     * @param restrictedID   only parse the events of this connection id, all if null or empty
+     * @param ignorePrefixes ignore statements which start with these prefixes
+     * @return source of the events
+     * @throws IOException if a log can not be read
+     */
+    public static LogSource open(SessionEventHandler handler, List<String> logs, String restrictedID,
+                                 List<String> ignorePrefixes) throws IOException {
+        if (isSingleFile(logs)) {
+            return new QueryParser(handler, logs.get(0), restrictedID, ignorePrefixes);
+        }
+        return new LogMerger(handler, logs, restrictedID, ignorePrefixes);
+    }
+
+    /**
+     * Check if logs are a single file
+     *
+     * @param logs sources
+     * @return true for one source of one file
+     */
+    public static boolean isSingleFile(List<String> logs) {
+        return logs.size() == 1 && !logs.get(0).contains(ROTATION_SEPARATOR);
+    }
+
+    private static List<String> files(String log) {
+        List<String> files = new ArrayList<String>();
+        for (String file : Arrays.asList(log.split("\\" + ROTATION_SEPARATOR))) {
+            if (file.trim().length() > 0) {
+                files.add(file.trim());
+            }
+        }
+        return files;
+    }
+
+    public boolean parseLogFile(int batch) throws IOException {
+        count = 0;
+        while (count < batch && !heap.isEmpty()) {
+            Source source = heap.poll();
+            source.emit();
+            count++;
+            if (source.fill()) {
+                heap.add(source);
+            }
+        }
+        return !heap.isEmpty();
+    }
+
+    /**
+     * Number of events merged by the last batch
+     *
+     * @return event count
+     */
+    public int size() {
+        return count;
+    }
+
+    public long getLogTime() {
+        return logTime;
+    }
+
+    /**
+     * Offsets are only defined for a single log file, so merged logs can not be checkpointed
+     *
+     * @return always -1
+     */
+    public long getOffset() {
+        return -1;
+    }
+
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Source source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Event of a source parsed ahead
+     */
+    private static class Event {
+        private final byte type;
+        private final String connectionID;
+        private final Object value;
+        private final long time;
+
+        Event(byte type, String connectionID, Object value, long time) {
+            this.type = type;
+            this.connectionID = connectionID;
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * One source with the parser of its current file, ordered by the time of its next event
+     */
+    private class Source implements SessionEventHandler, Comparable<Source> {
+        private final int number;
+        private final String prefix;
+        private final List<String> files;
+        private final Deque<Event> events = new ArrayDeque<Event>();
+        private int file = -1;
+        private QueryParser parser;
+        private long time = -1;
+
+        Source(int number, List<String> files) throws IOException {
+            if (files.isEmpty()) {
+                throw new IOException("No log file in source " + number);
+            }
+            this.number = number;
+            this.prefix = number + "/";
+            this.files = files;
+            next();
+        }
+
+        private boolean next() throws IOException {
+            if (parser != null) {
+                parser.close();
+                parser = null;
+            }
+            if (++file >= files.size()) {
+                return false;
+            }
+            parser = new QueryParser(this, files.get(file), restrictedID, ignorePrefixes);
+            return true;
+        }
+
+        /**
+         * Parse until the next event, continuing with the next rotated file at the end of a file
+         *
+         * @return false if the source has no more events
+         */
+        boolean fill() throws IOException {
+            while (events.isEmpty()) {
+                if (parser == null) {
+                    return false;
+                }
+                if (!parser.parseLine(restrictedID, ignorePrefixes) && !next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Hand the next event to the handler of the merged stream
+         */
+        void emit() {
+            Event event = events.poll();
+            logTime = event.time;
+            switch (event.type) {
+                case CONNECT:
+                    handler.connect(event.connectionID, (String) event.value);
+                    break;
+                case INIT_DB:
+                    handler.initDb(event.connectionID, (String) event.value);
+                    break;
+                case BEGIN:
+                    handler.transaction(event.connectionID, true);
+                    break;
+                case END:
+                    handler.transaction(event.connectionID, false);
+                    break;
+                case QUERY:
+                    handler.query(event.connectionID, (Query) event.value);
+                    break;
+                default:
+                    handler.quit(event.connectionID);
+            }
+        }
+
+        void close() throws IOException {
+            if (parser != null) {
+                parser.close();
+                parser = null;
+            }
+        }
+
+        private void add(byte type, String connectionID, Object value) {
+            // a rotated file starts without a timestamp, the time of a source never goes back
+            time = Math.max(time, parser.getLogTime());
+            events.add(new Event(type, prefix + connectionID, value, time));
+        }
+
+        public void connect(String connectionID, String user) {
+            add(CONNECT, connectionID, user);
+        }
+
+        public void initDb(String connectionID, String database) {
+            add(INIT_DB, connectionID, database);
+        }
+
+        public void transaction(String connectionID, boolean open) {
+            add(open ? BEGIN : END, connectionID, null);
+        }
+
+        public void query(String connectionID, Query query) {
+            add(QUERY, connectionID, query);
+        }
+
+        public void quit(String connectionID) {
+            add(QUIT, connectionID, null);
+        }
+
+        public DigestRegistry getDigests() {
+            return handler.getDigests();
+        }
+
+        public int compareTo(Source other) {
+            long a = events.peek().time;
+            long b = other.events.peek().time;
+            if (a != b) {
+                return a < b ? -1 : 1;
+            }
+            return number < other.number ? -1 : (number == other.number ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads a log file line by line like a {@link java.io.BufferedReader}, but keeps track of the byte offset
+ * of the next unread line, so reading can be resumed there later. Lines end with '\n', a preceding '\r' is
+ * removed. Lines are decoded with the default charset, like {@link java.io.FileReader} does.
+ */
+public class LogReader implements Closeable {
+
+    private final InputStream in;
+    private final Charset charset = Charset.defaultCharset();
+    private final byte[] buffer = new byte[65536];
+    private int position;
+    private int limit;
+    private byte[] line = new byte[256];
+    private long offset;
+
+    /**
+     * Constructor
+     *
+     * @param filename file to read
+     * @param offset   byte offset to start reading at, must be the start of a line
+     * @throws IOException if the file can not be opened or is shorter than the offset
+     */
+    public LogReader(String filename, long offset) throws IOException {
+        FileInputStream file = new FileInputStream(filename);
+        if (offset > file.getChannel().size()) {
+            file.close();
+            throw new IOException("Offset " + offset + " is beyond the end of " + filename);
+        }
+        file.getChannel().position(offset);
+        this.in = file;
+        this.offset = offset;
+    }
+
+    /**
+     * Read the next line
+     *
+     * @return line without line terminator or null at the end of the file
+     * @throws IOException if reading fails
+     */
+    public String readLine() throws IOException {
+        int length = 0;
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return read ? decode(length) : null;
+                }
+            }
+            read = true;
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int count = position - start;
+            if (length + count > line.length) {
+                line = Arrays.copyOf(line, Math.max(length + count, line.length * 2));
+            }
+            System.arraycopy(buffer, start, line, length, count);
+            length += count;
+            offset += count;
+            if (position < limit) {
+                // skip the '\n'
+                position++;
+                offset++;
+                return decode(length);
+            }
+        }
+    }
+
+    private String decode(int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, charset);
+    }
+
+    /**
+     * Byte offset of the next line {@link #readLine()} returns
+     *
+     * @return offset from the start of the file
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import java.io.IOException;
+
+/**
+ * A log which is parsed batch by batch into the session events of a {@link SessionEventHandler}, either a
+ * single file read by a {@link QueryParser} or several merged by a {@link LogMerger}
+ */
+public interface LogSource {
+
+    /**
+     * Parse the next batch
+     *
+     * @param batch maximum number of lines or events to parse
+     * @return true if the log may hold more events
+     * @throws IOException if the log can not be read
+     */
+    boolean parseLogFile(int batch) throws IOException;
+
+    /**
+     * Number of lines or events parsed by the last batch
+     *
+     * @return count
+     */
+    int size();
+
+    /**
+     * Time of the last parsed event, from the timestamps of the log
+     *
+     * @return milliseconds since the epoch, read as UTC, or -1 before the first timestamp
+     */
+    long getLogTime();
+
+    /**
+     * Byte offset of the next line to parse, for checkpoints. Only defined for a single log file.
+     *
+     * @return offset in the log file, -1 if the source is not checkpointable because it reads several files
+     */
+    long getOffset();
+
+    void close() throws IOException;
+}
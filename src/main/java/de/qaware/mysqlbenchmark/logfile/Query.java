@@ -26,10 +26,47 @@ import de.qaware.mysqlbenchmark.func.SQLType;
 
     private SQLFunc func;
     private String sql;
+    private StatementArena arena;
+    private long handle;
+    private int digestId;
+    private long queuedNanos;
 
     public Query(SQLFunc func, String sql) {
+        this(func, sql, 0);
+    }
+
+    public Query(SQLFunc func, String sql, int digestId) {
         this.func = func;
         this.sql = sql;
+        this.digestId = digestId;
+    }
+
+    /**
+     * Constructor for a statement kept in an arena. The text is only decoded by {@link #getSql()}, i.e. when
+     * the statement is executed, and not kept afterwards.
+     *
+     * @param func     function of the statement
+     * @param arena    arena holding the text
+     * @param handle   handle of the text in the arena
+     * @param digestId id of the statement digest
+     */
+    public Query(SQLFunc func, StatementArena arena, long handle, int digestId) {
+        this.func = func;
+        this.arena = arena;
+        this.handle = handle;
+        this.digestId = digestId;
+    }
+
+    /**
+     * A copy of the statement, e.g. to queue it in several connections. The time queued is not copied.
+     *
+     * @return copy
+     */
+    public Query copy() {
+        Query copy = new Query(func, sql, digestId);
+        copy.arena = arena;
+        copy.handle = handle;
+        return copy;
     }
 
     public SQLType getType () {
@@ -51,10 +88,32 @@ import de.qaware.mysqlbenchmark.func.SQLType;
     }
 
     public String getSql() {
-        return sql;
+        return sql != null || arena == null ? sql : arena.get(handle);
     }
 
     public void setSql(String sql) {
         this.sql = sql;
     }
+
+    /**
+     * Id of the statement digest, see {@link DigestRegistry}
+     *
+     * @return digest id
+     */
+    public int getDigestId() {
+        return digestId;
+    }
+
+    /**
+     * Time the statement was queued for its connection
+     *
+     * @return {@link System#nanoTime()} when queued
+     */
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    public void setQueuedNanos(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
+    }
 }
@@ -18,13 +18,13 @@ package de.qaware.mysqlbenchmark.logfile;
 
 import com.google.common.base.Strings;
 import de.qaware.mysqlbenchmark.func.SQLFunc;
-import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,11 +34,16 @@ import java.util.regex.Pattern;
  * @author Felix Kelm felix.kelm@qaware.de
  * @author Daniel Black daniel.black@openquery.com.au
  */
-public class QueryParser {
+public class QueryParser implements LogSource {
 
-    private SQLStatementExecutor executor;
+    private SessionEventHandler executor;
     private int sessionCount = 0;
-    private BufferedReader br;
+    private LogReader reader;
+    /**
+     * Line read ahead while looking for the end of a multi-line query, and its offset
+     */
+    private String pushedBack;
+    private long pushedBackOffset;
     List<String> ignorePrefixes;
     String restrictedID;
 
@@ -49,19 +54,91 @@ public class QueryParser {
     //                 940899 Query    SET /* Database::open  */ sql_mode = ''
     //                 940899 Query    BEGIN
     //                 940899 Query    SELECT /* checkLastModified  */  MAX(rc_timestamp)  FROM `recentchanges`   LIMIT 1
-    static Pattern pattern = Pattern.compile("(?:\\d+\\s+[\\d:]*)?\\s+(\\d+)\\s+(\\w+(?:\\s\\w+)?)\\s+(.*)$", Pattern.CASE_INSENSITIVE);
+    // MySQL 5.7 and later write the time of every line, e.g.
+    // 2015-08-11T06:47:54.123456Z       940899 Query    SELECT 1
+    static Pattern pattern = Pattern.compile("(?:\\d+\\s+[\\d:]*|\\d{4}-\\d{2}-\\d{2}T[\\d:.]+(?:Z|[+-]\\d{2}:?\\d{2})?)?"
+            + "\\s+(\\d+)\\s+(Init DB|\\w+)(?:\\s+(.*))?$", Pattern.CASE_INSENSITIVE);
+
+    // Time of the following lines, at the start of a line: 150811  6:47:54 or 2015-08-11T06:47:54.123456Z
+    static Pattern timePattern = Pattern.compile("^(?:(\\d{2})(\\d{2})(\\d{2})\\s+(\\d{1,2}):(\\d{2}):(\\d{2})"
+            + "|(\\d{4})-(\\d{2})-(\\d{2})T(\\d{2}):(\\d{2}):(\\d{2})(?:\\.(\\d{1,3})\\d*)?)");
+    private final Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+    private long logTime = -1;
 
-    public QueryParser(SQLStatementExecutor executor, String inputFilename,
+    public QueryParser(SessionEventHandler executor, String inputFilename,
         String restrictedID, List<String> ignorePrefixes) throws IOException {
+        this(executor, inputFilename, restrictedID, ignorePrefixes, 0);
+    }
+
+    /**
+     * Constructor for resuming a replay from a {@link Checkpoint}
+     *
+     * @param offset byte offset of the first line to parse, see {@link #getOffset()}
+     */
+    public QueryParser(SessionEventHandler executor, String inputFilename,
+        String restrictedID, List<String> ignorePrefixes, long offset) throws IOException {
 
         this.executor = executor;
         this.ignorePrefixes = ignorePrefixes;
         this.restrictedID = restrictedID;
-        br = new BufferedReader(new FileReader(inputFilename));
+        reader = new LogReader(inputFilename, offset);
     }
 
     public void close() throws IOException {
-        br.close();
+        reader.close();
+    }
+
+    /**
+     * Byte offset of the next line to parse. All lines before it have been handed to the executor.
+     *
+     * @return offset in the log file
+     */
+    public long getOffset() {
+        return pushedBack != null ? pushedBackOffset : reader.getOffset();
+    }
+
+    /**
+     * Time of the last parsed line, from the last timestamp in the log. The general log only writes a
+     * timestamp when the second changes, older versions with a resolution of one second.
+     *
+     * @return milliseconds since the epoch, read as UTC, or -1 before the first timestamp
+     */
+    public long getLogTime() {
+        return logTime;
+    }
+
+    private void readTime(String line) {
+        if (line.length() == 0 || !Character.isDigit(line.charAt(0))) {
+            return;
+        }
+        Matcher matcher = timePattern.matcher(line);
+        if (!matcher.find()) {
+            return;
+        }
+        calendar.clear();
+        if (matcher.group(1) != null) {
+            calendar.set(2000 + Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) - 1,
+                    Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)),
+                    Integer.parseInt(matcher.group(5)), Integer.parseInt(matcher.group(6)));
+        } else {
+            calendar.set(Integer.parseInt(matcher.group(7)), Integer.parseInt(matcher.group(8)) - 1,
+                    Integer.parseInt(matcher.group(9)), Integer.parseInt(matcher.group(10)),
+                    Integer.parseInt(matcher.group(11)), Integer.parseInt(matcher.group(12)));
+            if (matcher.group(13) != null) {
+                String millis = (matcher.group(13) + "00").substring(0, 3);
+                calendar.set(Calendar.MILLISECOND, Integer.parseInt(millis));
+            }
+        }
+        logTime = calendar.getTimeInMillis();
+    }
+
+    private String nextLine() throws IOException {
+        if (pushedBack != null) {
+            String line = pushedBack;
+            pushedBack = null;
+            return line;
+        }
+        return reader.readLine();
     }
     /**
      * Read ONE query from a string
@@ -72,27 +149,38 @@ public class QueryParser {
      */
     public boolean parseLine(String restrictedID, List<String> ignorePrefixes) throws IOException {
 
-        String line = br.readLine();
+        String line = nextLine();
         if (line == null) {
             return false;
         }
+        readTime(line);
         Matcher matcher = pattern.matcher(line);
 
         // add all matches to the query store
         if (matcher.find()) {
             String id = matcher.group(1);
             // if restricted to one connection id, create a prefix to match all queries
-            if (!Strings.isNullOrEmpty(restrictedID) && id.equals(restrictedID)) {
+            if (!Strings.isNullOrEmpty(restrictedID) && !id.equals(restrictedID)) {
                 return true;
             }
 
             String type =matcher.group(2).toLowerCase();
+            // lines like Quit may end after the type
+            String argument = matcher.group(3) == null ? "" : matcher.group(3);
                 // include/mysql.h.pp enum_server_command has all the options
             if (type.equals("connect")) {
                 // matcher.group(3).left(" ")
-                executor.connect(id, matcher.group(3));
+                executor.connect(id, argument);
             } else if (type.equals("query")) {
-                String query = matcher.group(3);
+                String query = argument;
+                // statements to begin or end transactions are not replayed, but the session state is tracked
+                String statement = query.trim().toLowerCase();
+                if (statement.startsWith("begin") || statement.startsWith("start transaction")) {
+                    executor.transaction(id, true);
+                } else if (statement.startsWith("commit")
+                        || (statement.startsWith("rollback") && !statement.startsWith("rollback to"))) {
+                    executor.transaction(id, false);
+                }
                 boolean ignore = false;
                 // ignore queries which start with special words
                 for (String prefix : ignorePrefixes) {
@@ -102,33 +190,41 @@ public class QueryParser {
                     }
                 }
 
-                for(SQLFunc funcPrefix : SQLFunc.values()) {
-                    if (!query.toLowerCase().startsWith(funcPrefix.name())) {
-                        ignore = true;
-                        break;
-                    }
+                // only statements with a known function can be executed
+                SQLFunc func = parseSQLFunc(query);
+                if (func == null) {
+                    ignore = true;
                 }
-                // queries can be multiple lines.
+                // queries can be multiple lines, only those are copied into a builder
+                StringBuilder lines = null;
                 while (true) {
-                    // TODO should be max packet size (from where the query log was taken) as this is the max query length
-                    br.mark(200000);
-                    line = br.readLine();
+                    long lineOffset = getOffset();
+                    line = nextLine();
                     if (line == null) {
-                        return false;
+                        // the last statement of the file, e.g. of a rotated file
+                        break;
                     }
                     matcher = pattern.matcher(line);
                     if (matcher.matches()) {
-                        br.reset(); // revert to previous mark so next query can begin there.
+                        // push back, so the next query can begin there.
+                        pushedBack = line;
+                        pushedBackOffset = lineOffset;
                         break;
                     } else {
-                       query += line;
+                        if (lines == null) {
+                            lines = new StringBuilder(query);
+                        }
+                        lines.append('\n').append(line);
                     }
                 }
+                if (lines != null) {
+                    query = lines.toString();
+                }
                 if (!ignore) {
-                    executor.query(id, new Query(parseSQLFunc(query), query));
+                    executor.query(id, new Query(func, query, executor.getDigests().register(query)));
                 }
             } else if (type.equals("init db")) {
-                executor.initDb(id, matcher.group(3));
+                executor.initDb(id, argument);
             } else if (type.equals("quit")) {
                 executor.quit(id);
             }
@@ -138,8 +234,13 @@ public class QueryParser {
     }
 
     private SQLFunc parseSQLFunc(String sql) {
-         String[] tokens = sql.split(" ");
-        return SQLFunc.valueOf(tokens[0]);
+        String lower = sql.trim().toLowerCase();
+        for (SQLFunc func : SQLFunc.values()) {
+            if (lower.startsWith(func.name())) {
+                return func;
+            }
+        }
+        return null;
     }
 
     /**
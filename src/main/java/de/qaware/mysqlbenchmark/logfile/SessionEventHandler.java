@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.logfile;
+
+/**
+ * Receives the session events of a log from the {@link QueryParser}: connects, database selections,
+ * transaction boundaries, statements and quits, by connection id of the log
+ */
+public interface SessionEventHandler {
+
+    /**
+     * A session connects
+     *
+     * @param connectionID connection id
+     * @param user         user of the connect line
+     */
+    void connect(String connectionID, String user);
+
+    /**
+     * A session selects its database
+     *
+     * @param connectionID connection id
+     * @param database     database name
+     */
+    void initDb(String connectionID, String database);
+
+    /**
+     * A session begins or ends a transaction
+     *
+     * @param connectionID connection id
+     * @param open         true if a transaction begins
+     */
+    void transaction(String connectionID, boolean open);
+
+    /**
+     * A session executes a statement
+     *
+     * @param connectionID connection id
+     * @param query        the statement with its digest id from {@link #getDigests()}
+     */
+    void query(String connectionID, Query query);
+
+    /**
+     * A session quits
+     *
+     * @param connectionID connection id
+     */
+    void quit(String connectionID);
+
+    /**
+     * The registry the digest ids of the statements are taken from
+     *
+     * @return digest registry
+     */
+    DigestRegistry getDigests();
+}
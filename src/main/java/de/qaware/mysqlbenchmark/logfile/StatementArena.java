@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Keeps the text of statements outside the Java heap, in memory mapped temporary files, so a workload of
+ * millions of statements costs the size of its UTF-8 text in the page cache instead of several times that
+ * in heap and GC time. A statement is referenced by a long handle; identical statements are stored once
+ * and get the same handle. The files are deleted as soon as they are mapped, the memory is released when
+ * the arena is garbage collected.
+ * <p/>
+ * Statements are added by one thread. Any thread may decode statements whose handles it received after they
+ * were added, e.g. through a queue or by being started afterwards.
+ */
+public class StatementArena {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int EMPTY = -1;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private ByteBuffer current;
+    private long bytes;
+
+    /**
+     * Open addressing table of the handles of the distinct statements, with their hashes
+     */
+    private long[] handles = new long[1024];
+    private int[] hashes = new int[1024];
+    private int distinct;
+    private long added;
+
+    public StatementArena() {
+        Arrays.fill(handles, EMPTY);
+    }
+
+    /**
+     * Store a statement
+     *
+     * @param sql statement
+     * @return handle of the statement, the same for identical statements
+     * @throws IOException if no temporary file can be mapped
+     */
+    public long add(String sql) throws IOException {
+        added++;
+        byte[] text = sql.getBytes(UTF8);
+        int hash = hash(text);
+        int mask = handles.length - 1;
+        int slot = hash & mask;
+        while (handles[slot] != EMPTY) {
+            if (hashes[slot] == hash && equals(handles[slot], text)) {
+                return handles[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        long handle = write(text);
+        handles[slot] = handle;
+        hashes[slot] = hash;
+        if (++distinct * 2 > handles.length) {
+            grow();
+        }
+        return handle;
+    }
+
+    /**
+     * Decode a statement
+     *
+     * @param handle handle from {@link #add(String)}
+     * @return statement
+     */
+    public String get(long handle) {
+        ByteBuffer buffer = chunks[(int) (handle >>> 32)].duplicate();
+        int offset = (int) handle;
+        int length = buffer.getInt(offset);
+        byte[] text = new byte[length];
+        buffer.position(offset + 4);
+        buffer.get(text);
+        return new String(text, UTF8);
+    }
+
+    /**
+     * Number of statements added, duplicates included
+     *
+     * @return statement count
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Number of distinct statements stored
+     *
+     * @return statement count
+     */
+    public int getDistinct() {
+        return distinct;
+    }
+
+    /**
+     * Size of the stored statements
+     *
+     * @return bytes outside the heap
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private long write(byte[] text) throws IOException {
+        int size = 4 + text.length;
+        if (current == null || current.remaining() < size) {
+            map(Math.max(CHUNK_SIZE, size));
+        }
+        long handle = ((long) (chunks.length - 1) << 32) | current.position();
+        current.putInt(text.length);
+        current.put(text);
+        bytes += size;
+        return handle;
+    }
+
+    private void map(int size) throws IOException {
+        File file = File.createTempFile("statements", ".arena");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            ByteBuffer[] grown = new ByteBuffer[chunks.length + 1];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            grown[chunks.length] = buffer;
+            current = buffer.duplicate();
+            chunks = grown;
+        } finally {
+            // the mapping stays valid after the file is closed and deleted
+            raf.close();
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private boolean equals(long handle, byte[] text) {
+        ByteBuffer buffer = chunks[(int) (handle >>> 32)];
+        int offset = (int) handle;
+        if (buffer.getInt(offset) != text.length) {
+            return false;
+        }
+        for (int i = 0; i < text.length; i++) {
+            if (buffer.get(offset + 4 + i) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        long[] oldHandles = handles;
+        int[] oldHashes = hashes;
+        handles = new long[oldHandles.length * 2];
+        hashes = new int[oldHandles.length * 2];
+        Arrays.fill(handles, EMPTY);
+        int mask = handles.length - 1;
+        for (int i = 0; i < oldHandles.length; i++) {
+            if (oldHandles[i] != EMPTY) {
+                int slot = oldHashes[i] & mask;
+                while (handles[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                handles[slot] = oldHandles[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private static int hash(byte[] text) {
+        int hash = 0x811c9dc5;
+        for (byte b : text) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        // spread the bits for the power of two table
+        return hash ^ (hash >>> 16);
+    }
+}
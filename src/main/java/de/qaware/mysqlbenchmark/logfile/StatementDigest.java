@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes SQL statements to digests: string and numeric literals are replaced by '?', whitespace is collapsed
+ * and lists of literals are shortened to "(?+)", so that statements which only differ in their literals
+ * share one measurement point. Comments and identifiers are kept.
+ */
+public final class StatementDigest {
+
+    private static final Pattern VALUE_LIST = Pattern.compile("\\(\\? ?(?:, ?\\? ?)+\\)");
+    private static final Pattern REPEATED_ROWS = Pattern.compile("\\(\\?\\+?\\)(?: ?, ?\\(\\?\\+?\\))+");
+
+    private StatementDigest() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Normalize a statement
+     *
+     * @param sql the statement
+     * @return the digest text
+     */
+    public static String normalize(String sql) {
+        String digest = VALUE_LIST.matcher(scan(sql, null)).replaceAll("(?+)");
+        return REPEATED_ROWS.matcher(digest).replaceAll("(?+)+");
+    }
+
+    /**
+     * Find the literals of a statement, i.e. the parts {@link #normalize(String)} replaces by '?'
+     *
+     * @param sql the statement
+     * @return start and end offset of each literal in the statement, in order
+     */
+    public static List<int[]> literals(String sql) {
+        List<int[]> literals = new ArrayList<int[]>();
+        scan(sql, literals);
+        return literals;
+    }
+
+    /**
+     * Replace literals by '?' and collapse whitespace
+     *
+     * @param sql      the statement
+     * @param literals list to add the offsets of the literals to, may be null
+     * @return statement with literals replaced
+     */
+    private static StringBuilder scan(String sql, List<int[]> literals) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int start = i;
+                i = skipQuoted(sql, i, c);
+                sb.append('?');
+                if (literals != null) {
+                    literals.add(new int[]{start, i});
+                }
+            } else if (c == '`') {
+                int end = sql.indexOf('`', i + 1);
+                end = end < 0 ? length : end + 1;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? length : end + 2;
+                sb.append(sql, i, end);
+                i = end;
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0 && i < length) {
+                    sb.append(' ');
+                }
+            } else if (isDigit(c) && !isIdentifierEnd(sb)) {
+                int start = i;
+                i = skipNumber(sql, i);
+                sb.append('?');
+                if (literals != null) {
+                    literals.add(new int[]{start, i});
+                }
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return sql.length();
+    }
+
+    private static int skipNumber(String sql, int start) {
+        int i = start;
+        if (sql.startsWith("0x", i) || sql.startsWith("0X", i)) {
+            i += 2;
+            while (i < sql.length() && Character.digit(sql.charAt(i), 16) >= 0) {
+                i++;
+            }
+            return i;
+        }
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (isDigit(c) || c == '.') {
+                i++;
+            } else if ((c == 'e' || c == 'E') && i + 1 < sql.length()
+                    && (isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '-' || sql.charAt(i + 1) == '+')) {
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Digits directly after a letter, digit, '_' or '$' belong to an identifier like "t1"
+     */
+    private static boolean isIdentifierEnd(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+    }
+
+    /**
+     * The statement type is the first keyword of a statement or digest, leading comments and parentheses skipped
+     *
+     * @param digest statement or digest text
+     * @return keyword in lower case, e.g. "select", or "other"
+     */
+    public static String type(String digest) {
+        int i = 0;
+        while (i < digest.length()) {
+            char c = digest.charAt(i);
+            if (c == '/' && digest.startsWith("/*", i)) {
+                int end = digest.indexOf("*/", i + 2);
+                i = end < 0 ? digest.length() : end + 2;
+            } else if (c == '(' || Character.isWhitespace(c)) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i < digest.length() && Character.isLetter(digest.charAt(i))) {
+            i++;
+        }
+        return start == i ? "other" : digest.substring(start, i).toLowerCase(Locale.ENGLISH);
+    }
+}
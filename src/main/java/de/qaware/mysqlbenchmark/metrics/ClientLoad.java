@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load of the benchmark client itself during a window: GC time, CPU time of the connection threads and of
+ * the parser, dispatch lag, backlog wait and start delay. Samples of {@link ClientMonitor} are cumulative, windows are
+ * the difference of two samples, see {@link #since(ClientLoad)}.
+ * <p/>
+ * The dispatch lag of a statement is the time from the moment it could run, i.e. it is queued and the
+ * previous statement of its connection is done, until its connection thread starts it. The backlog wait of
+ * a connection is the time it waited in the backlog, for a free slot of the parallel connection limit or for
+ * its previous connections. Waiting for the limit is what the limit is for, so only the start delay counts
+ * against the client: the time from a slot being free and the connection being ready until the backlog
+ * thread started it.
+ * <p/>
+ * A window in which the client was the bottleneck is flagged, see {@link #getBottlenecks(int)}: latencies
+ * measured in it include client side delays.
+ */
+public class ClientLoad {
+
+    /**
+     * Flag if GC pauses take more than this share of the window
+     */
+    static final double GC_SHARE = 0.05;
+
+    /**
+     * Flag if the client threads use more than this share of all processors
+     */
+    static final double CPU_SHARE = 0.9;
+
+    /**
+     * Flag if the parser uses more than this share of one processor, it is single threaded
+     */
+    static final double PARSER_SHARE = 0.9;
+
+    /**
+     * Flag if the p99 dispatch lag is above this many microseconds
+     */
+    static final long DISPATCH_LAG_MICROS = 1000;
+
+    /**
+     * Flag if the p99 start delay is above this many microseconds, the backlog thread polls every millisecond
+     */
+    static final long START_DELAY_MICROS = 10000;
+
+    private final long nanos;
+    private final long gcMillis;
+    private final long connectionCpuNanos;
+    private final long parserCpuNanos;
+    private final LatencyHistogram dispatchLag;
+    private final LatencyHistogram backlogWait;
+    private final LatencyHistogram startDelay;
+
+    /**
+     * Constructor
+     *
+     * @param nanos              length of the window, or time of the sample
+     * @param gcMillis           GC time
+     * @param connectionCpuNanos CPU time of the connection threads
+     * @param parserCpuNanos     CPU time of the parser thread
+     * @param dispatchLag        dispatch lag of the statements
+     * @param backlogWait        backlog wait of the connections
+     * @param startDelay         start delay of the backlogged connections
+     */
+    public ClientLoad(long nanos, long gcMillis, long connectionCpuNanos, long parserCpuNanos,
+                      LatencyHistogram dispatchLag, LatencyHistogram backlogWait, LatencyHistogram startDelay) {
+        this.nanos = nanos;
+        this.gcMillis = gcMillis;
+        this.connectionCpuNanos = connectionCpuNanos;
+        this.parserCpuNanos = parserCpuNanos;
+        this.dispatchLag = dispatchLag;
+        this.backlogWait = backlogWait;
+        this.startDelay = startDelay;
+    }
+
+    /**
+     * The window from an earlier sample to this one
+     *
+     * @param earlier earlier sample
+     * @return window
+     */
+    public ClientLoad since(ClientLoad earlier) {
+        LatencyHistogram lag = dispatchLag.copy();
+        lag.subtract(earlier.dispatchLag);
+        LatencyHistogram wait = backlogWait.copy();
+        wait.subtract(earlier.backlogWait);
+        LatencyHistogram delay = startDelay.copy();
+        delay.subtract(earlier.startDelay);
+        return new ClientLoad(nanos - earlier.nanos, gcMillis - earlier.gcMillis,
+                Math.max(0, connectionCpuNanos - earlier.connectionCpuNanos),
+                parserCpuNanos - earlier.parserCpuNanos, lag, wait, delay);
+    }
+
+    /**
+     * Reasons why the client was the bottleneck in this window
+     *
+     * @param processors available processors
+     * @return "gc", "cpu", "parser", "dispatch" and "backlog", empty if the client was no bottleneck
+     */
+    public List<String> getBottlenecks(int processors) {
+        List<String> bottlenecks = new ArrayList<String>();
+        if (nanos <= 0) {
+            return bottlenecks;
+        }
+        if (gcMillis * 1e6 > GC_SHARE * nanos) {
+            bottlenecks.add("gc");
+        }
+        if (connectionCpuNanos + parserCpuNanos > CPU_SHARE * processors * nanos) {
+            bottlenecks.add("cpu");
+        }
+        if (parserCpuNanos > PARSER_SHARE * nanos) {
+            bottlenecks.add("parser");
+        }
+        if (dispatchLag.getTotalCount() > 0 && dispatchLag.getValueAtPercentile(99) > DISPATCH_LAG_MICROS) {
+            bottlenecks.add("dispatch");
+        }
+        // connections which could run were not started in time
+        if (startDelay.getTotalCount() > 0 && startDelay.getValueAtPercentile(99) > START_DELAY_MICROS) {
+            bottlenecks.add("backlog");
+        }
+        return bottlenecks;
+    }
+
+    /**
+     * Length of the window
+     *
+     * @return nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * GC time in the window, pauses and concurrent phases as reported by the JVM
+     *
+     * @return milliseconds
+     */
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    /**
+     * CPU time of the connection threads, approximated for threads which end at the sample
+     *
+     * @return nanoseconds
+     */
+    public long getConnectionCpuNanos() {
+        return connectionCpuNanos;
+    }
+
+    /**
+     * CPU time of the thread which parses the log
+     *
+     * @return nanoseconds
+     */
+    public long getParserCpuNanos() {
+        return parserCpuNanos;
+    }
+
+    /**
+     * Dispatch lag of the statements started in the window
+     *
+     * @return histogram
+     */
+    public LatencyHistogram getDispatchLag() {
+        return dispatchLag;
+    }
+
+    /**
+     * Backlog wait of the connections started in the window
+     *
+     * @return histogram
+     */
+    public LatencyHistogram getBacklogWait() {
+        return backlogWait;
+    }
+
+    /**
+     * Start delay of the backlogged connections started in the window
+     *
+     * @return histogram
+     */
+    public LatencyHistogram getStartDelay() {
+        return startDelay;
+    }
+}
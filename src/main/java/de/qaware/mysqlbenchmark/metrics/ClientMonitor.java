@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instruments the benchmark client, so measurements taken while the client was the bottleneck can be
+ * recognized. Connection threads report their CPU time when they end, running ones are read at each
+ * sample; the dispatch lag is recorded by the connection threads in their {@link ThreadRecorder}, the
+ * backlog wait and start delay by the thread starting backlogged connections.
+ */
+public class ClientMonitor {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ThreadGroup connections;
+    private final Thread parser;
+    private final RecorderPool recorders;
+    private final AtomicLong finishedCpuNanos = new AtomicLong();
+    private final LatencyHistogram backlogWait = new LatencyHistogram();
+    private final LatencyHistogram startDelay = new LatencyHistogram();
+    private final boolean cpuTime;
+    private final ClientLoad start;
+
+    /**
+     * Constructor, takes the sample the whole run is measured from
+     *
+     * @param connections thread group of the connection threads
+     * @param parser      thread which parses the log
+     * @param recorders   recorders of the connection threads
+     */
+    public ClientMonitor(ThreadGroup connections, Thread parser, RecorderPool recorders) {
+        this.connections = connections;
+        this.parser = parser;
+        this.recorders = recorders;
+        cpuTime = THREADS.isThreadCpuTimeSupported();
+        if (cpuTime && !THREADS.isThreadCpuTimeEnabled()) {
+            THREADS.setThreadCpuTimeEnabled(true);
+        }
+        start = sample();
+    }
+
+    /**
+     * CPU time of the calling thread
+     *
+     * @return nanoseconds, 0 if not supported
+     */
+    public long currentThreadCpuNanos() {
+        return cpuTime ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Called by a connection thread when it ends
+     *
+     * @param cpuNanos CPU time of the thread, see {@link #currentThreadCpuNanos()}
+     */
+    public void threadFinished(long cpuNanos) {
+        finishedCpuNanos.addAndGet(cpuNanos);
+    }
+
+    /**
+     * Record the time a connection waited for a free slot
+     *
+     * @param nanos wait time
+     */
+    public synchronized void recordBacklogWait(long nanos) {
+        backlogWait.recordNanos(nanos);
+    }
+
+    /**
+     * Record the time from a backlogged connection being able to start until it was started
+     *
+     * @param nanos start delay
+     */
+    public synchronized void recordStartDelay(long nanos) {
+        startDelay.recordNanos(nanos);
+    }
+
+    /**
+     * Take a cumulative sample
+     *
+     * @return sample
+     */
+    public ClientLoad sample() {
+        long now = System.nanoTime();
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        long connectionCpu = finishedCpuNanos.get();
+        long parserCpu = 0;
+        if (cpuTime) {
+            Thread[] threads = new Thread[connections.activeCount() + 16];
+            int count = connections.enumerate(threads);
+            for (int i = 0; i < count; i++) {
+                // -1 if the thread ended in the meantime, then it is in the next sample
+                connectionCpu += Math.max(0, THREADS.getThreadCpuTime(threads[i].getId()));
+            }
+            parserCpu = Math.max(0, THREADS.getThreadCpuTime(parser.getId()));
+        }
+        LatencyHistogram wait;
+        LatencyHistogram delay;
+        synchronized (this) {
+            wait = backlogWait.copy();
+            delay = startDelay.copy();
+        }
+        return new ClientLoad(now, gcMillis, connectionCpu, parserCpu, recorders.mergeDispatchLag(), wait, delay);
+    }
+
+    /**
+     * The load of the whole run so far
+     *
+     * @return window since the monitor was created
+     */
+    public ClientLoad sinceStart() {
+        return sample().since(start);
+    }
+}
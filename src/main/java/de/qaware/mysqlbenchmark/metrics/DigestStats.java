@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+/**
+ * Measurements of one statement digest: latency histogram, number of failed executions and, if collected
+ * per statement, the server side cost and the latency split into phases. Reports also attach the hash of the execution plan, if captured,
+ * which is not merged with other stats.
+ * Not thread safe, see {@link ThreadRecorder}.
+ */
+public class DigestStats {
+
+    private final LatencyHistogram latency;
+    private long errors;
+    private ServerCost serverCost;
+    private PhaseTimes phases;
+    private String planHash;
+
+    /**
+     * Constructor for empty stats
+     */
+    public DigestStats() {
+        this(new LatencyHistogram(), 0);
+    }
+
+    /**
+     * Constructor for stats read from a report
+     *
+     * @param latency latencies of all executions
+     * @param errors  number of failed executions
+     */
+    public DigestStats(LatencyHistogram latency, long errors) {
+        this.latency = latency;
+        this.errors = errors;
+    }
+
+    /**
+     * Record one execution
+     *
+     * @param nanos  duration in nanoseconds
+     * @param failed true if the statement failed
+     */
+    void record(long nanos, boolean failed) {
+        latency.recordNanos(nanos);
+        if (failed) {
+            errors++;
+        }
+    }
+
+    /**
+     * Record the server side cost of one execution
+     *
+     * @param cost cost of the execution
+     */
+    void recordServerCost(ServerCost cost) {
+        if (serverCost == null) {
+            serverCost = new ServerCost();
+        }
+        serverCost.add(cost);
+    }
+
+    /**
+     * Record the phases of one execution
+     *
+     * @param prepare prepare time in nanoseconds
+     * @param send    send time in nanoseconds
+     * @param wait    wait time in nanoseconds
+     * @param receive receive time in nanoseconds
+     */
+    void recordPhases(long prepare, long send, long wait, long receive) {
+        if (phases == null) {
+            phases = new PhaseTimes();
+        }
+        phases.record(prepare, send, wait, receive);
+    }
+
+    /**
+     * Add the measurements of other stats
+     *
+     * @param other stats to add
+     */
+    public void add(DigestStats other) {
+        latency.add(other.latency);
+        errors += other.errors;
+        if (other.serverCost != null) {
+            recordServerCost(other.serverCost);
+        }
+        if (other.phases != null) {
+            if (phases == null) {
+                phases = new PhaseTimes();
+            }
+            phases.add(other.phases);
+        }
+    }
+
+    /**
+     * The measurements recorded since an earlier copy of these stats
+     *
+     * @param earlier earlier copy
+     * @return new stats with the difference
+     */
+    public DigestStats since(DigestStats earlier) {
+        DigestStats delta = copy();
+        if (earlier != null) {
+            delta.latency.subtract(earlier.latency);
+            delta.errors -= earlier.errors;
+            if (delta.serverCost != null) {
+                delta.serverCost = delta.serverCost.since(earlier.serverCost);
+            }
+            if (delta.phases != null) {
+                delta.phases = delta.phases.since(earlier.phases);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * A copy of these stats
+     *
+     * @return copy
+     */
+    public DigestStats copy() {
+        DigestStats copy = new DigestStats();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * Latencies of all executions, failed ones included
+     *
+     * @return histogram
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Server side cost collected per statement
+     *
+     * @return cost or null if not collected
+     */
+    public ServerCost getServerCost() {
+        return serverCost;
+    }
+
+    /**
+     * Latency split into phases
+     *
+     * @return phase times or null if not collected
+     */
+    public PhaseTimes getPhases() {
+        return phases;
+    }
+
+    /**
+     * Replace the server side cost, e.g. by the one read from performance_schema
+     *
+     * @param serverCost cost of all executions
+     */
+    public void setServerCost(ServerCost serverCost) {
+        this.serverCost = serverCost;
+    }
+
+    /**
+     * Hash of the execution plan of the digest, see {@link ExecutionPlan#getHash()}
+     *
+     * @return hash or null if no plan was captured
+     */
+    public String getPlanHash() {
+        return planHash;
+    }
+
+    public void setPlanHash(String planHash) {
+        this.planHash = planHash;
+    }
+
+    /**
+     * Number of failed executions
+     *
+     * @return error count
+     */
+    public long getErrors() {
+        return errors;
+    }
+}
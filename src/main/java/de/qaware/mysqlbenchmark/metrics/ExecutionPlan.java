@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Execution plan of a statement digest as returned by {@code EXPLAIN FORMAT=JSON}, with a hash of its shape
+ * and a one line summary.
+ * <p/>
+ * The hash ignores the optimizer's estimates, i.e. costs, row counts and filter percentages, as they change
+ * with the table statistics while the plan stays the same. What is left are the tables, their order, the
+ * access types, keys and the used key parts, conditions and flags like filesort or temporary tables.
+ */
+public class ExecutionPlan {
+
+    private static final Pattern COST_INFO = Pattern.compile("\"cost_info\"\\s*:\\s*\\{[^}]*\\}\\s*,?");
+    private static final Pattern NUMBER = Pattern.compile(
+            "(\"[^\"]+\"\\s*:\\s*)(\"-?[0-9.]+(?:[eE][+-]?[0-9]+)?[KMGT]?\"|-?[0-9.]+(?:[eE][+-]?[0-9]+)?)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern MEMBER = Pattern.compile(
+            "\"(table_name|access_type|key|using_filesort|using_temporary_table)\"\\s*:\\s*(\"([^\"]*)\"|true)");
+
+    private final String json;
+    private final String hash;
+    private final String summary;
+
+    /**
+     * Constructor
+     *
+     * @param json plan as returned by EXPLAIN FORMAT=JSON
+     */
+    public ExecutionPlan(String json) {
+        this.json = json;
+        this.hash = hash(json);
+        this.summary = summarize(json);
+    }
+
+    /**
+     * The plan as returned by the server
+     *
+     * @return JSON plan
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Hash of the shape of the plan, equal for plans which only differ in their estimates
+     *
+     * @return 16 hex digits
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Tables in join order with access type and key, followed by filesort and temporary table flags, e.g.
+     * "orders:ref(idx_customer), customer:eq_ref(PRIMARY) +filesort"
+     *
+     * @return summary, empty if the plan accesses no table
+     */
+    public String getSummary() {
+        return summary;
+    }
+
+    /**
+     * The plan without estimates and whitespace
+     */
+    static String canonical(String json) {
+        String canonical = COST_INFO.matcher(json).replaceAll("");
+        canonical = NUMBER.matcher(canonical).replaceAll("$1?");
+        return WHITESPACE.matcher(canonical).replaceAll("");
+    }
+
+    static String hash(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(canonical(json).getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String summarize(String json) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder flags = new StringBuilder();
+        String access = null;
+        String key = null;
+        Matcher m = MEMBER.matcher(json);
+        while (m.find()) {
+            String member = m.group(1);
+            if ("table_name".equals(member)) {
+                appendTable(sb, access, key);
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(m.group(3));
+                access = null;
+                key = null;
+            } else if ("access_type".equals(member)) {
+                access = m.group(3);
+            } else if ("key".equals(member)) {
+                key = m.group(3);
+            } else if ("using_filesort".equals(member)) {
+                flags.append(" +filesort");
+            } else {
+                flags.append(" +temporary");
+            }
+        }
+        appendTable(sb, access, key);
+        return sb.append(flags).toString();
+    }
+
+    private static void appendTable(StringBuilder sb, String access, String key) {
+        if (access != null) {
+            sb.append(':').append(access);
+            if (key != null) {
+                sb.append('(').append(key).append(')');
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lossless export and import of the histograms of all measurement points.
+ * One line per point: the encoded histogram, a tab and the point name with backslash, tab and newline escaped.
+ * Properties of the run, like its duration or the plan hashes of the points, are written as
+ * {@code #<key>=<value>} lines after the header, with '=' in the key escaped.
+ * Logs of several runs can be read and merged with {@link #merge(java.util.Map, java.util.Map)}.
+ */
+public final class HistogramLog {
+
+    /**
+     * Property with the duration of the run in milliseconds
+     */
+    public static final String ELAPSED_MILLIS = "elapsed_ms";
+
+    /**
+     * Prefix of the properties with the execution plan hash of a measurement point, followed by the point name
+     */
+    public static final String PLAN_HASH_PREFIX = "plan_hash:";
+
+    private static final String HEADER = "#mysql-benchmark histogram log v1";
+
+    private HistogramLog() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Write histograms
+     *
+     * @param histograms histograms by measurement point
+     * @param writer     writer to write to
+     * @throws IOException if writing fails
+     */
+    public static void write(Map<String, LatencyHistogram> histograms, Writer writer) throws IOException {
+        write(histograms, Collections.<String, String>emptyMap(), writer);
+    }
+
+    /**
+     * Write histograms and properties of the run
+     *
+     * @param histograms histograms by measurement point
+     * @param properties properties of the run, e.g. {@link #ELAPSED_MILLIS}
+     * @param writer     writer to write to
+     * @throws IOException if writing fails
+     */
+    public static void write(Map<String, LatencyHistogram> histograms, Map<String, String> properties, Writer writer)
+            throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        for (Map.Entry<String, String> property : new TreeMap<String, String>(properties).entrySet()) {
+            writer.write('#');
+            writer.write(escape(property.getKey()).replace("=", "\\="));
+            writer.write('=');
+            writer.write(escape(property.getValue()));
+            writer.write('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+            writer.write(entry.getValue().encode());
+            writer.write('\t');
+            writer.write(escape(entry.getKey()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Read histograms written by {@link #write(java.util.Map, java.io.Writer)}
+     *
+     * @param reader reader to read from
+     * @return histograms by measurement point
+     * @throws IOException if reading fails or the content is no histogram log
+     */
+    public static Map<String, LatencyHistogram> read(Reader reader) throws IOException {
+        return read(reader, null);
+    }
+
+    /**
+     * Read histograms and properties written by
+     * {@link #write(java.util.Map, java.util.Map, java.io.Writer)}
+     *
+     * @param reader     reader to read from
+     * @param properties map to put the properties of the run into, may be null
+     * @return histograms by measurement point
+     * @throws IOException if reading fails or the content is no histogram log
+     */
+    public static Map<String, LatencyHistogram> read(Reader reader, Map<String, String> properties) throws IOException {
+        BufferedReader br = new BufferedReader(reader);
+        String line = br.readLine();
+        if (!HEADER.equals(line)) {
+            throw new IOException("Not a histogram log, header is '" + line + "'");
+        }
+        Map<String, LatencyHistogram> histograms = new TreeMap<String, LatencyHistogram>();
+        while ((line = br.readLine()) != null) {
+            if (line.startsWith("#")) {
+                int equals = separator(line);
+                if (properties != null && equals > 0) {
+                    properties.put(unescape(line.substring(1, equals)), unescape(line.substring(equals + 1)));
+                }
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                continue;
+            }
+            try {
+                histograms.put(unescape(line.substring(tab + 1)), LatencyHistogram.decode(line.substring(0, tab)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Add all histograms of a run to the histograms of other runs
+     *
+     * @param into histograms to add to
+     * @param from histograms to add
+     */
+    public static void merge(Map<String, LatencyHistogram> into, Map<String, LatencyHistogram> from) {
+        for (Map.Entry<String, LatencyHistogram> entry : from.entrySet()) {
+            LatencyHistogram h = into.get(entry.getKey());
+            if (h == null) {
+                into.put(entry.getKey(), entry.getValue().copy());
+            } else {
+                h.add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Index of the first '=' which is not escaped
+     */
+    private static int separator(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '=') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String escape(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String escaped) {
+        StringBuilder sb = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                switch (next) {
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    default:
+                        sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
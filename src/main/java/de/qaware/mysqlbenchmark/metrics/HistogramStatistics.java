@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+/**
+ * Statistics on {@link LatencyHistogram}s for comparing runs. Values within one bucket are treated as equal,
+ * i.e. as ties, and as lying in the middle of the bucket. All values are in microseconds.
+ */
+public final class HistogramStatistics {
+
+    private HistogramStatistics() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Standard deviation of the recorded values
+     *
+     * @param h histogram
+     * @return standard deviation, 0 for less than two values
+     */
+    public static double stdDeviation(LatencyHistogram h) {
+        long n = h.getTotalCount();
+        if (n < 2) {
+            return 0;
+        }
+        double mean = h.getMean();
+        double squares = 0;
+        for (int i = 0; i < LatencyHistogram.LENGTH; i++) {
+            long count = h.count(i);
+            if (count > 0) {
+                double deviation = midpoint(i) - mean;
+                squares += count * deviation * deviation;
+            }
+        }
+        return Math.sqrt(squares / (n - 1));
+    }
+
+    /**
+     * Two sided Mann-Whitney U test with tie correction, normal approximation. Tests if the values of one
+     * histogram tend to be larger or smaller than those of the other without assuming a distribution.
+     *
+     * @param a first sample
+     * @param b second sample
+     * @return p-value, NaN if a sample is empty
+     */
+    public static double mannWhitneyP(LatencyHistogram a, LatencyHistogram b) {
+        double n1 = a.getTotalCount();
+        double n2 = b.getTotalCount();
+        if (n1 == 0 || n2 == 0) {
+            return Double.NaN;
+        }
+        double u = 0;
+        double ties = 0;
+        double belowB = 0;
+        for (int i = 0; i < LatencyHistogram.LENGTH; i++) {
+            double countA = a.count(i);
+            double countB = b.count(i);
+            u += countA * (belowB + countB / 2);
+            belowB += countB;
+            double t = countA + countB;
+            ties += t * t * t - t;
+        }
+        double n = n1 + n2;
+        double variance = n1 * n2 / 12 * ((n + 1) - ties / (n * (n - 1)));
+        if (variance <= 0) {
+            return 1;
+        }
+        double z = (u - n1 * n2 / 2) / Math.sqrt(variance);
+        return 2 * (1 - normalCdf(Math.abs(z)));
+    }
+
+    /**
+     * Distribution free confidence interval of a percentile from the binomial distribution of the rank
+     *
+     * @param h          histogram
+     * @param percentile percentile between 0 and 100
+     * @param confidence confidence level, e.g. 0.95
+     * @return lower and upper bound
+     */
+    public static long[] percentileInterval(LatencyHistogram h, double percentile, double confidence) {
+        long n = h.getTotalCount();
+        if (n == 0) {
+            return new long[]{0, 0};
+        }
+        double q = percentile / 100;
+        double z = normalQuantile(1 - (1 - confidence) / 2);
+        double spread = z * Math.sqrt(n * q * (1 - q));
+        double lower = Math.max(1, Math.floor(n * q - spread));
+        double upper = Math.min(n, Math.ceil(n * q + spread) + 1);
+        return new long[]{h.getValueAtPercentile(100 * lower / n), h.getValueAtPercentile(100 * upper / n)};
+    }
+
+    /**
+     * Standard normal cumulative distribution function
+     *
+     * @param x value
+     * @return probability of a value below x
+     */
+    public static double normalCdf(double x) {
+        // Abramowitz and Stegun 7.1.26, absolute error below 1.5e-7
+        double t = 1 / (1 + 0.3275911 * Math.abs(x) / Math.sqrt(2));
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027
+                + t * 1.061405429)))) * Math.exp(-x * x / 2);
+        return x >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    /**
+     * Inverse of {@link #normalCdf(double)}
+     *
+     * @param p probability between 0 and 1, exclusive
+     * @return quantile
+     */
+    public static double normalQuantile(double p) {
+        double low = -10;
+        double high = 10;
+        for (int i = 0; i < 60; i++) {
+            double middle = (low + high) / 2;
+            if (normalCdf(middle) < p) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    private static double midpoint(int index) {
+        return (LatencyHistogram.lowestEquivalentValue(index) + LatencyHistogram.highestEquivalentValue(index)) / 2.0;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import com.google.common.base.Joiner;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes a time series of the replay while it runs: every interval one line with throughput, error rate,
+ * in-flight sessions and latency percentiles of the interval over all statements, followed by one line
+ * for each of the top digests by count in that interval. The lines are tab separated with a header line,
+ * times are in milliseconds.
+ * <p/>
+ * If the client is instrumented, the line over all statements also holds the load of the client in the
+ * interval, see {@link ClientLoad}, and the reasons if the client was the bottleneck. Such intervals are
+ * logged as warning, their latencies include client side delays.
+ */
+public class IntervalReporter extends Thread {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IntervalReporter.class);
+
+    private final RecorderPool recorders;
+    private final DigestRegistry digests;
+    private final Writer writer;
+    private final long intervalMillis;
+    private final int topDigests;
+    private final ClientMonitor client;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private volatile boolean quitNow = false;
+    private OpenMetricsServer metrics;
+    private List<DigestStats> previous = Collections.emptyList();
+    private ClientLoad previousLoad;
+    private long startNanos;
+    private long previousNanos;
+
+    /**
+     * Constructor
+     *
+     * @param recorders      recorders of the connection threads
+     * @param digests        digest texts
+     * @param writer         writer for the time series, flushed after each interval
+     * @param intervalMillis length of an interval
+     * @param topDigests     number of digests reported separately per interval
+     * @param client         instrumentation of the client, null if not instrumented
+     */
+    public IntervalReporter(RecorderPool recorders, DigestRegistry digests, Writer writer, long intervalMillis, int topDigests,
+                            ClientMonitor client) {
+        super("interval reporter");
+        setDaemon(true);
+        this.recorders = recorders;
+        this.digests = digests;
+        this.writer = writer;
+        this.intervalMillis = intervalMillis;
+        this.topDigests = topDigests;
+        this.client = client;
+    }
+
+    /**
+     * Hand every merge to the metrics endpoint as well, so scrapes do not merge again. Call before start.
+     *
+     * @param metrics metrics endpoint
+     */
+    public void setMetrics(OpenMetricsServer metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stop reporting and write the last, partial interval
+     */
+    public void quit() {
+        quitNow = true;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        previousNanos = startNanos;
+        previousLoad = client == null ? null : client.sample();
+        try {
+            writeHeader();
+            long next = System.currentTimeMillis() + intervalMillis;
+            while (!quitNow) {
+                try {
+                    Thread.sleep(Math.max(0, next - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    if (!quitNow) {
+                        continue;
+                    }
+                }
+                next += intervalMillis;
+                report();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not write interval report.", e);
+        }
+    }
+
+    private void report() throws IOException {
+        long now = System.nanoTime();
+        double seconds = (now - previousNanos) / 1e9;
+        List<DigestStats> current = recorders.merge();
+        int inFlight = recorders.getInUse();
+        if (metrics != null) {
+            metrics.update(current);
+        }
+        ClientLoad load = client == null ? null : client.sample();
+
+        DigestStats all = new DigestStats();
+        List<Integer> ids = new ArrayList<Integer>();
+        final List<DigestStats> deltas = new ArrayList<DigestStats>();
+        for (int id = 0; id < current.size(); id++) {
+            DigestStats delta = null;
+            if (current.get(id) != null) {
+                delta = current.get(id).since(id < previous.size() ? previous.get(id) : null);
+                if (delta.getLatency().getTotalCount() > 0) {
+                    all.add(delta);
+                    ids.add(id);
+                }
+            }
+            deltas.add(delta);
+        }
+        Collections.sort(ids, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long countA = deltas.get(a).getLatency().getTotalCount();
+                long countB = deltas.get(b).getLatency().getTotalCount();
+                return countA > countB ? -1 : (countA == countB ? 0 : 1);
+            }
+        });
+
+        String time = timeFormat.format(new Date());
+        double elapsed = (now - startNanos) / 1e9;
+        writeLine(time, elapsed, "ALL", all, seconds, inFlight, load == null ? null : load.since(previousLoad));
+        for (Integer id : ids.subList(0, Math.min(topDigests, ids.size()))) {
+            writeLine(time, elapsed, HistogramLog.escape(digests.getText(id)), deltas.get(id), seconds, inFlight, null);
+        }
+        writer.flush();
+
+        previous = current;
+        previousNanos = now;
+        previousLoad = load;
+    }
+
+    private void writeHeader() throws IOException {
+        StringBuilder sb = new StringBuilder("#time\telapsed_s\tdigest\tcount\tthroughput_per_s\terrors\terror_rate\tin_flight");
+        for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+            sb.append('\t').append(LatencyHistogram.label(percentile)).append("_ms");
+        }
+        sb.append("\tmax_ms");
+        if (client != null) {
+            sb.append("\tgc_ms\tconnection_cpu_pct\tparser_cpu_pct\tdispatch_lag_p99_ms\tbacklog_wait_ms\tstart_delay_p99_ms\tbottleneck");
+        }
+        sb.append('\n');
+        writer.write(sb.toString());
+        writer.flush();
+    }
+
+    private void writeLine(String time, double elapsed, String digest, DigestStats stats, double seconds, int inFlight,
+                           ClientLoad load) throws IOException {
+        LatencyHistogram h = stats.getLatency();
+        long count = h.getTotalCount();
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(time).append('\t').append(format(elapsed)).append('\t').append(digest)
+                .append('\t').append(count)
+                .append('\t').append(format(seconds > 0 ? count / seconds : 0))
+                .append('\t').append(stats.getErrors())
+                .append('\t').append(format(count > 0 ? stats.getErrors() / (double) count : 0))
+                .append('\t').append(inFlight);
+        for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+            sb.append('\t').append(format(h.getValueAtPercentile(percentile) / 1000.0));
+        }
+        sb.append('\t').append(format(h.getMax() / 1000.0));
+        if (load != null) {
+            double nanos = load.getNanos();
+            List<String> bottlenecks = load.getBottlenecks(processors);
+            sb.append('\t').append(load.getGcMillis())
+                    .append('\t').append(format(load.getConnectionCpuNanos() / nanos * 100))
+                    .append('\t').append(format(load.getParserCpuNanos() / nanos * 100))
+                    .append('\t').append(format(load.getDispatchLag().getValueAtPercentile(99) / 1000.0))
+                    .append('\t').append(format(load.getBacklogWait().getSum() / 1000.0))
+                    .append('\t').append(format(load.getStartDelay().getValueAtPercentile(99) / 1000.0))
+                    .append('\t').append(bottlenecks.isEmpty() ? "-" : Joiner.on(',').join(bottlenecks));
+            if (!bottlenecks.isEmpty()) {
+                LOG.warn("The client was the bottleneck in the interval ending at {}: {}", time, Joiner.on(", ").join(bottlenecks));
+            }
+        } else if (client != null) {
+            sb.append("\t\t\t\t\t\t\t");
+        }
+        sb.append('\n');
+        writer.write(sb.toString());
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+}
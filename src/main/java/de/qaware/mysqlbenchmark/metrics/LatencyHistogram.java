@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Latency histogram with bounded memory and a relative precision better than 1%, in the style of HdrHistogram.
+ * Values are recorded in microseconds. Values from 0 to 256µs are counted exactly, above that every
+ * power of two range is split into 128 linear sub buckets. Values larger than {@link #MAX_VALUE} (about 71 minutes)
+ * are counted in the last bucket, the exact maximum is tracked separately.
+ * <p/>
+ * The counts of a power of two range are allocated when the first value falls into it, so a histogram takes
+ * at most 26 KB and typically a few KB. Recording into an allocated range does not allocate.
+ * <p/>
+ * The histogram is not thread safe.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Largest value that gets a bucket of its own, larger values are counted in the last bucket
+     */
+    public static final long MAX_VALUE = (1L << 32) - 1;
+
+    /**
+     * Percentiles shown in all result formats, the maximum is shown in addition
+     */
+    public static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int BUCKET_COUNT = 64 - Long.numberOfLeadingZeros(MAX_VALUE) - SUB_BUCKET_BITS + 1;
+    static final int LENGTH = (BUCKET_COUNT + 1) * SUB_BUCKET_HALF;
+    private static final String ENCODING_VERSION = "h1";
+
+    private final long[][] counts = new long[LENGTH / SUB_BUCKET_HALF][];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Record one value
+     *
+     * @param micros value in microseconds, negative values are counted as 0
+     */
+    public void record(long micros) {
+        long value = micros < 0 ? 0 : micros;
+        increment(index(value), 1);
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Record one value measured in nanoseconds
+     *
+     * @param nanos value in nanoseconds
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * Add all values of another histogram to this one
+     *
+     * @param other histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        for (int row = 0; row < counts.length; row++) {
+            if (other.counts[row] != null) {
+                for (int i = 0; i < SUB_BUCKET_HALF; i++) {
+                    increment(row * SUB_BUCKET_HALF + i, other.counts[row][i]);
+                }
+            }
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Remove the values of an earlier copy of this histogram, leaving the values recorded since.
+     * Min and max of the remaining values are approximated by their bucket boundaries.
+     *
+     * @param earlier earlier copy of this histogram
+     */
+    public void subtract(LatencyHistogram earlier) {
+        if (earlier.totalCount == 0) {
+            return;
+        }
+        for (int row = 0; row < counts.length; row++) {
+            if (earlier.counts[row] != null) {
+                for (int i = 0; i < SUB_BUCKET_HALF; i++) {
+                    increment(row * SUB_BUCKET_HALF + i, -earlier.counts[row][i]);
+                }
+            }
+        }
+        totalCount -= earlier.totalCount;
+        sum -= earlier.sum;
+        long newMin = Long.MAX_VALUE;
+        long newMax = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            if (count(i) > 0) {
+                newMin = Math.min(newMin, Math.max(lowestEquivalentValue(i), min));
+                newMax = Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        min = newMin;
+        max = newMax;
+    }
+
+    /**
+     * Remove all values
+     */
+    public void reset() {
+        for (long[] row : counts) {
+            if (row != null) {
+                Arrays.fill(row, 0);
+            }
+        }
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * A copy of this histogram
+     *
+     * @return copy
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * Number of recorded values
+     *
+     * @return count
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Sum of all recorded values
+     *
+     * @return sum in microseconds
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Smallest recorded value
+     *
+     * @return min in microseconds, 0 if empty
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * Largest recorded value
+     *
+     * @return max in microseconds, 0 if empty
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Mean of all recorded values
+     *
+     * @return mean in microseconds, 0 if empty
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / (double) totalCount;
+    }
+
+    /**
+     * The value below or at which the given percentage of values lies. As in HdrHistogram, the highest value
+     * equivalent to the bucket is returned, but never more than the recorded maximum.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return value in microseconds, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double p = Math.min(Math.max(percentile, 0), 100);
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            seen += count(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Number of values less than or equal to the given value. Exact for values on bucket boundaries.
+     *
+     * @param micros upper bound in microseconds
+     * @return count
+     */
+    public long getCountAtOrBelow(long micros) {
+        if (micros >= max) {
+            return totalCount;
+        }
+        long count = 0;
+        int last = index(micros);
+        for (int i = 0; i <= last; i++) {
+            count += count(i);
+        }
+        return count;
+    }
+
+    /**
+     * Lossless text encoding: version, count, sum, min, max followed by the non empty buckets as
+     * {@code <index distance>:<count>} pairs. The result contains no whitespace.
+     *
+     * @return encoded histogram
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(ENCODING_VERSION).append(',').append(totalCount).append(',').append(sum)
+                .append(',').append(getMin()).append(',').append(max);
+        int previous = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            if (count(i) != 0) {
+                sb.append(',').append(i - previous).append(':').append(count(i));
+                previous = i;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode a histogram encoded by {@link #encode()}
+     *
+     * @param encoded encoded histogram
+     * @return the histogram
+     * @throws IllegalArgumentException if the encoding is invalid
+     */
+    public static LatencyHistogram decode(String encoded) {
+        String[] fields = encoded.trim().split(",");
+        if (fields.length < 5 || !ENCODING_VERSION.equals(fields[0])) {
+            throw new IllegalArgumentException("Not an encoded histogram: " + encoded);
+        }
+        try {
+            LatencyHistogram h = new LatencyHistogram();
+            h.totalCount = Long.parseLong(fields[1]);
+            h.sum = Long.parseLong(fields[2]);
+            h.min = h.totalCount == 0 ? Long.MAX_VALUE : Long.parseLong(fields[3]);
+            h.max = Long.parseLong(fields[4]);
+            int index = 0;
+            for (int i = 5; i < fields.length; i++) {
+                int colon = fields[i].indexOf(':');
+                index += Integer.parseInt(fields[i].substring(0, colon));
+                h.increment(index, Long.parseLong(fields[i].substring(colon + 1)));
+            }
+            return h;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid encoded histogram: " + encoded, e);
+        }
+    }
+
+    /**
+     * Compact binary encoding with the content of {@link #encode()}, all numbers as variable length integers
+     * of 7 bits per byte. The non empty buckets are terminated by a zero index distance.
+     *
+     * @param out output to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        writeVarLong(out, totalCount);
+        writeVarLong(out, sum);
+        writeVarLong(out, getMin());
+        writeVarLong(out, max);
+        int previous = -1;
+        for (int i = 0; i < LENGTH; i++) {
+            if (count(i) != 0) {
+                writeVarLong(out, i - previous);
+                writeVarLong(out, count(i));
+                previous = i;
+            }
+        }
+        writeVarLong(out, 0);
+    }
+
+    /**
+     * Read a histogram written by {@link #writeTo(java.io.DataOutput)}
+     *
+     * @param in input to read from
+     * @return the histogram
+     * @throws IOException if reading fails or the encoding is invalid
+     */
+    public static LatencyHistogram readFrom(DataInput in) throws IOException {
+        LatencyHistogram h = new LatencyHistogram();
+        h.totalCount = readVarLong(in);
+        h.sum = readVarLong(in);
+        long min = readVarLong(in);
+        h.min = h.totalCount == 0 ? Long.MAX_VALUE : min;
+        h.max = readVarLong(in);
+        int index = -1;
+        long distance;
+        while ((distance = readVarLong(in)) != 0) {
+            index += distance;
+            if (index >= LENGTH) {
+                throw new IOException("Invalid histogram bucket " + index);
+            }
+            h.increment(index, readVarLong(in));
+        }
+        return h;
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable length integer too long");
+    }
+
+    /**
+     * Short name of a percentile for column headers, e.g. "p50" or "p99.9"
+     *
+     * @param percentile percentile between 0 and 100
+     * @return label
+     */
+    public static String label(double percentile) {
+        if (percentile == Math.rint(percentile)) {
+            return "p" + (long) percentile;
+        }
+        return "p" + percentile;
+    }
+
+    long count(int index) {
+        long[] row = counts[index / SUB_BUCKET_HALF];
+        return row == null ? 0 : row[index % SUB_BUCKET_HALF];
+    }
+
+    private void increment(int index, long by) {
+        if (by == 0) {
+            return;
+        }
+        long[] row = counts[index / SUB_BUCKET_HALF];
+        if (row == null) {
+            row = new long[SUB_BUCKET_HALF];
+            counts[index / SUB_BUCKET_HALF] = row;
+        }
+        row[index % SUB_BUCKET_HALF] += by;
+    }
+
+    private static int index(long value) {
+        long v = Math.min(value, MAX_VALUE);
+        int bucket = 64 - Long.numberOfLeadingZeros(v | SUB_BUCKET_MASK) - SUB_BUCKET_BITS;
+        int subBucket = (int) (v >>> bucket);
+        return (bucket + 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+    }
+
+    static long lowestEquivalentValue(int index) {
+        return highestEquivalentValue(index) - bucketWidth(index) + 1;
+    }
+
+    private static long bucketWidth(int index) {
+        return 1L << Math.max(0, index / SUB_BUCKET_HALF - 1);
+    }
+
+    static long highestEquivalentValue(int index) {
+        int bucket = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        if (bucket < 0) {
+            subBucket -= SUB_BUCKET_HALF;
+            bucket = 0;
+        }
+        return (subBucket << bucket) + (1L << bucket) - 1;
+    }
+}
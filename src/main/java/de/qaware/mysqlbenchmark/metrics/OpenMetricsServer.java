@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP endpoint which exposes the measurements of a running replay in the Prometheus text format,
+ * or in the OpenMetrics format if the scraper asks for it, on {@code /metrics}.
+ * <p/>
+ * Scrapes never merge the thread recorders themselves: they render the last snapshot, which is the last
+ * merge of the {@link IntervalReporter} if one feeds it, and otherwise merged once a second by a daemon
+ * thread. So scraping more often does not lock the recorders of the connections more often. Scrapes are
+ * served one at a time by a single daemon thread.
+ * <p/>
+ * At most {@code maxDigests} digests are exported with their own labels, the heaviest by count when a
+ * slot is free. A digest keeps its labels once exported, all others are summed up under
+ * {@link DigestRegistry#OTHER}. The counts a digest had in that bucket before it got its own labels stay
+ * there, so every exported counter only grows.
+ */
+public class OpenMetricsServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OpenMetricsServer.class);
+
+    private static final String PREFIX = "mysqlbenchmark_";
+    private static final String OPENMETRICS_TYPE = "application/openmetrics-text";
+
+    /**
+     * Upper bounds of the latency buckets in seconds
+     */
+    private static final double[] BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+            0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /**
+     * Digests exported with their own labels if -topdigests is not given
+     */
+    public static final int MAX_DIGESTS = 100;
+
+    private static final long REFRESH_MILLIS = 1000;
+
+    private final RecorderPool recorders;
+    private final DigestRegistry digests;
+    private final ReplayStatus status;
+    private final int maxDigests;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService refresher;
+
+    private volatile List<DigestStats> snapshot;
+    private volatile boolean fed = false;
+
+    /**
+     * Exported digests with their stats when they got their own labels, null if they never counted as other.
+     * Only used by the scrape thread.
+     */
+    private final Map<Integer, DigestStats> exported = new HashMap<Integer, DigestStats>();
+    private final BitSet countedAsOther = new BitSet();
+
+    /**
+     * Constructor. The port is bound immediately.
+     *
+     * @param port      port to listen on, 0 for any free port
+     * @param recorders recorders of the connection threads
+     * @param digests   digest texts
+     * @param status     state of the replay
+     * @param maxDigests number of digests exported with their own labels, 0 for {@link #MAX_DIGESTS}
+     * @throws IOException if the port can not be bound
+     */
+    public OpenMetricsServer(int port, RecorderPool recorders, DigestRegistry digests, ReplayStatus status,
+                             int maxDigests) throws IOException {
+        this.recorders = recorders;
+        this.digests = digests;
+        this.status = status;
+        this.maxDigests = maxDigests > 0 ? maxDigests : MAX_DIGESTS;
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = Executors.newSingleThreadExecutor(daemon("metrics endpoint"));
+        refresher = Executors.newSingleThreadScheduledExecutor(daemon("metrics snapshot"));
+        server.setExecutor(executor);
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                scrape(exchange);
+            }
+        });
+    }
+
+    /**
+     * Start serving scrapes
+     */
+    public void start() {
+        snapshot = recorders.merge();
+        refresher.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                if (!fed) {
+                    snapshot = recorders.merge();
+                }
+            }
+        }, REFRESH_MILLIS, REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        server.start();
+        LOG.info("Metrics endpoint listening on http://localhost:{}/metrics", getPort());
+    }
+
+    /**
+     * Stop serving scrapes
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        refresher.shutdown();
+    }
+
+    /**
+     * Replace the snapshot by a merge somebody else has done anyway. Once fed, the endpoint stops merging
+     * on its own.
+     *
+     * @param merged merged stats by digest id, not modified afterwards
+     */
+    public void update(List<DigestStats> merged) {
+        fed = true;
+        snapshot = merged;
+    }
+
+    /**
+     * The port the endpoint listens on
+     *
+     * @return port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        try {
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            boolean openMetrics = accept != null && accept.contains(OPENMETRICS_TYPE);
+            byte[] body = render(openMetrics).getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", openMetrics
+                    ? OPENMETRICS_TYPE + "; version=1.0.0; charset=utf-8"
+                    : "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } catch (RuntimeException e) {
+            LOG.error("Could not render metrics.", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render all metrics
+     *
+     * @param openMetrics true for the OpenMetrics format, false for the Prometheus text format
+     * @return exposition text
+     */
+    String render(boolean openMetrics) {
+        List<DigestStats> merged = snapshot;
+        int inFlight = recorders.getInUse();
+        export(merged);
+        DigestStats other = new DigestStats();
+
+        Map<String, DigestStats> byType = new TreeMap<String, DigestStats>();
+        StringBuilder statements = new StringBuilder();
+        StringBuilder errors = new StringBuilder();
+        StringBuilder seconds = new StringBuilder();
+        StringBuilder phases = new StringBuilder();
+        for (int id = 0; id < merged.size(); id++) {
+            DigestStats stats = merged.get(id);
+            if (stats == null) {
+                continue;
+            }
+            String text = digests.getText(id);
+            String type = StatementDigest.type(text);
+            DigestStats typeStats = byType.get(type);
+            if (typeStats == null) {
+                typeStats = new DigestStats();
+                byType.put(type, typeStats);
+            }
+            typeStats.add(stats);
+
+            if (!exported.containsKey(id)) {
+                other.add(stats);
+                countedAsOther.set(id);
+                continue;
+            }
+            series(statements, errors, seconds, phases, type, text, stats.since(exported.get(id)));
+        }
+        for (DigestStats base : exported.values()) {
+            if (base != null) {
+                other.add(base);
+            }
+        }
+        if (other.getLatency().getTotalCount() > 0) {
+            series(statements, errors, seconds, phases, "other", DigestRegistry.OTHER, other);
+        }
+
+        StringBuilder sb = new StringBuilder(4096);
+        family(sb, "statements", "counter", "Executed statements by type and digest", openMetrics);
+        sb.append(statements);
+        family(sb, "statement_errors", "counter", "Failed statements by type and digest", openMetrics);
+        sb.append(errors);
+        family(sb, "statement_seconds", "counter", "Total execution time of the statements by type and digest", openMetrics);
+        sb.append(seconds);
+        if (phases.length() > 0) {
+            family(sb, "statement_phase_seconds", "counter", "Execution time of the statements by type, digest and phase", openMetrics);
+            sb.append(phases);
+        }
+
+        family(sb, "statement_latency_seconds", "histogram", "Statement latency by type", openMetrics);
+        for (Map.Entry<String, DigestStats> entry : byType.entrySet()) {
+            LatencyHistogram h = entry.getValue().getLatency();
+            String type = "type=\"" + entry.getKey() + "\"";
+            for (double bucket : BUCKETS) {
+                sb.append(PREFIX).append("statement_latency_seconds_bucket{").append(type)
+                        .append(",le=\"").append(format(bucket)).append("\"} ")
+                        .append(h.getCountAtOrBelow((long) (bucket * 1e6))).append('\n');
+            }
+            sb.append(PREFIX).append("statement_latency_seconds_bucket{").append(type).append(",le=\"+Inf\"} ")
+                    .append(h.getTotalCount()).append('\n');
+            sb.append(PREFIX).append("statement_latency_seconds_count{").append(type).append("} ")
+                    .append(h.getTotalCount()).append('\n');
+            sb.append(PREFIX).append("statement_latency_seconds_sum{").append(type).append("} ")
+                    .append(format(h.getSum() / 1e6)).append('\n');
+        }
+
+        long parsed = status.getParsedStatements();
+        family(sb, "parsed_statements", "counter", "Statements read from the log and handed to a connection", openMetrics);
+        sb.append(PREFIX).append("parsed_statements_total ").append(parsed).append('\n');
+        family(sb, "completed_statements", "counter", "Statements executed by the connections, failed ones included", openMetrics);
+        sb.append(PREFIX).append("completed_statements_total ").append(status.getCompletedStatements()).append('\n');
+        family(sb, "failed_statements", "counter", "Statements which failed", openMetrics);
+        sb.append(PREFIX).append("failed_statements_total ").append(status.getFailedStatements()).append('\n');
+        gauge(sb, "replay_lag_statements", "Statements read from the log but not completed yet",
+                Math.max(0, parsed - status.getCompletedStatements()));
+        gauge(sb, "queued_statements", "Statements queued in the connections and not started yet", status.getQueuedStatements());
+        gauge(sb, "active_connections", "Started connections which have not finished yet", status.getActiveConnections());
+        gauge(sb, "backlogged_connections", "Connections waiting for a free slot", status.getBackloggedConnections());
+        gauge(sb, "executing_connections", "Connections processing their statements", inFlight);
+        if (openMetrics) {
+            sb.append("# EOF\n");
+        }
+        return sb.toString();
+    }
+
+    private void series(StringBuilder statements, StringBuilder errors, StringBuilder seconds, StringBuilder phases,
+                        String type, String text, DigestStats stats) {
+        String labels = "{type=\"" + type + "\",digest=\"" + escape(text) + "\"}";
+        statements.append(PREFIX).append("statements_total").append(labels).append(' ')
+                .append(stats.getLatency().getTotalCount()).append('\n');
+        errors.append(PREFIX).append("statement_errors_total").append(labels).append(' ')
+                .append(stats.getErrors()).append('\n');
+        seconds.append(PREFIX).append("statement_seconds_total").append(labels).append(' ')
+                .append(format(stats.getLatency().getSum() / 1e6)).append('\n');
+        if (stats.getPhases() != null) {
+            for (int i = 0; i < PhaseTimes.NAMES.length; i++) {
+                phases.append(PREFIX).append("statement_phase_seconds_total")
+                        .append(labels, 0, labels.length() - 1).append(",phase=\"").append(PhaseTimes.NAMES[i])
+                        .append("\"} ").append(format(stats.getPhases().getNanos(i) / 1e9)).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Give the heaviest digests by count without labels of their own one while there is a free slot
+     */
+    private void export(final List<DigestStats> merged) {
+        if (exported.size() >= maxDigests) {
+            return;
+        }
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) != null && !exported.containsKey(id) && !digests.isOther(id)) {
+                candidates.add(id);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long countA = merged.get(a).getLatency().getTotalCount();
+                long countB = merged.get(b).getLatency().getTotalCount();
+                return countA > countB ? -1 : (countA == countB ? 0 : 1);
+            }
+        });
+        for (Integer id : candidates.subList(0, Math.min(maxDigests - exported.size(), candidates.size()))) {
+            exported.put(id, countedAsOther.get(id) ? merged.get(id).copy() : null);
+        }
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    private static void family(StringBuilder sb, String name, String type, String help, boolean openMetrics) {
+        // the Prometheus text format names counters including the _total suffix, OpenMetrics without
+        String family = PREFIX + name + (!openMetrics && "counter".equals(type) ? "_total" : "");
+        sb.append("# HELP ").append(family).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(family).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(" gauge\n");
+        sb.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        return new BigDecimal(String.valueOf(value)).stripTrailingZeros().toPlainString();
+    }
+}
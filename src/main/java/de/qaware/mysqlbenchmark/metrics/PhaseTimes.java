@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+/**
+ * Latency of the statements of one digest split into phases, as sums over all executions:
+ * <ul>
+ * <li>prepare: creating the statement on the client</li>
+ * <li>send: building and writing the request</li>
+ * <li>wait: from the request written until the first byte of the response, i.e. network round trip and
+ * server execution</li>
+ * <li>receive: from the first byte until the result is read and decoded, i.e. transfer and client side
+ * processing of the result</li>
+ * </ul>
+ * Not thread safe, see {@link ThreadRecorder}.
+ */
+public class PhaseTimes {
+
+    public static final int PREPARE = 0;
+    public static final int SEND = 1;
+    public static final int WAIT = 2;
+    public static final int RECEIVE = 3;
+
+    /**
+     * Names of the phases by index
+     */
+    public static final String[] NAMES = {"prepare", "send", "wait", "receive"};
+
+    private final long[] nanos = new long[NAMES.length];
+    private long executions;
+
+    /**
+     * Record one execution
+     *
+     * @param prepare prepare time in nanoseconds
+     * @param send    send time in nanoseconds
+     * @param wait    wait time in nanoseconds
+     * @param receive receive time in nanoseconds
+     */
+    void record(long prepare, long send, long wait, long receive) {
+        nanos[PREPARE] += prepare;
+        nanos[SEND] += send;
+        nanos[WAIT] += wait;
+        nanos[RECEIVE] += receive;
+        executions++;
+    }
+
+    /**
+     * Add the times of other executions
+     *
+     * @param other times to add
+     */
+    public void add(PhaseTimes other) {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] += other.nanos[i];
+        }
+        executions += other.executions;
+    }
+
+    /**
+     * The times since an earlier copy
+     *
+     * @param earlier earlier copy, may be null
+     * @return new times with the difference
+     */
+    public PhaseTimes since(PhaseTimes earlier) {
+        PhaseTimes delta = new PhaseTimes();
+        delta.add(this);
+        if (earlier != null) {
+            for (int i = 0; i < nanos.length; i++) {
+                delta.nanos[i] -= earlier.nanos[i];
+            }
+            delta.executions -= earlier.executions;
+        }
+        return delta;
+    }
+
+    /**
+     * Total time of a phase over all executions
+     *
+     * @param phase phase index, e.g. {@link #WAIT}
+     * @return nanoseconds
+     */
+    public long getNanos(int phase) {
+        return nanos[phase];
+    }
+
+    /**
+     * Mean time of a phase per execution
+     *
+     * @param phase phase index, e.g. {@link #WAIT}
+     * @return microseconds, NaN without executions
+     */
+    public double mean(int phase) {
+        return executions == 0 ? Double.NaN : nanos[phase] / 1000.0 / executions;
+    }
+
+    /**
+     * Share of a phase in the total time of all phases
+     *
+     * @param phase phase index, e.g. {@link #WAIT}
+     * @return share between 0 and 1, NaN without time
+     */
+    public double share(int phase) {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        return total == 0 ? Double.NaN : nanos[phase] / (double) total;
+    }
+
+    /**
+     * Number of executions with phase times
+     *
+     * @return executions
+     */
+    public long getExecutions() {
+        return executions;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out {@link ThreadRecorder}s to the running connection threads. A recorder is returned when its
+ * thread ends and reused by the next one, so the number of recorders is bounded by the number of
+ * concurrently running threads, not by the number of sessions in the log.
+ * Measurements are only merged when a report is requested.
+ */
+public class RecorderPool {
+
+    private final List<ThreadRecorder> recorders = new ArrayList<ThreadRecorder>();
+    private final Deque<ThreadRecorder> free = new ArrayDeque<ThreadRecorder>();
+    private final int timeCounters;
+
+    /**
+     * Constructor for recorders without summary of the execution time by digest
+     */
+    public RecorderPool() {
+        this(0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param timeCounters counters of the summaries of the execution time by digest, see
+     *                     {@link ThreadRecorder#recordTime(String, long)}, 0 to not summarize
+     */
+    public RecorderPool(int timeCounters) {
+        this.timeCounters = timeCounters;
+    }
+
+    /**
+     * Get a recorder for exclusive use by the calling thread
+     *
+     * @return recorder
+     */
+    public synchronized ThreadRecorder acquire() {
+        ThreadRecorder recorder = free.poll();
+        if (recorder == null) {
+            recorder = new ThreadRecorder(timeCounters);
+            recorders.add(recorder);
+        }
+        return recorder;
+    }
+
+    /**
+     * Return a recorder when its thread ends. The measurements stay in the recorder.
+     *
+     * @param recorder recorder from {@link #acquire()}
+     */
+    public synchronized void release(ThreadRecorder recorder) {
+        free.push(recorder);
+    }
+
+    /**
+     * Add measurements recorded earlier, e.g. by the run a replay resumes. They are kept by a recorder
+     * which is not in use.
+     *
+     * @param stats measurements by digest id
+     */
+    public void restore(Map<Integer, DigestStats> stats) {
+        ThreadRecorder recorder = acquire();
+        for (Map.Entry<Integer, DigestStats> entry : stats.entrySet()) {
+            recorder.add(entry.getKey(), entry.getValue());
+        }
+        release(recorder);
+    }
+
+    /**
+     * Number of recorders in use, i.e. connection threads currently processing their queries
+     *
+     * @return recorders in use
+     */
+    public synchronized int getInUse() {
+        return recorders.size() - free.size();
+    }
+
+    /**
+     * Merge the measurements of all recorders
+     *
+     * @return stats indexed by digest id, null for digests without measurements
+     */
+    public List<DigestStats> merge() {
+        List<ThreadRecorder> all;
+        synchronized (this) {
+            all = new ArrayList<ThreadRecorder>(recorders);
+        }
+        List<DigestStats> merged = new ArrayList<DigestStats>();
+        for (ThreadRecorder recorder : all) {
+            recorder.mergeInto(merged);
+        }
+        return merged;
+    }
+
+    /**
+     * Merge the measurements of one digest from all recorders. Used to render reports digest by digest
+     * without holding the merged stats of all digests in memory.
+     *
+     * @param digestId digest id
+     * @return merged stats or null if the digest has no measurements
+     */
+    public DigestStats merge(int digestId) {
+        List<ThreadRecorder> all;
+        synchronized (this) {
+            all = new ArrayList<ThreadRecorder>(recorders);
+        }
+        DigestStats merged = new DigestStats();
+        boolean found = false;
+        for (ThreadRecorder recorder : all) {
+            found |= recorder.mergeInto(digestId, merged);
+        }
+        return found ? merged : null;
+    }
+
+    /**
+     * Merge the summaries of the execution time by digest of all recorders
+     *
+     * @return merged summary in microseconds, null if not summarized
+     */
+    public SpaceSaving mergeTimes() {
+        if (timeCounters == 0) {
+            return null;
+        }
+        List<ThreadRecorder> all;
+        synchronized (this) {
+            all = new ArrayList<ThreadRecorder>(recorders);
+        }
+        SpaceSaving merged = new SpaceSaving(timeCounters);
+        for (ThreadRecorder recorder : all) {
+            recorder.mergeTimesInto(merged);
+        }
+        return merged;
+    }
+
+    /**
+     * Merge the dispatch lag of all recorders
+     *
+     * @return merged histogram
+     */
+    public LatencyHistogram mergeDispatchLag() {
+        List<ThreadRecorder> all;
+        synchronized (this) {
+            all = new ArrayList<ThreadRecorder>(recorders);
+        }
+        LatencyHistogram merged = new LatencyHistogram();
+        for (ThreadRecorder recorder : all) {
+            recorder.mergeDispatchLagInto(merged);
+        }
+        return merged;
+    }
+}
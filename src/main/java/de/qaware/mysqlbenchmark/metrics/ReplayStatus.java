@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+/**
+ * State of a running replay which is not recorded per statement. Implementations must be safe to call
+ * from any thread without blocking the replay.
+ */
+public interface ReplayStatus {
+
+    /**
+     * Number of statements read from the log and handed to a connection
+     *
+     * @return statement count
+     */
+    long getParsedStatements();
+
+    /**
+     * Number of statements queued in the connections and not started yet
+     *
+     * @return statement count
+     */
+    long getQueuedStatements();
+
+    /**
+     * Number of statements executed, failed ones included
+     *
+     * @return statement count
+     */
+    long getCompletedStatements();
+
+    /**
+     * Number of statements which failed
+     *
+     * @return statement count
+     */
+    long getFailedStatements();
+
+    /**
+     * Number of started connection threads which have not finished yet
+     *
+     * @return connection count
+     */
+    int getActiveConnections();
+
+    /**
+     * Number of connections waiting in the backlog for a free slot
+     *
+     * @return connection count
+     */
+    int getBackloggedConnections();
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * End to end accounting of a replay: statements issued to the connections, completed and failed, the
+ * makespan from the first issued to the last completed statement and the completed statements by type.
+ * Statements which are neither completed nor in flight at the end were issued to sessions which never
+ * selected a database and were therefore never started.
+ */
+public class RunSummary {
+
+    private final long issued;
+    private final long completed;
+    private final long failed;
+    private final long inFlight;
+    private final long makespanNanos;
+    private final boolean drained;
+    private final Map<String, DigestStats> byType;
+
+    /**
+     * Constructor
+     *
+     * @param issued        statements handed to a connection
+     * @param completed     statements executed, failed ones included
+     * @param failed        statements which failed
+     * @param inFlight      statements of started sessions which did not complete
+     * @param makespanNanos time from the first issued to the last completed statement
+     * @param drained       true if all started sessions finished
+     * @param byType        stats of the completed statements by type, e.g. "select"
+     */
+    public RunSummary(long issued, long completed, long failed, long inFlight, long makespanNanos, boolean drained,
+                      Map<String, DigestStats> byType) {
+        this.issued = issued;
+        this.completed = completed;
+        this.failed = failed;
+        this.inFlight = inFlight;
+        this.makespanNanos = makespanNanos;
+        this.drained = drained;
+        this.byType = new TreeMap<String, DigestStats>(byType);
+    }
+
+    public long getIssued() {
+        return issued;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Statements which were issued but never executed, as their session was never started
+     *
+     * @return statement count
+     */
+    public long getNotStarted() {
+        return Math.max(0, issued - completed - inFlight);
+    }
+
+    /**
+     * Check if all started sessions finished before the drain timeout
+     *
+     * @return true if drained
+     */
+    public boolean isDrained() {
+        return drained;
+    }
+
+    /**
+     * Time from the first issued to the last completed statement
+     *
+     * @return milliseconds
+     */
+    public double getMakespanMillis() {
+        return makespanNanos / 1e6;
+    }
+
+    /**
+     * Completed statements per second over the makespan
+     *
+     * @return throughput, 0 if nothing completed
+     */
+    public double getThroughput() {
+        return throughput(completed);
+    }
+
+    /**
+     * Completed statements per second over the makespan
+     *
+     * @param count statement count
+     * @return throughput, 0 without makespan
+     */
+    public double throughput(long count) {
+        return makespanNanos > 0 ? count * 1e9 / makespanNanos : 0;
+    }
+
+    /**
+     * Stats of the completed statements by type
+     *
+     * @return stats by statement type, sorted
+     */
+    public Map<String, DigestStats> getByType() {
+        return byType;
+    }
+}
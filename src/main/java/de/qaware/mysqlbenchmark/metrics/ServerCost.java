@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Server side cost of the executions of one statement digest, read from performance_schema or from
+ * session status deltas. Not every source provides every counter, unknown counters are marked as such.
+ * Not thread safe.
+ */
+public class ServerCost {
+
+    /**
+     * Rows examined by the server (performance_schema)
+     */
+    public static final int ROWS_EXAMINED = 0;
+    /**
+     * Rows sent to the client
+     */
+    public static final int ROWS_SENT = 1;
+    /**
+     * Rows read from the storage engine, i.e. InnoDB row reads for InnoDB tables (sum of the Handler_read_* status)
+     */
+    public static final int ROWS_READ = 2;
+    /**
+     * Internal temporary tables
+     */
+    public static final int TMP_TABLES = 3;
+    /**
+     * Internal temporary tables on disk
+     */
+    public static final int TMP_DISK_TABLES = 4;
+    /**
+     * Merge passes of file sorts
+     */
+    public static final int SORT_MERGE_PASSES = 5;
+    /**
+     * Time waiting for table locks in microseconds (performance_schema)
+     */
+    public static final int LOCK_TIME = 6;
+    /**
+     * Execution time measured by the server in microseconds (performance_schema)
+     */
+    public static final int SERVER_TIME = 7;
+
+    /**
+     * Column names of the counters, e.g. for reports
+     */
+    public static final String[] NAMES = {"rows_examined", "rows_sent", "rows_read", "tmp_tables", "tmp_disk_tables",
+            "sort_merge_passes", "lock_time_us", "server_time_us"};
+
+    private long executions;
+    private final long[] values = new long[NAMES.length];
+    private final boolean[] known = new boolean[NAMES.length];
+
+    /**
+     * Set a counter
+     *
+     * @param counter counter index, e.g. {@link #ROWS_EXAMINED}
+     * @param value   value
+     */
+    public void set(int counter, long value) {
+        values[counter] = value;
+        known[counter] = true;
+    }
+
+    /**
+     * Value of a counter
+     *
+     * @param counter counter index
+     * @return value, 0 if unknown
+     */
+    public long get(int counter) {
+        return values[counter];
+    }
+
+    /**
+     * Check if a counter was measured
+     *
+     * @param counter counter index
+     * @return true if the source provides the counter
+     */
+    public boolean isKnown(int counter) {
+        return known[counter];
+    }
+
+    /**
+     * Number of executions the counters add up
+     *
+     * @return executions
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    public void setExecutions(long executions) {
+        this.executions = executions;
+    }
+
+    /**
+     * Average of a counter per execution
+     *
+     * @param counter counter index
+     * @return average, NaN if unknown or without executions
+     */
+    public double average(int counter) {
+        return known[counter] && executions > 0 ? values[counter] / (double) executions : Double.NaN;
+    }
+
+    /**
+     * Add the counters of other executions
+     *
+     * @param other cost to add
+     */
+    public void add(ServerCost other) {
+        executions += other.executions;
+        for (int i = 0; i < values.length; i++) {
+            values[i] += other.values[i];
+            known[i] |= other.known[i];
+        }
+    }
+
+    /**
+     * Take the counters this cost does not know from another source for the same executions
+     *
+     * @param other cost from another source, may be null
+     */
+    public void complement(ServerCost other) {
+        if (other == null) {
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (!known[i] && other.known[i]) {
+                values[i] = other.values[i];
+                known[i] = true;
+            }
+        }
+    }
+
+    /**
+     * The difference to an earlier snapshot of the same counters, negative differences are cut to 0
+     *
+     * @param earlier earlier snapshot, may be null
+     * @return new cost with the difference
+     */
+    public ServerCost since(ServerCost earlier) {
+        ServerCost delta = copy();
+        if (earlier != null) {
+            delta.executions = Math.max(0, executions - earlier.executions);
+            for (int i = 0; i < values.length; i++) {
+                delta.values[i] = Math.max(0, values[i] - earlier.values[i]);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * A copy of this cost
+     *
+     * @return copy
+     */
+    public ServerCost copy() {
+        ServerCost copy = new ServerCost();
+        copy.add(this);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerCost{executions=" + executions + ", values=" + Arrays.toString(values) + "}";
+    }
+}
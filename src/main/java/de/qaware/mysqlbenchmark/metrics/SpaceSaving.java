@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary (Metwally, Agrawal, El Abbadi: Efficient computation of frequent and top-k elements in
+ * data streams, 2005): estimates the weight of the heaviest keys of a stream with a fixed number of counters.
+ * A key which is not counted yet takes over the counter with the smallest weight and inherits that weight as
+ * its error. An estimate never undercounts and overcounts by at most its error, and every key heavier than
+ * total weight / capacity is counted. Summaries of parts of a stream can be merged, see
+ * {@link #merge(SpaceSaving)}. Not thread safe.
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<String, Counter>();
+    /**
+     * Min-heap of the counters by weight
+     */
+    private final Counter[] heap;
+    private int size;
+    private long total;
+
+    /**
+     * Constructor
+     *
+     * @param capacity number of counters
+     */
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.heap = new Counter[capacity];
+    }
+
+    /**
+     * Add weight to a key
+     *
+     * @param key    key
+     * @param weight weight, e.g. 1 to count occurrences
+     */
+    public void offer(String key, long weight) {
+        total += weight;
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            if (size < capacity) {
+                counter = new Counter(key);
+                counter.weight = weight;
+                counters.put(key, counter);
+                heap[size] = counter;
+                siftUp(size++);
+                return;
+            } else {
+                counter = heap[0];
+                counters.remove(counter.key);
+                counter.key = key;
+                counter.error = counter.weight;
+            }
+            counters.put(key, counter);
+        }
+        counter.weight += weight;
+        siftDown(counter.index);
+    }
+
+    /**
+     * Add the keys of a summary of another part of the stream (Agarwal et al.: Mergeable summaries, 2012).
+     * A key missing in one summary is estimated with that summary's smallest weight, which is also added to
+     * its error, so the merged estimates keep the guarantees. Only the heaviest keys keep their counter.
+     *
+     * @param other summary with the same capacity
+     */
+    public void merge(SpaceSaving other) {
+        long min = size < capacity ? 0 : heap[0].weight;
+        long otherMin = other.size < other.capacity ? 0 : other.heap[0].weight;
+        List<Counter> all = new ArrayList<Counter>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Counter counter = heap[i];
+            Counter o = other.counters.get(counter.key);
+            counter.weight += o != null ? o.weight : otherMin;
+            counter.error += o != null ? o.error : otherMin;
+            all.add(counter);
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter o = other.heap[i];
+            if (!counters.containsKey(o.key)) {
+                Counter counter = new Counter(o.key);
+                counter.weight = o.weight + min;
+                counter.error = o.error + min;
+                all.add(counter);
+            }
+        }
+        Collections.sort(all, new Comparator<Counter>() {
+            public int compare(Counter a, Counter b) {
+                return a.weight > b.weight ? -1 : (a.weight == b.weight ? 0 : 1);
+            }
+        });
+        counters.clear();
+        size = 0;
+        for (Counter counter : all.subList(0, Math.min(capacity, all.size()))) {
+            counters.put(counter.key, counter);
+            heap[size] = counter;
+            siftUp(size++);
+        }
+        total += other.total;
+    }
+
+    /**
+     * Estimated weight of a key
+     *
+     * @param key key
+     * @return weight including the error, for keys without counter the upper bound of their weight
+     */
+    public long getWeight(String key) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            return counter.weight;
+        }
+        return size < capacity ? 0 : heap[0].weight;
+    }
+
+    /**
+     * Weight a key has at least
+     *
+     * @param key key
+     * @return weight minus error, 0 for keys without counter
+     */
+    public long getGuaranteedWeight(String key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0 : counter.weight - counter.error;
+    }
+
+    /**
+     * Weight of all keys offered
+     *
+     * @return total weight
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * The heaviest keys
+     *
+     * @param n number of keys
+     * @return estimates by descending weight
+     */
+    public List<Estimate> top(int n) {
+        List<Estimate> estimates = new ArrayList<Estimate>(size);
+        for (int i = 0; i < size; i++) {
+            estimates.add(new Estimate(heap[i].key, heap[i].weight, heap[i].error));
+        }
+        Collections.sort(estimates, new Comparator<Estimate>() {
+            public int compare(Estimate a, Estimate b) {
+                return a.weight > b.weight ? -1 : (a.weight == b.weight ? 0 : 1);
+            }
+        });
+        return estimates.subList(0, Math.min(n, estimates.size()));
+    }
+
+    private void siftUp(int i) {
+        Counter counter = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[parent].weight <= counter.weight) {
+                break;
+            }
+            heap[i] = heap[parent];
+            heap[i].index = i;
+            i = parent;
+        }
+        heap[i] = counter;
+        counter.index = i;
+    }
+
+    private void siftDown(int i) {
+        Counter counter = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].weight < heap[child].weight) {
+                child++;
+            }
+            if (heap[child].weight >= counter.weight) {
+                break;
+            }
+            heap[i] = heap[child];
+            heap[i].index = i;
+            i = child;
+        }
+        heap[i] = counter;
+        counter.index = i;
+    }
+
+    private static class Counter {
+        private String key;
+        private long weight;
+        private long error;
+        private int index;
+
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Estimated weight of a key
+     */
+    public static class Estimate {
+        private final String key;
+        private final long weight;
+        private final long error;
+
+        Estimate(String key, long weight, long error) {
+            this.key = key;
+            this.weight = weight;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Estimated weight, never below the true weight
+         *
+         * @return weight
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * Maximum overestimation of the weight
+         *
+         * @return error
+         */
+        public long getError() {
+            return error;
+        }
+    }
+}
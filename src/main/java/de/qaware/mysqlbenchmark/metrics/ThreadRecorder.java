@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measurements of one thread: {@link DigestStats} per digest id, the dispatch lag of its statements and,
+ * if only the heaviest digests are measured, a {@link SpaceSaving} summary of the execution time by digest
+ * text over all statements. Only the owning thread records, so the lock on the recorder is uncontended except while the
+ * recorder is merged for a report. Recording allocates only the first time a digest or latency range is seen.
+ */
+public class ThreadRecorder {
+
+    private DigestStats[] digests = new DigestStats[64];
+    private final LatencyHistogram dispatchLag = new LatencyHistogram();
+    private final SpaceSaving times;
+
+    /**
+     * Constructor
+     *
+     * @param timeCounters counters of the summary of the execution time by digest, 0 to not summarize
+     */
+    public ThreadRecorder(int timeCounters) {
+        times = timeCounters > 0 ? new SpaceSaving(timeCounters) : null;
+    }
+
+    /**
+     * Record the duration of one statement
+     *
+     * @param digestId digest id of the statement
+     * @param nanos    duration in nanoseconds
+     * @param failed   true if the statement failed
+     */
+    public synchronized void record(int digestId, long nanos, boolean failed) {
+        stats(digestId).record(nanos, failed);
+    }
+
+    /**
+     * Add the duration of one statement to the summary of the execution time by digest, if summarized
+     *
+     * @param digest digest text of the statement
+     * @param nanos  duration in nanoseconds
+     */
+    public synchronized void recordTime(String digest, long nanos) {
+        if (times != null) {
+            times.offer(digest, nanos / 1000);
+        }
+    }
+
+    /**
+     * Record the server side cost of one statement
+     *
+     * @param digestId digest id of the statement
+     * @param cost     cost of the execution
+     */
+    public synchronized void recordServerCost(int digestId, ServerCost cost) {
+        stats(digestId).recordServerCost(cost);
+    }
+
+    /**
+     * Record the phases of one statement, see {@link PhaseTimes}
+     *
+     * @param digestId digest id of the statement
+     * @param prepare  prepare time in nanoseconds
+     * @param send     send time in nanoseconds
+     * @param wait     wait time in nanoseconds
+     * @param receive  receive time in nanoseconds
+     */
+    public synchronized void recordPhases(int digestId, long prepare, long send, long wait, long receive) {
+        stats(digestId).recordPhases(prepare, send, wait, receive);
+    }
+
+    /**
+     * Add measurements recorded earlier, e.g. by the run a replay resumes
+     *
+     * @param digestId digest id of the statements
+     * @param stats    measurements to add
+     */
+    public synchronized void add(int digestId, DigestStats stats) {
+        stats(digestId).add(stats);
+    }
+
+    /**
+     * Record the dispatch lag of one statement, see {@link ClientLoad}
+     *
+     * @param nanos lag in nanoseconds
+     */
+    public synchronized void recordDispatchLag(long nanos) {
+        dispatchLag.recordNanos(nanos);
+    }
+
+    private DigestStats stats(int digestId) {
+        if (digestId >= digests.length) {
+            digests = Arrays.copyOf(digests, Math.max(digestId + 1, digests.length * 2));
+        }
+        DigestStats stats = digests[digestId];
+        if (stats == null) {
+            stats = new DigestStats();
+            digests[digestId] = stats;
+        }
+        return stats;
+    }
+
+    /**
+     * Add the measurements of this recorder to merged histograms
+     *
+     * @param merged stats indexed by digest id, grown as needed
+     */
+    synchronized void mergeInto(List<DigestStats> merged) {
+        for (int id = 0; id < digests.length; id++) {
+            if (digests[id] == null) {
+                continue;
+            }
+            while (merged.size() <= id) {
+                merged.add(null);
+            }
+            if (merged.get(id) == null) {
+                merged.set(id, new DigestStats());
+            }
+            merged.get(id).add(digests[id]);
+        }
+    }
+
+    /**
+     * Add the summary of the execution time of this recorder to a merged one
+     *
+     * @param merged summary with the same number of counters
+     */
+    synchronized void mergeTimesInto(SpaceSaving merged) {
+        if (times != null) {
+            merged.merge(times);
+        }
+    }
+
+    /**
+     * Add the dispatch lag of this recorder to a merged histogram
+     *
+     * @param merged histogram to add to
+     */
+    synchronized void mergeDispatchLagInto(LatencyHistogram merged) {
+        merged.add(dispatchLag);
+    }
+
+    /**
+     * Add the measurements of one digest of this recorder to merged stats
+     *
+     * @param digestId digest id
+     * @param merged   stats to add to
+     * @return true if this recorder has measurements of the digest
+     */
+    synchronized boolean mergeInto(int digestId, DigestStats merged) {
+        if (digestId >= digests.length || digests[digestId] == null) {
+            return false;
+        }
+        merged.add(digests[digestId]);
+        return true;
+    }
+}
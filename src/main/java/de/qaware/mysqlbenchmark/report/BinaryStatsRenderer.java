@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.report;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Renders measurement points in a compact binary format: the magic number and version, then per point
+ * a record marker, the UTF-8 name prefixed by its length, the error count and the histogram as written by
+ * {@link LatencyHistogram#writeTo(java.io.DataOutput)}, and an end marker. Several reports may be
+ * concatenated, {@link #read(java.io.InputStream, StatsRenderer)} renders all of them again.
+ */
+public class BinaryStatsRenderer implements StatsRenderer {
+
+    private static final int MAGIC = 0x4D425354; // "MBST"
+    private static final int VERSION = 1;
+    private static final int RECORD = 1;
+    private static final int END = 0;
+
+    private final DataOutputStream out;
+
+    /**
+     * Constructor
+     *
+     * @param out stream to write to
+     */
+    public BinaryStatsRenderer(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    public void begin() throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    public void render(String point, DigestStats stats) throws IOException {
+        byte[] name = point.getBytes("UTF-8");
+        out.writeByte(RECORD);
+        out.writeInt(name.length);
+        out.write(name);
+        out.writeLong(stats.getErrors());
+        stats.getLatency().writeTo(out);
+    }
+
+    public void end() throws IOException {
+        out.writeByte(END);
+        out.flush();
+    }
+
+    /**
+     * Read binary reports and render their points with another renderer, e.g. to convert them to CSV
+     *
+     * @param in       stream with one or more reports
+     * @param renderer renderer for the points
+     * @throws IOException if reading or rendering fails or the stream is no binary report
+     */
+    public static void read(InputStream in, StatsRenderer renderer) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        renderer.begin();
+        int magic;
+        while ((magic = readMagic(data)) != -1) {
+            if (magic != MAGIC) {
+                throw new IOException("Not a binary report, magic is " + Integer.toHexString(magic));
+            }
+            int version = data.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary report version " + version);
+            }
+            while (data.readUnsignedByte() == RECORD) {
+                byte[] name = new byte[data.readInt()];
+                data.readFully(name);
+                long errors = data.readLong();
+                renderer.render(new String(name, "UTF-8"), new DigestStats(LatencyHistogram.readFrom(data), errors));
+            }
+        }
+        renderer.end();
+    }
+
+    private static int readMagic(DataInputStream data) throws IOException {
+        int first = data.read();
+        if (first == -1) {
+            return -1;
+        }
+        try {
+            return (first << 24) | (data.readUnsignedByte() << 16) | data.readUnsignedShort();
+        } catch (EOFException e) {
+            throw new IOException("Truncated binary report");
+        }
+    }
+}
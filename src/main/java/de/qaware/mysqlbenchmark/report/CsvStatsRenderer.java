@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.report;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.metrics.PhaseTimes;
+import de.qaware.mysqlbenchmark.metrics.ServerCost;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Renders one CSV line per measurement point without padding, times in milliseconds with '.' as decimal
+ * separator. Point names are quoted. The server side cost columns hold the totals of all executions and
+ * are empty if not collected, as are the phase columns with the total time of each latency phase and the
+ * plan_hash column if no execution plan was captured.
+ */
+public class CsvStatsRenderer implements StatsRenderer {
+
+    private static final char VALUE_SEPARATOR = ';';
+    private final Writer writer;
+
+    /**
+     * Constructor
+     *
+     * @param writer writer to write to
+     */
+    public CsvStatsRenderer(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void begin() throws IOException {
+        StringBuilder sb = new StringBuilder("Measurement Point;#;Errors;Average;Min;Max;Total");
+        for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+            sb.append(VALUE_SEPARATOR).append(LatencyHistogram.label(percentile));
+        }
+        sb.append(VALUE_SEPARATOR).append("server_executions");
+        for (String name : ServerCost.NAMES) {
+            sb.append(VALUE_SEPARATOR).append(name);
+        }
+        for (String name : PhaseTimes.NAMES) {
+            sb.append(VALUE_SEPARATOR).append(name).append("_ms");
+        }
+        sb.append(VALUE_SEPARATOR).append("plan_hash");
+        sb.append('\n');
+        writer.write(sb.toString());
+    }
+
+    public void render(String point, DigestStats stats) throws IOException {
+        LatencyHistogram h = stats.getLatency();
+        StringBuilder sb = new StringBuilder(point.length() + 96);
+        sb.append('"').append(point.replace("\"", "\"\"")).append('"')
+                .append(VALUE_SEPARATOR).append(h.getTotalCount())
+                .append(VALUE_SEPARATOR).append(stats.getErrors())
+                .append(VALUE_SEPARATOR).append(millis(h.getMean()))
+                .append(VALUE_SEPARATOR).append(millis(h.getMin()))
+                .append(VALUE_SEPARATOR).append(millis(h.getMax()))
+                .append(VALUE_SEPARATOR).append(millis(h.getSum()));
+        for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+            sb.append(VALUE_SEPARATOR).append(millis(h.getValueAtPercentile(percentile)));
+        }
+        ServerCost cost = stats.getServerCost();
+        sb.append(VALUE_SEPARATOR);
+        if (cost != null) {
+            sb.append(cost.getExecutions());
+        }
+        for (int i = 0; i < ServerCost.NAMES.length; i++) {
+            sb.append(VALUE_SEPARATOR);
+            if (cost != null && cost.isKnown(i)) {
+                sb.append(cost.get(i));
+            }
+        }
+        PhaseTimes phases = stats.getPhases();
+        for (int i = 0; i < PhaseTimes.NAMES.length; i++) {
+            sb.append(VALUE_SEPARATOR);
+            if (phases != null) {
+                sb.append(millis(phases.getNanos(i) / 1000.0));
+            }
+        }
+        sb.append(VALUE_SEPARATOR);
+        if (stats.getPlanHash() != null) {
+            sb.append(stats.getPlanHash());
+        }
+        sb.append('\n');
+        writer.write(sb.toString());
+    }
+
+    public void end() throws IOException {
+        writer.flush();
+    }
+
+    static String millis(double micros) {
+        return String.format(Locale.ENGLISH, "%.3f", micros / 1000.0);
+    }
+}
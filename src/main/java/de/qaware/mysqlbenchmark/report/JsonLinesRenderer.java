@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.report;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.metrics.PhaseTimes;
+import de.qaware.mysqlbenchmark.metrics.ServerCost;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders one JSON object per line and measurement point. Times are in milliseconds, the "histogram" field
+ * holds the lossless {@link LatencyHistogram#encode()} encoding. If collected, the "server" object holds the
+ * server side cost totals of all executions, "phases" the total times of the latency phases in milliseconds
+ * and "plan_hash" the hash of the execution plan.
+ */
+public class JsonLinesRenderer implements StatsRenderer {
+
+    private final Writer writer;
+
+    /**
+     * Constructor
+     *
+     * @param writer writer to write to
+     */
+    public JsonLinesRenderer(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void begin() {
+        // no header, every line stands for itself
+    }
+
+    public void render(String point, DigestStats stats) throws IOException {
+        LatencyHistogram h = stats.getLatency();
+        StringBuilder sb = new StringBuilder(point.length() + 192);
+        sb.append("{\"point\":");
+        quote(sb, point);
+        sb.append(",\"count\":").append(h.getTotalCount())
+                .append(",\"errors\":").append(stats.getErrors())
+                .append(",\"avg_ms\":").append(CsvStatsRenderer.millis(h.getMean()))
+                .append(",\"min_ms\":").append(CsvStatsRenderer.millis(h.getMin()))
+                .append(",\"max_ms\":").append(CsvStatsRenderer.millis(h.getMax()))
+                .append(",\"total_ms\":").append(CsvStatsRenderer.millis(h.getSum()));
+        for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+            sb.append(",\"").append(LatencyHistogram.label(percentile)).append("_ms\":")
+                    .append(CsvStatsRenderer.millis(h.getValueAtPercentile(percentile)));
+        }
+        ServerCost cost = stats.getServerCost();
+        if (cost != null) {
+            sb.append(",\"server\":{\"executions\":").append(cost.getExecutions());
+            for (int i = 0; i < ServerCost.NAMES.length; i++) {
+                if (cost.isKnown(i)) {
+                    sb.append(",\"").append(ServerCost.NAMES[i]).append("\":").append(cost.get(i));
+                }
+            }
+            sb.append('}');
+        }
+        PhaseTimes phases = stats.getPhases();
+        if (phases != null) {
+            sb.append(",\"phases\":{\"executions\":").append(phases.getExecutions());
+            for (int i = 0; i < PhaseTimes.NAMES.length; i++) {
+                sb.append(",\"").append(PhaseTimes.NAMES[i]).append("_ms\":")
+                        .append(CsvStatsRenderer.millis(phases.getNanos(i) / 1000.0));
+            }
+            sb.append('}');
+        }
+        if (stats.getPlanHash() != null) {
+            sb.append(",\"plan_hash\":\"").append(stats.getPlanHash()).append('"');
+        }
+        sb.append(",\"histogram\":\"").append(h.encode()).append("\"}\n");
+        writer.write(sb.toString());
+    }
+
+    public void end() throws IOException {
+        writer.flush();
+    }
+
+    public static void quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
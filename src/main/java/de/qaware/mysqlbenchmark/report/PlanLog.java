@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.report;
+
+import de.qaware.mysqlbenchmark.metrics.ExecutionPlan;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes captured execution plans, one JSON object per line and measurement point with the members
+ * "point", "plan_hash", "summary" and "plan", the plan as returned by the server in a string.
+ */
+public final class PlanLog {
+
+    private PlanLog() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Write plans
+     *
+     * @param plans  plans by measurement point
+     * @param writer writer to write to, flushed but not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(Map<String, ExecutionPlan> plans, Writer writer) throws IOException {
+        for (Map.Entry<String, ExecutionPlan> entry : new TreeMap<String, ExecutionPlan>(plans).entrySet()) {
+            ExecutionPlan plan = entry.getValue();
+            StringBuilder sb = new StringBuilder(plan.getJson().length() + 256);
+            sb.append("{\"point\":");
+            JsonLinesRenderer.quote(sb, entry.getKey());
+            sb.append(",\"plan_hash\":\"").append(plan.getHash()).append("\",\"summary\":");
+            JsonLinesRenderer.quote(sb, plan.getSummary());
+            sb.append(",\"plan\":");
+            JsonLinesRenderer.quote(sb, plan.getJson());
+            sb.append("}\n");
+            writer.write(sb.toString());
+        }
+        writer.flush();
+    }
+}
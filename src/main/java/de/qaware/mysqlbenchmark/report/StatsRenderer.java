@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.report;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+
+import java.io.IOException;
+
+/**
+ * Renders measurement points one at a time as they are merged, so a report never holds more than one
+ * point in memory. Call {@link #begin()} once, {@link #render(String, DigestStats)} for every point
+ * and {@link #end()} once.
+ */
+public interface StatsRenderer {
+
+    /**
+     * Start the report, e.g. write a header
+     *
+     * @throws IOException if writing fails
+     */
+    void begin() throws IOException;
+
+    /**
+     * Render one measurement point
+     *
+     * @param point name of the measurement point
+     * @param stats measurements of the point
+     * @throws IOException if writing fails
+     */
+    void render(String point, DigestStats stats) throws IOException;
+
+    /**
+     * Finish the report and flush the output
+     *
+     * @throws IOException if writing fails
+     */
+    void end() throws IOException;
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.report;
+
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Summary mode: keeps only the measurement points with the largest total time and renders them with
+ * another renderer, largest first, when the report ends. Memory is bounded by the number of points kept.
+ */
+public class TopStatsRenderer implements StatsRenderer {
+
+    private static final Comparator<Entry> BY_TOTAL = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            long totalA = a.stats.getLatency().getSum();
+            long totalB = b.stats.getLatency().getSum();
+            return totalA < totalB ? -1 : (totalA == totalB ? 0 : 1);
+        }
+    };
+
+    private final StatsRenderer renderer;
+    private final int limit;
+    private final PriorityQueue<Entry> top;
+
+    /**
+     * Constructor
+     *
+     * @param renderer renderer for the kept points
+     * @param limit    number of points to keep
+     */
+    public TopStatsRenderer(StatsRenderer renderer, int limit) {
+        this.renderer = renderer;
+        this.limit = limit;
+        // smallest total at the head, so it is the one to drop
+        top = new PriorityQueue<Entry>(Math.max(1, limit + 1), BY_TOTAL);
+    }
+
+    public void begin() {
+        top.clear();
+    }
+
+    public void render(String point, DigestStats stats) {
+        if (limit <= 0) {
+            return;
+        }
+        Entry entry = new Entry(point, stats);
+        if (top.size() < limit) {
+            top.add(entry);
+        } else if (BY_TOTAL.compare(entry, top.peek()) > 0) {
+            top.poll();
+            top.add(entry);
+        }
+    }
+
+    public void end() throws IOException {
+        List<Entry> sorted = new ArrayList<Entry>(top);
+        Collections.sort(sorted, Collections.reverseOrder(BY_TOTAL));
+        renderer.begin();
+        for (Entry entry : sorted) {
+            renderer.render(entry.point, entry.stats);
+        }
+        renderer.end();
+    }
+
+    private static final class Entry {
+        private final String point;
+        private final DigestStats stats;
+
+        private Entry(String point, DigestStats stats) {
+            this.point = point;
+            this.stats = stats;
+        }
+    }
+}
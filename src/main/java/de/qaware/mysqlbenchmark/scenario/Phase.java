@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.scenario;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * One phase of a {@link Scenario}, e.g. {@code spike duration=30 rate=5000 filter=^SELECT speed=4}: a name,
+ * a duration in seconds and optionally
+ * <ul>
+ * <li>{@code rate=<n>} statements per second, or {@code rate=<from>-<to>} ramped linearly over the phase</li>
+ * <li>{@code concurrency=<n>} maximum number of concurrently running sessions, else the one of {@code -pa}</li>
+ * <li>{@code filter=<regex>} only replay the statements whose digest text contains a match</li>
+ * <li>{@code speed=<x>} replay the log at x times the speed of its timestamps</li>
+ * </ul>
+ * Without rate and speed the statements are replayed as fast as the sessions execute them.
+ */
+public class Phase {
+
+    private final String name;
+    private final double durationSeconds;
+    private final double fromRate;
+    private final double toRate;
+    private final int concurrency;
+    private final Pattern filter;
+    private final double speed;
+
+    /**
+     * Constructor
+     *
+     * @param name            name of the phase in the results
+     * @param durationSeconds duration
+     * @param fromRate        statements per second at the start of the phase, 0 for no limit
+     * @param toRate          statements per second at the end of the phase
+     * @param concurrency     maximum number of running sessions, 0 for the one of {@code -pa}
+     * @param filter          statements to replay, null for all
+     * @param speed           multiple of the log speed, 0 to not pace by the log
+     */
+    public Phase(String name, double durationSeconds, double fromRate, double toRate, int concurrency, Pattern filter,
+                 double speed) {
+        this.name = name;
+        this.durationSeconds = durationSeconds;
+        this.fromRate = fromRate;
+        this.toRate = toRate;
+        this.concurrency = concurrency;
+        this.filter = filter;
+        this.speed = speed;
+    }
+
+    /**
+     * Parse a phase of the form {@code <name> duration=<s> [rate=<n>[-<m>]] [concurrency=<n>] [filter=<regex>]
+     * [speed=<x>]}
+     *
+     * @param line phase description
+     * @return the phase
+     * @throws IllegalArgumentException if the phase can not be parsed
+     */
+    public static Phase parse(String line) {
+        String[] tokens = line.trim().split("\\s+");
+        String name = tokens[0];
+        if (name.length() == 0 || name.contains("=")) {
+            throw new IllegalArgumentException("Phase '" + line + "' must start with its name, e.g."
+                    + " ramp duration=60 rate=100-1000");
+        }
+        double duration = 0;
+        double fromRate = 0;
+        double toRate = 0;
+        int concurrency = 0;
+        Pattern filter = null;
+        double speed = 0;
+        for (int i = 1; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected <key>=<value> instead of '" + tokens[i] + "' in phase '"
+                        + name + "'");
+            }
+            String key = tokens[i].substring(0, separator).toLowerCase(Locale.ENGLISH);
+            String value = tokens[i].substring(separator + 1);
+            try {
+                if ("duration".equals(key)) {
+                    duration = Double.parseDouble(value);
+                } else if ("rate".equals(key)) {
+                    int dash = value.indexOf('-', 1);
+                    fromRate = Double.parseDouble(dash < 0 ? value : value.substring(0, dash));
+                    toRate = dash < 0 ? fromRate : Double.parseDouble(value.substring(dash + 1));
+                } else if ("concurrency".equals(key)) {
+                    concurrency = Integer.parseInt(value);
+                } else if ("filter".equals(key)) {
+                    filter = Pattern.compile(value);
+                } else if ("speed".equals(key)) {
+                    speed = Double.parseDouble(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown key '" + key + "' in phase '" + name
+                            + "', expected duration, rate, concurrency, filter or speed");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + key + " '" + value + "' in phase '" + name + "'", e);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid filter in phase '" + name + "': " + e.getDescription(), e);
+            }
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Phase '" + name + "' needs a positive duration=<seconds>");
+        }
+        if (fromRate < 0 || toRate < 0 || concurrency < 0 || speed < 0) {
+            throw new IllegalArgumentException("Rate, concurrency and speed of phase '" + name
+                    + "' must not be negative");
+        }
+        if ((fromRate == 0) != (toRate == 0)) {
+            throw new IllegalArgumentException("A ramp of phase '" + name + "' must start and end above 0");
+        }
+        return new Phase(name, duration, fromRate, toRate, concurrency, filter, speed);
+    }
+
+    /**
+     * Target rate at a point of the phase
+     *
+     * @param elapsedSeconds time since the start of the phase
+     * @return statements per second, 0 for no limit
+     */
+    public double rate(double elapsedSeconds) {
+        double progress = Math.min(1, Math.max(0, elapsedSeconds / durationSeconds));
+        return fromRate + (toRate - fromRate) * progress;
+    }
+
+    /**
+     * Check if the phase replays a statement
+     *
+     * @param digest digest text of the statement
+     * @return true if there is no filter or it matches
+     */
+    public boolean accepts(String digest) {
+        return filter == null || filter.matcher(digest).find();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public boolean hasFilter() {
+        return filter != null;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (fromRate > 0) {
+            sb.append("rate=").append(format(fromRate));
+            if (toRate != fromRate) {
+                sb.append('-').append(format(toRate));
+            }
+        }
+        if (concurrency > 0) {
+            sb.append(sb.length() > 0 ? " " : "").append("concurrency=").append(concurrency);
+        }
+        if (speed > 0) {
+            sb.append(sb.length() > 0 ? " " : "").append("speed=").append(format(speed));
+        }
+        if (filter != null) {
+            sb.append(sb.length() > 0 ? " " : "").append("filter=").append(filter.pattern());
+        }
+        return sb.length() > 0 ? sb.toString() : "unpaced";
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+}
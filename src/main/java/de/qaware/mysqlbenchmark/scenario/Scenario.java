@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.scenario;
+
+import de.qaware.mysqlbenchmark.jetm.TextTable;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.EventStore;
+import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.logfile.SessionEventHandler;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.LatencyHistogram;
+import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Replays a log in a sequence of {@link Phase}s with their own duration, rate, concurrency, statement filter
+ * and log speed, e.g. a ramp, a plateau, a spike and a drain. The phases run on one executor: sessions keep
+ * their connections from one phase to the next, only the pacing and the concurrency limit change. A log
+ * shorter than the scenario is replayed again from its start, the sessions of every further pass get the
+ * number of the pass as prefix of their connection id, e.g. {@code 2:101}.
+ * <p/>
+ * The results are kept per phase from the measurements completed in the phase, so a statement issued at the
+ * end of one phase may count towards the next one.
+ * <p/>
+ * A scenario file holds one phase per line, see {@link Phase#parse(String)}. Empty lines and lines starting
+ * with # are ignored.
+ */
+public class Scenario {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Scenario.class);
+
+    private static final byte UNKNOWN = 0;
+    private static final byte ACCEPTED = 1;
+    private static final byte REJECTED = 2;
+
+    private final List<Phase> phases;
+    private final List<Result> results = new ArrayList<Result>();
+
+    /**
+     * Constructor
+     *
+     * @param phases phases in the order to run them
+     */
+    public Scenario(List<Phase> phases) {
+        this.phases = new ArrayList<Phase>(phases);
+    }
+
+    /**
+     * Read a scenario file
+     *
+     * @param fileName scenario file
+     * @return scenario
+     * @throws IOException              if the file can not be read
+     * @throws IllegalArgumentException if a phase can not be parsed or there is none
+     */
+    public static Scenario load(String fileName) throws IOException {
+        List<Phase> phases = new ArrayList<Phase>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.trim().length() == 0 || line.trim().startsWith("#")) {
+                    continue;
+                }
+                try {
+                    phases.add(Phase.parse(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(fileName + ":" + number + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (phases.isEmpty()) {
+            throw new IllegalArgumentException("The scenario " + fileName + " has no phases.");
+        }
+        return new Scenario(phases);
+    }
+
+    /**
+     * Run all phases. The statements handed to the executor may still run afterwards, see
+     * {@link SQLStatementExecutor#drain(long)}.
+     *
+     * @param executor executor sharing the digest registry of the events
+     * @param events   events of the log
+     * @param parallel concurrency of phases without their own
+     * @param batch    number of events after which to wait until the executor has capacity
+     */
+    public void run(SQLStatementExecutor executor, EventStore events, int parallel, int batch) {
+        Pass pass = new Pass(executor);
+        int next = 0;
+        long replayed = 0;
+        DigestStats before = total(executor);
+        long issuedBefore = executor.getParsedStatements();
+        long issuedInPass = -1;
+        try {
+            for (Phase phase : phases) {
+                LOG.info("Phase {}: {} s, {}", new Object[]{phase.getName(), phase.getDurationSeconds(), phase});
+                executor.setParallel(phase.getConcurrency() > 0 ? phase.getConcurrency() : parallel);
+                long start = System.nanoTime();
+                long end = start + (long) (phase.getDurationSeconds() * 1e9);
+                byte[] accepted = new byte[0];
+                long anchorNanos = start;
+                int anchorMillis = next < events.size() ? events.getLogMillis(next) : 0;
+                long nextSlot = start;
+                while (System.nanoTime() < end && events.size() > 0) {
+                    if (next == events.size()) {
+                        if (executor.getParsedStatements() == issuedInPass) {
+                            LOG.warn("Phase {} replays no statement of the log.", phase.getName());
+                            sleepUntil(end);
+                            break;
+                        }
+                        issuedInPass = executor.getParsedStatements();
+                        pass.next();
+                        next = 0;
+                        anchorNanos = System.nanoTime();
+                        anchorMillis = events.getLogMillis(0);
+                    }
+                    boolean query = events.isQuery(next);
+                    if (query && phase.hasFilter()) {
+                        int id = events.getDigestId(next);
+                        if (id >= accepted.length) {
+                            byte[] grown = new byte[Math.max(id + 1, accepted.length * 2)];
+                            System.arraycopy(accepted, 0, grown, 0, accepted.length);
+                            accepted = grown;
+                        }
+                        if (accepted[id] == UNKNOWN) {
+                            accepted[id] = phase.accepts(executor.getDigests().getText(id)) ? ACCEPTED : REJECTED;
+                        }
+                        if (accepted[id] == REJECTED) {
+                            next++;
+                            continue;
+                        }
+                    }
+
+                    long due = 0;
+                    if (phase.getSpeed() > 0) {
+                        due = anchorNanos + (long) ((events.getLogMillis(next) - anchorMillis) * 1e6 / phase.getSpeed());
+                    }
+                    if (query && phase.rate(0) > 0) {
+                        due = Math.max(due, nextSlot);
+                        nextSlot = due + (long) (1e9 / phase.rate((due - start) / 1e9));
+                    }
+                    if (due >= end) {
+                        sleepUntil(end);
+                        break;
+                    }
+                    sleepUntil(due);
+                    next = events.replay(pass, next, 1);
+                    if (++replayed % batch == 0) {
+                        executor.awaitCapacity(batch);
+                    }
+                }
+
+                DigestStats now = total(executor);
+                long issued = executor.getParsedStatements();
+                results.add(new Result(phase, (System.nanoTime() - start) / 1e9, issued - issuedBefore,
+                        now.since(before)));
+                before = now;
+                issuedBefore = issued;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pass.quitAll();
+        }
+    }
+
+    /**
+     * Write the results of the phases as table
+     *
+     * @param writer writer to write to
+     * @throws IOException if writing fails
+     */
+    public void render(Writer writer) throws IOException {
+        String[] header = {"Phase", "Load", "Duration (s)", "Issued", "Completed", "Failed", "Throughput/s",
+                "Mean (ms)", "p50 (ms)", "p99 (ms)", "Max (ms)"};
+        List<String[]> rows = new ArrayList<String[]>();
+        for (Result result : results) {
+            LatencyHistogram h = result.stats.getLatency();
+            long count = h.getTotalCount();
+            rows.add(new String[]{result.phase.getName(),
+                    result.phase.toString(),
+                    format(result.seconds),
+                    String.valueOf(result.issued),
+                    String.valueOf(count),
+                    String.valueOf(result.stats.getErrors()),
+                    format(result.seconds > 0 ? count / result.seconds : 0),
+                    format(h.getMean() / 1000.0),
+                    format(h.getValueAtPercentile(50) / 1000.0),
+                    format(h.getValueAtPercentile(99) / 1000.0),
+                    format(h.getMax() / 1000.0)});
+        }
+        TextTable.write(writer, header, rows);
+        writer.flush();
+    }
+
+    /**
+     * Phases in the order they run
+     *
+     * @return phases
+     */
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    private static DigestStats total(SQLStatementExecutor executor) {
+        DigestStats total = new DigestStats();
+        for (DigestStats stats : executor.getRecorders().merge()) {
+            if (stats != null) {
+                total.add(stats);
+            }
+        }
+        return total;
+    }
+
+    private static void sleepUntil(long due) throws InterruptedException {
+        long wait = due - System.nanoTime();
+        if (wait > 1000000L) {
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+
+    /**
+     * Hands the events of one pass over the log to the executor, with the connection ids of the pass, and
+     * keeps track of the open sessions to quit them at the end of the pass
+     */
+    private static class Pass implements SessionEventHandler {
+        private final SQLStatementExecutor executor;
+        private final Set<String> open = new HashSet<String>();
+        private String prefix = "";
+        private int number = 1;
+
+        Pass(SQLStatementExecutor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Start the next pass, the sessions still open in the log at its end quit
+         */
+        void next() {
+            quitAll();
+            prefix = ++number + ":";
+        }
+
+        void quitAll() {
+            for (String connectionID : open) {
+                executor.quit(connectionID);
+            }
+            open.clear();
+        }
+
+        public void connect(String connectionID, String user) {
+            open.add(prefix + connectionID);
+            executor.connect(prefix + connectionID, user);
+        }
+
+        public void initDb(String connectionID, String database) {
+            executor.initDb(prefix + connectionID, database);
+        }
+
+        public void transaction(String connectionID, boolean open) {
+            executor.transaction(prefix + connectionID, open);
+        }
+
+        public void query(String connectionID, Query query) {
+            executor.query(prefix + connectionID, query);
+        }
+
+        public void quit(String connectionID) {
+            open.remove(prefix + connectionID);
+            executor.quit(prefix + connectionID);
+        }
+
+        public DigestRegistry getDigests() {
+            return executor.getDigests();
+        }
+    }
+
+    /**
+     * Measurements of one phase
+     */
+    private static class Result {
+        private final Phase phase;
+        private final double seconds;
+        private final long issued;
+        private final DigestStats stats;
+
+        Result(Phase phase, double seconds, long issued, DigestStats stats) {
+            this.phase = phase;
+            this.seconds = seconds;
+            this.issued = issued;
+            this.stats = stats;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.sql;
+
+/**
+ * Timestamps of the protocol phases of the statement a connection thread is executing. The socket streams
+ * of {@link TimingSocketFactory} report to the timer attached to the calling thread.
+ */
+final class PhaseTimer {
+
+    private static final ThreadLocal<PhaseTimer> CURRENT = new ThreadLocal<PhaseTimer>();
+
+    private long prepared;
+    private long sent;
+    private long firstReceived;
+    private boolean sending;
+    private boolean receiving;
+
+    /**
+     * Attach a timer to the calling thread
+     *
+     * @param timer timer, null to detach
+     */
+    static void attach(PhaseTimer timer) {
+        if (timer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timer);
+        }
+    }
+
+    /**
+     * The timer of the calling thread
+     *
+     * @return timer or null
+     */
+    static PhaseTimer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * The statement is prepared, the request is about to be sent
+     */
+    void prepared() {
+        prepared = System.nanoTime();
+        sending = false;
+        receiving = false;
+    }
+
+    /**
+     * Bytes were written, called after the write returned
+     */
+    void sent() {
+        if (!receiving) {
+            sent = System.nanoTime();
+            sending = true;
+        }
+    }
+
+    /**
+     * Bytes were read, called after the read returned
+     */
+    void received() {
+        if (sending && !receiving) {
+            firstReceived = System.nanoTime();
+            receiving = true;
+        }
+    }
+
+    /**
+     * Check if the request was sent and a response received since {@link #prepared()}
+     *
+     * @return true if all timestamps are set
+     */
+    boolean isComplete() {
+        return receiving;
+    }
+
+    long getPrepared() {
+        return prepared;
+    }
+
+    long getSent() {
+        return sent;
+    }
+
+    long getFirstReceived() {
+        return firstReceived;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.sql;
+
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.ExecutionPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Captures the execution plans of the slowest digests with {@code EXPLAIN FORMAT=JSON}. The candidates are the
+ * top digests by total time and the top digests by p99 latency. Every digest is explained once, with the
+ * first statement of the digest in the log, through a connection of its own which is closed again after
+ * each call; later calls only explain digests which became a candidate since. EXPLAIN does not execute the statement, but it is a round trip
+ * to the server, so it is called after the replay and not while it runs.
+ */
+public class PlanCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlanCollector.class);
+
+    private static final double P99 = 99;
+    private static final Pattern EXPLAINABLE = Pattern.compile(
+            "^(\\s|/\\*.*?\\*/)*\\(*\\s*(SELECT|INSERT|REPLACE|UPDATE|DELETE)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final String connectionString;
+    private final String username;
+    private final String password;
+    private final DigestRegistry digests;
+    private final int top;
+    private final Map<Integer, ExecutionPlan> plans = new HashMap<Integer, ExecutionPlan>();
+    private final Set<Integer> explained = new HashSet<Integer>();
+    private Connection connection;
+    private boolean unavailable = false;
+
+    /**
+     * Constructor
+     *
+     * @param connectionString connection string with database name
+     * @param username         user
+     * @param password         password
+     * @param digests          digests of the replay with their sample statements
+     * @param top              number of digests by total time and by p99 to explain
+     */
+    public PlanCollector(String connectionString, String username, String password, DigestRegistry digests, int top) {
+        this.connectionString = connectionString;
+        this.username = username;
+        this.password = password;
+        this.digests = digests;
+        this.top = top;
+    }
+
+    /**
+     * Explain the candidates which are not explained yet
+     *
+     * @param merged merged stats indexed by digest id, see {@link de.qaware.mysqlbenchmark.metrics.RecorderPool#merge()}
+     */
+    public void collect(final List<DigestStats> merged) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) != null && merged.get(id).getLatency().getTotalCount() > 0) {
+                ids.add(id);
+            }
+        }
+        Set<Integer> candidates = new LinkedHashSet<Integer>();
+        Collections.sort(ids, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.valueOf(merged.get(b).getLatency().getSum()).compareTo(merged.get(a).getLatency().getSum());
+            }
+        });
+        candidates.addAll(ids.subList(0, Math.min(top, ids.size())));
+        Collections.sort(ids, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.valueOf(merged.get(b).getLatency().getValueAtPercentile(P99))
+                        .compareTo(merged.get(a).getLatency().getValueAtPercentile(P99));
+            }
+        });
+        candidates.addAll(ids.subList(0, Math.min(top, ids.size())));
+
+        try {
+            for (Integer id : candidates) {
+                if (explained.add(id)) {
+                    explain(id);
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void explain(int id) {
+        String sql = digests.getSample(id);
+        if (unavailable || sql == null || !EXPLAINABLE.matcher(sql).matches()) {
+            return;
+        }
+        if (connection == null) {
+            try {
+                connection = DriverManager.getConnection(connectionString, username, password);
+            } catch (SQLException e) {
+                LOG.warn("Could not connect, execution plans are not captured: {}", e.getMessage());
+                unavailable = true;
+                return;
+            }
+        }
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet rs = statement.executeQuery("EXPLAIN FORMAT=JSON " + sql);
+                if (rs.next()) {
+                    plans.put(id, new ExecutionPlan(rs.getString(1)));
+                }
+                rs.close();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could not explain {}: {}", digests.getText(id), e.getMessage());
+        }
+    }
+
+    /**
+     * The plans captured so far
+     *
+     * @return plans by digest id
+     */
+    public Map<Integer, ExecutionPlan> getPlans() {
+        return new HashMap<Integer, ExecutionPlan>(plans);
+    }
+
+    private void close() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            /* Intentionally Swallow  Exception */
+            LOG.error("Could not close sql connection.");
+        }
+        connection = null;
+    }
+}
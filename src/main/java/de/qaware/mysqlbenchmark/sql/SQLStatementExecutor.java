@@ -19,22 +19,64 @@ package de.qaware.mysqlbenchmark.sql;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import de.qaware.mysqlbenchmark.logfile.Checkpoint;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
 import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.logfile.QueryParser;
+import de.qaware.mysqlbenchmark.logfile.SessionEventHandler;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
 import de.qaware.mysqlbenchmark.func.SQLType;
 import de.qaware.mysqlbenchmark.console.Parameters;
 import de.qaware.mysqlbenchmark.QueryBenchmark;
-
-import etm.core.monitor.EtmMonitor;
-import etm.core.monitor.EtmPoint;
+import de.qaware.mysqlbenchmark.metrics.ClientLoad;
+import de.qaware.mysqlbenchmark.metrics.ClientMonitor;
+import de.qaware.mysqlbenchmark.metrics.DigestStats;
+import de.qaware.mysqlbenchmark.metrics.ExecutionPlan;
+import de.qaware.mysqlbenchmark.metrics.RecorderPool;
+import de.qaware.mysqlbenchmark.metrics.ReplayStatus;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import de.qaware.mysqlbenchmark.metrics.ServerCost;
+import de.qaware.mysqlbenchmark.metrics.ThreadRecorder;
+import de.qaware.mysqlbenchmark.trace.TraceRecorder;
+import de.qaware.mysqlbenchmark.workload.LiteralRewriter;
+import de.qaware.mysqlbenchmark.workload.LiteralRule;
 
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 class ServerConnection extends Thread {
 
     static ThreadGroup threadgroup = new ThreadGroup("client connections");
+    /**
+     * Statements queued in all connections and not started yet
+     */
+    static final AtomicLong queuedStatements = new AtomicLong();
+    /**
+     * Statements executed by all connections, failed ones included
+     */
+    static final AtomicLong completedStatements = new AtomicLong();
+    /**
+     * Statements failed in all connections
+     */
+    static final AtomicLong failedStatements = new AtomicLong();
+    /**
+     * {@link System#nanoTime()} when the last statement completed
+     */
+    static final AtomicLong lastCompletedNanos = new AtomicLong();
+
+    /**
+     * Reset the counters of all connections for a new replay in the same JVM
+     */
+    static void resetCounters() {
+        queuedStatements.set(0);
+        completedStatements.set(0);
+        failedStatements.set(0);
+        lastCompletedNanos.set(0);
+    }
     private static final Logger LOG = LoggerFactory.getLogger(ServerConnection.class);
 
     private String connectionString;
@@ -42,104 +84,380 @@ class ServerConnection extends Thread {
     private String password;
     private Connection connection;
     private Collection<ServerConnection> previousConnections;
-    private EtmMonitor etmMonitor;
+    private RecorderPool recorders;
+    private ThreadRecorder recorder;
+    private ClientMonitor monitor;
+    private boolean sessionCost = false;
+    private PhaseTimer phaseTimer;
+    private TraceRecorder trace;
+    private int traceSession;
+    /**
+     * Registry for the summary of the execution time by digest, null if not summarized
+     */
+    private DigestRegistry digests;
+    /**
+     * Texts of the digest ids seen so far, so the registry is only locked once per id
+     */
+    private String[] digestTexts = new String[0];
+    /**
+     * Error code of the last failed statement
+     */
+    private int errorCode;
+    /**
+     * When the connection was put into the backlog, see {@link BacklogThread}
+     */
+    long backlogNanos;
+    /**
+     * When the last of the previous connections finished, see {@link #isReady()}
+     */
+    long readyNanos;
+    /**
+     * When the connection thread ended
+     */
+    private volatile long finishedNanos;
+    /**
+     * When the last connection thread ended, i.e. freed a slot
+     */
+    static volatile long lastFinishedNanos;
+    /**
+     * Change of the session status caused by reading it, subtracted from the statement costs
+     */
+    private ServerCost statusOverhead;
 
-    private boolean quitNow = false;
+    /**
+     * Marks the end of the queue of a connection
+     */
+    private static final Query QUIT = new Query(null, null);
+
+    /**
+     * Queries queued and not completed yet. Counted down after a query was processed, so a query is never
+     * invisible between leaving the queue and its execution.
+     */
+    private final AtomicInteger unfinished = new AtomicInteger();
+    private volatile boolean scheduled = false;
+    /**
+     * State of the session in the log, kept for {@link de.qaware.mysqlbenchmark.logfile.Checkpoint}s
+     */
+    private String logUser;
+    private String database;
+    private boolean inTransaction = false;
+    private boolean quitQueued = false;
+    private final CountDownLatch finished = new CountDownLatch(1);
     private LinkedBlockingDeque<Query> queries = new LinkedBlockingDeque<Query>(); // a capacity would eventally block the reader
 
     public ServerConnection(String id, String connectionString, String user, String password,
-        EtmMonitor etmMonitor, Collection<ServerConnection> connections) {
+        RecorderPool recorders, ClientMonitor monitor, Collection<ServerConnection> connections) {
         super(threadgroup, id);
+        this.connectionString = connectionString;
         this.username = user;
         this.password =  password;
-        this.etmMonitor = etmMonitor;
-        this.previousConnections = connections;
-        //this.previousConnections = new HashSet<ServerConnection>(connections);
+        this.recorders = recorders;
+        this.monitor = monitor;
+        // snapshot, the active connections change while this one waits for them
+        this.previousConnections = new ArrayList<ServerConnection>(connections);
     }
 
     public void initdb(String database) {
+        this.database = database;
         initConnection(database);
     }
 
+    void setLogUser(String logUser) {
+        this.logUser = logUser;
+    }
+
+    String getLogUser() {
+        return logUser;
+    }
+
+    String getDatabase() {
+        return database;
+    }
+
+    void setInTransaction(boolean inTransaction) {
+        this.inTransaction = inTransaction;
+    }
+
+    boolean isInTransaction() {
+        return inTransaction;
+    }
+
+    boolean isQuitQueued() {
+        return quitQueued;
+    }
+
+    /**
+     * Queries queued and not started yet
+     *
+     * @return copy of the queue
+     */
+    List<Query> getPendingQueries() {
+        List<Query> pending = new ArrayList<Query>(queries);
+        pending.remove(QUIT);
+        return pending;
+    }
+
+    /**
+     * Collect the server side cost of every statement from session status deltas
+     *
+     * @param sessionCost true to collect
+     */
+    void setSessionCost(boolean sessionCost) {
+        this.sessionCost = sessionCost;
+    }
+
+    /**
+     * Split the latency of every statement into phases, see {@link TimingSocketFactory}. Call before
+     * {@link #initdb(String)}.
+     *
+     * @param phases true to time the phases
+     */
+    void setPhases(boolean phases) {
+        this.phaseTimer = phases ? new PhaseTimer() : null;
+    }
+
+    /**
+     * Summarize the execution time by digest text, see {@link ThreadRecorder#recordTime(String, long)}
+     *
+     * @param digests registry of the digests, null to not summarize
+     */
+    void setDigests(DigestRegistry digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Record the executed statements
+     *
+     * @param trace recorder, null to not record
+     */
+    void setTrace(TraceRecorder trace) {
+        this.trace = trace;
+        this.traceSession = trace != null ? trace.session(getName()) : 0;
+    }
+
+    /**
+     * Check if the connection has queries to process
+     *
+     * @return true if the connection is started, not finished and has queued or running queries
+     */
+    public boolean isBusy() {
+        State state = getState();
+        return state != State.NEW && state != State.TERMINATED && unfinished.get() > 0;
+    }
+
     public void query(Query q) {
-        try {
-            queries.put(q);
-        } catch (InterruptedException e) {
-        }
-        try {
-            interrupt();
-        } catch (SecurityException e) {
+        q.setQueuedNanos(System.nanoTime());
+        queuedStatements.incrementAndGet();
+        unfinished.incrementAndGet();
+        queries.add(q);
+    }
+
+    /**
+     * The connection was started or put into the backlog, so it will process its queries
+     */
+    void scheduled() {
+        scheduled = true;
+    }
+
+    boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * Check if all previous connections which will run have finished, so the connection can start without
+     * holding a slot while it waits for them. Finished ones are forgotten. Only called by the thread which
+     * starts the connection.
+     *
+     * @return true if the connection can start right away
+     */
+    boolean isReady() {
+        Iterator<ServerConnection> i = previousConnections.iterator();
+        while (i.hasNext()) {
+            ServerConnection previous = i.next();
+            if (previous.isScheduled() && previous.finished.getCount() > 0) {
+                return false;
+            }
+            readyNanos = Math.max(readyNanos, previous.finishedNanos);
+            i.remove();
         }
+        return true;
+    }
+
+    /**
+     * Wait until the connection thread has ended
+     *
+     * @param nanos maximum time to wait
+     * @return true if the thread ended
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitFinished(long nanos) throws InterruptedException {
+        return finished.await(nanos, TimeUnit.NANOSECONDS);
     }
 
+    /**
+     * Number of queries queued and not started yet
+     *
+     * @return query count
+     */
+    int getQueued() {
+        int queued = queries.size();
+        return queries.contains(QUIT) ? queued - 1 : queued;
+    }
+
+    /**
+     * Quit after all queries queued so far have been processed
+     */
     public void quit() {
-        quitNow = true;
-        try {
-           interrupt();
-        } catch (SecurityException e) {
-        }
+        quitQueued = true;
+        queries.add(QUIT);
     }
 
     public void run() {
-        Iterator<ServerConnection> i;
-        Thread t;
-        // Join previous connections
-        while (!previousConnections.isEmpty()) {
-            i = previousConnections.iterator();
-            while ((t = i.next()) != null) {
-                try {
-                    t.join();
-                    i.remove();
-                } catch (InterruptedException e) {
-                    if (quitNow) return;
-                    // adding a query could interrupt but
-                    // we'll depend on the outer loop to ensure
-                    // the previousConnections have been joined
-                    // before continuing.
+        // the latch is counted down however the thread ends, or the executor waits for it forever
+        try {
+            // Wait for the previous connections. Not join(): a backlogged or delayed one is not started yet and
+            // join() would return right away. Sessions which never selected a database are never started.
+            for (ServerConnection previous : previousConnections) {
+                if (previous.isScheduled()) {
+                    previous.finished.await();
                 }
             }
-        }
 
-        Query q;
-        while (!quitNow) {
-            try {
-                while ((q = queries.take()) != null) {
-                    processQuery(q);
-                }
-            } catch (EmptyStackException e) {
-            } catch (InterruptedException e) {
+            recorder = recorders.acquire();
+            PhaseTimer.attach(phaseTimer);
+            Query q;
+            // waiting for the previous connections is part of the replay, not dispatch lag
+            long previousEnd = System.nanoTime();
+            while ((q = queries.take()) != QUIT) {
+                queuedStatements.decrementAndGet();
+                // the statement could run once it was queued and the previous one was done
+                long ready = previousEnd - q.getQueuedNanos() > 0 ? previousEnd : q.getQueuedNanos();
+                recorder.recordDispatchLag(System.nanoTime() - ready);
+                processQuery(q);
+                previousEnd = System.nanoTime();
+                unfinished.decrementAndGet();
             }
-            if (quitNow) break;
-            try {
-               wait(500); // ms
-            } catch (InterruptedException e) {
-               if (quitNow) break;
+        } catch (InterruptedException e) {
+            LOG.warn("Connection {} interrupted.", getName());
+        } finally {
+            PhaseTimer.attach(null);
+            if (recorder != null) {
+                recorders.release(recorder);
             }
+            closeConnection();
+            monitor.threadFinished(monitor.currentThreadCpuNanos());
+            finishedNanos = System.nanoTime();
+            lastFinishedNanos = finishedNanos;
+            finished.countDown();
         }
-        SQLStatementExecutor.backlogThread.interrupt();
     }
 
     private void processQuery(Query query) {
-        EtmPoint qpoint = this.etmMonitor.createPoint("Query: " + query.getSql());
+        ServerCost before = sessionCost ? readSessionStatus() : null;
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
-            executeStatement(query);
+            failed = !executeStatement(query);
         } finally {
-            qpoint.collect();
+            long end = System.nanoTime();
+            recorder.record(query.getDigestId(), end - start, failed);
+            if (digests != null) {
+                recorder.recordTime(digestText(query), end - start);
+            }
+            if (trace != null) {
+                trace.record(start, end, traceSession, query.getDigestId(), failed ? errorCode : 0);
+            }
+            completedStatements.incrementAndGet();
+            if (failed) {
+                failedStatements.incrementAndGet();
+            }
+            lastCompletedNanos.set(end);
+            if (phaseTimer != null && phaseTimer.isComplete()) {
+                recorder.recordPhases(query.getDigestId(), phaseTimer.getPrepared() - start,
+                        phaseTimer.getSent() - phaseTimer.getPrepared(),
+                        phaseTimer.getFirstReceived() - phaseTimer.getSent(), end - phaseTimer.getFirstReceived());
+            }
+        }
+        if (before != null) {
+            ServerCost after = readSessionStatus();
+            if (after != null) {
+                ServerCost cost = after.since(before).since(statusOverhead);
+                cost.setExecutions(1);
+                recorder.recordServerCost(query.getDigestId(), cost);
+            }
+        }
+    }
+
+    /**
+     * Digest text of a statement: normalized again if it is in the other bucket, else looked up once per id
+     */
+    private String digestText(Query query) {
+        int id = query.getDigestId();
+        if (digests.isOther(id)) {
+            return digests.textOf(query.getSql());
+        }
+        if (id >= digestTexts.length) {
+            digestTexts = Arrays.copyOf(digestTexts, Math.max(id + 1, digestTexts.length * 2));
+        }
+        if (digestTexts[id] == null) {
+            digestTexts[id] = digests.getText(id);
+        }
+        return digestTexts[id];
+    }
+
+    /**
+     * @return the session status or null if it can not be read
+     */
+    private ServerCost readSessionStatus() {
+        if (connection == null) {
+            return null;
+        }
+        try {
+            ServerCost status = ServerCostCollector.readSessionStatus(connection);
+            if (statusOverhead == null) {
+                // calibrate: what does reading the status itself add to the counters
+                statusOverhead = ServerCostCollector.readSessionStatus(connection).since(status);
+                status = ServerCostCollector.readSessionStatus(connection);
+            }
+            return status;
+        } catch (SQLException e) {
+            LOG.warn("Could not read session status of connection {}, server side cost is not collected: {}",
+                    getName(), e.getMessage());
+            sessionCost = false;
+            return null;
         }
     }
 
-    private void executeStatement(Query name) {
+    /**
+     * @return false if the statement failed
+     */
+    private boolean executeStatement(Query name) {
+        PreparedStatement ps = null;
         try {
             // prepare statement for execution
-            PreparedStatement ps = connection.prepareStatement(name.getSql());
+            ps = connection.prepareStatement(name.getSql());
+            if (phaseTimer != null) {
+                phaseTimer.prepared();
+            }
             // execute the statement and return the result
             if (name.getType() == SQLType.read) {
-                ps.executeQuery();
+                ps.executeQuery().close();
             } else {
                 ps.executeUpdate();
             }
+            return true;
         } catch (SQLException e) {
             LOG.error("Execution of statement {} failed.", name.getSql(), e);
+            errorCode = e.getErrorCode() != 0 ? e.getErrorCode() : TraceRecorder.FAILED;
+            return false;
+        } finally {
+            if (ps != null) {
+                try {
+                    ps.close();
+                } catch (SQLException e) {
+                    /* Intentionally Swallow  Exception */
+                }
+            }
         }
     }
 
@@ -148,7 +466,17 @@ class ServerConnection extends Thread {
 
         try {
             // open new connection
-            connection = DriverManager.getConnection(connectionString + dbname, username, password);
+            Properties properties = new Properties();
+            if (username != null) {
+                properties.setProperty("user", username);
+            }
+            if (password != null) {
+                properties.setProperty("password", password);
+            }
+            if (phaseTimer != null) {
+                properties.setProperty("socketFactory", TimingSocketFactory.class.getName());
+            }
+            connection = DriverManager.getConnection(connectionString + dbname, properties);
         } catch (SQLException e) {
             LOG.error("SQL connection failed!", e);
             //throw e;
@@ -156,48 +484,97 @@ class ServerConnection extends Thread {
 
         LOG.info("Connection established.");
     }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            /* Intentionally Swallow  Exception */
+            LOG.error("Could not close sql connection.");
+        }
+    }
 }
 
 
 class BacklogThread extends Thread {
     /**
-     * When a connection thread count is reached, this is the waiting thread
+     * Connections waiting for a slot or for previous connections to finish, started in order as soon as
+     * both allow it
      */
-    private LinkedBlockingQueue<ServerConnection> connectionBacklog = new LinkedBlockingQueue<ServerConnection>(15);
+    private LinkedBlockingQueue<ServerConnection> connectionBacklog = new LinkedBlockingQueue<ServerConnection>(); // a capacity would block the reader before the running connections quit
+
+    volatile int parallel;
+    ClientMonitor monitor;
 
-    private boolean quitNow = false;
-    int parallel;
+    BacklogThread() {
+        super("connection backlog");
+        setDaemon(true);
+    }
 
     public void add(ServerConnection c) {
+        c.backlogNanos = System.nanoTime();
+        // never blocks, the backlog is unbounded; the parser is held back by awaitCapacity instead
         connectionBacklog.add(c);
     }
 
-    public void quit() {
-        quitNow = true;
-        try {
-           interrupt();
-        } catch (SecurityException e) {
-        }
+    /**
+     * Check if connections are waiting to be started
+     *
+     * @return true if the backlog is not empty
+     */
+    public boolean hasBacklog() {
+        return !connectionBacklog.isEmpty();
+    }
+
+    /**
+     * Number of connections waiting to be started
+     *
+     * @return backlog size
+     */
+    public int size() {
+        return connectionBacklog.size();
     }
 
     public void run() {
         ServerConnection s;
 
-        while (!quitNow) {
-            if (ServerConnection.threadgroup.activeCount() > parallel) {
-                try {
-                    s = connectionBacklog.remove();
+        try {
+            while (true) {
+                s = ServerConnection.threadgroup.activeCount() < parallel ? nextReady() : null;
+                if (s != null) {
+                    long now = System.nanoTime();
+                    monitor.recordBacklogWait(now - s.backlogNanos);
+                    // it could start once it was backlogged, ready and a slot was free; the last connection
+                    // which ended is taken as the one which freed the slot, so the delay is a lower bound
+                    long startable = Math.max(s.backlogNanos, Math.max(s.readyNanos,
+                            ServerConnection.lastFinishedNanos));
+                    monitor.recordStartDelay(now - startable);
                     s.start();
-                } catch (NoSuchElementException e) {
+                } else {
+                    Thread.sleep(1);
                 }
             }
-            if (quitNow) break;
-            try {
-                wait(500); // ms
-            } catch (InterruptedException e) {
-               if (quitNow) break;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The oldest connection whose previous connections have finished, removed from the backlog
+     */
+    private ServerConnection nextReady() {
+        Iterator<ServerConnection> i = connectionBacklog.iterator();
+        while (i.hasNext()) {
+            ServerConnection s = i.next();
+            if (s.isReady()) {
+                i.remove();
+                return s;
             }
         }
+        return null;
     }
 }
 
@@ -208,16 +585,41 @@ class BacklogThread extends Thread {
  * @author Felix Kelm felix.kelm@qaware.de
  * @author Daniel Black daniel.black@openquery.com.au
  */
-public class SQLStatementExecutor extends QueryBenchmark {
+public class SQLStatementExecutor extends QueryBenchmark implements ReplayStatus, SessionEventHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(SQLStatementExecutor.class);
-    static BacklogThread backlogThread = new BacklogThread();
+    private final BacklogThread backlogThread = new BacklogThread();
 
     private String server;
     private String default_database;
     private String default_username;
     private String default_password;
-    private int parallel;
+    private volatile int parallel;
+    private final AtomicLong parsedStatements = new AtomicLong();
+    private volatile long firstIssuedNanos;
+    /**
+     * Makespan and completed statements of the run a replay resumes, see {@link #resume(Checkpoint)}
+     */
+    private long resumedMakespanNanos = 0;
+    private long resumedCompleted = 0;
+    private boolean drained = false;
+    private final boolean sessionCost;
+    private final boolean phases;
+    private final ServerCostCollector digestCost;
+    private final PlanCollector planCollector;
+    private final LiteralRewriter literalRewriter;
+    private TraceRecorder trace;
+    /**
+     * Copies of every session of the log and the start offset between them
+     */
+    private final int amplification;
+    private final long amplificationOffsetNanos;
+    /**
+     * Starts the offset copies once their offset has passed, so they do not hold a slot while waiting
+     */
+    private final ScheduledExecutorService delayedStarts;
+    private final ClientMonitor clientMonitor = new ClientMonitor(ServerConnection.threadgroup, Thread.currentThread(),
+            recorders);
 
     /**
      *  a map of the current connection ID to a connection object
@@ -228,20 +630,64 @@ public class SQLStatementExecutor extends QueryBenchmark {
 
 
     /**
-     * A new connection will wait for all those active before processing its queue of queries
-     * This represents all the currently active connections (those that haven't quit) as the time
-     * of a new query received. This is copied to ServerConnectin.previousConnections on creation
-     * of a new connection.
+     * All the currently active connections (those that haven't quit) by connection ID
      */
-    private HashMap<String, ServerConnection> activeConnections = new HashMap<String, ServerConnection>();
+    private Map<String, ServerConnection> activeConnections = new HashMap<String, ServerConnection>();
+
+    /**
+     * A new connection will wait for all those that had already quit in the log before processing its queue
+     * of queries, so work that happened before the connect in the log also happens before it in the replay.
+     * This is copied to ServerConnection.previousConnections on creation of a new connection.
+     * Waiting for the active connections instead would serialize all overlapping sessions.
+     */
+    private List<ServerConnection> quitConnections = new ArrayList<ServerConnection>();
 
     public SQLStatementExecutor(Parameters params) {
+        this(params, new DigestRegistry(!params.isExactStatements(), params.getTopDigests()));
+    }
+
+    /**
+     * Constructor for replaying an {@link de.qaware.mysqlbenchmark.logfile.EventStore}
+     *
+     * @param params  parameters of the replay
+     * @param digests digest registry of the statements to execute
+     */
+    public SQLStatementExecutor(Parameters params, DigestRegistry digests) {
+        super(digests);
         server = params.getServer();
         default_database = params.getDatabase();
         default_username = params.getUsername();
         default_password = params.getPassword();
         parallel = params.getParallel();
+        String serverCost = params.getServerCost() == null ? "" : params.getServerCost().toLowerCase();
+        sessionCost = serverCost.equals("session") || serverCost.equals("both");
+        phases = params.isPhases();
+        digestCost = serverCost.equals("digest") || serverCost.equals("both")
+                ? new ServerCostCollector(server + default_database, default_username, default_password, digests)
+                : null;
+        planCollector = params.getExplain() > 0
+                ? new PlanCollector(server + default_database, default_username, default_password, digests,
+                params.getExplain())
+                : null;
+        List<LiteralRule> literalRules = new ArrayList<LiteralRule>();
+        for (String rule : params.getLiteralRules()) {
+            literalRules.add(LiteralRule.parse(rule));
+        }
+        literalRewriter = literalRules.isEmpty() ? null : new LiteralRewriter(literalRules, digests, params.getSeed());
+        amplification = Math.max(1, params.getAmplification());
+        amplificationOffsetNanos = TimeUnit.MILLISECONDS.toNanos(params.getAmplificationOffset());
+        delayedStarts = amplification > 1 && amplificationOffsetNanos > 0
+                ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "delayed starts");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                })
+                : null;
+        ServerConnection.resetCounters();
         backlogThread.parallel = params.getParallel();
+        backlogThread.monitor = clientMonitor;
         backlogThread.start();
         // TODO params.getPasswordMap();
 
@@ -257,41 +703,182 @@ public class SQLStatementExecutor extends QueryBenchmark {
     }
 
     /**
-     * Creates a connection.
+     * Creates a connection, or one per copy of the session if amplified
      *
      * @param name connectionID
      * @param name dbuser
      */
     public void connect(String connectionID, String dbuser) {
+       for (int copy = 1; copy <= amplification; copy++) {
+           connectCopy(copyID(connectionID, copy), dbuser);
+       }
+    }
+
+    /**
+     * Connection id of a copy of a session
+     *
+     * @param connectionID connection id in the log
+     * @param copy         number of the copy, starting at 1
+     * @return connection id of the copy, the one of the log if not amplified
+     */
+    private String copyID(String connectionID, int copy) {
+        return amplification == 1 ? connectionID : connectionID + "#" + copy;
+    }
+
+    private void connectCopy(String connectionID, String dbuser) {
        // TODO password lookup of db user to obtain different credentials if
        // required.
-       ServerConnection s = new ServerConnection(connectionID, server,
-           default_username, default_password, etmMonitor, activeConnections.values());
+       pruneQuitConnections();
+       ServerConnection s = newConnection(connectionID);
+       s.setLogUser(dbuser);
        connections.put(connectionID, s);
        activeConnections.put(connectionID, s);
     }
 
     /**
-     * Specified DB name on connection
+     * A session begins or ends a transaction in the log. Transaction statements are not replayed, the
+     * state is only kept for checkpoints.
+     *
+     * @param connectionID connection ID
+     * @param open         true if a transaction begins
+     */
+    public void transaction(String connectionID, boolean open) {
+       for (int copy = 1; copy <= amplification; copy++) {
+           ServerConnection s = activeConnections.get(copyID(connectionID, copy));
+           if (s != null) {
+               s.setInTransaction(open);
+           }
+       }
+    }
+
+    private ServerConnection newConnection(String connectionID) {
+        ServerConnection s = new ServerConnection(connectionID, server,
+            default_username, default_password, recorders, clientMonitor, quitConnections);
+        s.setSessionCost(sessionCost);
+        s.setPhases(phases);
+        s.setTrace(trace);
+        if (digests.isLimited()) {
+            s.setDigests(digests);
+        }
+        return s;
+    }
+
+    /**
+     * Change the maximum number of concurrently running connections. Running connections are not stopped,
+     * with fewer allowed the backlog only starts connections once enough have finished.
+     *
+     * @param parallel maximum number of running connections
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+        backlogThread.parallel = parallel;
+    }
+
+    /**
+     * Record the statements executed by the connections created from now on
+     *
+     * @param trace recorder, null to not record
+     */
+    public void setTrace(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Take the performance_schema snapshot the server side cost by digest is measured from, if requested
+     */
+    public void startServerCost() {
+        if (digestCost != null) {
+            digestCost.start();
+        }
+    }
+
+    @Override
+    protected Map<Integer, ServerCost> collectServerCosts() {
+        return digestCost == null ? super.collectServerCosts() : digestCost.collect();
+    }
+
+    /**
+     * Explain the top digests measured so far which are not explained yet, if requested. Call it while no
+     * statements are executed, i.e. after the replay has been joined, so the EXPLAIN round trips do not
+     * disturb the measurements.
+     */
+    public void capturePlans() {
+        if (planCollector != null) {
+            planCollector.collect(recorders.merge());
+        }
+    }
+
+    @Override
+    protected Map<Integer, ExecutionPlan> collectPlans() {
+        return planCollector == null ? super.collectPlans() : planCollector.getPlans();
+    }
+
+    /**
+     * The instrumentation of the client, e.g. for reporting intervals in which the client was the bottleneck
+     *
+     * @return client monitor
+     */
+    public ClientMonitor getClientMonitor() {
+        return clientMonitor;
+    }
+
+    @Override
+    protected ClientLoad collectClientLoad() {
+        return clientMonitor.sinceStart();
+    }
+
+    /**
+     * Specified DB name on connection. If amplified, copy k of the session uses the copy dbname_k of the
+     * database and starts k-1 offsets after the first copy.
      *
      * @param name connectionID
      * @param name dbname
      */
     public void initDb(String connectionID, String dbname) {
+       for (int copy = 1; copy <= amplification; copy++) {
+           initDbCopy(copyID(connectionID, copy), amplification == 1 ? dbname : dbname + "_" + copy,
+                   (copy - 1) * amplificationOffsetNanos);
+       }
+    }
+
+    private void initDbCopy(String connectionID, String dbname, long delayNanos) {
        ServerConnection s = activeConnections.get(connectionID);
        if (s == null) {
            // Always should get connect method called before however
            // TODO LOG.
            // lets fake a new connection for now.
            // s = connection(connectionID, "__defaultUser");
-           s = new ServerConnection(connectionID, server,
-                 default_username, default_password, etmMonitor, activeConnections.values());
+           s = newConnection(connectionID);
        connections.put(connectionID, s);
            return;
        }
+       if (s.getState() != Thread.State.NEW) {
+           LOG.warn("Connection {} changes database to {}, this is not supported yet.", connectionID, dbname);
+           return;
+       }
        s.initdb(dbname);
-       if (ServerConnection.threadgroup.activeCount() > parallel) {
-           backlogThread.add(s); 
+       s.scheduled();
+       if (delayNanos > 0) {
+           final ServerConnection delayed = s;
+           delayedStarts.schedule(new Runnable() {
+               public void run() {
+                   admit(delayed);
+               }
+           }, delayNanos, TimeUnit.NANOSECONDS);
+       } else {
+           admit(s);
+       }
+    }
+
+    /**
+     * Start a connection, or put it into the backlog if -pa connections are running or it has to wait for
+     * previous connections
+     *
+     * @param s connection
+     */
+    private void admit(ServerConnection s) {
+       if (ServerConnection.threadgroup.activeCount() >= parallel || !s.isReady()) {
+           backlogThread.add(s);
        } else {
            s.start();
        }
@@ -304,9 +891,15 @@ public class SQLStatementExecutor extends QueryBenchmark {
      * @param name statement string
      */
     public void query(String connectionID, Query name) {
-       ServerConnection s = activeConnections.get(connectionID);
-       if (s != null) {
-           s.query(name);
+       for (int copy = 1; copy <= amplification; copy++) {
+           ServerConnection s = activeConnections.get(copyID(connectionID, copy));
+           if (s != null) {
+               if (parsedStatements.incrementAndGet() == 1) {
+                   firstIssuedNanos = System.nanoTime();
+               }
+               Query q = copy == 1 ? name : name.copy();
+               s.query(literalRewriter != null ? literalRewriter.rewrite(q) : q);
+           }
        }
        // ignore if the connection doesn't exist. we've no idea what DB it is on.
     }
@@ -317,21 +910,302 @@ public class SQLStatementExecutor extends QueryBenchmark {
      * @param name connectionID
      */
     public void quit(String connectionID) {
-       ServerConnection s = activeConnections.remove(connectionID);
-       if (s != null) {
-           s.quit();
+       for (int copy = 1; copy <= amplification; copy++) {
+           ServerConnection s = activeConnections.remove(copyID(connectionID, copy));
+           if (s != null) {
+               s.quit();
+               quitConnections.add(s);
+           }
        }
     }
 
+    public long getParsedStatements() {
+        return parsedStatements.get();
+    }
+
+    public long getQueuedStatements() {
+        return ServerConnection.queuedStatements.get();
+    }
+
+    public long getCompletedStatements() {
+        return ServerConnection.completedStatements.get();
+    }
+
+    public long getFailedStatements() {
+        return ServerConnection.failedStatements.get();
+    }
+
+    public int getActiveConnections() {
+        return ServerConnection.threadgroup.activeCount();
+    }
+
+    public int getBackloggedConnections() {
+        return backlogThread.size();
+    }
+
+    /**
+     * Forget quit connections which are finished, nobody has to wait for them any more
+     */
+    private void pruneQuitConnections() {
+        Iterator<ServerConnection> i = quitConnections.iterator();
+        while (i.hasNext()) {
+            if (i.next().getState() == Thread.State.TERMINATED) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * End the replay: sessions still open at the end of the log quit, then wait until all started and
+     * backlogged sessions have processed their statements and ended. Sessions which never selected a
+     * database were never started, their statements are not executed. If the timeout expires, the
+     * remaining connection threads are interrupted and their statements stay in flight.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if all sessions ended in time
+     */
+    public boolean drain(long timeoutMillis) {
+        for (String connectionID : new ArrayList<String>(activeConnections.keySet())) {
+            quit(connectionID);
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        drained = true;
+        try {
+            // quit connections are only pruned once terminated, so this holds all which may still run
+            for (ServerConnection s : quitConnections) {
+                if (s.isScheduled() && !s.awaitFinished(Math.max(0, deadline - System.nanoTime()))) {
+                    drained = false;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        if (!drained) {
+            long inFlight = getParsedStatements() - getCompletedStatements() - getNotStartedStatements();
+            LOG.warn("Replay did not finish within {} ms, {} statements are still in flight.", timeoutMillis, inFlight);
+            if (delayedStarts != null) {
+                delayedStarts.shutdownNow();
+            }
+            ServerConnection.threadgroup.interrupt();
+        }
+        return drained;
+    }
+
+    private long getNotStartedStatements() {
+        long notStarted = 0;
+        for (ServerConnection s : quitConnections) {
+            if (!s.isScheduled()) {
+                notStarted += s.getQueued();
+            }
+        }
+        return notStarted;
+    }
+
+    /**
+     * Issued, completed and failed statements, makespan and throughput by statement type. Call it after
+     * {@link #drain(long)}, sessions which are still open are not accounted for before.
+     *
+     * @return summary of the replay so far
+     */
+    public RunSummary getRunSummary() {
+        return getRunSummary(recorders.merge());
+    }
+
+    private RunSummary getRunSummary(List<DigestStats> merged) {
+        long issued = getParsedStatements();
+        long completed = getCompletedStatements();
+        long inFlight = Math.max(0, issued - completed - getNotStartedStatements());
+        long makespan = getMakespanNanos();
+
+        Map<String, DigestStats> byType = new HashMap<String, DigestStats>();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) == null) {
+                continue;
+            }
+            String type = StatementDigest.type(digests.getText(id));
+            DigestStats stats = byType.get(type);
+            if (stats == null) {
+                stats = new DigestStats();
+                byType.put(type, stats);
+            }
+            stats.add(merged.get(id));
+        }
+        return new RunSummary(issued, completed, getFailedStatements(), inFlight, makespan,
+                drained && inFlight == 0, byType);
+    }
+
+    private long getMakespanNanos() {
+        long makespan = resumedMakespanNanos;
+        if (getCompletedStatements() > resumedCompleted) {
+            makespan += ServerConnection.lastCompletedNanos.get() - firstIssuedNanos;
+        }
+        return makespan;
+    }
+
+    /**
+     * Take a checkpoint of the replay at the current position of the parser. Waits until the running sessions
+     * have executed all statements they can execute without further input from the log, like
+     * {@link #join()}, so the measurements hold exactly the statements before the offset and the statements
+     * of sessions which can not run yet, e.g. in the backlog, are recorded as pending. Call it between
+     * batches, while the parser is not running.
+     *
+     * @param logFile log file the parser reads
+     * @param offset  byte offset of the next line to parse, see {@link QueryParser#getOffset()}
+     * @return checkpoint
+     */
+    public Checkpoint checkpoint(String logFile, long offset) {
+        List<Checkpoint.Session> sessions;
+        long completed;
+        long queued;
+        do {
+            join();
+            completed = getCompletedStatements();
+            queued = getQueuedStatements();
+            sessions = new ArrayList<Checkpoint.Session>();
+            for (ServerConnection s : activeConnections.values()) {
+                sessions.add(session(s));
+            }
+            for (ServerConnection s : quitConnections) {
+                if (s.getQueued() > 0) {
+                    sessions.add(session(s));
+                }
+            }
+            // a backlogged connection may have been started by a finishing one in the meantime
+        } while (!isIdle() || completed != getCompletedStatements() || queued != getQueuedStatements());
+
+        Map<String, DigestStats> stats = new HashMap<String, DigestStats>();
+        Map<String, String> samples = new HashMap<String, String>();
+        List<DigestStats> merged = recorders.merge();
+        for (int id = 0; id < merged.size(); id++) {
+            if (merged.get(id) != null) {
+                stats.put(digests.getText(id), merged.get(id));
+                if (digests.getSample(id) != null) {
+                    samples.put(digests.getText(id), digests.getSample(id));
+                }
+            }
+        }
+        return new Checkpoint(logFile, offset, getParsedStatements(), completed, getFailedStatements(),
+                getMakespanNanos(), sessions, stats, samples);
+    }
+
+    private static Checkpoint.Session session(ServerConnection s) {
+        return new Checkpoint.Session(s.getName(), s.getLogUser(), s.getDatabase(), s.isInTransaction(),
+                s.isQuitQueued(), s.getPendingQueries());
+    }
+
+    /**
+     * Continue a replay from a checkpoint: restore the measurements and counters and re-establish the
+     * sessions with their pending statements. Call it before the first statement is parsed. Transactions
+     * open at the checkpoint are not re-opened, as transaction statements are not replayed.
+     *
+     * @param checkpoint checkpoint of the interrupted run
+     */
+    public void resume(Checkpoint checkpoint) {
+        Map<Integer, DigestStats> stats = new HashMap<Integer, DigestStats>();
+        for (Map.Entry<String, DigestStats> entry : checkpoint.getStats().entrySet()) {
+            int id = digests.restore(entry.getKey(), checkpoint.getSample(entry.getKey()));
+            // digests which are not measured separately any more end up in the other bucket
+            if (stats.containsKey(id)) {
+                stats.get(id).add(entry.getValue());
+            } else {
+                stats.put(id, entry.getValue());
+            }
+        }
+        recorders.restore(stats);
+
+        long pending = 0;
+        for (Checkpoint.Session session : checkpoint.getSessions()) {
+            pending += session.getPending().size();
+        }
+        parsedStatements.set(checkpoint.getIssued() - pending);
+        ServerConnection.completedStatements.set(checkpoint.getCompleted());
+        ServerConnection.failedStatements.set(checkpoint.getFailed());
+        resumedCompleted = checkpoint.getCompleted();
+        resumedMakespanNanos = checkpoint.getMakespanNanos();
+        firstIssuedNanos = System.nanoTime();
+
+        int inTransaction = 0;
+        for (Checkpoint.Session session : checkpoint.getSessions()) {
+            connect(session.getId(), session.getUser());
+            if (session.isInTransaction()) {
+                transaction(session.getId(), true);
+                inTransaction++;
+            }
+            if (session.getDatabase() != null) {
+                initDb(session.getId(), session.getDatabase());
+            }
+            for (Query q : session.getPending()) {
+                query(session.getId(), new Query(q.getFunc(), q.getSql(), digests.register(q.getSql())));
+            }
+            if (session.isQuit()) {
+                quit(session.getId());
+            }
+        }
+        LOG.info("Resumed {} sessions with {} pending statements, {} of them inside a transaction in the log.",
+                checkpoint.getSessions().size(), pending, inTransaction);
+    }
+
+    @Override
+    protected RunSummary collectRunSummary(List<DigestStats> merged) {
+        return getRunSummary(merged);
+    }
+
+    /**
+     * Stop the backlog thread after {@link #drain(long)}, e.g. before the next replay in the same JVM
+     */
+    public void close() {
+        backlogThread.interrupt();
+    }
+
+    /**
+     * Wait until at most the given number of statements are queued in the connections and not started yet, so
+     * the parser does not run arbitrarily far ahead of the replay. Returns early if no connection can make
+     * progress without further input from the log, see {@link #join()}.
+     *
+     * @param limit maximum number of queued statements
+     */
+    public void awaitCapacity(long limit) {
+        try {
+            while (ServerConnection.queuedStatements.get() > limit && !isIdle()) {
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
-     * Wait until all ServerConnections have been finished
+     * Wait until the ServerConnections have processed all queries they can process without further input
+     * from the log. Backlogged connections can not start as long as all running connections wait for
+     * their next queries.
      */
     public void join() {
-        backlogThread.quit();
         try {
-            backlogThread.join();
+            while (!isIdle()) {
+                Thread.sleep(10);
+            }
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isIdle() {
+        if (backlogThread.hasBacklog() && ServerConnection.threadgroup.activeCount() < parallel) {
+            return false;
+        }
+        for (ServerConnection s : activeConnections.values()) {
+            if (s.isBusy()) {
+                return false;
+            }
+        }
+        for (ServerConnection s : quitConnections) {
+            if (s.isBusy()) {
+                return false;
+            }
         }
+        return true;
     }
 
 }
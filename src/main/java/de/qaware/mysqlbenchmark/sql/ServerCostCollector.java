@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.sql;
+
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+import de.qaware.mysqlbenchmark.metrics.ServerCost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reads server side cost counters of MySQL and MariaDB.
+ * <p/>
+ * Digest mode: snapshots of performance_schema.events_statements_summary_by_digest are taken through a
+ * connection of its own before the replay and for every report. The differences are matched to the
+ * replayed digests by a loose form of the digest text, as the server normalizes statements differently.
+ * Statements of other clients on the server are included if they share a digest with the replay.
+ * <p/>
+ * Session mode: {@link #readSessionStatus(java.sql.Connection)} is called by every connection before and
+ * after each statement. This costs two extra round trips per statement, which are not part of the
+ * measured latency but add load to the server.
+ */
+public class ServerCostCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServerCostCollector.class);
+
+    private static final String DIGEST_QUERY = "SELECT SCHEMA_NAME, DIGEST, DIGEST_TEXT, COUNT_STAR, SUM_TIMER_WAIT,"
+            + " SUM_LOCK_TIME, SUM_ROWS_EXAMINED, SUM_ROWS_SENT, SUM_CREATED_TMP_TABLES, SUM_CREATED_TMP_DISK_TABLES,"
+            + " SUM_SORT_MERGE_PASSES FROM performance_schema.events_statements_summary_by_digest";
+
+    private static final String SESSION_QUERY = "SHOW SESSION STATUS WHERE Variable_name IN ('Handler_read_first',"
+            + " 'Handler_read_key', 'Handler_read_last', 'Handler_read_next', 'Handler_read_prev', 'Handler_read_rnd',"
+            + " 'Handler_read_rnd_next', 'Created_tmp_tables', 'Created_tmp_disk_tables', 'Sort_merge_passes', 'Rows_sent')";
+
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final String connectionString;
+    private final String username;
+    private final String password;
+    private final DigestRegistry digests;
+    private Map<String, ServerCost> start;
+    private Map<String, String> startTexts;
+
+    /**
+     * Constructor for digest mode
+     *
+     * @param connectionString connection string with database name
+     * @param username         user with access to performance_schema
+     * @param password         password
+     * @param digests          digests of the replay
+     */
+    public ServerCostCollector(String connectionString, String username, String password, DigestRegistry digests) {
+        this.connectionString = connectionString;
+        this.username = username;
+        this.password = password;
+        this.digests = digests;
+    }
+
+    /**
+     * Take the snapshot the costs are measured from
+     */
+    public void start() {
+        startTexts = new HashMap<String, String>();
+        start = snapshot(startTexts);
+        if (start != null) {
+            LOG.info("performance_schema snapshot with {} digests taken.", start.size());
+        }
+    }
+
+    /**
+     * Cost of the replayed digests since {@link #start()}
+     *
+     * @return cost by digest id of the replay, empty if performance_schema can not be read
+     */
+    public Map<Integer, ServerCost> collect() {
+        Map<Integer, ServerCost> costs = new HashMap<Integer, ServerCost>();
+        Map<String, String> texts = new HashMap<String, String>();
+        Map<String, ServerCost> now = snapshot(texts);
+        if (start == null || now == null) {
+            return costs;
+        }
+
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        int size = digests.size();
+        for (int id = size - 1; id >= 0; id--) {
+            // with -exact several statements share a key, the cost goes to the first one
+            ids.put(key(StatementDigest.normalize(digests.getText(id))), id);
+        }
+        long unmatched = 0;
+        for (Map.Entry<String, ServerCost> entry : now.entrySet()) {
+            ServerCost delta = entry.getValue().since(start.get(entry.getKey()));
+            if (delta.getExecutions() == 0) {
+                continue;
+            }
+            Integer id = ids.get(key(texts.get(entry.getKey())));
+            if (id == null) {
+                unmatched += delta.getExecutions();
+                continue;
+            }
+            ServerCost cost = costs.get(id);
+            if (cost == null) {
+                costs.put(id, delta);
+            } else {
+                cost.add(delta);
+            }
+        }
+        if (unmatched > 0) {
+            LOG.info("{} statement executions in performance_schema did not match a replayed digest.", unmatched);
+        }
+        return costs;
+    }
+
+    private Map<String, ServerCost> snapshot(Map<String, String> texts) {
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection(connectionString, username, password);
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(DIGEST_QUERY);
+            Map<String, ServerCost> snapshot = new HashMap<String, ServerCost>();
+            while (rs.next()) {
+                String text = rs.getString("DIGEST_TEXT");
+                if (text == null) {
+                    continue;
+                }
+                String digest = rs.getString("SCHEMA_NAME") + "/" + rs.getString("DIGEST");
+                ServerCost cost = new ServerCost();
+                cost.setExecutions(rs.getLong("COUNT_STAR"));
+                cost.set(ServerCost.SERVER_TIME, rs.getLong("SUM_TIMER_WAIT") / 1000000);
+                cost.set(ServerCost.LOCK_TIME, rs.getLong("SUM_LOCK_TIME") / 1000000);
+                cost.set(ServerCost.ROWS_EXAMINED, rs.getLong("SUM_ROWS_EXAMINED"));
+                cost.set(ServerCost.ROWS_SENT, rs.getLong("SUM_ROWS_SENT"));
+                cost.set(ServerCost.TMP_TABLES, rs.getLong("SUM_CREATED_TMP_TABLES"));
+                cost.set(ServerCost.TMP_DISK_TABLES, rs.getLong("SUM_CREATED_TMP_DISK_TABLES"));
+                cost.set(ServerCost.SORT_MERGE_PASSES, rs.getLong("SUM_SORT_MERGE_PASSES"));
+                snapshot.put(digest, cost);
+                texts.put(digest, text);
+            }
+            rs.close();
+            statement.close();
+            return snapshot;
+        } catch (SQLException e) {
+            LOG.warn("Could not read performance_schema, server side cost by digest is not available: {}", e.getMessage());
+            return null;
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    /* Intentionally Swallow  Exception */
+                    LOG.error("Could not close sql connection.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the session status counters of a connection
+     *
+     * @param connection connection of the session
+     * @return counters, executions is 0
+     * @throws SQLException if the status can not be read
+     */
+    public static ServerCost readSessionStatus(Connection connection) throws SQLException {
+        ServerCost cost = new ServerCost();
+        long handlerReads = 0;
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery(SESSION_QUERY);
+            while (rs.next()) {
+                String name = rs.getString(1);
+                long value = rs.getLong(2);
+                if (name.startsWith("Handler_read_")) {
+                    handlerReads += value;
+                } else if (name.equalsIgnoreCase("Created_tmp_tables")) {
+                    cost.set(ServerCost.TMP_TABLES, value);
+                } else if (name.equalsIgnoreCase("Created_tmp_disk_tables")) {
+                    cost.set(ServerCost.TMP_DISK_TABLES, value);
+                } else if (name.equalsIgnoreCase("Sort_merge_passes")) {
+                    cost.set(ServerCost.SORT_MERGE_PASSES, value);
+                } else if (name.equalsIgnoreCase("Rows_sent")) {
+                    // MariaDB only
+                    cost.set(ServerCost.ROWS_SENT, value);
+                }
+            }
+            rs.close();
+        } finally {
+            statement.close();
+        }
+        cost.set(ServerCost.ROWS_READ, handlerReads);
+        return cost;
+    }
+
+    /**
+     * Loose form of a digest text which is equal for the digests of the replay and of performance_schema:
+     * comments, backticks and whitespace removed, value lists in one form, upper case
+     */
+    static String key(String digest) {
+        String key = COMMENT.matcher(digest).replaceAll("");
+        key = WHITESPACE.matcher(key.replace("`", "")).replaceAll("");
+        key = key.replace("(...)", "(?+)").replace("(?+)+", "(?+)");
+        return key.toUpperCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.stub;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Latency injected by the {@link StubServer} for statements matching a pattern.
+ * The delay of a statement is the base delay plus a uniformly distributed jitter. With the given
+ * probability an additional stall is added on top, to simulate lock waits or checkpoints.
+ */
+public class LatencyRule {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final Pattern pattern;
+    private final long delayNanos;
+    private final long jitterNanos;
+    private final double stallProbability;
+    private final long stallNanos;
+
+    /**
+     * Constructor
+     *
+     * @param pattern          statements matching this pattern (case insensitive, find semantics) are delayed
+     * @param delayMillis      base delay in milliseconds
+     * @param jitterMillis     maximum additional random delay in milliseconds
+     * @param stallProbability probability (0..1) of an additional stall
+     * @param stallMillis      length of a stall in milliseconds
+     */
+    public LatencyRule(String pattern, double delayMillis, double jitterMillis, double stallProbability, double stallMillis) {
+        this.pattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+        this.delayNanos = (long) (delayMillis * NANOS_PER_MILLI);
+        this.jitterNanos = (long) (jitterMillis * NANOS_PER_MILLI);
+        this.stallProbability = stallProbability;
+        this.stallNanos = (long) (stallMillis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * Parse a rule of the form {@code <regex>=<delayMs>[:<jitterMs>[:<stallProbability>:<stallMs>]]}.
+     * The regex ends at the last '=' of the string.
+     *
+     * @param rule rule description
+     * @return the rule
+     * @throws IllegalArgumentException if the rule can not be parsed
+     */
+    public static LatencyRule parse(String rule) {
+        int split = rule.lastIndexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Latency rule '" + rule + "' must look like <regex>=<delayMs>[:<jitterMs>[:<stallProbability>:<stallMs>]]");
+        }
+        String[] values = rule.substring(split + 1).split(":");
+        try {
+            double delay = Double.parseDouble(values[0]);
+            double jitter = values.length > 1 ? Double.parseDouble(values[1]) : 0;
+            double stallProbability = values.length > 3 ? Double.parseDouble(values[2]) : 0;
+            double stall = values.length > 3 ? Double.parseDouble(values[3]) : 0;
+            return new LatencyRule(rule.substring(0, split), delay, jitter, stallProbability, stall);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in latency rule '" + rule + "'", e);
+        }
+    }
+
+    /**
+     * Check if the rule applies to a statement
+     *
+     * @param sql the statement
+     * @return true if the pattern is found in the statement
+     */
+    public boolean matches(String sql) {
+        return pattern.matcher(sql).find();
+    }
+
+    /**
+     * Draw the delay for one statement
+     *
+     * @param random random source of the connection, so that delays are reproducible per connection
+     * @return delay in nanoseconds
+     */
+    public long nextDelayNanos(Random random) {
+        long delay = delayNanos;
+        if (jitterNanos > 0) {
+            delay += (long) (random.nextDouble() * jitterNanos);
+        }
+        if (stallProbability > 0 && random.nextDouble() < stallProbability) {
+            delay += stallNanos;
+        }
+        return delay;
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern() + "=" + (delayNanos / (double) NANOS_PER_MILLI) + ":" + (jitterNanos / (double) NANOS_PER_MILLI)
+                + ":" + stallProbability + ":" + (stallNanos / (double) NANOS_PER_MILLI);
+    }
+}
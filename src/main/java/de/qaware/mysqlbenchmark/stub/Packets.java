@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.stub;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Encoding and decoding of MySQL client/server protocol packets, as far as needed by the {@link StubServer}.
+ * Responses are built into a byte buffer including the packet headers, so canned responses can be encoded once
+ * and written many times.
+ */
+final class Packets {
+
+    static final int MAX_PAYLOAD = 0xffffff;
+
+    static final int CLIENT_LONG_PASSWORD = 0x00000001;
+    static final int CLIENT_FOUND_ROWS = 0x00000002;
+    static final int CLIENT_LONG_FLAG = 0x00000004;
+    static final int CLIENT_CONNECT_WITH_DB = 0x00000008;
+    static final int CLIENT_PROTOCOL_41 = 0x00000200;
+    static final int CLIENT_TRANSACTIONS = 0x00002000;
+    static final int CLIENT_SECURE_CONNECTION = 0x00008000;
+    static final int CLIENT_MULTI_RESULTS = 0x00020000;
+
+    static final int SERVER_STATUS_AUTOCOMMIT = 0x0002;
+
+    private static final int CHARSET_UTF8_GENERAL_CI = 33;
+    private static final int TYPE_VAR_STRING = 0xfd;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private int sequence;
+
+    /**
+     * Constructor
+     *
+     * @param sequence sequence id of the first packet to build
+     */
+    Packets(int sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Read one packet payload. Payloads split over several packets are joined.
+     *
+     * @param in the stream to read from
+     * @return the payload, or null if the stream is at its end
+     * @throws IOException if the stream ends within a packet
+     */
+    static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream joined = null;
+        while (true) {
+            int b0 = in.read();
+            if (b0 < 0) {
+                return null;
+            }
+            byte[] header = new byte[3];
+            readFully(in, header);
+            int length = b0 | (header[0] & 0xff) << 8 | (header[1] & 0xff) << 16;
+            byte[] data = new byte[length];
+            readFully(in, data);
+            if (length < MAX_PAYLOAD && joined == null) {
+                return data;
+            }
+            if (joined == null) {
+                joined = new ByteArrayOutputStream(length * 2);
+            }
+            joined.write(data, 0, length);
+            if (length < MAX_PAYLOAD) {
+                return joined.toByteArray();
+            }
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] data) throws IOException {
+        int offset = 0;
+        while (offset < data.length) {
+            int read = in.read(data, offset, data.length - offset);
+            if (read < 0) {
+                throw new EOFException("Connection closed within a packet");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Initial handshake packet (protocol version 10) without pluggable authentication.
+     *
+     * @param connectionId id of the connection
+     * @param version      server version string
+     * @param scramble     20 bytes of authentication challenge
+     * @return this
+     */
+    Packets handshake(int connectionId, String version, byte[] scramble) {
+        int capabilities = CLIENT_LONG_PASSWORD | CLIENT_FOUND_ROWS | CLIENT_LONG_FLAG | CLIENT_CONNECT_WITH_DB
+                | CLIENT_PROTOCOL_41 | CLIENT_TRANSACTIONS | CLIENT_SECURE_CONNECTION | CLIENT_MULTI_RESULTS;
+        payload.write(10);
+        writeNullTerminated(version);
+        writeInt(connectionId, 4);
+        payload.write(scramble, 0, 8);
+        payload.write(0);
+        writeInt(capabilities & 0xffff, 2);
+        payload.write(CHARSET_UTF8_GENERAL_CI);
+        writeInt(SERVER_STATUS_AUTOCOMMIT, 2);
+        writeInt(capabilities >>> 16, 2);
+        payload.write(scramble.length + 1);
+        for (int i = 0; i < 10; i++) {
+            payload.write(0);
+        }
+        payload.write(scramble, 8, scramble.length - 8);
+        payload.write(0);
+        return endPacket();
+    }
+
+    /**
+     * OK packet
+     *
+     * @param affectedRows number of affected rows
+     * @return this
+     */
+    Packets ok(long affectedRows) {
+        payload.write(0x00);
+        writeLengthEncoded(affectedRows);
+        writeLengthEncoded(0);
+        writeInt(SERVER_STATUS_AUTOCOMMIT, 2);
+        writeInt(0, 2);
+        return endPacket();
+    }
+
+    /**
+     * ERR packet
+     *
+     * @param code     mysql error code
+     * @param sqlState five character sql state
+     * @param message  error message
+     * @return this
+     */
+    Packets error(int code, String sqlState, String message) {
+        payload.write(0xff);
+        writeInt(code, 2);
+        payload.write('#');
+        writeBytes(sqlState.getBytes(Charsets.UTF_8));
+        writeBytes(message.getBytes(Charsets.UTF_8));
+        return endPacket();
+    }
+
+    /**
+     * A complete text protocol result set, all columns are strings.
+     *
+     * @param columns column names
+     * @param rows    row values, each row must have one value per column. Null values are sent as SQL NULL.
+     * @return this
+     */
+    Packets resultSet(String[] columns, List<String[]> rows) {
+        writeLengthEncoded(columns.length);
+        endPacket();
+        for (String column : columns) {
+            writeLengthEncoded("def");
+            writeLengthEncoded("");
+            writeLengthEncoded("");
+            writeLengthEncoded("");
+            writeLengthEncoded(column);
+            writeLengthEncoded(column);
+            payload.write(0x0c);
+            writeInt(CHARSET_UTF8_GENERAL_CI, 2);
+            writeInt(255, 4);
+            payload.write(TYPE_VAR_STRING);
+            writeInt(0, 2);
+            payload.write(0);
+            writeInt(0, 2);
+            endPacket();
+        }
+        eof();
+        for (String[] row : rows) {
+            for (String value : row) {
+                if (value == null) {
+                    payload.write(0xfb);
+                } else {
+                    writeLengthEncoded(value);
+                }
+            }
+            endPacket();
+        }
+        return eof();
+    }
+
+    private Packets eof() {
+        payload.write(0xfe);
+        writeInt(0, 2);
+        writeInt(SERVER_STATUS_AUTOCOMMIT, 2);
+        return endPacket();
+    }
+
+    /**
+     * All packets built so far, including headers
+     *
+     * @return encoded packets
+     */
+    byte[] toByteArray() {
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Write all packets built so far
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(OutputStream out) throws IOException {
+        buffer.writeTo(out);
+    }
+
+    private Packets endPacket() {
+        byte[] data = payload.toByteArray();
+        int offset = 0;
+        do {
+            int length = Math.min(MAX_PAYLOAD, data.length - offset);
+            buffer.write(length & 0xff);
+            buffer.write((length >>> 8) & 0xff);
+            buffer.write((length >>> 16) & 0xff);
+            buffer.write(sequence++ & 0xff);
+            buffer.write(data, offset, length);
+            offset += length;
+            // a payload of exactly MAX_PAYLOAD bytes is terminated by an empty packet
+            if (length == MAX_PAYLOAD && offset == data.length) {
+                buffer.write(0);
+                buffer.write(0);
+                buffer.write(0);
+                buffer.write(sequence++ & 0xff);
+            }
+        } while (offset < data.length);
+        payload.reset();
+        return this;
+    }
+
+    private void writeInt(long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            payload.write((int) (value >>> (8 * i)) & 0xff);
+        }
+    }
+
+    private void writeLengthEncoded(long value) {
+        if (value < 251) {
+            payload.write((int) value);
+        } else if (value < 0x10000) {
+            payload.write(0xfc);
+            writeInt(value, 2);
+        } else if (value < 0x1000000) {
+            payload.write(0xfd);
+            writeInt(value, 3);
+        } else {
+            payload.write(0xfe);
+            writeInt(value, 8);
+        }
+    }
+
+    private void writeLengthEncoded(String value) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        writeLengthEncoded(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private void writeNullTerminated(String value) {
+        writeBytes(value.getBytes(Charsets.UTF_8));
+        payload.write(0);
+    }
+
+    private void writeBytes(byte[] bytes) {
+        payload.write(bytes, 0, bytes.length);
+    }
+}
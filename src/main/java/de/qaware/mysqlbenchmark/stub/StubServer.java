@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.stub;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for a MySQL server. Speaks enough of the client/server protocol for Connector/J:
+ * handshake (any credentials are accepted), init db, ping, text protocol queries and quit.
+ * Reading statements get a canned result set of configurable size, all other statements an OK packet.
+ * EXPLAIN FORMAT=JSON is answered with a made up single table plan.
+ * Latency can be injected per statement pattern, see {@link LatencyRule}.
+ * <p/>
+ * Every client connection is served by its own thread with a small stack. Canned responses are encoded
+ * once, so the stub does not become the bottleneck of the benchmark.
+ */
+public class StubServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StubServer.class);
+
+    private static final String VERSION = "5.5.99-benchmark-stub";
+    private static final long THREAD_STACK_SIZE = 128 * 1024;
+
+    private static final byte COM_QUIT = 0x01;
+    private static final byte COM_INIT_DB = 0x02;
+    private static final byte COM_QUERY = 0x03;
+    private static final byte COM_PING = 0x0e;
+
+    private static final int ROWS_READ = 0;
+    private static final int ROWS_SENT = 1;
+    private static final int TMP_TABLES = 2;
+
+    /**
+     * Variables Connector/J reads on connect
+     */
+    private static final String[][] VARIABLES = {
+            {"auto_increment_increment", "1"},
+            {"character_set_client", "utf8"},
+            {"character_set_connection", "utf8"},
+            {"character_set_results", "utf8"},
+            {"character_set_server", "utf8"},
+            {"init_connect", ""},
+            {"interactive_timeout", "28800"},
+            {"license", "GPL"},
+            {"lower_case_table_names", "0"},
+            {"max_allowed_packet", "16777216"},
+            {"net_buffer_length", "16384"},
+            {"net_write_timeout", "60"},
+            {"query_cache_size", "0"},
+            {"query_cache_type", "OFF"},
+            {"sql_mode", ""},
+            {"system_time_zone", "UTC"},
+            {"time_zone", "SYSTEM"},
+            {"tx_isolation", "REPEATABLE-READ"},
+            {"wait_timeout", "28800"}
+    };
+
+    private final int requestedPort;
+    private final List<LatencyRule> rules = new CopyOnWriteArrayList<LatencyRule>();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final ThreadGroup threads = new ThreadGroup("stub server connections");
+    /**
+     * Statement statistics by digest text in the style of performance_schema.events_statements_summary_by_digest:
+     * count, timer wait in picoseconds, rows examined, rows sent, temporary tables. Every connection counts
+     * into a map of its own, which is only locked by others while the summary is read. The maps of closed
+     * connections are merged into one. Access to the list and the merged map is guarded by the list.
+     */
+    private final List<Map<String, long[]>> openSummaries = new ArrayList<Map<String, long[]>>();
+    private final Map<String, long[]> closedSummary = new HashMap<String, long[]>();
+
+    private int rows = 1;
+    private int columns = 1;
+    private int valueWidth = 8;
+    private long seed = 42;
+    private boolean digestSummary;
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private byte[] cannedResult;
+    private byte[] variablesResult;
+
+    /**
+     * Constructor
+     *
+     * @param port port to listen on, 0 for any free port
+     */
+    public StubServer(int port) {
+        this.requestedPort = port;
+    }
+
+    /**
+     * Number of rows returned for reading statements. Must be set before {@link #start()}.
+     *
+     * @param rows row count
+     */
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * Number of columns returned for reading statements. Must be set before {@link #start()}.
+     *
+     * @param columns column count
+     */
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Length of every returned value in characters. Must be set before {@link #start()}.
+     *
+     * @param valueWidth value length
+     */
+    public void setValueWidth(int valueWidth) {
+        this.valueWidth = valueWidth;
+    }
+
+    /**
+     * Seed for the random latencies. Each connection uses this seed plus its connection id.
+     *
+     * @param seed random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Count the statements by digest for the performance_schema digest summary. Costs a normalization of
+     * every statement, so only enable it if the summary is read. Must be set before {@link #start()}.
+     *
+     * @param digestSummary true to count by digest
+     */
+    public void setDigestSummary(boolean digestSummary) {
+        this.digestSummary = digestSummary;
+    }
+
+    /**
+     * Add a latency rule. The first matching rule is applied to a statement.
+     *
+     * @param rule the rule
+     */
+    public void addLatencyRule(LatencyRule rule) {
+        rules.add(rule);
+    }
+
+    /**
+     * Bind the server socket and start accepting connections
+     *
+     * @throws IOException if the port can not be bound
+     */
+    public synchronized void start() throws IOException {
+        cannedResult = encodeCannedResult();
+        variablesResult = encodeVariables();
+        serverSocket = new ServerSocket(requestedPort, 1024, InetAddress.getByName("127.0.0.1"));
+        running = true;
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "stub server acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("Stub server listening on port {} with {} latency rules.", getPort(), rules.size());
+    }
+
+    /**
+     * Stop accepting connections. Established connections are closed by their clients.
+     */
+    public synchronized void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not close stub server socket.", e);
+        }
+    }
+
+    /**
+     * The port the server listens on
+     *
+     * @return port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * JDBC connection string without database name, usable as {@code -s} parameter
+     *
+     * @return connection string
+     */
+    public String getConnectionString() {
+        return "jdbc:mysql://127.0.0.1:" + getPort() + "/";
+    }
+
+    /**
+     * Number of currently open client connections
+     *
+     * @return connection count
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final int id = connectionIds.incrementAndGet();
+                Thread t = new Thread(threads, new Runnable() {
+                    public void run() {
+                        serve(socket, id);
+                    }
+                }, "stub connection " + id, THREAD_STACK_SIZE);
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOG.error("Accepting stub connection failed.", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket, int id) {
+        openConnections.incrementAndGet();
+        Random random = new Random(seed + id);
+        long[] session = new long[3];
+        Map<String, long[]> summary = null;
+        if (digestSummary) {
+            summary = new HashMap<String, long[]>();
+            synchronized (openSummaries) {
+                openSummaries.add(summary);
+            }
+        }
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            byte[] scramble = new byte[20];
+            for (int i = 0; i < scramble.length; i++) {
+                scramble[i] = (byte) (33 + random.nextInt(90));
+            }
+            new Packets(0).handshake(id, VERSION, scramble).writeTo(out);
+            out.flush();
+            if (Packets.read(in) == null) {
+                return;
+            }
+            // the credentials are not checked
+            new Packets(2).ok(0).writeTo(out);
+            out.flush();
+
+            byte[] packet;
+            while ((packet = Packets.read(in)) != null) {
+                if (packet.length == 0 || packet[0] == COM_QUIT) {
+                    break;
+                }
+                switch (packet[0]) {
+                    case COM_QUERY:
+                        query(new String(packet, 1, packet.length - 1, Charsets.UTF_8), random, session, summary, out);
+                        break;
+                    case COM_INIT_DB:
+                    case COM_PING:
+                        new Packets(1).ok(0).writeTo(out);
+                        break;
+                    default:
+                        new Packets(1).error(1047, "08S01", "Unknown command " + packet[0]).writeTo(out);
+                        break;
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            LOG.debug("Stub connection {} reset.", id);
+        } catch (IOException e) {
+            LOG.error("Stub connection " + id + " failed.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            openConnections.decrementAndGet();
+            if (summary != null) {
+                synchronized (openSummaries) {
+                    openSummaries.remove(summary);
+                    synchronized (summary) {
+                        add(closedSummary, summary);
+                    }
+                }
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                /* Intentionally Swallow  Exception */
+            }
+        }
+    }
+
+    private void query(String sql, Random random, long[] session, Map<String, long[]> summary, OutputStream out)
+            throws IOException, InterruptedException {
+        long delay = 0;
+        for (LatencyRule rule : rules) {
+            if (rule.matches(sql)) {
+                delay = rule.nextDelayNanos(random);
+                TimeUnit.NANOSECONDS.sleep(delay);
+                break;
+            }
+        }
+
+        String statement = stripComments(sql).toLowerCase();
+        boolean read = statement.startsWith("select") || statement.startsWith("show") || statement.startsWith("desc")
+                || statement.startsWith("explain") || statement.startsWith("(");
+        boolean tmpTable = read && (statement.contains("group by") || statement.contains("order by"));
+        // the status and summary statements are counted before they answer, like in MySQL
+        session[ROWS_READ] += read ? rows : 0;
+        session[ROWS_SENT] += read ? rows : 0;
+        session[TMP_TABLES] += tmpTable ? 1 : 0;
+        if (summary != null) {
+            summarize(summary, sql, delay, read ? rows : 0, tmpTable);
+        }
+
+        if (statement.startsWith("explain format=json")) {
+            new Packets(1).resultSet(new String[]{"EXPLAIN"},
+                    Collections.singletonList(new String[]{explain(statement)})).writeTo(out);
+        } else if (statement.startsWith("show session status")) {
+            List<String[]> status = new ArrayList<String[]>();
+            status.add(new String[]{"Created_tmp_disk_tables", "0"});
+            status.add(new String[]{"Created_tmp_tables", String.valueOf(session[TMP_TABLES])});
+            status.add(new String[]{"Handler_read_rnd_next", String.valueOf(session[ROWS_READ])});
+            status.add(new String[]{"Rows_sent", String.valueOf(session[ROWS_SENT])});
+            status.add(new String[]{"Sort_merge_passes", "0"});
+            new Packets(1).resultSet(new String[]{"Variable_name", "Value"}, status).writeTo(out);
+        } else if (statement.contains("performance_schema.events_statements_summary_by_digest")) {
+            new Packets(1).resultSet(new String[]{"SCHEMA_NAME", "DIGEST", "DIGEST_TEXT", "COUNT_STAR", "SUM_TIMER_WAIT",
+                    "SUM_LOCK_TIME", "SUM_ROWS_EXAMINED", "SUM_ROWS_SENT", "SUM_CREATED_TMP_TABLES",
+                    "SUM_CREATED_TMP_DISK_TABLES", "SUM_SORT_MERGE_PASSES"}, digestSummary()).writeTo(out);
+        } else if (statement.startsWith("show variables")) {
+            out.write(variablesResult);
+        } else if (statement.startsWith("show collation")) {
+            new Packets(1).resultSet(new String[]{"Collation", "Charset", "Id", "Default", "Compiled", "Sortlen"},
+                    Collections.<String[]>emptyList()).writeTo(out);
+        } else if (statement.startsWith("select") && statement.contains("@@")) {
+            String value = statement.contains("tx_isolation") ? "REPEATABLE-READ" : "1";
+            new Packets(1).resultSet(new String[]{sql.substring(sql.indexOf("@@")).trim()},
+                    Collections.singletonList(new String[]{value})).writeTo(out);
+        } else if (read) {
+            out.write(cannedResult);
+        } else {
+            new Packets(1).ok(statement.startsWith("set") ? 0 : 1).writeTo(out);
+        }
+    }
+
+    /**
+     * Count a statement for the performance_schema digest summary of its connection. The digest text is written
+     * like MySQL does, without comments and with value lists as "(...)".
+     */
+    private static void summarize(Map<String, long[]> summary, String sql, long delayNanos, long rowsSent,
+                                  boolean tmpTable) {
+        String text = StatementDigest.normalize(stripComments(sql)).replace("(?+)+", "(...) /* , ... */")
+                .replace("(?+)", "(...)");
+        synchronized (summary) {
+            long[] counters = summary.get(text);
+            if (counters == null) {
+                counters = new long[5];
+                summary.put(text, counters);
+            }
+            counters[0]++;
+            counters[1] += delayNanos * 1000;
+            counters[2] += rowsSent;
+            counters[3] += rowsSent;
+            counters[4] += tmpTable ? 1 : 0;
+        }
+    }
+
+    private static void add(Map<String, long[]> merged, Map<String, long[]> summary) {
+        for (Map.Entry<String, long[]> entry : summary.entrySet()) {
+            long[] counters = merged.get(entry.getKey());
+            if (counters == null) {
+                counters = new long[entry.getValue().length];
+                merged.put(entry.getKey(), counters);
+            }
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] += entry.getValue()[i];
+            }
+        }
+    }
+
+    private List<String[]> digestSummary() {
+        Map<String, long[]> merged = new TreeMap<String, long[]>();
+        synchronized (openSummaries) {
+            add(merged, closedSummary);
+            for (Map<String, long[]> summary : openSummaries) {
+                synchronized (summary) {
+                    add(merged, summary);
+                }
+            }
+        }
+        List<String[]> result = new ArrayList<String[]>();
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            long[] counters = entry.getValue();
+            result.add(new String[]{"stub", Integer.toHexString(entry.getKey().hashCode()), entry.getKey(),
+                    String.valueOf(counters[0]), String.valueOf(counters[1]), "0", String.valueOf(counters[2]),
+                    String.valueOf(counters[3]), String.valueOf(counters[4]), "0", "0"});
+        }
+        return result;
+    }
+
+    /**
+     * A plan in the format of MySQL 5.7: the table after FROM, UPDATE or INTO, accessed by primary key if
+     * the statement filters on an id column, by a secondary key for other filters and by a full scan without
+     */
+    private String explain(String statement) {
+        Matcher m = Pattern.compile("\\b(from|update|into)\\s+`?(\\w+)").matcher(statement);
+        String table = m.find() ? m.group(2) : "dual";
+        int where = statement.indexOf(" where ");
+        String access;
+        String key;
+        if (where < 0) {
+            access = "ALL";
+            key = null;
+        } else if (Pattern.compile("\\bid\\s*=").matcher(statement.substring(where)).find()) {
+            access = "const";
+            key = "PRIMARY";
+        } else {
+            access = "ref";
+            key = "idx_" + table;
+        }
+        return "{\n  \"query_block\": {\n    \"select_id\": 1,\n    \"cost_info\": {\n      \"query_cost\": \""
+                + String.format(Locale.ENGLISH, "%.2f", rows * 1.2) + "\"\n    },\n"
+                + (statement.contains("order by") ? "    \"ordering_operation\": {\n      \"using_filesort\": true,\n" : "")
+                + "    \"table\": {\n      \"table_name\": \"" + table + "\",\n      \"access_type\": \"" + access + "\",\n"
+                + (key == null ? "" : "      \"key\": \"" + key + "\",\n")
+                + "      \"rows_examined_per_scan\": " + rows + ",\n      \"filtered\": \"100.00\"\n    }\n"
+                + (statement.contains("order by") ? "    }\n" : "") + "  }\n}";
+    }
+
+    /**
+     * Remove leading comments, Connector/J prefixes its internal statements with a comment.
+     */
+    private static String stripComments(String sql) {
+        String s = sql.trim();
+        while (s.startsWith("/*")) {
+            int end = s.indexOf("*/");
+            if (end < 0) {
+                return "";
+            }
+            s = s.substring(end + 2).trim();
+        }
+        return s;
+    }
+
+    private byte[] encodeCannedResult() {
+        String[] names = new String[columns];
+        String[] row = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            names[i] = "c" + (i + 1);
+            row[i] = Strings.repeat("x", valueWidth);
+        }
+        return new Packets(1).resultSet(names, Collections.nCopies(rows, row)).toByteArray();
+    }
+
+    private byte[] encodeVariables() {
+        List<String[]> values = new ArrayList<String[]>();
+        Collections.addAll(values, VARIABLES);
+        return new Packets(1).resultSet(new String[]{"Variable_name", "Value"}, values).toByteArray();
+    }
+}
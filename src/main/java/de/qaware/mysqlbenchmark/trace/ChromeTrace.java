@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.trace;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import de.qaware.mysqlbenchmark.console.TraceParameters;
+import de.qaware.mysqlbenchmark.report.JsonLinesRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * The trace command: converts a trace of a replay, see {@link TraceRecorder}, to the JSON format of the Chrome
+ * trace viewer, which Perfetto (ui.perfetto.dev) and chrome://tracing open. Every session is a track and every
+ * statement a slice on it, named by its digest, so convoys and lock pile-ups show as slices which end together.
+ * Failed statements have the category "error".
+ */
+public final class ChromeTrace {
+
+    /**
+     * Exit code if the trace was converted
+     */
+    public static final int OK = 0;
+
+    /**
+     * Exit code for invalid parameters or unreadable files
+     */
+    public static final int ERROR = 2;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ChromeTrace.class);
+
+    /**
+     * Length of the digest text in the name of a slice, the whole text is in its arguments
+     */
+    private static final int NAME_LENGTH = 80;
+
+    private ChromeTrace() {
+        // Prevent instantiation
+    }
+
+    /**
+     * Run the trace command
+     *
+     * @param args arguments after "trace", see {@link TraceParameters}
+     * @return exit code
+     */
+    public static int run(String[] args) {
+        TraceParameters params = new TraceParameters();
+        JCommander commander = new JCommander(params);
+        commander.setProgramName("MySQL Benchmark Tool trace");
+        try {
+            commander.parse(args);
+        } catch (ParameterException e) {
+            LOG.error(e.getMessage());
+            commander.usage();
+            return ERROR;
+        }
+        if (params.isHelp() || params.getFiles().size() != 2) {
+            commander.usage();
+            return params.isHelp() ? OK : ERROR;
+        }
+
+        try {
+            TraceFile trace = TraceFile.open(params.getFiles().get(0));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(params.getFiles().get(1)), "UTF-8"));
+            long written;
+            try {
+                written = convert(trace, writer, (long) (params.getFrom() * 1e9),
+                        params.getTo() > 0 ? (long) (params.getTo() * 1e9) : Long.MAX_VALUE);
+            } finally {
+                writer.close();
+            }
+            LOG.info("Converted {} of {} statements to {}.", new Object[]{written, trace.getRecorded(),
+                    params.getFiles().get(1)});
+            if (trace.getRecorded() > trace.size()) {
+                LOG.warn("The trace is a ring, the oldest {} statements were overwritten.",
+                        trace.getRecorded() - trace.size());
+            }
+            return OK;
+        } catch (IOException e) {
+            LOG.error("Could not convert trace.", e);
+            return ERROR;
+        }
+    }
+
+    /**
+     * Write the statements of a time window
+     *
+     * @param trace     trace
+     * @param writer    writer for the JSON document
+     * @param fromNanos only statements which end after this time since the start of the trace
+     * @param toNanos   only statements which start before this time since the start of the trace
+     * @return number of statements written
+     * @throws IOException if the JSON can not be written
+     */
+    static long convert(TraceFile trace, Writer writer, long fromNanos, long toNanos) throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"displayTimeUnit\":\"ms\",\"otherData\":{\"start_epoch_ms\":").append(trace.getStartMillis())
+                .append("},\"traceEvents\":[\n");
+        sb.append("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"replay\"}}");
+        writer.write(sb.toString());
+        for (int session = 0; session < trace.getSessionCount(); session++) {
+            sb.setLength(0);
+            sb.append(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(session)
+                    .append(",\"args\":{\"name\":");
+            JsonLinesRenderer.quote(sb, trace.getSessionName(session));
+            sb.append("}}");
+            writer.write(sb.toString());
+        }
+
+        long written = 0;
+        for (long i = 0; i < trace.size(); i++) {
+            long start = trace.getStart(i);
+            long end = trace.getEnd(i);
+            if (end < fromNanos || start >= toNanos) {
+                continue;
+            }
+            String text = trace.getDigestText(trace.getDigestId(i));
+            int result = trace.getResult(i);
+            sb.setLength(0);
+            sb.append(",\n{\"name\":");
+            JsonLinesRenderer.quote(sb, text.length() > NAME_LENGTH ? text.substring(0, NAME_LENGTH) + "..." : text);
+            sb.append(",\"cat\":\"").append(result == 0 ? "statement" : "error")
+                    .append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(trace.getSession(i))
+                    .append(",\"ts\":");
+            micros(sb, start);
+            sb.append(",\"dur\":");
+            micros(sb, end - start);
+            sb.append(",\"args\":{\"digest\":");
+            JsonLinesRenderer.quote(sb, text);
+            sb.append(",\"thread\":").append(trace.getThread(i))
+                    .append(",\"result\":").append(result).append("}}");
+            writer.write(sb.toString());
+            written++;
+        }
+        writer.write("\n]}\n");
+        return written;
+    }
+
+    private static void micros(StringBuilder sb, long nanos) {
+        long positive = Math.max(0, nanos);
+        long fraction = positive % 1000;
+        sb.append(positive / 1000).append('.');
+        if (fraction < 100) {
+            sb.append('0');
+        }
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.trace;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A trace written by a {@link TraceRecorder}. The records are read from a memory mapped file, the names of the
+ * sessions and the digest texts are loaded into memory.
+ */
+public class TraceFile {
+
+    private final long startMillis;
+    private final long recorded;
+    private final long size;
+    /**
+     * Index of the oldest record in the file, not 0 if a ring wrapped around
+     */
+    private final long first;
+    private final ByteBuffer[] chunks;
+    private final List<String> sessions = new ArrayList<String>();
+    private final List<String> digests = new ArrayList<String>();
+
+    private TraceFile(long startMillis, long recorded, long size, ByteBuffer[] chunks) {
+        this.startMillis = startMillis;
+        this.recorded = recorded;
+        this.size = size;
+        this.first = recorded > size ? recorded % size : 0;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Open a trace
+     *
+     * @param fileName trace file
+     * @return trace
+     * @throws IOException if the file can not be read or is no complete trace
+     */
+    public static TraceFile open(String fileName) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() < TraceRecorder.HEADER_SIZE) {
+                throw new IOException(fileName + " is no trace.");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, TraceRecorder.HEADER_SIZE);
+            if (header.getLong() != TraceRecorder.MAGIC) {
+                throw new IOException(fileName + " is no trace.");
+            }
+            if (header.getInt() != TraceRecorder.VERSION || header.getInt() != TraceRecorder.RECORD_SIZE) {
+                throw new IOException(fileName + " is a trace of another version.");
+            }
+            long startMillis = header.getLong();
+            long capacity = header.getLong();
+            long recorded = header.getLong();
+            if (recorded < 0) {
+                throw new IOException(fileName + " is incomplete, the replay did not close the trace.");
+            }
+            long size = capacity > 0 ? Math.min(recorded, capacity) : recorded;
+            long end = TraceRecorder.HEADER_SIZE + size * TraceRecorder.RECORD_SIZE;
+            if (end > channel.size()) {
+                throw new IOException(fileName + " is truncated.");
+            }
+            TraceFile trace = new TraceFile(startMillis, recorded, size, map(channel, size));
+            trace.readNames(channel.map(FileChannel.MapMode.READ_ONLY, end, channel.size() - end));
+            return trace;
+        } finally {
+            // the mappings stay valid after the file is closed
+            file.close();
+        }
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, long size) throws IOException {
+        ByteBuffer[] chunks = new ByteBuffer[(int) ((size + TraceRecorder.RECORDS_PER_CHUNK - 1) / TraceRecorder.RECORDS_PER_CHUNK)];
+        for (int i = 0; i < chunks.length; i++) {
+            long records = Math.min(TraceRecorder.RECORDS_PER_CHUNK, size - (long) i * TraceRecorder.RECORDS_PER_CHUNK);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    TraceRecorder.HEADER_SIZE + (long) i * TraceRecorder.RECORDS_PER_CHUNK * TraceRecorder.RECORD_SIZE,
+                    records * TraceRecorder.RECORD_SIZE);
+        }
+        return chunks;
+    }
+
+    private void readNames(ByteBuffer names) throws IOException {
+        readStrings(names, sessions);
+        readStrings(names, digests);
+    }
+
+    private static void readStrings(ByteBuffer buffer, List<String> strings) throws IOException {
+        if (buffer.remaining() < 4) {
+            throw new IOException("The trace is truncated.");
+        }
+        int count = buffer.getInt();
+        if (count < 0) {
+            throw new IOException("The trace is damaged.");
+        }
+        for (int i = 0; i < count; i++) {
+            int length = buffer.remaining() < 4 ? -1 : buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException("The trace is truncated.");
+            }
+            byte[] text = new byte[length];
+            buffer.get(text);
+            strings.add(new String(text, "UTF-8"));
+        }
+    }
+
+    /**
+     * Time the trace started
+     *
+     * @return epoch milliseconds
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Number of statements recorded, including those overwritten in a ring
+     *
+     * @return statement count
+     */
+    public long getRecorded() {
+        return recorded;
+    }
+
+    /**
+     * Number of records in the file
+     *
+     * @return record count
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Start of a statement
+     *
+     * @param i record index, 0 is the oldest record
+     * @return nanoseconds since the start of the trace
+     */
+    public long getStart(long i) {
+        return buffer(i).getLong(offset(i));
+    }
+
+    /**
+     * End of a statement
+     *
+     * @param i record index, 0 is the oldest record
+     * @return nanoseconds since the start of the trace
+     */
+    public long getEnd(long i) {
+        return buffer(i).getLong(offset(i) + 8);
+    }
+
+    /**
+     * Session of a statement
+     *
+     * @param i record index, 0 is the oldest record
+     * @return session number, see {@link #getSessionName(int)}
+     */
+    public int getSession(long i) {
+        return buffer(i).getInt(offset(i) + 16);
+    }
+
+    /**
+     * Digest of a statement
+     *
+     * @param i record index, 0 is the oldest record
+     * @return digest id, see {@link #getDigestText(int)}
+     */
+    public int getDigestId(long i) {
+        return buffer(i).getInt(offset(i) + 20);
+    }
+
+    /**
+     * Client thread which executed a statement
+     *
+     * @param i record index, 0 is the oldest record
+     * @return thread id
+     */
+    public int getThread(long i) {
+        return buffer(i).getInt(offset(i) + 24);
+    }
+
+    /**
+     * Result of a statement
+     *
+     * @param i record index, 0 is the oldest record
+     * @return 0 if succeeded, else the error code or {@link TraceRecorder#FAILED}
+     */
+    public int getResult(long i) {
+        return buffer(i).getInt(offset(i) + 28);
+    }
+
+    /**
+     * Name of a session
+     *
+     * @param session session number
+     * @return connection id
+     */
+    public String getSessionName(int session) {
+        return session >= 0 && session < sessions.size() ? sessions.get(session) : String.valueOf(session);
+    }
+
+    /**
+     * Number of sessions
+     *
+     * @return session count
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Text of a digest
+     *
+     * @param digestId digest id
+     * @return normalized statement
+     */
+    public String getDigestText(int digestId) {
+        return digestId >= 0 && digestId < digests.size() ? digests.get(digestId) : "digest " + digestId;
+    }
+
+    private ByteBuffer buffer(long i) {
+        return chunks[(int) (((first + i) % size) / TraceRecorder.RECORDS_PER_CHUNK)];
+    }
+
+    private int offset(long i) {
+        return (int) (((first + i) % size) % TraceRecorder.RECORDS_PER_CHUNK) * TraceRecorder.RECORD_SIZE;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.qaware.mysqlbenchmark.trace;
+
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records every executed statement as a fixed size record in a memory mapped file, so the timeline of a replay
+ * can be analyzed afterwards, e.g. which statements ran while one took long. Recording a statement reserves its
+ * record with one atomic increment and writes it with absolute puts, there is no lock and no allocation on the
+ * way. With a capacity the file is a ring which keeps the latest records.
+ * <p/>
+ * Layout, all numbers big endian: a header of {@link #HEADER_SIZE} bytes with magic, version, record size,
+ * start time in epoch milliseconds, capacity of the ring (0 if none) and the number of statements recorded, then the records of
+ * {@link #RECORD_SIZE} bytes: start and end in nanoseconds since the start of the trace, session, digest id,
+ * thread id and result (0 or the error code of the failed statement). The names of the sessions and the texts
+ * of the digests follow the records, each as count and length prefixed UTF-8 strings. See {@link TraceFile}.
+ * <p/>
+ * Thread safe.
+ */
+public class TraceRecorder {
+
+    static final long MAGIC = 0x4d51425452414345L;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int RECORD_SIZE = 32;
+    /**
+     * Result of a statement which failed without error code
+     */
+    public static final int FAILED = -1;
+
+    static final int RECORDS_PER_CHUNK = 2 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long capacity;
+    private final long startNanos = System.nanoTime();
+    private final long startMillis = System.currentTimeMillis();
+    private final AtomicLong next = new AtomicLong();
+    private final List<String> sessions = new ArrayList<String>();
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile IOException failure;
+
+    /**
+     * Constructor. The file is created or overwritten.
+     *
+     * @param fileName trace file
+     * @param capacity maximum number of records kept, the oldest are overwritten; 0 to keep all
+     * @throws IOException if the file can not be written
+     */
+    public TraceRecorder(String fileName, long capacity) throws IOException {
+        this.capacity = capacity;
+        file = new RandomAccessFile(fileName, "rw");
+        channel = file.getChannel();
+        channel.truncate(0);
+        // a count of -1 marks a trace which was not closed
+        writeHeader(-1);
+    }
+
+    /**
+     * Get the number of a session for its records
+     *
+     * @param name name of the session, e.g. its connection id
+     * @return session number
+     */
+    public synchronized int session(String name) {
+        sessions.add(name);
+        return sessions.size() - 1;
+    }
+
+    /**
+     * Record a statement
+     *
+     * @param start    {@link System#nanoTime()} the statement started
+     * @param end      {@link System#nanoTime()} the statement ended
+     * @param session  session number, see {@link #session(String)}
+     * @param digestId digest id of the statement
+     * @param result   0 if the statement succeeded, else its error code or {@link #FAILED}
+     */
+    public void record(long start, long end, int session, int digestId, int result) {
+        long index = next.getAndIncrement();
+        if (capacity > 0) {
+            index %= capacity;
+        }
+        ByteBuffer chunk = chunk((int) (index / RECORDS_PER_CHUNK));
+        if (chunk == null) {
+            return;
+        }
+        int offset = (int) (index % RECORDS_PER_CHUNK) * RECORD_SIZE;
+        chunk.putLong(offset, start - startNanos);
+        chunk.putLong(offset + 8, end - startNanos);
+        chunk.putInt(offset + 16, session);
+        chunk.putInt(offset + 20, digestId);
+        chunk.putInt(offset + 24, (int) Thread.currentThread().getId());
+        chunk.putInt(offset + 28, result);
+    }
+
+    /**
+     * Number of statements recorded, including those overwritten in a ring
+     *
+     * @return statement count
+     */
+    public long getRecorded() {
+        return next.get();
+    }
+
+    /**
+     * Write the names of the sessions and the digest texts and close the file. Call it when no statements are
+     * executed any more.
+     *
+     * @param digests registry of the digest ids recorded
+     * @throws IOException if the trace could not be written
+     */
+    public synchronized void close(DigestRegistry digests) throws IOException {
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            long count = next.get();
+            long end = HEADER_SIZE + (capacity > 0 ? Math.min(count, capacity) : count) * RECORD_SIZE;
+            chunks = new ByteBuffer[0];
+            channel.truncate(end);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(sessions.size());
+            for (String session : sessions) {
+                writeString(out, session);
+            }
+            out.writeInt(digests.size());
+            for (int id = 0; id < digests.size(); id++) {
+                writeString(out, digests.getText(id));
+            }
+            out.flush();
+            ByteBuffer names = ByteBuffer.wrap(bytes.toByteArray());
+            while (names.hasRemaining()) {
+                channel.write(names, end + names.position());
+            }
+            writeHeader(count);
+        } finally {
+            file.close();
+        }
+    }
+
+    private ByteBuffer chunk(int i) {
+        ByteBuffer[] current = chunks;
+        if (i < current.length) {
+            return current[i];
+        }
+        synchronized (this) {
+            try {
+                while (chunks.length <= i) {
+                    map();
+                }
+                return chunks[i];
+            } catch (IOException e) {
+                failure = e;
+                return null;
+            }
+        }
+    }
+
+    private void map() throws IOException {
+        long first = (long) chunks.length * RECORDS_PER_CHUNK;
+        long records = capacity > 0 ? Math.min(RECORDS_PER_CHUNK, capacity - first) : RECORDS_PER_CHUNK;
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * RECORD_SIZE,
+                records * RECORD_SIZE);
+        ByteBuffer[] grown = new ByteBuffer[chunks.length + 1];
+        System.arraycopy(chunks, 0, grown, 0, chunks.length);
+        grown[chunks.length] = buffer;
+        chunks = grown;
+    }
+
+    private void writeHeader(long count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putLong(startMillis).putLong(capacity).putLong(count);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] text = value.getBytes("UTF-8");
+        out.writeInt(text.length);
+        out.write(text);
+    }
+}
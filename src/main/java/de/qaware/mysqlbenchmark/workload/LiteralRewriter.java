@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replaces the literals of statements by values drawn from the distributions of {@link LiteralRule}s, so a
+ * replay touches a working set of a chosen size and skew instead of the same keys as the log every time.
+ * <p/>
+ * A numeric literal is replaced by the drawn key. In a string literal only the last run of digits is
+ * replaced, e.g. 'user15' becomes 'user734', strings without digits are kept. Values sampled from the log
+ * replace the whole literal. The first rule matching the digest text and the position of a literal applies.
+ * Not thread safe, statements are rewritten by the thread handing them to the connections.
+ */
+public class LiteralRewriter {
+
+    /**
+     * Values kept per literal for the log distribution
+     */
+    private static final int VALUES = 256;
+
+    private final List<LiteralRule> rules;
+    private final DigestRegistry digests;
+    private final Random random;
+    /**
+     * Matching rules by digest id, null if not resolved yet
+     */
+    private final List<List<LiteralRule>> rulesByDigest = new ArrayList<List<LiteralRule>>();
+    /**
+     * Values seen in the log by digest id and literal position
+     */
+    private final List<List<Reservoir<String>>> logValues = new ArrayList<List<Reservoir<String>>>();
+    private long rewritten;
+
+    /**
+     * Constructor
+     *
+     * @param rules   rules in order of precedence
+     * @param digests registry of the digest ids of the statements
+     * @param seed    seed of the random numbers
+     */
+    public LiteralRewriter(List<LiteralRule> rules, DigestRegistry digests, long seed) {
+        this.rules = rules;
+        this.digests = digests;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Rewrite the literals of a statement. The statement itself is not changed, it may be replayed again.
+     *
+     * @param query statement
+     * @return statement with rewritten literals and its digest id, or the statement itself if no rule applies
+     */
+    public Query rewrite(Query query) {
+        int digestId = query.getDigestId();
+        List<LiteralRule> matching = digests.isOther(digestId)
+                ? matching(StatementDigest.normalize(query.getSql())) : rules(digestId);
+        if (matching.isEmpty()) {
+            return query;
+        }
+        String sql = query.getSql();
+        List<int[]> literals = StatementDigest.literals(sql);
+        StringBuilder sb = null;
+        int last = 0;
+        for (int i = 0; i < literals.size(); i++) {
+            LiteralRule rule = rule(matching, i + 1);
+            if (rule == null) {
+                continue;
+            }
+            int[] literal = literals.get(i);
+            String value = draw(rule, digestId, i, sql.substring(literal[0], literal[1]));
+            if (value == null) {
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(sql.length() + 16);
+            }
+            sb.append(sql, last, literal[0]).append(value);
+            last = literal[1];
+        }
+        if (sb == null) {
+            return query;
+        }
+        rewritten++;
+        String rewrittenSql = sb.append(sql, last, sql.length()).toString();
+        // a normalized digest does not change with its literals
+        return new Query(query.getFunc(), rewrittenSql,
+                digests.isNormalized() ? digestId : digests.register(rewrittenSql));
+    }
+
+    /**
+     * Number of statements rewritten
+     *
+     * @return statement count
+     */
+    public long getRewritten() {
+        return rewritten;
+    }
+
+    private List<LiteralRule> rules(int digestId) {
+        while (rulesByDigest.size() <= digestId) {
+            rulesByDigest.add(null);
+        }
+        List<LiteralRule> matching = rulesByDigest.get(digestId);
+        if (matching == null) {
+            matching = matching(digests.getText(digestId));
+            rulesByDigest.set(digestId, matching);
+        }
+        return matching;
+    }
+
+    private List<LiteralRule> matching(String text) {
+        List<LiteralRule> matching = new ArrayList<LiteralRule>();
+        for (LiteralRule rule : rules) {
+            if (text != null && rule.matches(text)) {
+                matching.add(rule);
+            }
+        }
+        return matching.isEmpty() ? Collections.<LiteralRule>emptyList() : matching;
+    }
+
+    private static LiteralRule rule(List<LiteralRule> matching, int position) {
+        for (LiteralRule rule : matching) {
+            if (rule.appliesTo(position)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Draw the new value of a literal
+     *
+     * @return new literal or null to keep it
+     */
+    private String draw(LiteralRule rule, int digestId, int index, String literal) {
+        int[] digits = lastDigits(literal);
+        if (rule.getDistribution() == LiteralRule.Distribution.LOG) {
+            Reservoir<String> values = logValues(digestId, index);
+            if (digits != null && rule.inRange(parse(literal, digits))) {
+                values.add(literal);
+            }
+            return values.sample(random);
+        }
+        if (digits == null) {
+            return null;
+        }
+        return literal.substring(0, digits[0]) + rule.draw(random) + literal.substring(digits[1]);
+    }
+
+    private Reservoir<String> logValues(int digestId, int index) {
+        while (logValues.size() <= digestId) {
+            logValues.add(null);
+        }
+        List<Reservoir<String>> byPosition = logValues.get(digestId);
+        if (byPosition == null) {
+            byPosition = new ArrayList<Reservoir<String>>();
+            logValues.set(digestId, byPosition);
+        }
+        while (byPosition.size() <= index) {
+            byPosition.add(new Reservoir<String>(VALUES, random));
+        }
+        return byPosition.get(index);
+    }
+
+    /**
+     * The last run of digits of a literal, the whole literal if it is numeric
+     *
+     * @return start and end offset or null if the literal has no digits
+     */
+    private static int[] lastDigits(String literal) {
+        char first = literal.charAt(0);
+        if (first != '\'' && first != '"') {
+            return new int[]{0, literal.length()};
+        }
+        int end = literal.length();
+        while (end > 0 && !Character.isDigit(literal.charAt(end - 1))) {
+            end--;
+        }
+        if (end == 0) {
+            return null;
+        }
+        int start = end;
+        while (start > 0 && Character.isDigit(literal.charAt(start - 1))) {
+            start--;
+        }
+        return new int[]{start, end};
+    }
+
+    private static long parse(String literal, int[] digits) {
+        try {
+            return (long) Double.parseDouble(literal.substring(digits[0], digits[1]));
+        } catch (NumberFormatException e) {
+            // hex or other numbers are out of any key range
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Distribution of the values of literals in the statements of the digests matching a pattern, see
+ * {@link LiteralRewriter}. The values are drawn
+ * <ul>
+ * <li>uniformly from a key range,</li>
+ * <li>from a key range with Zipf distributed popularity, the popular keys scattered over the range, or</li>
+ * <li>from the values of the literal seen in the log so far, optionally only those within a key range.</li>
+ * </ul>
+ */
+public class LiteralRule {
+
+    /**
+     * Kind of distribution
+     */
+    enum Distribution {
+        UNIFORM, ZIPF, LOG
+    }
+
+    private static final double DEFAULT_EXPONENT = 0.99;
+
+    private final Pattern pattern;
+    private final Distribution distribution;
+    private final long min;
+    private final long max;
+    private final double exponent;
+    private final int literal;
+    private final ZipfSampler zipf;
+
+    /**
+     * Constructor
+     *
+     * @param pattern      digests matching this pattern (case insensitive, find semantics) are rewritten
+     * @param distribution distribution of the values
+     * @param min          lowest value
+     * @param max          highest value
+     * @param exponent     skew of the Zipf distribution
+     * @param literal      position of the rewritten literal in the statement starting at 1, 0 for all
+     */
+    LiteralRule(String pattern, Distribution distribution, long min, long max, double exponent, int literal) {
+        if (min > max) {
+            throw new IllegalArgumentException("Empty key range " + min + ":" + max + " in literal rule for '" + pattern + "'");
+        }
+        if (distribution == Distribution.ZIPF && exponent <= 0) {
+            throw new IllegalArgumentException("The Zipf exponent must be positive in literal rule for '" + pattern + "'");
+        }
+        this.pattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+        this.distribution = distribution;
+        this.min = min;
+        this.max = max;
+        this.exponent = exponent;
+        this.literal = literal;
+        this.zipf = distribution == Distribution.ZIPF ? new ZipfSampler(max - min + 1, exponent) : null;
+    }
+
+    /**
+     * Parse a rule of the form {@code <regex>=<distribution>[#<literal>]} with the distributions
+     * {@code uniform:<min>:<max>}, {@code zipf:<min>:<max>[:<exponent>]} and {@code log[:<min>:<max>]}.
+     * The regex ends at the last '=' of the string.
+     *
+     * @param rule rule description
+     * @return the rule
+     * @throws IllegalArgumentException if the rule can not be parsed
+     */
+    public static LiteralRule parse(String rule) {
+        int split = rule.lastIndexOf('=');
+        if (split < 0) {
+            throw new IllegalArgumentException("Literal rule '" + rule + "' must look like <regex>=<distribution>[#<literal>]"
+                    + " with the distributions uniform:<min>:<max>, zipf:<min>:<max>[:<exponent>] or log[:<min>:<max>]");
+        }
+        String spec = rule.substring(split + 1);
+        try {
+            int literal = 0;
+            int hash = spec.indexOf('#');
+            if (hash >= 0) {
+                literal = Integer.parseInt(spec.substring(hash + 1));
+                spec = spec.substring(0, hash);
+                if (literal < 1) {
+                    throw new IllegalArgumentException("Literal positions start at 1 in literal rule '" + rule + "'");
+                }
+            }
+            String[] values = spec.split(":");
+            Distribution distribution = Distribution.valueOf(values[0].trim().toUpperCase(Locale.ENGLISH));
+            boolean range = values.length >= 3;
+            if (!range && distribution != Distribution.LOG) {
+                throw new IllegalArgumentException("Literal rule '" + rule + "' needs a key range <min>:<max>");
+            }
+            long min = range ? Long.parseLong(values[1].trim()) : Long.MIN_VALUE;
+            long max = range ? Long.parseLong(values[2].trim()) : Long.MAX_VALUE;
+            double exponent = values.length > 3 ? Double.parseDouble(values[3]) : DEFAULT_EXPONENT;
+            return new LiteralRule(rule.substring(0, split), distribution, min, max, exponent, literal);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number in literal rule '" + rule + "'", e);
+        }
+    }
+
+    /**
+     * Check if the rule applies to a digest
+     *
+     * @param digest digest text
+     * @return true if the pattern is found in the digest
+     */
+    boolean matches(String digest) {
+        return pattern.matcher(digest).find();
+    }
+
+    /**
+     * Check if the rule rewrites a literal
+     *
+     * @param position position of the literal in the statement starting at 1
+     * @return true if it is rewritten
+     */
+    boolean appliesTo(int position) {
+        return literal == 0 || literal == position;
+    }
+
+    Distribution getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Check if a value is within the key range
+     *
+     * @param value value
+     * @return true if min &lt;= value &lt;= max
+     */
+    boolean inRange(long value) {
+        return value >= min && value <= max;
+    }
+
+    /**
+     * Draw a key of the uniform or Zipf distribution
+     *
+     * @param random random numbers
+     * @return key within the range
+     */
+    long draw(Random random) {
+        // the range may span all longs, so it is computed as double
+        double size = (double) max - min + 1;
+        double offset = zipf == null ? random.nextDouble() * size : scatter(zipf.sample(random)) * size;
+        return Math.min(max, min + (long) offset);
+    }
+
+    /**
+     * Spread the ranks over the range, so the popular keys are not neighbours
+     *
+     * @param rank rank
+     * @return position in [0, 1)
+     */
+    private static double scatter(long rank) {
+        // FNV-1a of the rank
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= (rank >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return (hash >>> 11) / (double) (1L << 53);
+    }
+
+    @Override
+    public String toString() {
+        String range = min == Long.MIN_VALUE && max == Long.MAX_VALUE ? "" : ":" + min + ":" + max;
+        return pattern.pattern() + "=" + distribution.name().toLowerCase(Locale.ENGLISH) + range
+                + (zipf != null ? ":" + exponent : "") + (literal > 0 ? "#" + literal : "");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Uniform sample of bounded size from a stream of values of unknown length (reservoir sampling). Every value
+ * of the stream ends up in the sample with the same probability, so the sample follows the distribution of
+ * the stream while its memory does not grow with it.
+ *
+ * @param <T> type of the values
+ */
+class Reservoir<T> {
+
+    private final List<T> values;
+    private final int capacity;
+    private final Random random;
+    private long seen;
+
+    /**
+     * Constructor
+     *
+     * @param capacity maximum number of sampled values
+     * @param random   random numbers deciding which values are kept
+     */
+    Reservoir(int capacity, Random random) {
+        this.values = new ArrayList<T>(Math.min(capacity, 16));
+        this.capacity = capacity;
+        this.random = random;
+    }
+
+    /**
+     * Offer the next value of the stream
+     *
+     * @param value value
+     */
+    void add(T value) {
+        seen++;
+        if (values.size() < capacity) {
+            values.add(value);
+        } else {
+            long slot = (long) (random.nextDouble() * seen);
+            if (slot < capacity) {
+                values.set((int) slot, value);
+            }
+        }
+    }
+
+    /**
+     * Draw a value of the sample
+     *
+     * @param random random numbers of the caller
+     * @return value or null if the stream was empty
+     */
+    T sample(Random random) {
+        return values.isEmpty() ? null : values.get(random.nextInt(values.size()));
+    }
+
+    boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /**
+     * Number of values offered
+     *
+     * @return stream length
+     */
+    long getSeen() {
+        return seen;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import de.qaware.mysqlbenchmark.func.SQLFunc;
+import de.qaware.mysqlbenchmark.logfile.StatementDigest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Statement of one digest with its literals replaced by values sampled from the log. The first statement of
+ * the digest is the template, the values of each literal are sampled from all statements of the digest with
+ * the same number of literals, so a literal keeps its own distribution, e.g. the ids of one table.
+ */
+class StatementTemplate {
+
+    /**
+     * Values kept per literal
+     */
+    private static final int VALUES = 256;
+
+    private final SQLFunc func;
+    private final String sql;
+    private final List<int[]> literals;
+    private final List<Reservoir<String>> values;
+    private long count;
+
+    /**
+     * Constructor
+     *
+     * @param func   function of the statement
+     * @param sql    first statement of the digest
+     * @param random random numbers of the reservoirs
+     */
+    StatementTemplate(SQLFunc func, String sql, Random random) {
+        this.func = func;
+        this.sql = sql;
+        this.literals = StatementDigest.literals(sql);
+        this.values = new ArrayList<Reservoir<String>>(literals.size());
+        for (int i = 0; i < literals.size(); i++) {
+            values.add(new Reservoir<String>(VALUES, random));
+        }
+    }
+
+    /**
+     * Learn the literal values of a statement of the digest
+     *
+     * @param statement statement
+     */
+    void add(String statement) {
+        count++;
+        if (literals.isEmpty()) {
+            return;
+        }
+        List<int[]> found = StatementDigest.literals(statement);
+        // lists of literals of any length share a digest, their values can not be assigned to the template
+        if (found.size() != literals.size()) {
+            return;
+        }
+        for (int i = 0; i < found.size(); i++) {
+            values.get(i).add(statement.substring(found.get(i)[0], found.get(i)[1]));
+        }
+    }
+
+    /**
+     * A new statement of the digest
+     *
+     * @param random random numbers choosing the literal values
+     * @return statement
+     */
+    String render(Random random) {
+        if (literals.isEmpty()) {
+            return sql;
+        }
+        StringBuilder sb = new StringBuilder(sql.length() + 16);
+        int last = 0;
+        for (int i = 0; i < literals.size(); i++) {
+            int[] literal = literals.get(i);
+            String value = values.get(i).sample(random);
+            sb.append(sql, last, literal[0]).append(value != null ? value : sql.substring(literal[0], literal[1]));
+            last = literal[1];
+        }
+        return sb.append(sql, last, sql.length()).toString();
+    }
+
+    SQLFunc getFunc() {
+        return func;
+    }
+
+    /**
+     * Number of statements of the digest in the log
+     *
+     * @return count
+     */
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Outgoing transitions of one state of the Markov model over digests: how often each digest, or the end of
+ * the session, followed the state in the log
+ */
+class Transitions {
+
+    private final Map<Integer, Integer> index = new HashMap<Integer, Integer>();
+    private int[] targets = new int[4];
+    private long[] counts = new long[4];
+    private int size;
+
+    /**
+     * Count one transition
+     *
+     * @param target digest id or {@link WorkloadModel#END}
+     */
+    void add(int target) {
+        Integer i = index.get(target);
+        if (i == null) {
+            if (size == targets.length) {
+                int[] grownTargets = new int[size * 2];
+                long[] grownCounts = new long[size * 2];
+                System.arraycopy(targets, 0, grownTargets, 0, size);
+                System.arraycopy(counts, 0, grownCounts, 0, size);
+                targets = grownTargets;
+                counts = grownCounts;
+            }
+            i = size++;
+            index.put(target, i);
+            targets[i] = target;
+        }
+        counts[i]++;
+    }
+
+    /**
+     * Draw the next state with the probabilities of the log
+     *
+     * @param mayEnd if false the end of the session is not drawn
+     * @param random random numbers
+     * @return digest id, {@link WorkloadModel#END} or {@link WorkloadModel#NONE} if no state can follow
+     */
+    int next(boolean mayEnd, Random random) {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            if (mayEnd || targets[i] != WorkloadModel.END) {
+                total += counts[i];
+            }
+        }
+        if (total == 0) {
+            return WorkloadModel.NONE;
+        }
+        long pick = (long) (random.nextDouble() * total);
+        int next = WorkloadModel.NONE;
+        for (int i = 0; i < size && pick >= 0; i++) {
+            if (mayEnd || targets[i] != WorkloadModel.END) {
+                pick -= counts[i];
+                next = targets[i];
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import de.qaware.mysqlbenchmark.sql.SQLStatementExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Generates a synthetic workload from a {@link WorkloadModel} and hands it to an executor: a fixed number of
+ * open sessions, each drawing its length, its statements and the think times between them from the model.
+ * A session which reaches its length quits and is replaced by a new one. At a fixed rate the statements
+ * are spaced evenly and handed to the session whose think time is the first to end, so the rate does not
+ * depend on the number of sessions.
+ * <p/>
+ * The load is open: a statement is handed to its session when it is due, not when the previous statement of
+ * the session completed. The executor only bounds it by the number of concurrently running sessions and
+ * by blocking while too many statements wait for execution, so a generator falling behind the schedule
+ * catches up as soon as the server does.
+ */
+public class WorkloadGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkloadGenerator.class);
+
+    private final WorkloadModel model;
+    private final SQLStatementExecutor executor;
+    private final int sessions;
+    private final long intervalNanos;
+    private final Random random;
+    private final PriorityQueue<Session> open = new PriorityQueue<Session>();
+    private long nextSession;
+    private long sequence;
+    private long generated;
+    private long started;
+
+    /**
+     * Constructor
+     *
+     * @param model    workload model
+     * @param executor executor running the statements
+     * @param sessions number of concurrently open sessions
+     * @param rate     statements per second over all sessions, 0 for no limit
+     * @param seed     seed of the random numbers
+     */
+    public WorkloadGenerator(WorkloadModel model, SQLStatementExecutor executor, int sessions, int rate, long seed) {
+        if (model.getDatabase() == null) {
+            throw new IllegalArgumentException("The log selects no database, synthetic sessions can not be opened.");
+        }
+        this.model = model;
+        this.executor = executor;
+        this.sessions = sessions;
+        this.intervalNanos = rate > 0 ? 1000000000L / rate : 0;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate statements until the duration is over, then quit all sessions. The statements handed to the
+     * executor may still run afterwards, see {@link SQLStatementExecutor#drain(long)}.
+     *
+     * @param durationMillis length of the workload
+     * @param batch          number of statements after which to wait until the executor has capacity
+     */
+    public void run(long durationMillis, int batch) {
+        long now = System.nanoTime();
+        long end = now + durationMillis * 1000000L;
+        long nextSlot = now;
+        for (int i = 0; i < sessions; i++) {
+            open(now);
+        }
+        try {
+            while (!open.isEmpty()) {
+                Session session = open.poll();
+                // at a fixed rate the think times only decide which session is next
+                long due = intervalNanos > 0 ? nextSlot : session.due;
+                if (due >= end || System.nanoTime() >= end) {
+                    open.add(session);
+                    break;
+                }
+                sleepUntil(due);
+
+                int next = model.next(session.digest, session.issued >= session.length, random);
+                if (next == WorkloadModel.END) {
+                    executor.quit(session.connectionID);
+                    open(due);
+                    continue;
+                }
+                executor.query(session.connectionID, model.statement(next, random, executor.getDigests()));
+                session.digest = next;
+                session.issued++;
+                session.due = due + model.thinkTime(random) * 1000000L;
+                session.sequence = sequence++;
+                open.add(session);
+                nextSlot = due + intervalNanos;
+                if (++generated % batch == 0) {
+                    executor.awaitCapacity(batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Session session : open) {
+                executor.quit(session.connectionID);
+            }
+            open.clear();
+        }
+        LOG.info("Generated " + generated + " statements in " + started + " sessions.");
+    }
+
+    private void open(long due) {
+        Session session = new Session("synthetic-" + (++nextSession), model.sessionLength(random));
+        executor.connect(session.connectionID, model.getUser());
+        executor.initDb(session.connectionID, model.getDatabase());
+        session.due = due;
+        session.sequence = sequence++;
+        open.add(session);
+        started++;
+    }
+
+    private static void sleepUntil(long due) throws InterruptedException {
+        long wait = due - System.nanoTime();
+        if (wait > 1000000L) {
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+        }
+    }
+
+    /**
+     * Number of statements generated
+     *
+     * @return statement count
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Number of sessions opened
+     *
+     * @return session count
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * A generated session, ordered by the time its next statement is due
+     */
+    private static class Session implements Comparable<Session> {
+        private final String connectionID;
+        private final int length;
+        private int digest = WorkloadModel.START;
+        private int issued;
+        private long due;
+        private long sequence;
+
+        Session(String connectionID, int length) {
+            this.connectionID = connectionID;
+            this.length = length;
+        }
+
+        public int compareTo(Session other) {
+            if (due != other.due) {
+                return due < other.due ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
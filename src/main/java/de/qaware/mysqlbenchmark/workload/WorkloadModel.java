@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.workload;
+
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.logfile.LogMerger;
+import de.qaware.mysqlbenchmark.logfile.LogSource;
+import de.qaware.mysqlbenchmark.logfile.SessionEventHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Workload learned from a log, from which a {@link WorkloadGenerator} generates any amount of similar load:
+ * <ul>
+ * <li>the statement sequences of the sessions as Markov model over the digests, which also gives the digest
+ * mix,</li>
+ * <li>the think times between two statements of a session,</li>
+ * <li>the number of statements per session and</li>
+ * <li>the literal values of every digest, see {@link StatementTemplate}.</li>
+ * </ul>
+ * The log is parsed once and not kept, the model only keeps bounded samples of the times, lengths and values.
+ * Think times are only as exact as the timestamps of the log, which the general log writes with a
+ * resolution of one second in older versions.
+ */
+public class WorkloadModel {
+
+    /**
+     * State before the first statement of a session
+     */
+    static final int START = -1;
+    /**
+     * State after the last statement of a session
+     */
+    static final int END = -2;
+    /**
+     * No state can follow
+     */
+    static final int NONE = -3;
+
+    private static final int SAMPLES = 4096;
+
+    private final Random random = new Random(0);
+    private final DigestRegistry digests = new DigestRegistry(true);
+    private final List<StatementTemplate> templates = new ArrayList<StatementTemplate>();
+    private final Map<Integer, Transitions> transitions = new HashMap<Integer, Transitions>();
+    private final Reservoir<Long> thinkTimes = new Reservoir<Long>(SAMPLES, random);
+    private final Reservoir<Integer> sessionLengths = new Reservoir<Integer>(SAMPLES, random);
+    private String user;
+    private String database;
+    private long statements;
+
+    private WorkloadModel() {
+        // Use learn()
+    }
+
+    /**
+     * Learn the workload of a log
+     *
+     * @param logs           log files, merged if several, see {@link LogMerger#open}
+     * @param restrictedID   only learn from this connection id, all if null or empty
+     * @param ignorePrefixes ignore statements which start with these prefixes
+     * @return model of the workload
+     * @throws IOException if the log can not be read
+     */
+    public static WorkloadModel learn(List<String> logs, String restrictedID, List<String> ignorePrefixes)
+            throws IOException {
+        WorkloadModel model = new WorkloadModel();
+        Learner learner = model.new Learner();
+        LogSource parser = LogMerger.open(learner, logs, restrictedID, ignorePrefixes);
+        learner.parser = parser;
+        try {
+            while (parser.parseLogFile(Integer.MAX_VALUE)) {
+                // parse until the end of the log
+            }
+        } finally {
+            parser.close();
+        }
+        learner.finish();
+        return model;
+    }
+
+    /**
+     * Draw the digest following a state
+     *
+     * @param from   digest id of the last statement or {@link #START}
+     * @param mayEnd if false the session does not end yet
+     * @param random random numbers
+     * @return digest id or {@link #END}
+     */
+    int next(int from, boolean mayEnd, Random random) {
+        Transitions row = transitions.get(from);
+        int next = row == null ? NONE : row.next(mayEnd, random);
+        if (next == NONE && from != START) {
+            // nothing followed this digest in the log but the session has to go on: start a new sequence
+            row = transitions.get(START);
+            next = row == null ? NONE : row.next(mayEnd, random);
+        }
+        return next == NONE ? END : next;
+    }
+
+    /**
+     * Generate a statement of a digest
+     *
+     * @param digestId digest id
+     * @param random   random numbers choosing the literal values
+     * @param registry registry of the executor the statement is for
+     * @return statement with sampled literal values and the digest id of the registry
+     */
+    Query statement(int digestId, Random random, DigestRegistry registry) {
+        StatementTemplate template = templates.get(digestId);
+        String sql = template.render(random);
+        return new Query(template.getFunc(), sql, registry.register(sql));
+    }
+
+    /**
+     * Draw a think time
+     *
+     * @param random random numbers
+     * @return milliseconds between two statements of a session
+     */
+    long thinkTime(Random random) {
+        Long millis = thinkTimes.sample(random);
+        return millis == null ? 0 : millis;
+    }
+
+    /**
+     * Draw a session length
+     *
+     * @param random random numbers
+     * @return number of statements, {@link Integer#MAX_VALUE} if no session of the log ended
+     */
+    int sessionLength(Random random) {
+        Integer length = sessionLengths.sample(random);
+        return length == null ? Integer.MAX_VALUE : length;
+    }
+
+    /**
+     * User of most sessions of the log
+     *
+     * @return user of the connect lines, null if the log has none
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * Database of most sessions of the log
+     *
+     * @return database name, null if the log selects none
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * Number of statements the model was learned from
+     *
+     * @return statement count
+     */
+    public long getStatements() {
+        return statements;
+    }
+
+    /**
+     * Number of digests of the model
+     *
+     * @return digest count
+     */
+    public int getDigestCount() {
+        return templates.size();
+    }
+
+    /**
+     * Number of sessions of the log which ended
+     *
+     * @return session count
+     */
+    public long getSessions() {
+        return sessionLengths.getSeen();
+    }
+
+    /**
+     * Builds the model from the session events of the parser
+     */
+    private class Learner implements SessionEventHandler {
+
+        private final Map<String, Session> sessions = new HashMap<String, Session>();
+        private final Map<String, Integer> users = new HashMap<String, Integer>();
+        private final Map<String, Integer> databases = new HashMap<String, Integer>();
+        private LogSource parser;
+
+        public void connect(String connectionID, String user) {
+            end(connectionID);
+            sessions.put(connectionID, new Session());
+            count(users, user);
+        }
+
+        public void initDb(String connectionID, String database) {
+            count(databases, database);
+        }
+
+        public void transaction(String connectionID, boolean open) {
+            // transaction statements are not generated
+        }
+
+        public void query(String connectionID, Query query) {
+            Session session = sessions.get(connectionID);
+            if (session == null) {
+                // the session started before the log
+                session = new Session();
+                sessions.put(connectionID, session);
+            }
+            int digestId = query.getDigestId();
+            while (templates.size() <= digestId) {
+                templates.add(null);
+            }
+            if (templates.get(digestId) == null) {
+                templates.set(digestId, new StatementTemplate(query.getFunc(), query.getSql(), random));
+            }
+            templates.get(digestId).add(query.getSql());
+            transition(session.last, digestId);
+
+            long time = parser.getLogTime();
+            if (session.length > 0 && time >= 0 && session.time >= 0) {
+                thinkTimes.add(Math.max(0, time - session.time));
+            }
+            session.last = digestId;
+            session.time = time;
+            session.length++;
+            statements++;
+        }
+
+        public void quit(String connectionID) {
+            end(connectionID);
+        }
+
+        public DigestRegistry getDigests() {
+            return digests;
+        }
+
+        /**
+         * Sessions still open at the end of the log are counted as if they ended there
+         */
+        void finish() {
+            for (String connectionID : new ArrayList<String>(sessions.keySet())) {
+                end(connectionID);
+            }
+            user = mostCommon(users);
+            database = mostCommon(databases);
+        }
+
+        private void end(String connectionID) {
+            Session session = sessions.remove(connectionID);
+            if (session != null) {
+                transition(session.last, END);
+                sessionLengths.add(session.length);
+            }
+        }
+
+        private void transition(int from, int to) {
+            Transitions row = transitions.get(from);
+            if (row == null) {
+                row = new Transitions();
+                transitions.put(from, row);
+            }
+            row.add(to);
+        }
+
+        private void count(Map<String, Integer> counts, String value) {
+            Integer count = counts.get(value);
+            counts.put(value, count == null ? 1 : count + 1);
+        }
+
+        private String mostCommon(Map<String, Integer> counts) {
+            String best = null;
+            int max = 0;
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                if (entry.getValue() > max) {
+                    best = entry.getKey();
+                    max = entry.getValue();
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * State of a session of the log while learning
+     */
+    private static class Session {
+        private int last = START;
+        private long time = -1;
+        private int length;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.cache;
+
+import de.qaware.mysqlbenchmark.func.SQLFunc;
+import de.qaware.mysqlbenchmark.logfile.DigestRegistry;
+import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.logfile.SessionEventHandler;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hits of the simulated cache and their invalidation by writes
+ */
+public class CacheSimulatorTest extends TestCase {
+
+    private Executor executor;
+    private CacheSimulator simulator;
+
+    @Override
+    protected void setUp() {
+        executor = new Executor();
+        simulator = new CacheSimulator(executor, new LruCache(100));
+        simulator.connect("1", "user");
+        simulator.initDb("1", "wiki");
+    }
+
+    public void testRepeatedReadHits() {
+        read("SELECT * FROM page WHERE page_id = 1");
+        read("SELECT *  FROM page\nWHERE page_id = 1");
+        read("SELECT * FROM page WHERE page_id = 2");
+        assertEquals(2, executor.statements.size());
+        assertEquals(3, simulator.getReads());
+        assertEquals(1, simulator.getHits());
+        int digestId = executor.digests.register("SELECT * FROM page WHERE page_id = 1");
+        assertEquals(1, simulator.getHits(digestId));
+        assertEquals(0, simulator.getHits(digestId + 1000));
+    }
+
+    public void testWriteInvalidatesReadsOfItsTables() {
+        read("SELECT * FROM page WHERE page_id = 1");
+        read("SELECT p.* FROM page p JOIN revision r ON r.rev_page = p.page_id");
+        read("SELECT * FROM user WHERE user_id = 1");
+        write("UPDATE revision SET rev_deleted = 1 WHERE rev_id = 5");
+        assertEquals(1, simulator.getInvalidated());
+
+        executor.statements.clear();
+        read("SELECT * FROM page WHERE page_id = 1");
+        read("SELECT p.* FROM page p JOIN revision r ON r.rev_page = p.page_id");
+        read("SELECT * FROM user WHERE user_id = 1");
+        assertEquals("[SELECT p.* FROM page p JOIN revision r ON r.rev_page = p.page_id]",
+                executor.statements.toString());
+    }
+
+    public void testWriteOnlyInvalidatesItsDatabase() {
+        simulator.connect("2", "user");
+        simulator.initDb("2", "other");
+        read("SELECT * FROM page WHERE page_id = 1");
+        simulator.query("2", query(SQLFunc.select, "SELECT * FROM page WHERE page_id = 1"));
+        simulator.query("2", query(SQLFunc.update, "UPDATE page SET page_touched = 1"));
+        assertEquals(1, simulator.getInvalidated());
+
+        executor.statements.clear();
+        read("SELECT * FROM page WHERE page_id = 1");
+        simulator.query("2", query(SQLFunc.select, "SELECT * FROM page WHERE page_id = 1"));
+        assertEquals(1, executor.statements.size());
+        assertEquals(1, simulator.getHits());
+    }
+
+    public void testWriteWithoutTableClearsCache() {
+        read("SELECT * FROM page WHERE page_id = 1");
+        read("SELECT * FROM user WHERE user_id = 1");
+        write("CALL refresh_everything()");
+        assertEquals(2, simulator.getInvalidated());
+        executor.statements.clear();
+        read("SELECT * FROM page WHERE page_id = 1");
+        assertEquals(1, executor.statements.size());
+    }
+
+    public void testVolatileReadIsNotCached() {
+        read("SELECT * FROM page WHERE page_touched > NOW()");
+        read("SELECT * FROM page WHERE page_touched > NOW()");
+        assertEquals(0, simulator.getCacheable());
+        assertEquals(2, executor.statements.size());
+    }
+
+    public void testWithoutCacheEveryStatementIsHandedOn() {
+        simulator = new CacheSimulator(executor, null);
+        read("SELECT * FROM page WHERE page_id = 1");
+        read("SELECT * FROM page WHERE page_id = 1");
+        write("UPDATE page SET page_touched = 1");
+        assertEquals(3, executor.statements.size());
+        assertEquals(2, simulator.getCacheable());
+        assertEquals(0, simulator.getHits());
+        assertEquals(1, simulator.getWrites());
+    }
+
+    private void read(String sql) {
+        simulator.query("1", query(SQLFunc.select, sql));
+    }
+
+    private void write(String sql) {
+        simulator.query("1", query(SQLFunc.update, sql));
+    }
+
+    private Query query(SQLFunc func, String sql) {
+        return new Query(func, sql, executor.digests.register(sql));
+    }
+
+    /**
+     * Records the statements handed on to the database
+     */
+    private static class Executor implements SessionEventHandler {
+        private final List<String> statements = new ArrayList<String>();
+        private final DigestRegistry digests = new DigestRegistry(true);
+
+        public void connect(String connectionID, String user) {
+        }
+
+        public void initDb(String connectionID, String database) {
+        }
+
+        public void transaction(String connectionID, boolean open) {
+        }
+
+        public void query(String connectionID, Query query) {
+            statements.add(query.getSql());
+        }
+
+        public void quit(String connectionID) {
+        }
+
+        public DigestRegistry getDigests() {
+            return digests;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.capacity;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fitting the Universal Scalability Law to the throughput of concurrency levels
+ */
+public class UslModelTest extends TestCase {
+
+    private static final List<Double> LEVELS = Arrays.asList(1.0, 2.0, 4.0, 8.0, 16.0, 32.0, 64.0);
+
+    public void testRecoversCoefficients() {
+        UslModel model = UslModel.fit(LEVELS, throughput(new UslModel(500, 0.05, 0.0008, 1), LEVELS, null));
+        assertEquals(500, model.getLambda(), 0.5);
+        assertEquals(0.05, model.getSigma(), 0.0005);
+        assertEquals(0.0008, model.getKappa(), 0.00001);
+        assertEquals(1, model.getRSquared(), 1e-6);
+        assertEquals(Math.sqrt(0.95 / 0.0008), model.getPeakConcurrency(), 0.5);
+    }
+
+    public void testLambdaIsNotPinnedToTheLowestLevel() {
+        List<Double> throughput = throughput(new UslModel(500, 0.02, 0.0005, 1), LEVELS, null);
+        // a slow first level, e.g. a cold buffer pool, must not scale the whole fit down
+        throughput.set(0, 300.0);
+        UslModel model = UslModel.fit(LEVELS, throughput);
+        assertTrue(String.valueOf(model.getLambda()), model.getLambda() > 400);
+        assertTrue(model.getRSquared() > 0.95);
+    }
+
+    public void testNoisyMeasurements() {
+        UslModel model = UslModel.fit(LEVELS, throughput(new UslModel(1000, 0.1, 0.001, 1), LEVELS, new Random(1)));
+        assertEquals(1000, model.getLambda(), 100);
+        assertEquals(0.1, model.getSigma(), 0.05);
+        assertEquals(0.001, model.getKappa(), 0.0005);
+        assertTrue(model.getRSquared() > 0.9);
+    }
+
+    public void testLinearScalingHasNoCost() {
+        List<Double> throughput = new ArrayList<Double>();
+        for (double n : LEVELS) {
+            throughput.add(100 * n);
+        }
+        UslModel model = UslModel.fit(LEVELS, throughput);
+        assertEquals(100, model.getLambda(), 1e-6);
+        assertEquals(0, model.getSigma(), 1e-6);
+        assertEquals(0.0, model.getKappa());
+        assertTrue(Double.isInfinite(model.getPeakConcurrency()));
+    }
+
+    public void testContentionWithoutCoherency() {
+        UslModel model = UslModel.fit(LEVELS, throughput(new UslModel(200, 0.2, 0, 1), LEVELS, null));
+        assertEquals(0.2, model.getSigma(), 0.001);
+        assertEquals(0, model.getKappa(), 1e-7);
+        assertEquals(1000, model.getPeakThroughput(), 10);
+    }
+
+    public void testNeedsTwoLevelsWithThroughput() {
+        assertNull(UslModel.fit(Arrays.asList(1.0), Arrays.asList(100.0)));
+        assertNull(UslModel.fit(Arrays.asList(1.0, 2.0), Arrays.asList(100.0, 0.0)));
+        assertNotNull(UslModel.fit(Arrays.asList(1.0, 2.0), Arrays.asList(100.0, 190.0)));
+    }
+
+    private static List<Double> throughput(UslModel model, List<Double> levels, Random noise) {
+        List<Double> throughput = new ArrayList<Double>();
+        for (double n : levels) {
+            double x = model.predict(n);
+            throughput.add(noise == null ? x : x * (1 + 0.03 * noise.nextGaussian()));
+        }
+        return throughput;
+    }
+}
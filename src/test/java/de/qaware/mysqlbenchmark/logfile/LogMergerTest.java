@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merging the logs of several servers and rotated log files by their timestamps
+ */
+public class LogMergerTest extends TestCase {
+
+    private final List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    public void testMergesByTimestamp() throws IOException {
+        String first = write("150811  6:47:54\t1 Connect\tuser@a on wiki\n"
+                + "\t\t1 Query\tSELECT 1\n"
+                + "150811  6:47:56\t1 Query\tSELECT 3\n"
+                + "150811  6:47:58\t1 Quit\n");
+        String second = write("150811  6:47:55\t1 Connect\tuser@b on wiki\n"
+                + "\t\t1 Query\tSELECT 2\n"
+                + "150811  6:47:57\t1 Query\tSELECT 4\n"
+                + "\t\t1 Quit\n");
+        assertEquals("[connect 1/1 user@a on wiki, query 1/1 SELECT 1, connect 2/1 user@b on wiki,"
+                + " query 2/1 SELECT 2, query 1/1 SELECT 3, query 2/1 SELECT 4, quit 2/1, quit 1/1]",
+                merge(1, first, second).toString());
+    }
+
+    public void testEventsOfTheSameTimeKeepTheOrderOfTheSources() throws IOException {
+        String first = write("150811  6:47:54\t1 Query\tSELECT 1\n"
+                + "\t\t1 Query\tSELECT 2\n");
+        String second = write("150811  6:47:54\t9 Query\tSELECT 3\n");
+        assertEquals("[query 1/1 SELECT 1, query 1/1 SELECT 2, query 2/9 SELECT 3]",
+                merge(100, first, second).toString());
+    }
+
+    public void testRotatedFilesAreReadInOrder() throws IOException {
+        String older = write("150811  6:47:54\t1 Query\tSELECT 1\n"
+                + "150811  6:47:57\t1 Query\tSELECT 4\n");
+        String newer = write("\t\t1 Query\tSELECT 5\n"
+                + "150811  6:47:59\t1 Quit\n");
+        String other = write("150811  6:47:55\t2 Query\tSELECT 2\n"
+                + "150811  6:47:56\t2 Query\tSELECT 3\n"
+                + "150811  6:47:58\t2 Query\tSELECT 6\n");
+        assertEquals("[query 1/1 SELECT 1, query 2/2 SELECT 2, query 2/2 SELECT 3, query 1/1 SELECT 4,"
+                + " query 1/1 SELECT 5, query 2/2 SELECT 6, quit 1/1]",
+                merge(2, older + LogMerger.ROTATION_SEPARATOR + newer, other).toString());
+    }
+
+    public void testSingleFileKeepsConnectionIds() throws IOException {
+        List<String> logs = Collections.singletonList(write("150811  6:47:54\t1 Query\tSELECT 1\n"));
+        assertTrue(LogMerger.isSingleFile(logs));
+        assertFalse(LogMerger.isSingleFile(Arrays.asList(logs.get(0), logs.get(0))));
+        assertFalse(LogMerger.isSingleFile(Collections.singletonList(logs.get(0) + LogMerger.ROTATION_SEPARATOR
+                + logs.get(0))));
+        LogSource source = LogMerger.open(new Recorder(), logs, null, Collections.<String>emptyList());
+        try {
+            assertTrue(source instanceof QueryParser);
+        } finally {
+            source.close();
+        }
+    }
+
+    private String write(String log) throws IOException {
+        File file = File.createTempFile("general", ".log");
+        files.add(file);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(log);
+        } finally {
+            writer.close();
+        }
+        return file.getPath();
+    }
+
+    private static List<String> merge(int batch, String... logs) throws IOException {
+        Recorder recorder = new Recorder();
+        LogMerger merger = new LogMerger(recorder, Arrays.asList(logs), null, Collections.<String>emptyList());
+        try {
+            long time = -1;
+            while (merger.parseLogFile(batch)) {
+                assertTrue(merger.size() <= batch);
+                assertTrue(merger.getLogTime() >= time);
+                time = merger.getLogTime();
+            }
+        } finally {
+            merger.close();
+        }
+        return recorder.events;
+    }
+
+    private static class Recorder implements SessionEventHandler {
+        private final List<String> events = new ArrayList<String>();
+        private final DigestRegistry digests = new DigestRegistry(true);
+
+        public void connect(String connectionID, String user) {
+            events.add("connect " + connectionID + " " + user);
+        }
+
+        public void initDb(String connectionID, String database) {
+            events.add("initDb " + connectionID + " " + database);
+        }
+
+        public void transaction(String connectionID, boolean open) {
+            events.add("transaction " + connectionID + " " + open);
+        }
+
+        public void query(String connectionID, Query query) {
+            events.add("query " + connectionID + " " + query.getSql());
+        }
+
+        public void quit(String connectionID) {
+            events.add("quit " + connectionID);
+        }
+
+        public DigestRegistry getDigests() {
+            return digests;
+        }
+    }
+}
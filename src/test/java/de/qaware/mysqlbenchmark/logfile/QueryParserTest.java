@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.logfile;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsing of general logs in the formats before and since MySQL 5.7
+ */
+public class QueryParserTest extends TestCase {
+
+    public void testIsoTimestamps() throws IOException {
+        List<String> events = parse("/usr/sbin/mysqld, Version: 5.7.22-log (MySQL Community Server (GPL)). started with:\n"
+                + "Tcp port: 3306  Unix socket: /var/run/mysqld/mysqld.sock\n"
+                + "Time                 Id Command    Argument\n"
+                + "2015-08-11T06:47:54.123456Z\t    7 Connect\tuser@localhost on wiki using TCP/IP\n"
+                + "2015-08-11T06:47:54.123456Z\t    7 Init DB\twiki\n"
+                + "2015-08-11T06:47:54.200000Z\t    7 Query\tSELECT page_id FROM page\n"
+                + "WHERE page_id = 1\n"
+                + "2015-08-11T06:47:55.000001Z\t    7 Query\tUPDATE page SET page_touched = '1' WHERE page_id = 1\n"
+                + "2015-08-11T06:47:55.500000Z\t    7 Query\tDELETE FROM page WHERE page_id = 2\n"
+                + "2015-08-11T06:47:56.000000Z\t    7 Quit\t\n");
+        assertEquals("[connect 7 user@localhost on wiki using TCP/IP, initDb 7 wiki,"
+                + " query 7 SELECT page_id FROM page\nWHERE page_id = 1,"
+                + " query 7 UPDATE page SET page_touched = '1' WHERE page_id = 1,"
+                + " query 7 DELETE FROM page WHERE page_id = 2, quit 7]", events.toString());
+    }
+
+    public void testShortTimestamps() throws IOException {
+        List<String> events = parse("150811  6:47:54\t940899 Connect\tuser@192.230.152.49 as anonymous on\n"
+                + "\t\t940899 Init DB\twiki\n"
+                + "\t\t940899 Query\tSELECT 1 FROM page\n"
+                + "150811  6:47:55\t940899 Quit\n");
+        assertEquals("[connect 940899 user@192.230.152.49 as anonymous on, initDb 940899 wiki,"
+                + " query 940899 SELECT 1 FROM page, quit 940899]", events.toString());
+    }
+
+    private static List<String> parse(String log) throws IOException {
+        File file = File.createTempFile("general", ".log");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                writer.write(log);
+            } finally {
+                writer.close();
+            }
+            Recorder recorder = new Recorder();
+            QueryParser parser = new QueryParser(recorder, file.getPath(), null, Collections.<String>emptyList());
+            try {
+                while (parser.parseLogFile(100)) {
+                    // parse all lines
+                }
+            } finally {
+                parser.close();
+            }
+            return recorder.events;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static class Recorder implements SessionEventHandler {
+        private final List<String> events = new ArrayList<String>();
+        private final DigestRegistry digests = new DigestRegistry(true);
+
+        public void connect(String connectionID, String user) {
+            events.add("connect " + connectionID + " " + user);
+        }
+
+        public void initDb(String connectionID, String database) {
+            events.add("initDb " + connectionID + " " + database);
+        }
+
+        public void transaction(String connectionID, boolean open) {
+            events.add("transaction " + connectionID + " " + open);
+        }
+
+        public void query(String connectionID, Query query) {
+            events.add("query " + connectionID + " " + query.getSql());
+        }
+
+        public void quit(String connectionID) {
+            events.add("quit " + connectionID);
+        }
+
+        public DigestRegistry getDigests() {
+            return digests;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Significance test, percentile intervals and normal distribution used to compare runs
+ */
+public class HistogramStatisticsTest extends TestCase {
+
+    public void testSameDistributionIsNotSignificant() {
+        LatencyHistogram a = normal(new Random(1), 1000, 1000, 100);
+        LatencyHistogram b = normal(new Random(2), 1000, 1000, 100);
+        assertTrue(HistogramStatistics.mannWhitneyP(a, b) > 0.01);
+        assertEquals(1.0, HistogramStatistics.mannWhitneyP(a, a), 1e-6);
+    }
+
+    public void testShiftIsSignificantInBothDirections() {
+        LatencyHistogram a = normal(new Random(1), 1000, 1000, 100);
+        LatencyHistogram b = normal(new Random(2), 1000, 1030, 100);
+        double p = HistogramStatistics.mannWhitneyP(a, b);
+        assertTrue(String.valueOf(p), p < 0.001);
+        assertEquals(p, HistogramStatistics.mannWhitneyP(b, a), 1e-12);
+    }
+
+    public void testAllTiesAreNotSignificant() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            a.record(42);
+            b.record(42);
+        }
+        assertEquals(1.0, HistogramStatistics.mannWhitneyP(a, b), 1e-6);
+    }
+
+    public void testEmptySampleHasNoP() {
+        assertTrue(Double.isNaN(HistogramStatistics.mannWhitneyP(new LatencyHistogram(), normal(new Random(1), 10, 100, 1))));
+    }
+
+    public void testPercentileIntervalContainsPercentile() {
+        LatencyHistogram h = normal(new Random(3), 10000, 5000, 500);
+        long[] interval = HistogramStatistics.percentileInterval(h, 99, 0.95);
+        long p99 = h.getValueAtPercentile(99);
+        assertTrue(interval[0] <= p99 && p99 <= interval[1]);
+        assertTrue(interval[0] > h.getValueAtPercentile(90));
+    }
+
+    public void testStdDeviation() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(10);
+        assertEquals(0.0, HistogramStatistics.stdDeviation(h), 0);
+        h.record(20);
+        assertEquals(Math.sqrt(50), HistogramStatistics.stdDeviation(h), 1e-9);
+    }
+
+    public void testNormalQuantileInvertsCdf() {
+        assertEquals(0.5, HistogramStatistics.normalCdf(0), 1e-7);
+        assertEquals(0.975, HistogramStatistics.normalCdf(1.959964), 1e-6);
+        for (double p : new double[]{0.001, 0.05, 0.5, 0.9, 0.999}) {
+            assertEquals(p, HistogramStatistics.normalCdf(HistogramStatistics.normalQuantile(p)), 1e-6);
+        }
+    }
+
+    private static LatencyHistogram normal(Random random, int count, double mean, double deviation) {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < count; i++) {
+            h.record(Math.round(mean + random.nextGaussian() * deviation));
+        }
+        return h;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Recording, percentiles and encodings of the latency histogram
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100; v++) {
+            h.record(v);
+        }
+        assertEquals(100, h.getTotalCount());
+        assertEquals(5050, h.getSum());
+        assertEquals(1, h.getMin());
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 1e-9);
+        assertEquals(50, h.getValueAtPercentile(50));
+        assertEquals(99, h.getValueAtPercentile(99));
+        assertEquals(100, h.getValueAtPercentile(100));
+        assertEquals(10, h.getCountAtOrBelow(10));
+    }
+
+    public void testPercentilesWithinOnePercent() {
+        LatencyHistogram h = new LatencyHistogram();
+        Random random = new Random(1);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextGaussian() * 2 + 8));
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = h.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + estimate + " vs " + exact, estimate >= exact);
+            assertTrue(percentile + ": " + estimate + " vs " + exact, estimate <= exact * 1.01);
+        }
+    }
+
+    public void testNegativeAndHugeValuesAreClamped() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(-5);
+        h.record(LatencyHistogram.MAX_VALUE * 4);
+        assertEquals(0, h.getMin());
+        assertEquals(LatencyHistogram.MAX_VALUE * 4, h.getMax());
+        assertEquals(LatencyHistogram.MAX_VALUE, h.getValueAtPercentile(100));
+    }
+
+    public void testAddAndSubtract() {
+        LatencyHistogram earlier = new LatencyHistogram();
+        earlier.record(10);
+        earlier.record(1000);
+        LatencyHistogram later = earlier.copy();
+        later.record(500);
+
+        LatencyHistogram delta = later.copy();
+        delta.subtract(earlier);
+        assertEquals(1, delta.getTotalCount());
+        assertEquals(500, delta.getSum());
+        assertEquals(500, delta.getValueAtPercentile(50), 5);
+        assertTrue(delta.getMin() <= 500 && delta.getMax() >= 500);
+
+        delta.add(earlier);
+        assertEquals(later.encode(), delta.encode());
+    }
+
+    public void testTextEncodingIsLossless() {
+        LatencyHistogram h = random(42);
+        String encoded = h.encode();
+        assertFalse(encoded.matches(".*\\s.*"));
+        LatencyHistogram decoded = LatencyHistogram.decode(encoded);
+        assertSame(h, decoded);
+        assertEquals(encoded, decoded.encode());
+    }
+
+    public void testBinaryEncodingIsLossless() throws IOException {
+        LatencyHistogram h = random(7);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        h.writeTo(new DataOutputStream(bytes));
+        LatencyHistogram read = LatencyHistogram.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertSame(h, read);
+    }
+
+    public void testEmptyHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getMin());
+        assertEquals(0, h.getValueAtPercentile(99));
+        assertEquals(0, LatencyHistogram.decode(h.encode()).getTotalCount());
+    }
+
+    private static LatencyHistogram random(long seed) {
+        LatencyHistogram h = new LatencyHistogram();
+        Random random = new Random(seed);
+        for (int i = 0; i < 10000; i++) {
+            h.record(random.nextInt(1000000));
+        }
+        return h;
+    }
+
+    private static void assertSame(LatencyHistogram expected, LatencyHistogram actual) {
+        assertEquals(expected.getTotalCount(), actual.getTotalCount());
+        assertEquals(expected.getSum(), actual.getSum());
+        assertEquals(expected.getMin(), actual.getMin());
+        assertEquals(expected.getMax(), actual.getMax());
+        for (double percentile = 0; percentile <= 100; percentile += 0.5) {
+            assertEquals(expected.getValueAtPercentile(percentile), actual.getValueAtPercentile(percentile));
+        }
+    }
+}
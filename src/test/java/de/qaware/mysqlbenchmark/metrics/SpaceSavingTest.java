@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.metrics;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Guarantees of the Space-Saving summary, also after merging summaries of parts of a stream
+ */
+public class SpaceSavingTest extends TestCase {
+
+    private static final int CAPACITY = 20;
+
+    public void testExactWhileCountersAreFree() {
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        summary.offer("a", 3);
+        summary.offer("b", 1);
+        summary.offer("a", 2);
+        assertEquals(5, summary.getWeight("a"));
+        assertEquals(5, summary.getGuaranteedWeight("a"));
+        assertEquals(0, summary.getWeight("c"));
+        assertEquals(6, summary.getTotal());
+        List<SpaceSaving.Estimate> top = summary.top(1);
+        assertEquals(1, top.size());
+        assertEquals("a", top.get(0).getKey());
+        assertEquals(0, top.get(0).getError());
+    }
+
+    public void testNewKeyInheritsSmallestWeightAsError() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.offer("a", 5);
+        summary.offer("b", 2);
+        summary.offer("c", 1);
+        assertEquals(3, summary.getWeight("c"));
+        assertEquals(1, summary.getGuaranteedWeight("c"));
+        assertEquals(0, summary.getGuaranteedWeight("b"));
+        assertEquals(3, summary.getWeight("b"));
+    }
+
+    public void testGuaranteesOnSkewedStream() {
+        Map<String, Long> exact = new HashMap<String, Long>();
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        stream(new Random(1), 100000, summary, exact);
+        assertGuarantees(summary, exact);
+    }
+
+    public void testMergeKeepsGuarantees() {
+        Map<String, Long> exact = new HashMap<String, Long>();
+        SpaceSaving merged = new SpaceSaving(CAPACITY);
+        stream(new Random(1), 50000, merged, exact);
+        for (int seed = 2; seed < 5; seed++) {
+            SpaceSaving part = new SpaceSaving(CAPACITY);
+            stream(new Random(seed), 50000, part, exact);
+            merged.merge(part);
+        }
+        assertGuarantees(merged, exact);
+    }
+
+    public void testMergeOfDisjointKeysKeepsHeaviest() {
+        SpaceSaving a = new SpaceSaving(2);
+        a.offer("a", 10);
+        a.offer("b", 1);
+        SpaceSaving b = new SpaceSaving(2);
+        b.offer("c", 7);
+        b.offer("d", 2);
+        a.merge(b);
+        List<SpaceSaving.Estimate> top = a.top(2);
+        assertEquals("a", top.get(0).getKey());
+        assertEquals("c", top.get(1).getKey());
+        assertEquals(20, a.getTotal());
+    }
+
+    /**
+     * Stream of 1000 keys with weights following a Zipf like distribution
+     */
+    private static void stream(Random random, int length, SpaceSaving summary, Map<String, Long> exact) {
+        for (int i = 0; i < length; i++) {
+            String key = "k" + (int) Math.floor(Math.pow(1000, random.nextDouble()));
+            long weight = 1 + random.nextInt(3);
+            summary.offer(key, weight);
+            Long previous = exact.get(key);
+            exact.put(key, (previous == null ? 0 : previous) + weight);
+        }
+    }
+
+    private static void assertGuarantees(SpaceSaving summary, Map<String, Long> exact) {
+        long total = 0;
+        for (long weight : exact.values()) {
+            total += weight;
+        }
+        assertEquals(total, summary.getTotal());
+        for (Map.Entry<String, Long> entry : exact.entrySet()) {
+            String key = entry.getKey();
+            long weight = entry.getValue();
+            assertTrue(key, summary.getWeight(key) >= weight);
+            assertTrue(key, summary.getGuaranteedWeight(key) <= weight);
+            if (weight > total / CAPACITY) {
+                assertTrue(key, summary.getGuaranteedWeight(key) > 0);
+            }
+        }
+        for (SpaceSaving.Estimate estimate : summary.top(CAPACITY)) {
+            assertTrue(estimate.getError() <= total / CAPACITY);
+        }
+    }
+}
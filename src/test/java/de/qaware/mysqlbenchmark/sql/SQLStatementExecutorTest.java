@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 QAware GmbH (http://www.qaware.de/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.qaware.mysqlbenchmark.sql;
+
+import com.beust.jcommander.JCommander;
+import de.qaware.mysqlbenchmark.console.Parameters;
+import de.qaware.mysqlbenchmark.func.SQLFunc;
+import de.qaware.mysqlbenchmark.logfile.Query;
+import de.qaware.mysqlbenchmark.metrics.RunSummary;
+import de.qaware.mysqlbenchmark.stub.LatencyRule;
+import de.qaware.mysqlbenchmark.stub.StubServer;
+import de.qaware.mysqlbenchmark.trace.TraceFile;
+import de.qaware.mysqlbenchmark.trace.TraceRecorder;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays of hand-made sessions against the in-process stub server
+ */
+public class SQLStatementExecutorTest extends TestCase {
+
+    private StubServer stub;
+    private SQLStatementExecutor executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        stub = new StubServer(0);
+        stub.addLatencyRule(LatencyRule.parse("(?i).*slow.*=200:0"));
+        stub.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (executor != null) {
+            executor.close();
+        }
+        stub.stop();
+    }
+
+    public void testSessionStartsAfterSessionsWhichQuitBefore() throws IOException {
+        File file = File.createTempFile("replay", ".trace");
+        try {
+            executor = executor(4);
+            TraceRecorder trace = new TraceRecorder(file.getPath(), 0);
+            executor.setTrace(trace);
+            session("1", "SELECT slow FROM page");
+            session("2", "SELECT fast FROM page");
+            assertTrue(executor.drain(10000));
+            trace.close(executor.getDigests());
+
+            TraceFile recorded = TraceFile.open(file.getPath());
+            assertEquals(2, recorded.size());
+            long slowEnd = -1;
+            long fastStart = -1;
+            for (long i = 0; i < recorded.size(); i++) {
+                if ("1".equals(recorded.getSessionName(recorded.getSession(i)))) {
+                    slowEnd = recorded.getEnd(i);
+                } else {
+                    fastStart = recorded.getStart(i);
+                }
+            }
+            assertTrue("session 2 started at " + fastStart + " before session 1 ended at " + slowEnd,
+                    fastStart >= slowEnd);
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testBacklogStartsSessionWhenSlotIsFree() {
+        executor = executor(1);
+        executor.connect("1", "user");
+        executor.initDb("1", "wiki");
+        executor.connect("2", "user");
+        executor.initDb("2", "wiki");
+        assertEquals(1, executor.getBackloggedConnections());
+
+        query("1", "SELECT slow FROM page");
+        query("2", "SELECT fast FROM page");
+        executor.quit("1");
+        executor.quit("2");
+        assertTrue(executor.drain(10000));
+        assertEquals(0, executor.getBackloggedConnections());
+
+        RunSummary summary = executor.getRunSummary();
+        assertEquals(2, summary.getIssued());
+        assertEquals(2, summary.getCompleted());
+        assertEquals(0, summary.getInFlight());
+        assertTrue(summary.isDrained());
+    }
+
+    public void testDrainTimeoutLeavesStatementsInFlight() {
+        executor = executor(2);
+        executor.connect("1", "user");
+        executor.initDb("1", "wiki");
+        query("1", "SELECT slow FROM page");
+        query("1", "SELECT slow FROM revision");
+
+        assertFalse(executor.drain(50));
+        RunSummary summary = executor.getRunSummary();
+        assertEquals(2, summary.getIssued());
+        assertTrue(summary.getInFlight() > 0);
+        assertFalse(summary.isDrained());
+    }
+
+    public void testSessionsWithoutDatabaseAreNotStarted() {
+        executor = executor(2);
+        executor.connect("1", "user");
+        query("1", "SELECT fast FROM page");
+        executor.quit("1");
+        session("2", "SELECT fast FROM page");
+        assertTrue(executor.drain(10000));
+
+        RunSummary summary = executor.getRunSummary();
+        assertEquals(1, summary.getCompleted());
+        assertEquals(1, summary.getNotStarted());
+    }
+
+    private SQLStatementExecutor executor(int parallel) {
+        Parameters params = new Parameters();
+        new JCommander(params, "-u", "user", "-p", "secret", "-s", stub.getConnectionString(),
+                "-pa", String.valueOf(parallel));
+        return new SQLStatementExecutor(params);
+    }
+
+    private void session(String id, String sql) {
+        executor.connect(id, "user");
+        executor.initDb(id, "wiki");
+        query(id, sql);
+        executor.quit(id);
+    }
+
+    private void query(String id, String sql) {
+        executor.query(id, new Query(SQLFunc.select, sql, executor.getDigests().register(sql)));
+    }
+}